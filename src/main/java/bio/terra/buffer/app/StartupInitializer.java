@@ -4,8 +4,17 @@ import bio.terra.buffer.app.configuration.BufferDatabaseConfiguration;
 import bio.terra.buffer.app.configuration.BufferDatabaseProperties;
 import bio.terra.buffer.app.configuration.StairwayDatabaseConfiguration;
 import bio.terra.buffer.service.cleanup.CleanupScheduler;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.buffer.service.pool.HandoutReservoir;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
 import bio.terra.buffer.service.pool.PoolService;
+import bio.terra.buffer.service.resource.CreationOutcomeHook;
 import bio.terra.buffer.service.resource.FlightScheduler;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
+import bio.terra.buffer.service.resource.ResourceCountScheduler;
+import bio.terra.buffer.service.resource.ResourceStateListener;
+import bio.terra.buffer.service.resource.projectid.ProjectIdAllocator;
 import bio.terra.buffer.service.stackdriver.StackdriverExporter;
 import bio.terra.common.migrate.LiquibaseMigrator;
 import bio.terra.common.stairway.StairwayComponent;
@@ -40,9 +49,18 @@ public final class StartupInitializer {
     } else if (bufferDatabaseProperties.isUpdateDbOnStart()) {
       migrateService.upgrade(changelogPath, bufferDatabaseConfiguration.getDataSource());
     }
+    // Before Stairway, so that recovered creation flights allocate against the loaded ids.
+    applicationContext.getBean(ProjectIdAllocator.class).initialize();
     initializeStairwayComponent(applicationContext);
     applicationContext.getBean(PoolService.class).initialize();
+    applicationContext.getBean(HandoutWaitQueue.class).initialize();
+    applicationContext.getBean(OperationPoller.class).initialize();
+    applicationContext.getBean(HandoutReservoir.class).initialize();
+    applicationContext.getBean(LeaderElection.class).initialize();
     applicationContext.getBean(FlightScheduler.class).initialize();
+    applicationContext.getBean(ResourceCountScheduler.class).initialize();
+    applicationContext.getBean(ProjectDeletionReconciler.class).initialize();
+    applicationContext.getBean(ResourceStateListener.class).initialize();
     applicationContext.getBean(CleanupScheduler.class).initialize();
   }
 
@@ -56,6 +74,7 @@ public final class StartupInitializer {
         .initialize(
             stairwayDatabaseConfiguration.getDataSource(),
             applicationContext,
-            ImmutableList.of(new TracingHook()));
+            ImmutableList.of(
+                new TracingHook(), applicationContext.getBean(CreationOutcomeHook.class)));
   }
 }
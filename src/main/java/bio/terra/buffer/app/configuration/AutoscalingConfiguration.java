@@ -0,0 +1,81 @@
+package bio.terra.buffer.app.configuration;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for picking the target size of pools with a {@code PoolAutoscalingConfig}.
+ *
+ * <p>Handouts over the last {@code handoutWindow} are counted in {@code bucketWidth} long buckets
+ * and smoothed into a handout rate with an exponentially weighted moving average. The rate times
+ * the creation latency of resources made READY over the last {@code creationLatencyWindow} is the
+ * number of resources expected to be handed out while a new one is created.
+ *
+ * <p>Pools grow as soon as the target size goes up, but only shrink to the largest target size
+ * over the last {@code scaleDownDelay}, so that a short lull doesn't delete resources that the
+ * next burst would need.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "buffer.autoscaling")
+public class AutoscalingConfiguration {
+  /** How far back to look at handouts. */
+  private Duration handoutWindow = Duration.ofHours(2);
+
+  /** The width of each handout count bucket. */
+  private Duration bucketWidth = Duration.ofMinutes(5);
+
+  /**
+   * The weight of the newest bucket in the moving average, between 0 and 1. Higher values follow
+   * spikes faster and forget them faster.
+   */
+  private double smoothingFactor = 0.3;
+
+  /** How far back to look at resource creations. */
+  private Duration creationLatencyWindow = Duration.ofDays(1);
+
+  /** How long a lower target size must hold before a pool shrinks to it. */
+  private Duration scaleDownDelay = Duration.ofMinutes(30);
+
+  public Duration getHandoutWindow() {
+    return handoutWindow;
+  }
+
+  public void setHandoutWindow(Duration handoutWindow) {
+    this.handoutWindow = handoutWindow;
+  }
+
+  public Duration getBucketWidth() {
+    return bucketWidth;
+  }
+
+  public void setBucketWidth(Duration bucketWidth) {
+    this.bucketWidth = bucketWidth;
+  }
+
+  public double getSmoothingFactor() {
+    return smoothingFactor;
+  }
+
+  public void setSmoothingFactor(double smoothingFactor) {
+    this.smoothingFactor = smoothingFactor;
+  }
+
+  public Duration getCreationLatencyWindow() {
+    return creationLatencyWindow;
+  }
+
+  public void setCreationLatencyWindow(Duration creationLatencyWindow) {
+    this.creationLatencyWindow = creationLatencyWindow;
+  }
+
+  public Duration getScaleDownDelay() {
+    return scaleDownDelay;
+  }
+
+  public void setScaleDownDelay(Duration scaleDownDelay) {
+    this.scaleDownDelay = scaleDownDelay;
+  }
+}
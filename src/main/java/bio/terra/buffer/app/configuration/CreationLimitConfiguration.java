@@ -0,0 +1,87 @@
+package bio.terra.buffer.app.configuration;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for how many creation flights each pool may have in progress.
+ *
+ * <p>The limit of a pool grows by {@code additiveIncrease} for every {@code limit} successful
+ * creations, and is multiplied by {@code multiplicativeDecrease} when a creation fails, at most
+ * once per {@code decreaseWindow}. It always stays between {@code minLimit} and {@code maxLimit}.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "buffer.creation-limit")
+public class CreationLimitConfiguration {
+  /** The limit of a pool with no flight outcome yet. */
+  private double initialLimit = 10;
+
+  /** The lowest the limit goes, so that a failing pool still probes whether it recovered. */
+  private double minLimit = 1;
+
+  /** The highest the limit goes. */
+  private double maxLimit = 100;
+
+  /** How much the limit grows after a limit's worth of successful creations. */
+  private double additiveIncrease = 1;
+
+  /** The factor, between 0 and 1, applied to the limit on failure. */
+  private double multiplicativeDecrease = 0.5;
+
+  /**
+   * The shortest time between two decreases, about how long a creation takes, so that the flights
+   * that were already in progress when the limit was cut don't cut it again when they fail.
+   */
+  private Duration decreaseWindow = Duration.ofMinutes(10);
+
+  public double getInitialLimit() {
+    return initialLimit;
+  }
+
+  public void setInitialLimit(double initialLimit) {
+    this.initialLimit = initialLimit;
+  }
+
+  public double getMinLimit() {
+    return minLimit;
+  }
+
+  public void setMinLimit(double minLimit) {
+    this.minLimit = minLimit;
+  }
+
+  public double getMaxLimit() {
+    return maxLimit;
+  }
+
+  public void setMaxLimit(double maxLimit) {
+    this.maxLimit = maxLimit;
+  }
+
+  public double getAdditiveIncrease() {
+    return additiveIncrease;
+  }
+
+  public void setAdditiveIncrease(double additiveIncrease) {
+    this.additiveIncrease = additiveIncrease;
+  }
+
+  public double getMultiplicativeDecrease() {
+    return multiplicativeDecrease;
+  }
+
+  public void setMultiplicativeDecrease(double multiplicativeDecrease) {
+    this.multiplicativeDecrease = multiplicativeDecrease;
+  }
+
+  public Duration getDecreaseWindow() {
+    return decreaseWindow;
+  }
+
+  public void setDecreaseWindow(Duration decreaseWindow) {
+    this.decreaseWindow = decreaseWindow;
+  }
+}
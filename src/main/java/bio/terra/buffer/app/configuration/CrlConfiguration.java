@@ -19,14 +19,19 @@ import com.google.api.services.compute.ComputeScopes;
 import com.google.api.services.dns.Dns;
 import com.google.api.services.iam.v1.Iam;
 import com.google.api.services.iam.v1.IamScopes;
+import com.google.auth.ServiceAccountSigner;
 import com.google.auth.http.HttpCredentialsAdapter;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import com.google.cloud.storage.StorageOptions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.GeneralSecurityException;
 import java.time.Duration;
+import java.util.Optional;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -73,6 +78,9 @@ public class CrlConfiguration {
   /** pubsub topic id to publish track resource to Janitor */
   private String janitorTrackResourceTopicId;
 
+  private final Supplier<Optional<String>> serviceAccountEmail =
+      Suppliers.memoize(CrlConfiguration::loadServiceAccountEmail);
+
   public boolean isCleanupAfterHandout() {
     return cleanupAfterHandout;
   }
@@ -161,16 +169,27 @@ public class CrlConfiguration {
   @Bean
   @Lazy
   public CloudComputeCow cloudComputeCow() throws IOException, GeneralSecurityException {
-    return new CloudComputeCow(
-        clientConfig(),
-        new Compute.Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
-                Defaults.jsonFactory(),
-                setHttpTimeout(
-                    new HttpCredentialsAdapter(
-                        GoogleCredentials.getApplicationDefault()
-                            .createScoped(ComputeScopes.all()))))
-            .setApplicationName(CLIENT_NAME));
+    return new CloudComputeCow(clientConfig(), computeBuilder());
+  }
+
+  /**
+   * The plain Google Compute API client, for batch requests which {@link CloudComputeCow} does not
+   * support. Prefer {@link CloudComputeCow} for anything else.
+   */
+  @Bean
+  @Lazy
+  public Compute compute() throws IOException, GeneralSecurityException {
+    return computeBuilder().build();
+  }
+
+  private static Compute.Builder computeBuilder() throws IOException, GeneralSecurityException {
+    return new Compute.Builder(
+            GoogleNetHttpTransport.newTrustedTransport(),
+            Defaults.jsonFactory(),
+            setHttpTimeout(
+                new HttpCredentialsAdapter(
+                    GoogleCredentials.getApplicationDefault().createScoped(ComputeScopes.all()))))
+        .setApplicationName(CLIENT_NAME);
   }
 
   /** The CRL {@link DnsCow} which wrappers Google Compute API. */
@@ -211,6 +230,26 @@ public class CrlConfiguration {
             .setApplicationName(CLIENT_NAME));
   }
 
+  /**
+   * The email of the service account Resource Buffer Service calls Google as, which projects it
+   * creates grant roles to. Empty if the credentials are not a service account's, e.g. a
+   * developer's user credentials.
+   */
+  public Optional<String> serviceAccountEmail() {
+    return serviceAccountEmail.get();
+  }
+
+  private static Optional<String> loadServiceAccountEmail() {
+    try {
+      GoogleCredentials credentials = GoogleCredentials.getApplicationDefault();
+      return credentials instanceof ServiceAccountSigner
+          ? Optional.of(((ServiceAccountSigner) credentials).getAccount())
+          : Optional.empty();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to load application default credentials", e);
+    }
+  }
+
   /** Loads the Janitor client service account credential from file. */
   public ServiceAccountCredentials loadJanitorClientCredential() {
     try {
@@ -1,5 +1,6 @@
 package bio.terra.buffer.app.configuration;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -16,6 +17,19 @@ public class PoolConfiguration {
   // Whether to update pool from pool config when server start.
   private boolean updatePoolOnStart;
 
+  // Whether to claim READY resources with SELECT ... FOR UPDATE SKIP LOCKED when handing out. If
+  // false, handout picks a random READY resource and retries on conflicts with concurrent
+  // handouts.
+  private boolean lockFreeHandoutEnabled = true;
+
+  // The longest time a handout request can wait for a resource to become READY. Longer wait times
+  // asked by clients are capped to this. Must be shorter than spring.mvc.async.request-timeout.
+  private Duration maxHandoutWaitTime = Duration.ofSeconds(60);
+
+  // How long pools are cached in memory. Pool changes made by this instance take effect right away,
+  // changes made by other instances are picked up after at most this long.
+  private Duration poolCacheExpiration = Duration.ofSeconds(30);
+
   public String getConfigPath() {
     return configPath;
   }
@@ -31,4 +45,28 @@ public class PoolConfiguration {
   public void setUpdatePoolOnStart(boolean updatePoolOnStart) {
     this.updatePoolOnStart = updatePoolOnStart;
   }
+
+  public boolean isLockFreeHandoutEnabled() {
+    return lockFreeHandoutEnabled;
+  }
+
+  public void setLockFreeHandoutEnabled(boolean lockFreeHandoutEnabled) {
+    this.lockFreeHandoutEnabled = lockFreeHandoutEnabled;
+  }
+
+  public Duration getMaxHandoutWaitTime() {
+    return maxHandoutWaitTime;
+  }
+
+  public void setMaxHandoutWaitTime(Duration maxHandoutWaitTime) {
+    this.maxHandoutWaitTime = maxHandoutWaitTime;
+  }
+
+  public Duration getPoolCacheExpiration() {
+    return poolCacheExpiration;
+  }
+
+  public void setPoolCacheExpiration(Duration poolCacheExpiration) {
+    this.poolCacheExpiration = poolCacheExpiration;
+  }
 }
@@ -1,23 +1,23 @@
 package bio.terra.buffer.app.configuration;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 /**
- * This configuration is to rate limit on project creation/deletion.
+ * This configuration is to schedule project creation/deletion.
  *
- * <p>Rate limiting: The bottleneck for GCP quota comes from ServiceUsage.batchEnable API. By
- * default, it is 20/100s. Here is how we estimate the time: A Creation flight takes 600~900
- * seconds. If a scheduler runs every 10 seconds, in 900 seconds it schedulers runs 70 times. If we
- * have 4 pools, it schedules ({@code resourceCreationPerPoolLimit} * 4) = 4 flights. In total 70
- * times run, 280 flights is scheduled. We estimate this number should works when pool number is
- * 1~10. If we see more errors, we will comeback and revise those configs.
+ * <p>Rate limiting: Creation flights are only admitted while the shared cloud API quota budget has
+ * tokens for them, see {@link QuotaConfiguration}. Creation, deletion, recycling and upgrade
+ * flights together are limited to {@code maxConcurrentFlights} in progress, shared between pools by
+ * {@code poolWeights} and how many resources each pool is missing. Each pool's creation flights are
+ * further limited by how its recent flights fared, see {@link CreationLimitConfiguration}.
  *
- * <p>TODO(PF-617): The current 'primary' scheduling service is actually running in all instances,
- * figure out a way to make this only runs in one pod.
+ * <p>The schedulers run in every instance, but only the instance elected leader submits flights.
  */
 @Component
 @EnableConfigurationProperties
@@ -29,33 +29,71 @@ public class PrimaryConfiguration {
   private boolean schedulerEnabled;
 
   /**
-   * How often to query for flights to submit.
+   * How often to query all pools for flights to submit.
    *
-   * <p>Sets this to be a larger number because most of the service is deployed in a multi-instance
-   * world, and there will be more than one scheduling service running.
+   * <p>Pools with resources handed out are also evaluated right away, see {@link
+   * #poolEventDebounce}. So this is only a safety net for missed notifications and can be long.
    */
   private Duration flightSubmissionPeriod = Duration.ofSeconds(30);
 
+  /**
+   * How long to wait after a resource of a pool is handed out before evaluating the pool, to
+   * evaluate once for a burst of handouts.
+   */
+  private Duration poolEventDebounce = Duration.ofSeconds(2);
+
+  /**
+   * How long the leader keeps its lease without renewing it. A new leader takes over within this
+   * plus a third of it when the leader dies, which should be shorter than {@link
+   * #flightSubmissionPeriod}.
+   */
+  private Duration leaderLeaseDuration = Duration.ofSeconds(15);
+
   /**
    * Whether to delete resource when resource count exceeds the pool size.
    *
-   * <p>This to prevent multiple instances concurrent scheduler deleting extra resources. Also this
-   * is no use case that we need to actively reduce pool size. Resource is only need to be deleted
-   * when pool is inactivated.
+   * <p>Off by default because there is no use case that we need to actively reduce pool size.
+   * Resource is only need to be deleted when pool is inactivated. Only the leader schedules
+   * deletions, so turning this on no longer has instances deleting the same excess resources.
    */
   private boolean deleteExcessResources = false;
 
   /**
-   * How many resource creation flights for a pool to process simultaneously because because we
-   * don't want a pool eats all flights.
+   * How many resource flights may be in progress at once across all pools, counted by CREATING,
+   * DELETING, RECYCLING and UPGRADING resources. DELETING resources whose deletion only waits for
+   * ProjectDeletionReconciler to confirm it have no flight and are not counted. Should not exceed
+   * Stairway's max-parallel-flights, so that admitted flights don't wait in Stairway's queue.
+   */
+  private int maxConcurrentFlights = 500;
+
+  /**
+   * Relative share of flight capacity per pool id, 1 for pools not listed. The share is also
+   * proportional to how many flights the pool needs.
+   */
+  private Map<String, Double> poolWeights = new HashMap<>();
+
+  /** How often to fold pending resource state changes into the per pool resource counts. */
+  private Duration resourceCountCompactionPeriod = Duration.ofMinutes(1);
+
+  /**
+   * How often to check the per pool resource counts against the resource table and repair drift.
+   * This scans the whole resource table, so it should run rarely.
+   */
+  private Duration resourceCountReconciliationPeriod = Duration.ofHours(6);
+
+  /**
+   * How often to confirm requested project deletions by listing the projects under their parents.
+   * Deletion flights finish once the deletion is requested, so this only delays noticing a delete
+   * that did not take.
    */
-  private int resourceCreationPerPoolLimit = 1;
+  private Duration projectDeletionReconciliationPeriod = Duration.ofMinutes(2);
 
   /**
-   * How many resource deletion flights for a pool to process simultaneously because we don't want a
-   * pool eats all flights.
+   * How many threads run the branches of all flights' parallel steps. Branches beyond that wait in
+   * a queue bounded by {@code maxConcurrentFlights}, or run on their flight's thread once it is
+   * full, so this bounds the threads parallel steps add to Stairway's.
    */
-  private int resourceDeletionPerPoolLimit = 1;
+  private int parallelStepThreads = 64;
 
   public boolean isSchedulerEnabled() {
     return schedulerEnabled;
@@ -65,12 +103,12 @@ public class PrimaryConfiguration {
     return flightSubmissionPeriod;
   }
 
-  public int getResourceCreationPerPoolLimit() {
-    return resourceCreationPerPoolLimit;
+  public int getMaxConcurrentFlights() {
+    return maxConcurrentFlights;
   }
 
-  public int getResourceDeletionPerPoolLimit() {
-    return resourceDeletionPerPoolLimit;
+  public Map<String, Double> getPoolWeights() {
+    return poolWeights;
   }
 
   public void setSchedulerEnabled(boolean schedulerEnabled) {
@@ -81,12 +119,12 @@ public class PrimaryConfiguration {
     this.flightSubmissionPeriod = flightSubmissionPeriod;
   }
 
-  public void setResourceCreationPerPoolLimit(int resourceCreationPerPoolLimit) {
-    this.resourceCreationPerPoolLimit = resourceCreationPerPoolLimit;
+  public void setMaxConcurrentFlights(int maxConcurrentFlights) {
+    this.maxConcurrentFlights = maxConcurrentFlights;
   }
 
-  public void setResourceDeletionPerPoolLimit(int resourceDeletionPerPoolLimit) {
-    this.resourceDeletionPerPoolLimit = resourceDeletionPerPoolLimit;
+  public void setPoolWeights(Map<String, Double> poolWeights) {
+    this.poolWeights = poolWeights;
   }
 
   public boolean isDeleteExcessResources() {
@@ -96,4 +134,53 @@ public class PrimaryConfiguration {
   public void setDeleteExcessResources(boolean deleteExcessResources) {
     this.deleteExcessResources = deleteExcessResources;
   }
+
+  public Duration getResourceCountCompactionPeriod() {
+    return resourceCountCompactionPeriod;
+  }
+
+  public void setResourceCountCompactionPeriod(Duration resourceCountCompactionPeriod) {
+    this.resourceCountCompactionPeriod = resourceCountCompactionPeriod;
+  }
+
+  public Duration getResourceCountReconciliationPeriod() {
+    return resourceCountReconciliationPeriod;
+  }
+
+  public void setResourceCountReconciliationPeriod(Duration resourceCountReconciliationPeriod) {
+    this.resourceCountReconciliationPeriod = resourceCountReconciliationPeriod;
+  }
+
+  public Duration getProjectDeletionReconciliationPeriod() {
+    return projectDeletionReconciliationPeriod;
+  }
+
+  public void setProjectDeletionReconciliationPeriod(
+      Duration projectDeletionReconciliationPeriod) {
+    this.projectDeletionReconciliationPeriod = projectDeletionReconciliationPeriod;
+  }
+
+  public Duration getLeaderLeaseDuration() {
+    return leaderLeaseDuration;
+  }
+
+  public void setLeaderLeaseDuration(Duration leaderLeaseDuration) {
+    this.leaderLeaseDuration = leaderLeaseDuration;
+  }
+
+  public Duration getPoolEventDebounce() {
+    return poolEventDebounce;
+  }
+
+  public void setPoolEventDebounce(Duration poolEventDebounce) {
+    this.poolEventDebounce = poolEventDebounce;
+  }
+
+  public int getParallelStepThreads() {
+    return parallelStepThreads;
+  }
+
+  public void setParallelStepThreads(int parallelStepThreads) {
+    this.parallelStepThreads = parallelStepThreads;
+  }
 }
@@ -0,0 +1,121 @@
+package bio.terra.buffer.app.configuration;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for the cloud API quota budget.
+ *
+ * <p>Each bucket holds up to {@code capacity} tokens and refills completely over {@code
+ * refillPeriod}, matching a quota of {@code capacity} requests per {@code refillPeriod}. The
+ * buckets are stored in the database, so all instances share them.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "buffer.quota")
+public class QuotaConfiguration {
+  /** Whether steps wait for quota tokens and the scheduler admits flights by the budget. */
+  private boolean enabled = true;
+
+  /**
+   * How long a step waits for tokens before failing for Stairway to retry it later. Bounds how
+   * long a Stairway thread is held by a step that can't proceed.
+   */
+  private Duration maxWait = Duration.ofMinutes(1);
+
+  /** ServiceUsage batchEnable, 20 per 100 seconds by default. */
+  private Bucket batchEnable = new Bucket(20, Duration.ofSeconds(100));
+
+  /** Cloud Resource Manager project creations. */
+  private Bucket projectCreate = new Bucket(30, Duration.ofMinutes(1));
+
+  /** Compute Engine writes, e.g. subnetwork insertions. */
+  private Bucket computeWrite = new Bucket(1200, Duration.ofMinutes(1));
+
+  /** Cloud DNS writes. */
+  private Bucket dnsWrite = new Bucket(300, Duration.ofMinutes(1));
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Duration getMaxWait() {
+    return maxWait;
+  }
+
+  public void setMaxWait(Duration maxWait) {
+    this.maxWait = maxWait;
+  }
+
+  public Bucket getBatchEnable() {
+    return batchEnable;
+  }
+
+  public void setBatchEnable(Bucket batchEnable) {
+    this.batchEnable = batchEnable;
+  }
+
+  public Bucket getProjectCreate() {
+    return projectCreate;
+  }
+
+  public void setProjectCreate(Bucket projectCreate) {
+    this.projectCreate = projectCreate;
+  }
+
+  public Bucket getComputeWrite() {
+    return computeWrite;
+  }
+
+  public void setComputeWrite(Bucket computeWrite) {
+    this.computeWrite = computeWrite;
+  }
+
+  public Bucket getDnsWrite() {
+    return dnsWrite;
+  }
+
+  public void setDnsWrite(Bucket dnsWrite) {
+    this.dnsWrite = dnsWrite;
+  }
+
+  /** The size and refill rate of one token bucket. */
+  public static class Bucket {
+    private int capacity;
+    private Duration refillPeriod;
+
+    public Bucket() {}
+
+    public Bucket(int capacity, Duration refillPeriod) {
+      this.capacity = capacity;
+      this.refillPeriod = refillPeriod;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+      this.capacity = capacity;
+    }
+
+    public Duration getRefillPeriod() {
+      return refillPeriod;
+    }
+
+    public void setRefillPeriod(Duration refillPeriod) {
+      this.refillPeriod = refillPeriod;
+    }
+
+    /** Tokens added per second. */
+    public double refillPerSecond() {
+      return capacity * 1000.0 / refillPeriod.toMillis();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package bio.terra.buffer.app.configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for the in-memory handout reservoir.
+ *
+ * <p>For each configured pool, every Buffer Service instance leases up to {@code size} READY
+ * resources as RESERVED and hands them out from memory. Leases are renewed every {@code
+ * refillPeriod}. Leases that are not renewed, e.g. because the instance died, go back to READY
+ * after {@code leaseDuration}.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "buffer.reservoir")
+public class ReservoirConfiguration {
+  /** The pools to keep a reservoir for. Empty disables the reservoir. */
+  private List<String> poolIds = new ArrayList<>();
+
+  /** How many resources each instance keeps leased per pool. */
+  private int size = 5;
+
+  /** How long a lease lasts without being renewed. */
+  private Duration leaseDuration = Duration.ofMinutes(5);
+
+  /** How often to renew leases and top up the reservoir. Must be well below leaseDuration. */
+  private Duration refillPeriod = Duration.ofSeconds(10);
+
+  public List<String> getPoolIds() {
+    return poolIds;
+  }
+
+  public void setPoolIds(List<String> poolIds) {
+    this.poolIds = poolIds;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  public Duration getLeaseDuration() {
+    return leaseDuration;
+  }
+
+  public void setLeaseDuration(Duration leaseDuration) {
+    this.leaseDuration = leaseDuration;
+  }
+
+  public Duration getRefillPeriod() {
+    return refillPeriod;
+  }
+
+  public void setRefillPeriod(Duration refillPeriod) {
+    this.refillPeriod = refillPeriod;
+  }
+}
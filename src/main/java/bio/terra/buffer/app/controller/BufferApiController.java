@@ -5,12 +5,19 @@ import static bio.terra.buffer.common.MetricsHelper.recordHandoutResourceRequest
 import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.common.RequestHandoutId;
 import bio.terra.buffer.generated.controller.BufferApi;
+import bio.terra.buffer.generated.model.BatchHandoutRequestBody;
+import bio.terra.buffer.generated.model.BatchHandoutResponse;
 import bio.terra.buffer.generated.model.HandoutRequestBody;
 import bio.terra.buffer.generated.model.PoolInfo;
 import bio.terra.buffer.generated.model.ResourceInfo;
+import bio.terra.buffer.generated.model.ReturnRequestBody;
 import bio.terra.buffer.service.pool.PoolService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -27,19 +34,46 @@ public class BufferApiController implements BufferApi {
   }
 
   @Override
-  public ResponseEntity<ResourceInfo> handoutResource(
+  public CompletableFuture<ResponseEntity<ResourceInfo>> handoutResource(
       String poolId, HandoutRequestBody handoutRequestBody) {
     recordHandoutResourceRequest(PoolId.create(poolId));
-    return new ResponseEntity<>(
-        poolService.handoutResource(
+    Duration waitTimeout =
+        handoutRequestBody.getWaitTimeoutSeconds() == null
+            ? Duration.ZERO
+            : Duration.ofSeconds(handoutRequestBody.getWaitTimeoutSeconds());
+    return poolService
+        .handoutResource(
             PoolId.create(poolId),
-            RequestHandoutId.create(handoutRequestBody.getHandoutRequestId())),
-        HttpStatus.OK);
+            RequestHandoutId.create(handoutRequestBody.getHandoutRequestId()),
+            waitTimeout)
+        .thenApply(resourceInfo -> new ResponseEntity<>(resourceInfo, HttpStatus.OK));
   }
 
   @Override
-  public ResponseEntity<PoolInfo> getPoolInfo(String poolId) {
-    return new ResponseEntity<>(poolService.getPoolInfo(PoolId.create(poolId)), HttpStatus.OK);
+  public CompletableFuture<ResponseEntity<BatchHandoutResponse>> handoutResources(
+      String poolId, BatchHandoutRequestBody batchHandoutRequestBody) {
+    List<RequestHandoutId> requestHandoutIds =
+        batchHandoutRequestBody.getHandoutRequestIds().stream()
+            .map(RequestHandoutId::create)
+            .collect(Collectors.toList());
+    requestHandoutIds.forEach(unused -> recordHandoutResourceRequest(PoolId.create(poolId)));
+    return CompletableFuture.completedFuture(
+        new ResponseEntity<>(
+            poolService.handoutResources(PoolId.create(poolId), requestHandoutIds), HttpStatus.OK));
+  }
+
+  @Override
+  public CompletableFuture<ResponseEntity<PoolInfo>> getPoolInfo(String poolId) {
+    return CompletableFuture.completedFuture(
+        new ResponseEntity<>(poolService.getPoolInfo(PoolId.create(poolId)), HttpStatus.OK));
+  }
+
+  @Override
+  public CompletableFuture<ResponseEntity<Void>> returnResource(
+      String poolId, ReturnRequestBody returnRequestBody) {
+    poolService.returnResource(
+        PoolId.create(poolId), RequestHandoutId.create(returnRequestBody.getHandoutRequestId()));
+    return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.ACCEPTED));
   }
 
   /** Required if using Swagger-CodeGen, but actually we don't need this. */
@@ -8,6 +8,7 @@ import bio.terra.common.stairway.StairwayComponent;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.sql.Connection;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -28,7 +29,7 @@ public class UnauthenticatedApiController implements UnauthenticatedApi {
   }
 
   @Override
-  public ResponseEntity<SystemStatus> serviceStatus() {
+  public CompletableFuture<ResponseEntity<SystemStatus>> serviceStatus() {
     SystemStatus systemStatus = new SystemStatus();
 
     final boolean postgresOk =
@@ -43,9 +44,10 @@ public class UnauthenticatedApiController implements UnauthenticatedApi {
 
     systemStatus.ok(postgresOk && stairwayOk);
     if (systemStatus.isOk()) {
-      return new ResponseEntity<>(systemStatus, HttpStatus.OK);
+      return CompletableFuture.completedFuture(new ResponseEntity<>(systemStatus, HttpStatus.OK));
     } else {
-      return new ResponseEntity<>(systemStatus, HttpStatus.INTERNAL_SERVER_ERROR);
+      return CompletableFuture.completedFuture(
+          new ResponseEntity<>(systemStatus, HttpStatus.INTERNAL_SERVER_ERROR));
     }
   }
 
@@ -0,0 +1,30 @@
+package bio.terra.buffer.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps a task run by a {@link java.util.concurrent.ScheduledExecutorService}, logging what it
+ * throws. An uncaught throwable would silently cancel all later runs of a periodic task.
+ */
+public class LogThrowables implements Runnable {
+  private final Logger logger;
+  private final String ownerName;
+  private final Runnable task;
+
+  /** Wraps {@code task} of {@code owner}, logging with the owner's logger. */
+  public LogThrowables(Class<?> owner, Runnable task) {
+    this.logger = LoggerFactory.getLogger(owner);
+    this.ownerName = owner.getSimpleName();
+    this.task = task;
+  }
+
+  @Override
+  public void run() {
+    try {
+      task.run();
+    } catch (Throwable t) {
+      logger.error("Caught exception in {} ScheduledExecutorService.", ownerName, t);
+    }
+  }
+}
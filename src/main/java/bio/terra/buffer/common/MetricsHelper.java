@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multiset;
 import io.opencensus.stats.*;
 import io.opencensus.tags.*;
+import java.time.Duration;
 
 /** Helper class for recording metrics associated in Resource Buffer Service. */
 public class MetricsHelper {
@@ -23,6 +24,8 @@ public class MetricsHelper {
 
   /** Unit string for count. */
   private static final String COUNT = "1";
+  /** Unit string for milliseconds. */
+  private static final String MILLISECOND = "ms";
   /** Unit string for resource count to pool size ratio. */
   private static final String RESOURCE_TO_POOL_SIZE_RATIO = "num/pool";
 
@@ -40,6 +43,24 @@ public class MetricsHelper {
       Measure.MeasureLong.create(
           PREFIX + "/handout_resource_request_count", "Handout resource request count.", COUNT);
 
+  private static final Measure.MeasureDouble CREATION_LIMIT =
+      Measure.MeasureDouble.create(
+          PREFIX + "/creation_limit",
+          "How many creation flights the pool may have in progress.",
+          COUNT);
+
+  private static final Measure.MeasureLong OPERATION_POLL_COUNT =
+      Measure.MeasureLong.create(
+          PREFIX + "/operation_poll_count",
+          "How many polls a cloud operation took to be seen done.",
+          COUNT);
+
+  private static final Measure.MeasureDouble OPERATION_DETECTION_DELAY =
+      Measure.MeasureDouble.create(
+          PREFIX + "/operation_detection_delay",
+          "Upper bound of the time between a cloud operation finishing and its poll seeing it.",
+          MILLISECOND);
+
   @VisibleForTesting
   public static final View RESOURCE_STATE_COUNT_VIEW =
       View.create(
@@ -67,11 +88,44 @@ public class MetricsHelper {
           Aggregation.Count.create(),
           ImmutableList.of(POOL_ID_KEY));
 
+  @VisibleForTesting
+  public static final View CREATION_LIMIT_VIEW =
+      View.create(
+          View.Name.create(PREFIX + "/creation_limit"),
+          "The creation flight limit of the pool, adjusted from flight outcomes",
+          CREATION_LIMIT,
+          Aggregation.LastValue.create(),
+          ImmutableList.of(POOL_ID_KEY));
+
+  @VisibleForTesting
+  public static final View OPERATION_POLL_COUNT_VIEW =
+      View.create(
+          View.Name.create(PREFIX + "/operation_poll_count"),
+          "Distribution of polls per cloud operation",
+          OPERATION_POLL_COUNT,
+          Aggregation.Distribution.create(
+              BucketBoundaries.create(ImmutableList.of(0.0, 1.0, 2.0, 4.0, 8.0, 16.0, 32.0))),
+          ImmutableList.of());
+
+  @VisibleForTesting
+  public static final View OPERATION_DETECTION_DELAY_VIEW =
+      View.create(
+          View.Name.create(PREFIX + "/operation_detection_delay"),
+          "Distribution of the delay to see cloud operations done, in milliseconds",
+          OPERATION_DETECTION_DELAY,
+          Aggregation.Distribution.create(
+              BucketBoundaries.create(
+                  ImmutableList.of(0.0, 250.0, 500.0, 1000.0, 2000.0, 4000.0, 8000.0))),
+          ImmutableList.of());
+
   private static final ImmutableList<View> VIEWS =
       ImmutableList.of(
           RESOURCE_STATE_COUNT_VIEW,
           READY_RESOURCE_RATIO_VIEW,
-          HANDOUT_RESOURCE_REQUEST_COUNT_VIEW);
+          HANDOUT_RESOURCE_REQUEST_COUNT_VIEW,
+          CREATION_LIMIT_VIEW,
+          OPERATION_POLL_COUNT_VIEW,
+          OPERATION_DETECTION_DELAY_VIEW);
 
   // Register all views
   static {
@@ -122,6 +176,25 @@ public class MetricsHelper {
     STATS_RECORDER.newMeasureMap().put(HANDOUT_RESOURCE_REQUEST_COUNT, 1).record(tctx);
   }
 
+  /** Records the latest creation flight limit of a pool. */
+  public static void recordCreationLimit(PoolId poolId, double limit) {
+    TagContext tctx =
+        TAGGER.emptyBuilder().putLocal(POOL_ID_KEY, TagValue.create(poolId.id())).build();
+    STATS_RECORDER.newMeasureMap().put(CREATION_LIMIT, limit).record(tctx);
+  }
+
+  /**
+   * Records a cloud operation seen done after {@code polls} polls, the last one {@code
+   * lastInterval} after the previous poll.
+   */
+  public static void recordOperationPolled(int polls, Duration lastInterval) {
+    STATS_RECORDER
+        .newMeasureMap()
+        .put(OPERATION_POLL_COUNT, polls)
+        .put(OPERATION_DETECTION_DELAY, lastInterval.toMillis())
+        .record(TAGGER.empty());
+  }
+
   /**
    * Gets the ready resource count to pool size ratio. For deactivated pools, the ratio would be 1.
    */
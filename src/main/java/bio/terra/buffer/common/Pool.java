@@ -1,5 +1,6 @@
 package bio.terra.buffer.common;
 
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.ResourceConfig;
 import com.google.auto.value.AutoValue;
 import java.time.Instant;
@@ -23,6 +24,17 @@ public abstract class Pool {
   @Nullable
   public abstract Instant expiration();
 
+  /** How to pick the pool's target size, or null if the target is always {@link #size()}. */
+  @Nullable
+  public abstract PoolAutoscalingConfig autoscaling();
+
+  /**
+   * The pool whose READY resources are upgraded in place to this pool's config, or null if the
+   * pool replaces none.
+   */
+  @Nullable
+  public abstract PoolId upgradeFrom();
+
   public static Builder builder() {
     return new AutoValue_Pool.Builder();
   }
@@ -45,6 +57,10 @@ public abstract class Pool {
 
     public abstract Builder expiration(Instant expiration);
 
+    public abstract Builder autoscaling(PoolAutoscalingConfig autoscaling);
+
+    public abstract Builder upgradeFrom(PoolId upgradeFrom);
+
     public abstract Pool build();
   }
 }
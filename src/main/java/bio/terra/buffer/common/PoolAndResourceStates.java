@@ -2,6 +2,7 @@ package bio.terra.buffer.common;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
 
 /** Represents a {@link Pool} with number of resources by state. */
 @AutoValue
@@ -25,6 +26,11 @@ public abstract class PoolAndResourceStates {
       return this;
     }
 
+    public Builder setResourceStateCounts(Multiset<ResourceState> counts) {
+      resourceStatesBuilder().addAll(counts);
+      return this;
+    }
+
     public abstract PoolAndResourceStates build();
   }
 }
@@ -0,0 +1,36 @@
+package bio.terra.buffer.common;
+
+import com.google.auto.value.AutoValue;
+import java.time.Instant;
+import javax.annotation.Nullable;
+
+/** A tombstone of a GCP project whose deletion was requested but not confirmed yet. */
+@AutoValue
+public abstract class ProjectDeletion {
+  public abstract String projectId();
+
+  /** The resource name of the project's parent, e.g. folders/123. */
+  public abstract String parent();
+
+  @Nullable
+  public abstract String operationName();
+
+  public abstract Instant requested();
+
+  public static Builder builder() {
+    return new AutoValue_ProjectDeletion.Builder();
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder projectId(String projectId);
+
+    public abstract Builder parent(String parent);
+
+    public abstract Builder operationName(String operationName);
+
+    public abstract Builder requested(Instant requested);
+
+    public abstract ProjectDeletion build();
+  }
+}
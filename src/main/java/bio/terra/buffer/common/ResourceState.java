@@ -11,8 +11,23 @@ public enum ResourceState {
   CREATING,
   /** Resource is ready to handout. */
   READY,
+  /**
+   * Resource is ready and leased by one Buffer Service instance to handout from memory. It goes
+   * back to READY if the lease is released or expires.
+   */
+  RESERVED,
   /** Resource is handed out. */
   HANDED_OUT,
+  /**
+   * Resource was returned by its client and is being scrubbed back to its config. It goes back to
+   * READY once scrubbed, or to HANDED_OUT if it can't be.
+   */
+  RECYCLING,
+  /**
+   * Resource of a deactivated pool is being upgraded in place to the config of the pool replacing
+   * it. It becomes READY in that pool once upgraded, or is deleted if it can't be.
+   */
+  UPGRADING,
   /** Resource is deleting. */
   DELETING,
   /** Resource is deleted. */
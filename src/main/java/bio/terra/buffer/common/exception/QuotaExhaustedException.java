@@ -0,0 +1,10 @@
+package bio.terra.buffer.common.exception;
+
+import bio.terra.common.exception.InternalServerErrorException;
+
+/** Exception thrown when a cloud API quota budget has no tokens left within the wait limit. */
+public class QuotaExhaustedException extends InternalServerErrorException {
+  public QuotaExhaustedException(String message) {
+    super(message);
+  }
+}
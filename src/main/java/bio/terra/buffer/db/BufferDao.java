@@ -3,63 +3,103 @@ package bio.terra.buffer.db;
 import static bio.terra.buffer.app.configuration.BeanNames.BUFFER_JDBC_TEMPLATE;
 import static bio.terra.buffer.app.configuration.BeanNames.OBJECT_MAPPER;
 
+import bio.terra.buffer.app.configuration.PoolConfiguration;
 import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.PoolAndResourceStates;
 import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.ProjectDeletion;
 import bio.terra.buffer.common.RequestHandoutId;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.ResourceType;
 import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.ResourceConfig;
 import bio.terra.buffer.service.resource.flight.CreateNetworkStep;
 import bio.terra.common.exception.InternalServerErrorException;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Maps;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /** Resource Buffer Service Database data access object. */
 @Component
 public class BufferDao {
   private final Logger logger = LoggerFactory.getLogger(CreateNetworkStep.class);
 
+  /** Shared by all jsonb (de)serialization. ObjectMapper is thread safe once configured. */
+  private static final ObjectMapper JSON_MAPPER =
+      new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+  /** The only key of {@link #poolCache}, all pools are loaded and expire together. */
+  private static final String ALL_POOLS = "ALL_POOLS";
+
   private final NamedParameterJdbcTemplate jdbcTemplate;
   private final ObjectMapper objectMapper;
 
+  /**
+   * Pools by id, so that the handout path and the schedulers don't parse {@code resource_config}
+   * on every read. Invalidated when this instance changes a pool, and expires to pick up changes
+   * made by other instances.
+   */
+  private final LoadingCache<String, ImmutableMap<PoolId, Pool>> poolCache;
+
   @Autowired
   public BufferDao(
       @Qualifier(BUFFER_JDBC_TEMPLATE) NamedParameterJdbcTemplate jdbcTemplate,
-      @Qualifier(OBJECT_MAPPER) ObjectMapper objectMapper) {
+      @Qualifier(OBJECT_MAPPER) ObjectMapper objectMapper,
+      PoolConfiguration poolConfiguration) {
     this.jdbcTemplate = jdbcTemplate;
     this.objectMapper = objectMapper;
+    this.poolCache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(poolConfiguration.getPoolCacheExpiration())
+            .build(CacheLoader.from(() -> Maps.uniqueIndex(retrievePools(), Pool::id)));
   }
 
   /**
@@ -70,8 +110,10 @@ public class BufferDao {
   @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
   public void createPools(List<Pool> pools) {
     String sql =
-        "INSERT INTO pool (id, resource_type, resource_config, size, creation, status) values "
-            + "(:id, :resource_type, :resource_config::jsonb, :size, :creation, :status)";
+        "INSERT INTO pool (id, resource_type, resource_config, size, creation, status, autoscaling, "
+            + "upgrade_from) "
+            + "values (:id, :resource_type, :resource_config::jsonb, :size, :creation, :status, "
+            + ":autoscaling::jsonb, :upgrade_from)";
 
     MapSqlParameterSource[] sqlParameterSourceList =
         pools.stream()
@@ -83,10 +125,15 @@ public class BufferDao {
                         .addValue("resource_config", serializeResourceConfig(pool.resourceConfig()))
                         .addValue("size", pool.size())
                         .addValue("creation", pool.creation().atOffset(ZoneOffset.UTC))
-                        .addValue("status", pool.status().toString()))
+                        .addValue("status", pool.status().toString())
+                        .addValue("autoscaling", serializeAutoscaling(pool.autoscaling()))
+                        .addValue(
+                            "upgrade_from",
+                            pool.upgradeFrom() == null ? null : pool.upgradeFrom().id()))
             .toArray(MapSqlParameterSource[]::new);
 
     jdbcTemplate.batchUpdate(sql, sqlParameterSourceList);
+    invalidatePoolCache();
   }
 
   /** Retrieves all pools. */
@@ -94,7 +141,8 @@ public class BufferDao {
   public List<Pool> retrievePools() {
     // TODO: Add filter
     String sql =
-        "select p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status "
+        "select p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status, p.autoscaling "
+            + ", p.upgrade_from "
             + "FROM pool p ";
 
     return jdbcTemplate.query(sql, POOL_ROW_MAPPER);
@@ -104,7 +152,8 @@ public class BufferDao {
   @Transactional(propagation = Propagation.SUPPORTS)
   public Optional<Pool> retrievePool(PoolId poolId) {
     String sql =
-        "select p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status "
+        "select p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status, p.autoscaling "
+            + ", p.upgrade_from "
             + "FROM pool p "
             + "WHERE id = :id";
     MapSqlParameterSource params = new MapSqlParameterSource().addValue("id", poolId.id());
@@ -113,15 +162,50 @@ public class BufferDao {
         DataAccessUtils.singleResult(jdbcTemplate.query(sql, params, POOL_ROW_MAPPER)));
   }
 
+  /**
+   * Retrieves all pools from the pool cache. Pools changed by other instances may be stale for up
+   * to {@link PoolConfiguration#getPoolCacheExpiration()}.
+   */
+  public List<Pool> retrieveCachedPools() {
+    return ImmutableList.copyOf(poolCache.getUnchecked(ALL_POOLS).values());
+  }
+
+  /**
+   * Retrieves a pool with id from the pool cache. Pools changed by other instances may be stale for
+   * up to {@link PoolConfiguration#getPoolCacheExpiration()}.
+   */
+  public Optional<Pool> retrieveCachedPool(PoolId poolId) {
+    return Optional.ofNullable(poolCache.getUnchecked(ALL_POOLS).get(poolId));
+  }
+
+  /** Retrieves resource count for each state of all pools, without reading the pools. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public Map<PoolId, ImmutableMultiset<ResourceState>> retrieveResourceStateCounts() {
+    return jdbcTemplate.query(RESOURCE_STATE_COUNT_SQL, new ResourceStateCountExtractor());
+  }
+
+  /** Retrieves resource count for each state of one pool, without reading the pool. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public ImmutableMultiset<ResourceState> retrieveResourceStateCounts(PoolId poolId) {
+    String sql = "SELECT * FROM (" + RESOURCE_STATE_COUNT_SQL + ") c WHERE pool_id = :pool_id";
+    MapSqlParameterSource params = new MapSqlParameterSource().addValue("pool_id", poolId.id());
+
+    return jdbcTemplate
+        .query(sql, params, new ResourceStateCountExtractor())
+        .getOrDefault(poolId, ImmutableMultiset.of());
+  }
+
   /** Retrieves all pools and resource count for each state. */
   @Transactional(propagation = Propagation.SUPPORTS)
   public List<PoolAndResourceStates> retrievePoolAndResourceStates() {
     String sql =
-        "select count(*) as resource_count, r.state, "
-            + "p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status "
+        "select c.resource_count, c.state, "
+            + "p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status, p.autoscaling "
+            + ", p.upgrade_from "
             + "FROM pool p "
-            + "LEFT JOIN resource r on r.pool_id = p.id "
-            + "GROUP BY p.id, r.state";
+            + "LEFT JOIN ("
+            + RESOURCE_STATE_COUNT_SQL
+            + ") c on c.pool_id = p.id";
 
     return jdbcTemplate.query(sql, new PoolAndResourceStatesExtractor());
   }
@@ -130,12 +214,14 @@ public class BufferDao {
   @Transactional(propagation = Propagation.SUPPORTS)
   public Optional<PoolAndResourceStates> retrievePoolAndResourceStatesById(PoolId poolId) {
     String sql =
-        "select count(*) as resource_count, r.state, "
-            + "p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status "
+        "select c.resource_count, c.state, "
+            + "p.id, p.resource_config, p.resource_type, p.creation, p.size, p.status, p.autoscaling "
+            + ", p.upgrade_from "
             + "FROM pool p "
-            + "LEFT JOIN resource r on r.pool_id = p.id "
-            + "WHERE p.id = :id "
-            + "GROUP BY p.id, r.state";
+            + "LEFT JOIN ("
+            + RESOURCE_STATE_COUNT_SQL
+            + ") c on c.pool_id = p.id "
+            + "WHERE p.id = :id";
     MapSqlParameterSource params = new MapSqlParameterSource().addValue("id", poolId.id());
 
     return Optional.ofNullable(
@@ -143,7 +229,67 @@ public class BufferDao {
             jdbcTemplate.query(sql, params, new PoolAndResourceStatesExtractor())));
   }
 
-  /** Updates list of pools' status to DEACTIVATED. */
+  /**
+   * Folds the pending changes in pool_resource_count_delta into pool_resource_count. Returns the
+   * number of changes folded.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int compactResourceStateCounts() {
+    // Serializes with other compactions and reconciliations. Readers and resource writes don't
+    // take this lock.
+    jdbcTemplate.getJdbcOperations().execute("LOCK TABLE pool_resource_count IN EXCLUSIVE MODE");
+    String sql =
+        "WITH folded AS (DELETE FROM pool_resource_count_delta RETURNING pool_id, state, delta), "
+            + "summed AS (SELECT pool_id, state, sum(delta) AS delta, count(*) AS changes "
+            + "FROM folded GROUP BY pool_id, state), "
+            + "upserted AS ("
+            + "INSERT INTO pool_resource_count (pool_id, state, count) "
+            + "SELECT pool_id, state, delta FROM summed "
+            + "ON CONFLICT (pool_id, state) "
+            + "DO UPDATE SET count = pool_resource_count.count + EXCLUDED.count) "
+            + "SELECT coalesce(sum(changes), 0) FROM summed";
+
+    return jdbcTemplate.queryForObject(sql, new MapSqlParameterSource(), Integer.class);
+  }
+
+  /**
+   * Repairs pool_resource_count so that together with the pending changes it matches the resource
+   * table. This scans the whole resource table, but doesn't block resource writes: the counts are
+   * compared within one snapshot, and the changes committed after it stay pending. Returns the
+   * number of (pool, state) counts that had drifted.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.REPEATABLE_READ)
+  public int reconcileResourceStateCounts() {
+    // Must come first so that the snapshot is taken after any concurrent compaction commits.
+    jdbcTemplate.getJdbcOperations().execute("LOCK TABLE pool_resource_count IN EXCLUSIVE MODE");
+    String sql =
+        "WITH actual AS ("
+            + "SELECT pool_id, state, count(*) AS count FROM resource GROUP BY pool_id, state), "
+            + "pending AS ("
+            + "SELECT pool_id, state, sum(delta) AS delta FROM pool_resource_count_delta "
+            + "GROUP BY pool_id, state), "
+            + "expected AS ("
+            + "SELECT coalesce(a.pool_id, p.pool_id) AS pool_id, coalesce(a.state, p.state) AS state, "
+            + "coalesce(a.count, 0) - coalesce(p.delta, 0) AS count "
+            + "FROM actual a FULL JOIN pending p ON a.pool_id = p.pool_id AND a.state = p.state), "
+            + "drifted AS ("
+            + "SELECT coalesce(e.pool_id, c.pool_id) AS pool_id, coalesce(e.state, c.state) AS state, "
+            + "coalesce(e.count, 0) AS count "
+            + "FROM expected e FULL JOIN pool_resource_count c "
+            + "ON e.pool_id = c.pool_id AND e.state = c.state "
+            + "WHERE coalesce(e.count, 0) <> coalesce(c.count, 0)) "
+            + "INSERT INTO pool_resource_count (pool_id, state, count) "
+            + "SELECT pool_id, state, count FROM drifted "
+            + "ON CONFLICT (pool_id, state) DO UPDATE SET count = EXCLUDED.count";
+
+    return jdbcTemplate.update(sql, new MapSqlParameterSource());
+  }
+
+  /**
+   * Updates list of pools' status to DEACTIVATED. Their RESERVED resources go back to READY, so
+   * that they are cleaned up or upgraded with the rest of the pool instead of waiting for their
+   * leases to expire.
+   */
   @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
   public void deactivatePools(List<PoolId> poolIds) {
     String sql = "UPDATE pool SET status = :status, expiration = :expiration WHERE id = :id ";
@@ -159,6 +305,18 @@ public class BufferDao {
             .toArray(MapSqlParameterSource[]::new);
 
     jdbcTemplate.batchUpdate(sql, sqlParameterSourceList);
+    if (!poolIds.isEmpty()) {
+      String releaseSql =
+          "UPDATE resource SET state = :state, lease_holder = null, lease_expiration = null "
+              + "WHERE state = :previous_state AND pool_id IN (:pool_ids)";
+      MapSqlParameterSource releaseParams =
+          new MapSqlParameterSource()
+              .addValue("state", ResourceState.READY.toString())
+              .addValue("previous_state", ResourceState.RESERVED.toString())
+              .addValue("pool_ids", poolIds.stream().map(PoolId::id).collect(Collectors.toList()));
+      jdbcTemplate.update(releaseSql, releaseParams);
+    }
+    invalidatePoolCache();
   }
 
   /** Updates list of pools' size. */
@@ -176,6 +334,180 @@ public class BufferDao {
             .toArray(MapSqlParameterSource[]::new);
 
     jdbcTemplate.batchUpdate(sql, sqlParameterSourceList);
+    invalidatePoolCache();
+  }
+
+  /**
+   * Updates list of pools' {@link PoolAutoscalingConfig}. A pool mapped to an empty value goes
+   * back to a fixed size.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
+  public void updatePoolsAutoscaling(
+      Map<PoolId, Optional<PoolAutoscalingConfig>> poolsToUpdateAutoscaling) {
+    String sql = "UPDATE pool SET autoscaling = :autoscaling::jsonb WHERE id = :id ";
+
+    MapSqlParameterSource[] sqlParameterSourceList =
+        poolsToUpdateAutoscaling.entrySet().stream()
+            .map(
+                entry ->
+                    new MapSqlParameterSource()
+                        .addValue("id", entry.getKey().id())
+                        .addValue(
+                            "autoscaling", serializeAutoscaling(entry.getValue().orElse(null))))
+            .toArray(MapSqlParameterSource[]::new);
+
+    jdbcTemplate.batchUpdate(sql, sqlParameterSourceList);
+    invalidatePoolCache();
+  }
+
+  /**
+   * Updates the pool each pool upgrades its resources from. A pool mapped to an empty value stops
+   * upgrading resources.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
+  public void updatePoolsUpgradeFrom(Map<PoolId, Optional<PoolId>> poolsToUpdateUpgradeFrom) {
+    String sql = "UPDATE pool SET upgrade_from = :upgrade_from WHERE id = :id ";
+
+    MapSqlParameterSource[] sqlParameterSourceList =
+        poolsToUpdateUpgradeFrom.entrySet().stream()
+            .map(
+                entry ->
+                    new MapSqlParameterSource()
+                        .addValue("id", entry.getKey().id())
+                        .addValue("upgrade_from", entry.getValue().map(PoolId::id).orElse(null)))
+            .toArray(MapSqlParameterSource[]::new);
+
+    jdbcTemplate.batchUpdate(sql, sqlParameterSourceList);
+    invalidatePoolCache();
+  }
+
+  /**
+   * Counts the resources of the pool handed out in each {@code bucketWidth} long bucket from
+   * {@code since} to {@code until}, oldest bucket first. Buckets with no handouts are 0.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public List<Integer> retrieveHandoutCounts(
+      PoolId poolId, Instant since, Instant until, Duration bucketWidth) {
+    String sql =
+        "SELECT floor(extract(epoch FROM handout_time - :since) * 1000 / :bucket_millis)::int "
+            + "AS bucket, count(*) AS handouts "
+            + "FROM resource "
+            + "WHERE pool_id = :pool_id AND handout_time >= :since AND handout_time < :until "
+            + "GROUP BY bucket";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("pool_id", poolId.id())
+            .addValue("since", OffsetDateTime.ofInstant(since, ZoneOffset.UTC))
+            .addValue("until", OffsetDateTime.ofInstant(until, ZoneOffset.UTC))
+            .addValue("bucket_millis", bucketWidth.toMillis());
+
+    int bucketCount =
+        (int) Math.max(1, Duration.between(since, until).toMillis() / bucketWidth.toMillis());
+    Integer[] counts = new Integer[bucketCount];
+    Arrays.fill(counts, 0);
+    jdbcTemplate.query(
+        sql,
+        params,
+        rs -> {
+          // A partial last bucket is counted with the last full one.
+          int bucket = Math.min(rs.getInt("bucket"), bucketCount - 1);
+          counts[bucket] += rs.getInt("handouts");
+        });
+    return Arrays.asList(counts);
+  }
+
+  /**
+   * Retrieves the 90th percentile of how long the pool's resources that became READY since {@code
+   * since} took to create, or empty if none did.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public Optional<Duration> retrieveCreationLatency(PoolId poolId, Instant since) {
+    String sql =
+        "SELECT percentile_cont(0.9) WITHIN GROUP "
+            + "(ORDER BY extract(epoch FROM ready_time - creation) * 1000) AS latency_millis "
+            + "FROM resource "
+            + "WHERE pool_id = :pool_id AND ready_time >= :since";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("pool_id", poolId.id())
+            .addValue("since", OffsetDateTime.ofInstant(since, ZoneOffset.UTC));
+
+    return Optional.ofNullable(jdbcTemplate.queryForObject(sql, params, Double.class))
+        .map(millis -> Duration.ofMillis(millis.longValue()));
+  }
+
+  /**
+   * Sets the creation limit of the pool to {@code limit * factor + increase / limit}, bounded by
+   * {@code min} and {@code max}. A pool with no limit yet starts from {@code initial}. Returns the
+   * new limit, or empty if the pool does not exist.
+   *
+   * <p>The update is a single statement so concurrent adjustments from all instances compose.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public Optional<Double> adjustCreationLimit(
+      PoolId poolId, double factor, double increase, double initial, double min, double max) {
+    String sql =
+        "UPDATE pool SET creation_limit = LEAST(:max, GREATEST(:min, "
+            + "COALESCE(creation_limit, :initial) * :factor "
+            + "+ :increase / COALESCE(creation_limit, :initial))) "
+            + "WHERE id = :id RETURNING creation_limit";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("id", poolId.id())
+            .addValue("factor", factor)
+            .addValue("increase", increase)
+            .addValue("initial", initial)
+            .addValue("min", min)
+            .addValue("max", max);
+
+    return Optional.ofNullable(
+        DataAccessUtils.singleResult(jdbcTemplate.queryForList(sql, params, Double.class)));
+  }
+
+  /**
+   * Multiplies the creation limit of the pool by {@code factor}, bounded by {@code min} and {@code
+   * max}, unless it was already cut within the last {@code window}. A pool with no limit yet starts
+   * from {@code initial}. Returns the new limit, or empty if the limit was not cut.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public Optional<Double> cutCreationLimit(
+      PoolId poolId, double factor, double initial, double min, double max, Duration window) {
+    String sql =
+        "UPDATE pool SET creation_limit = LEAST(:max, GREATEST(:min, "
+            + "COALESCE(creation_limit, :initial) * :factor)), creation_limit_cut = now() "
+            + "WHERE id = :id AND (creation_limit_cut IS NULL "
+            + "OR creation_limit_cut <= now() - :window_millis * interval '1 millisecond') "
+            + "RETURNING creation_limit";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("id", poolId.id())
+            .addValue("factor", factor)
+            .addValue("initial", initial)
+            .addValue("min", min)
+            .addValue("max", max)
+            .addValue("window_millis", window.toMillis());
+
+    return Optional.ofNullable(
+        DataAccessUtils.singleResult(jdbcTemplate.queryForList(sql, params, Double.class)));
+  }
+
+  /** Retrieves the creation limit of every pool that has one. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public Map<PoolId, Double> retrieveCreationLimits() {
+    String sql = "SELECT id, creation_limit FROM pool WHERE creation_limit IS NOT NULL";
+
+    return jdbcTemplate
+        .query(
+            sql,
+            (rs, rowNum) ->
+                Maps.immutableEntry(
+                    PoolId.create(rs.getString("id")), rs.getDouble("creation_limit")))
+        .stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
   }
 
   /** Updates list of pools' size. */
@@ -251,12 +583,14 @@ public class BufferDao {
   @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
   public boolean updateResourceAsReady(ResourceId id, CloudResourceUid resourceUid) {
     String sql =
-        "UPDATE resource SET state = :state, cloud_resource_uid = :cloud_resource_uid::jsonb WHERE id = :id";
+        "UPDATE resource SET state = :state, cloud_resource_uid = :cloud_resource_uid::jsonb, "
+            + "ready_time = :ready_time WHERE id = :id";
 
     MapSqlParameterSource params =
         new MapSqlParameterSource()
             .addValue("state", ResourceState.READY.toString())
             .addValue("cloud_resource_uid", serializeResourceUid(resourceUid))
+            .addValue("ready_time", OffsetDateTime.now(ZoneOffset.UTC))
             .addValue("id", id.id());
     return jdbcTemplate.update(sql, params) == 1;
   }
@@ -319,6 +653,254 @@ public class BufferDao {
     }
   }
 
+  /**
+   * Claims one READY resource and hands it out to client in a single statement. The statement:
+   *
+   * <ul>
+   *   <li>Looks up the resource already using this {@link RequestHandoutId}, if any.
+   *   <li>If there is none, locks one READY resource that no other transaction is holding and
+   *       updates it to HANDED_OUT.
+   *   <li>Returns either the existing or the newly claimed resource.
+   * </ul>
+   *
+   * <p>Unlike {@link #updateOneReadyResourceToHandedOut(PoolId, RequestHandoutId)}, concurrent
+   * callers skip rows locked by each other instead of picking the same random row and failing,
+   * so this runs under READ_COMMITTED and does not need to be retried.
+   *
+   * <p>The unique index on (pool_id, request_handout_id) guarantees at most one resource per
+   * {@link RequestHandoutId}. If a concurrent request with the same {@link RequestHandoutId}
+   * claims a resource first, this throws {@link DuplicateKeyException} and the caller should read
+   * back the winner's resource with {@link #retrieveResource(PoolId, RequestHandoutId)}.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public Optional<Resource> claimOneReadyResource(
+      PoolId poolId, RequestHandoutId requestHandoutId) {
+    String sql =
+        "WITH existing AS ("
+            + "SELECT id, pool_id, creation, handout_time, state, request_handout_id, cloud_resource_uid, deletion "
+            + "FROM resource "
+            + "WHERE pool_id = :pool_id AND request_handout_id = :request_handout_id), "
+            + "claimed AS ("
+            + "UPDATE resource "
+            + "SET state = :state, request_handout_id = :request_handout_id, handout_time = :handout_time "
+            + "WHERE id = "
+            + "(SELECT id FROM resource WHERE pool_id = :pool_id AND state = :previous_state "
+            + "AND NOT EXISTS (SELECT 1 FROM existing) "
+            + "LIMIT 1 FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, pool_id, creation, handout_time, state, request_handout_id, cloud_resource_uid, deletion) "
+            + "SELECT * FROM existing UNION ALL SELECT * FROM claimed";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.HANDED_OUT.toString())
+            .addValue("previous_state", ResourceState.READY.toString())
+            .addValue("request_handout_id", requestHandoutId.id())
+            .addValue("handout_time", OffsetDateTime.now(ZoneOffset.UTC))
+            .addValue("pool_id", poolId.id());
+
+    Optional<Resource> resource =
+        Optional.ofNullable(
+            DataAccessUtils.singleResult(jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER)));
+    if (resource.isEmpty()) {
+      logger.warn("No resource is ready to use at this moment for pool: {}.", poolId);
+    } else if (!resource.get().state().equals(ResourceState.HANDED_OUT)) {
+      // Should never happens but we want to double check to make sure we don't handout 'bad'
+      // resource.
+      throw new InternalServerErrorException(
+          String.format(
+              "Unexpected handed out resource state found in pool: id: %s, requestHandoutId: %s",
+              poolId, requestHandoutId));
+    }
+    return resource;
+  }
+
+  /**
+   * Claims one READY resource for each of the given {@link RequestHandoutId}s in a single
+   * statement. This is the batch version of {@link #claimOneReadyResource(PoolId,
+   * RequestHandoutId)} with the same idempotency: ids already used in the pool get their existing
+   * resource back, and the remaining ids are matched with READY resources in the given order until
+   * the pool runs out. Ids with no resource available are absent from the returned list.
+   *
+   * <p>The given ids must be distinct. If a concurrent request claims one of the ids first, this
+   * throws {@link DuplicateKeyException} and the caller may run it again to pick up the winner's
+   * resource.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public List<Resource> claimReadyResources(
+      PoolId poolId, List<RequestHandoutId> requestHandoutIds) {
+    String sql =
+        "WITH requested AS ("
+            + "SELECT request_handout_id, idx "
+            + "FROM unnest(ARRAY[:request_handout_ids]::text[]) WITH ORDINALITY AS t(request_handout_id, idx)), "
+            + "existing AS ("
+            + "SELECT r.id, r.pool_id, r.creation, r.handout_time, r.state, r.request_handout_id, r.cloud_resource_uid, r.deletion "
+            + "FROM resource r JOIN requested q ON r.request_handout_id = q.request_handout_id "
+            + "WHERE r.pool_id = :pool_id), "
+            + "pending AS ("
+            + "SELECT q.request_handout_id, row_number() OVER (ORDER BY q.idx) AS n "
+            + "FROM requested q "
+            + "WHERE NOT EXISTS (SELECT 1 FROM existing e WHERE e.request_handout_id = q.request_handout_id)), "
+            + "candidates AS ("
+            + "SELECT c.id, row_number() OVER () AS n FROM "
+            + "(SELECT id FROM resource WHERE pool_id = :pool_id AND state = :previous_state "
+            + "LIMIT (SELECT count(*) FROM pending) FOR UPDATE SKIP LOCKED) c), "
+            + "claimed AS ("
+            + "UPDATE resource r "
+            + "SET state = :state, request_handout_id = p.request_handout_id, handout_time = :handout_time "
+            + "FROM candidates c JOIN pending p ON c.n = p.n "
+            + "WHERE r.id = c.id "
+            + "RETURNING r.id, r.pool_id, r.creation, r.handout_time, r.state, r.request_handout_id, r.cloud_resource_uid, r.deletion) "
+            + "SELECT * FROM existing UNION ALL SELECT * FROM claimed";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.HANDED_OUT.toString())
+            .addValue("previous_state", ResourceState.READY.toString())
+            .addValue(
+                "request_handout_ids",
+                requestHandoutIds.stream().map(RequestHandoutId::id).collect(Collectors.toList()))
+            .addValue("handout_time", OffsetDateTime.now(ZoneOffset.UTC))
+            .addValue("pool_id", poolId.id());
+
+    List<Resource> resources = jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER);
+    for (Resource resource : resources) {
+      if (!resource.state().equals(ResourceState.HANDED_OUT)) {
+        throw new InternalServerErrorException(
+            String.format(
+                "Unexpected handed out resource state found in pool: id: %s, requestHandoutId: %s",
+                poolId, resource.requestHandoutId()));
+      }
+    }
+    if (resources.size() < requestHandoutIds.size()) {
+      logger.warn(
+          "Only {} of {} requested resources are ready to use at this moment for pool: {}.",
+          resources.size(),
+          requestHandoutIds.size(),
+          poolId);
+    }
+    return resources;
+  }
+
+  /**
+   * Leases up to {@code limit} READY resources in the pool to {@code leaseHolder} until {@code
+   * leaseExpiration}, updating them to RESERVED. Returns the leased resources.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public List<Resource> leaseReadyResources(
+      PoolId poolId, String leaseHolder, int limit, Instant leaseExpiration) {
+    String sql =
+        "UPDATE resource "
+            + "SET state = :state, lease_holder = :lease_holder, lease_expiration = :lease_expiration "
+            + "WHERE id IN "
+            + "(SELECT id FROM resource WHERE pool_id = :pool_id AND state = :previous_state "
+            + "LIMIT :limit FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, pool_id, creation, handout_time, state, request_handout_id, cloud_resource_uid, deletion";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.RESERVED.toString())
+            .addValue("previous_state", ResourceState.READY.toString())
+            .addValue("lease_holder", leaseHolder)
+            .addValue("lease_expiration", OffsetDateTime.ofInstant(leaseExpiration, ZoneOffset.UTC))
+            .addValue("pool_id", poolId.id())
+            .addValue("limit", limit);
+
+    return jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER);
+  }
+
+  /**
+   * Extends the leases {@code leaseHolder} holds on the given resources to {@code
+   * leaseExpiration}. Returns the ids of the resources still leased to {@code leaseHolder}.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public List<ResourceId> renewLeases(
+      String leaseHolder, List<ResourceId> resourceIds, Instant leaseExpiration) {
+    if (resourceIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    String sql =
+        "UPDATE resource SET lease_expiration = :lease_expiration "
+            + "WHERE id IN (:ids) AND state = :state AND lease_holder = :lease_holder "
+            + "RETURNING id";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.RESERVED.toString())
+            .addValue("lease_holder", leaseHolder)
+            .addValue(
+                "ids", resourceIds.stream().map(ResourceId::id).collect(Collectors.toList()))
+            .addValue(
+                "lease_expiration", OffsetDateTime.ofInstant(leaseExpiration, ZoneOffset.UTC));
+
+    return jdbcTemplate.query(
+        sql, params, (rs, rowNum) -> ResourceId.create(rs.getObject("id", UUID.class)));
+  }
+
+  /**
+   * Hands out a resource leased to {@code leaseHolder} with one write. Returns empty if the
+   * resource is no longer leased to {@code leaseHolder}.
+   *
+   * <p>Throws {@link DuplicateKeyException} if the {@link RequestHandoutId} is already used in the
+   * pool, in which case the lease is kept.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public Optional<Resource> updateLeasedResourceToHandedOut(
+      ResourceId id, String leaseHolder, RequestHandoutId requestHandoutId) {
+    String sql =
+        "UPDATE resource "
+            + "SET state = :state, request_handout_id = :request_handout_id, handout_time = :handout_time, "
+            + "lease_holder = null, lease_expiration = null "
+            + "WHERE id = :id AND state = :previous_state AND lease_holder = :lease_holder "
+            + "RETURNING id, pool_id, creation, handout_time, state, request_handout_id, cloud_resource_uid, deletion";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.HANDED_OUT.toString())
+            .addValue("previous_state", ResourceState.RESERVED.toString())
+            .addValue("request_handout_id", requestHandoutId.id())
+            .addValue("handout_time", OffsetDateTime.now(ZoneOffset.UTC))
+            .addValue("lease_holder", leaseHolder)
+            .addValue("id", id.id());
+
+    return Optional.ofNullable(
+        DataAccessUtils.singleResult(jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER)));
+  }
+
+  /** Returns all resources leased to {@code leaseHolder} to READY. Returns the number released. */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int releaseLeases(String leaseHolder) {
+    String sql =
+        "UPDATE resource SET state = :state, lease_holder = null, lease_expiration = null "
+            + "WHERE state = :previous_state AND lease_holder = :lease_holder";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.READY.toString())
+            .addValue("previous_state", ResourceState.RESERVED.toString())
+            .addValue("lease_holder", leaseHolder);
+
+    return jdbcTemplate.update(sql, params);
+  }
+
+  /**
+   * Returns resources whose lease expired before {@code now} to READY, e.g. leases of an instance
+   * that died. Returns the number released.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int releaseExpiredLeases(Instant now) {
+    String sql =
+        "UPDATE resource SET state = :state, lease_holder = null, lease_expiration = null "
+            + "WHERE state = :previous_state AND lease_expiration < :now";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.READY.toString())
+            .addValue("previous_state", ResourceState.RESERVED.toString())
+            .addValue("now", OffsetDateTime.ofInstant(now, ZoneOffset.UTC));
+
+    return jdbcTemplate.update(sql, params);
+  }
+
   /**
    * Updates resource in READY state to DELETING. Returns true if previous state is READY and we
    * successfully update its state.
@@ -339,6 +921,144 @@ public class BufferDao {
     }
   }
 
+  /**
+   * Updates a HANDED_OUT resource to RECYCLING. Returns false if the resource is not HANDED_OUT, or
+   * was already published to Janitor for cleanup, in which case it must not be handed out again.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateHandedOutResourceToRecycling(ResourceId id) {
+    // Takes the row lock insertCleanupRecord takes first, so that the update below, a new statement
+    // with a new snapshot, sees a cleanup record committed while waiting for the lock.
+    jdbcTemplate.queryForList(
+        "SELECT id FROM resource WHERE id = :id FOR UPDATE",
+        new MapSqlParameterSource().addValue("id", id.id()),
+        UUID.class);
+    String sql =
+        "UPDATE resource SET state = :state "
+            + "WHERE id = :id AND state = :previous_state "
+            + "AND NOT EXISTS (SELECT 1 FROM cleanup_record WHERE resource_id = :id)";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.RECYCLING.toString())
+            .addValue("previous_state", ResourceState.HANDED_OUT.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Updates a RECYCLING resource back to READY, freeing its {@link RequestHandoutId} so that it can
+   * be handed out for another one. The handout time is kept for the handout history.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateRecyclingResourceToReady(ResourceId id) {
+    String sql =
+        "UPDATE resource SET state = :state, request_handout_id = NULL "
+            + "WHERE id = :id AND state = :previous_state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.READY.toString())
+            .addValue("previous_state", ResourceState.RECYCLING.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Updates a RECYCLING resource back to HANDED_OUT when it can't be scrubbed, so that it is
+   * cleaned up like any handed out resource.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateRecyclingResourceToHandedOut(ResourceId id) {
+    String sql = "UPDATE resource SET state = :state WHERE id = :id AND state = :previous_state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.HANDED_OUT.toString())
+            .addValue("previous_state", ResourceState.RECYCLING.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /** Updates a READY resource to UPGRADING. Returns false if the resource is not READY. */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateReadyResourceToUpgrading(ResourceId id) {
+    String sql = "UPDATE resource SET state = :state WHERE id = :id AND state = :previous_state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.UPGRADING.toString())
+            .addValue("previous_state", ResourceState.READY.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Updates an UPGRADING resource to READY and moves it to the pool {@code poolId} it was upgraded
+   * for.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateUpgradingResourceToReady(ResourceId id, PoolId poolId) {
+    String sql =
+        "UPDATE resource SET state = :state, pool_id = :pool_id "
+            + "WHERE id = :id AND state = :previous_state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.READY.toString())
+            .addValue("pool_id", poolId.id())
+            .addValue("previous_state", ResourceState.UPGRADING.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Updates an UPGRADING resource to DELETING, after its upgrade failed. Returns false if the
+   * resource is not UPGRADING.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateUpgradingResourceToDeleting(ResourceId id) {
+    String sql = "UPDATE resource SET state = :state WHERE id = :id AND state = :previous_state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.DELETING.toString())
+            .addValue("previous_state", ResourceState.UPGRADING.toString())
+            .addValue("id", id.id());
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Updates the DELETING resources of the GCP projects {@code projectIds} to DELETED, once their
+   * deletion is confirmed. Returns how many were updated.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int updateDeletingResourcesAsDeleted(Collection<String> projectIds, Instant deletedTime) {
+    if (projectIds.isEmpty()) {
+      return 0;
+    }
+    String sql =
+        "UPDATE resource SET state = :state, deletion = :deletion "
+            + "WHERE state = :previous_state "
+            + "AND cloud_resource_uid->'googleProjectUid'->>'projectId' IN (:project_ids)";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("state", ResourceState.DELETED.toString())
+            .addValue("deletion", OffsetDateTime.ofInstant(deletedTime, ZoneOffset.UTC))
+            .addValue("previous_state", ResourceState.DELETING.toString())
+            .addValue("project_ids", projectIds);
+    return jdbcTemplate.update(sql, params);
+  }
+
+  /**
+   * Returns how many DELETING resources have a project_deletion tombstone, i.e. have no flight
+   * anymore and only wait for ProjectDeletionReconciler to confirm their deletion.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int countDeletingResourcesAwaitingConfirmation() {
+    String sql =
+        "SELECT count(*) FROM resource r JOIN project_deletion d "
+            + "ON r.cloud_resource_uid->'googleProjectUid'->>'projectId' = d.project_id "
+            + "WHERE r.state = :state";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource().addValue("state", ResourceState.DELETING.toString());
+    return jdbcTemplate.queryForObject(sql, params, Integer.class);
+  }
+
   /** Updates resource state and deletion timestamp after resource is deleted. */
   @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
   public boolean updateResourceAsDeleted(ResourceId id, Instant deletedTime) {
@@ -362,19 +1082,258 @@ public class BufferDao {
   }
 
   /**
-   * Inserts a record into cleanup_record table. A record will be inserted into clean_up table after
-   * Resource Buffer Service publish this resource message to Janitor. This is only expected to be
-   * used in testing environment to make sure resources can be cleaned up after use.
+   * Acquires or renews the leader lease {@code name} for {@code holder} until {@code leaseDuration}
+   * from now, if nobody else holds an unexpired lease. Returns the lease's fencing token, which is
+   * incremented every time the lease changes holder, or empty if another holder has the lease.
+   *
+   * <p>Expiration uses the database clock, so that instances don't need synchronized clocks.
    */
-  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE)
-  public void insertCleanupRecord(ResourceId resourceId) {
-    String sql = "INSERT INTO cleanup_record (resource_id) values (:resource_id)";
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public Optional<Long> tryAcquireLeaderLease(String name, String holder, Duration leaseDuration) {
+    String sql =
+        "INSERT INTO leader_lease (name, holder, fencing_token, expiration) "
+            + "VALUES (:name, :holder, 1, now() + :lease_millis * interval '1 millisecond') "
+            + "ON CONFLICT (name) DO UPDATE "
+            + "SET holder = EXCLUDED.holder, expiration = EXCLUDED.expiration, "
+            + "fencing_token = CASE WHEN leader_lease.holder = EXCLUDED.holder "
+            + "THEN leader_lease.fencing_token ELSE leader_lease.fencing_token + 1 END "
+            + "WHERE leader_lease.holder = EXCLUDED.holder OR leader_lease.expiration < now() "
+            + "RETURNING fencing_token";
+
     MapSqlParameterSource params =
-        new MapSqlParameterSource().addValue("resource_id", resourceId.id());
+        new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("holder", holder)
+            .addValue("lease_millis", leaseDuration.toMillis());
 
+    return Optional.ofNullable(
+        DataAccessUtils.singleResult(
+            jdbcTemplate.query(sql, params, (rs, rowNum) -> rs.getLong("fencing_token"))));
+  }
+
+  /**
+   * Returns true if {@code holder} still has an unexpired leader lease {@code name} with {@code
+   * fencingToken}, i.e. nobody took the lease over since it was acquired.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public boolean isLeaderLeaseHeld(String name, String holder, long fencingToken) {
+    String sql =
+        "SELECT count(*) FROM leader_lease "
+            + "WHERE name = :name AND holder = :holder AND fencing_token = :fencing_token "
+            + "AND expiration > now()";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("holder", holder)
+            .addValue("fencing_token", fencingToken);
+
+    return jdbcTemplate.queryForObject(sql, params, Integer.class) == 1;
+  }
+
+  /**
+   * Like {@link #isLeaderLeaseHeld}, but also locks the lease until the current transaction ends,
+   * so that no other holder can take it over while the transaction makes writes only the leader
+   * may make.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public boolean lockLeaderLease(String name, String holder, long fencingToken) {
+    String sql =
+        "SELECT fencing_token FROM leader_lease "
+            + "WHERE name = :name AND holder = :holder AND fencing_token = :fencing_token "
+            + "AND expiration > now() FOR SHARE";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("holder", holder)
+            .addValue("fencing_token", fencingToken);
+
+    return !jdbcTemplate.queryForList(sql, params, Long.class).isEmpty();
+  }
+
+  /**
+   * Expires the leader lease {@code name} if held by {@code holder}, so that another instance can
+   * take over without waiting. The row is kept so that fencing tokens keep increasing.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean releaseLeaderLease(String name, String holder) {
+    String sql =
+        "UPDATE leader_lease SET expiration = now() WHERE name = :name AND holder = :holder";
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource().addValue("name", name).addValue("holder", holder);
+
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /**
+   * Takes {@code permits} tokens from the quota bucket {@code name}, which holds up to {@code
+   * capacity} tokens and refills at {@code refillPerSecond}. A bucket seen for the first time
+   * starts full. Returns 0 if the tokens were taken, otherwise how many tokens are missing, in
+   * which case nothing is taken.
+   *
+   * <p>Refill uses the database clock. The bucket row is locked until the transaction ends, so
+   * concurrent callers on all instances take turns.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public double acquireQuotaTokens(
+      String name, int permits, int capacity, double refillPerSecond) {
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("capacity", capacity)
+            .addValue("refill_per_second", refillPerSecond);
+    jdbcTemplate.update(
+        "INSERT INTO quota_bucket (name, tokens, updated) VALUES (:name, :capacity, now()) "
+            + "ON CONFLICT (name) DO NOTHING",
+        params);
+    double tokens =
+        jdbcTemplate.queryForObject(
+            "SELECT " + REFILLED_TOKENS_SQL + " FROM quota_bucket WHERE name = :name FOR UPDATE",
+            params,
+            Double.class);
+    if (tokens < permits) {
+      return permits - tokens;
+    }
+    jdbcTemplate.update(
+        "UPDATE quota_bucket SET tokens = :tokens, updated = now() WHERE name = :name",
+        params.addValue("tokens", tokens - permits));
+    return 0;
+  }
+
+  /**
+   * Retrieves how many tokens the quota bucket {@code name} has now, without taking any. See
+   * {@link #acquireQuotaTokens(String, int, int, double)}.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public double retrieveQuotaTokens(String name, int capacity, double refillPerSecond) {
+    String sql = "SELECT " + REFILLED_TOKENS_SQL + " FROM quota_bucket WHERE name = :name";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("capacity", capacity)
+            .addValue("refill_per_second", refillPerSecond);
+
+    return Optional.ofNullable(
+            DataAccessUtils.singleResult(jdbcTemplate.queryForList(sql, params, Double.class)))
+        .orElse((double) capacity);
+  }
+
+  /**
+   * Records {@code projectId} as issued. Returns false if it was already issued, by this or any
+   * other instance.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean insertProjectId(String projectId) {
+    String sql =
+        "INSERT INTO project_id (id, created) VALUES (:id, now()) ON CONFLICT (id) DO NOTHING";
+    MapSqlParameterSource params = new MapSqlParameterSource().addValue("id", projectId);
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /** Passes every issued project id to {@code consumer}, without holding all of them at once. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public void forEachProjectId(Consumer<String> consumer) {
+    String sql = "SELECT id FROM project_id";
+    jdbcTemplate.query(
+        sql,
+        EmptySqlParameterSource.INSTANCE,
+        (RowCallbackHandler) rs -> consumer.accept(rs.getString("id")));
+  }
+
+  /**
+   * Records that the deletion of project {@code projectId} was requested by operation {@code
+   * operationName}, replacing any earlier tombstone of the project.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public void upsertProjectDeletion(String projectId, String parent, String operationName) {
+    String sql =
+        "INSERT INTO project_deletion (project_id, parent, operation_name, requested) "
+            + "VALUES (:project_id, :parent, :operation_name, now()) "
+            + "ON CONFLICT (project_id) DO UPDATE SET parent = excluded.parent, "
+            + "operation_name = excluded.operation_name, requested = excluded.requested";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("project_id", projectId)
+            .addValue("parent", parent)
+            .addValue("operation_name", operationName);
     jdbcTemplate.update(sql, params);
   }
 
+  /** Retrieves up to {@code limit} project deletion tombstones, oldest requests first. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public List<ProjectDeletion> retrieveProjectDeletions(int limit) {
+    String sql =
+        "SELECT project_id, parent, operation_name, requested FROM project_deletion "
+            + "ORDER BY requested LIMIT :limit";
+    MapSqlParameterSource params = new MapSqlParameterSource().addValue("limit", limit);
+    return jdbcTemplate.query(sql, params, PROJECT_DELETION_ROW_MAPPER);
+  }
+
+  /** Removes the tombstones of confirmed project deletions. Returns how many were removed. */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public int deleteProjectDeletions(Collection<String> projectIds) {
+    if (projectIds.isEmpty()) {
+      return 0;
+    }
+    String sql = "DELETE FROM project_deletion WHERE project_id IN (:project_ids)";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource().addValue("project_ids", projectIds);
+    return jdbcTemplate.update(sql, params);
+  }
+
+  /**
+   * Inserts an unpublished record into cleanup_record table. A record is inserted before Resource
+   * Buffer Service publishes this resource message to Janitor, and marked published after by {@link
+   * #updateCleanupRecordAsPublished}. This is only expected to be used in testing environment to
+   * make sure resources can be cleaned up after use.
+   *
+   * <p>Returns false without inserting if the resource is no longer HANDED_OUT, e.g. its client
+   * returned it for recycling. The resource row stays locked until the transaction ends, so that a
+   * concurrent return, which takes the same lock, sees the record and keeps the resource.
+   */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean insertCleanupRecord(ResourceId resourceId) {
+    String sql =
+        "WITH handed_out AS ("
+            + "SELECT id FROM resource WHERE id = :resource_id AND state = :state FOR UPDATE) "
+            + "INSERT INTO cleanup_record (resource_id, published) "
+            + "SELECT id, false FROM handed_out";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource()
+            .addValue("resource_id", resourceId.id())
+            .addValue("state", ResourceState.HANDED_OUT.toString());
+
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /** Marks the cleanup record of the resource as published to Janitor. */
+  @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+  public boolean updateCleanupRecordAsPublished(ResourceId resourceId) {
+    String sql = "UPDATE cleanup_record SET published = true WHERE resource_id = :resource_id";
+    MapSqlParameterSource params =
+        new MapSqlParameterSource().addValue("resource_id", resourceId.id());
+
+    return jdbcTemplate.update(sql, params) == 1;
+  }
+
+  /** Retrieves up to {@code limit} resources whose cleanup record is not published yet. */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public List<Resource> retrieveUnpublishedCleanupResources(int limit) {
+    String sql =
+        "select r.id, r.cloud_resource_uid, r.pool_id, r.state, r.request_handout_id, "
+            + "r.creation, r.deletion, r.handout_time "
+            + "FROM cleanup_record c "
+            + "JOIN resource r ON r.id = c.resource_id "
+            + "WHERE NOT c.published "
+            + "LIMIT :limit";
+
+    MapSqlParameterSource params = new MapSqlParameterSource().addValue("limit", limit);
+
+    return jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER);
+  }
+
   /**
    * Retrieves resources that need to cleanup by Janitor. Those resources should be:
    *
@@ -402,6 +1361,23 @@ public class BufferDao {
     return jdbcTemplate.query(sql, params, RESOURCE_ROW_MAPPER);
   }
 
+  /**
+   * Resource count for each state by pool. Resource state changes are appended to
+   * pool_resource_count_delta by a trigger on the resource table, and periodically folded into
+   * pool_resource_count, so this reads O(pools) rows instead of grouping the whole resource table.
+   */
+  private static final String RESOURCE_STATE_COUNT_SQL =
+      "SELECT pool_id, state, sum(count) AS resource_count FROM ("
+          + "SELECT pool_id, state, count FROM pool_resource_count "
+          + "UNION ALL SELECT pool_id, state, delta FROM pool_resource_count_delta) counts "
+          + "GROUP BY pool_id, state "
+          + "HAVING sum(count) > 0";
+
+  /** The tokens of a quota_bucket row refilled up to now, capped at the bucket capacity. */
+  private static final String REFILLED_TOKENS_SQL =
+      "least(:capacity, tokens + "
+          + "greatest(0, extract(epoch FROM now() - updated)) * :refill_per_second)";
+
   private static final RowMapper<Pool> POOL_ROW_MAPPER =
       (rs, rowNum) ->
           Pool.builder()
@@ -411,6 +1387,14 @@ public class BufferDao {
               .status(PoolStatus.valueOf(rs.getString("status")))
               .size(rs.getInt("size"))
               .creation(rs.getObject("creation", OffsetDateTime.class).toInstant())
+              .autoscaling(
+                  rs.getString("autoscaling") == null
+                      ? null
+                      : deserializeAutoscaling(rs.getString("autoscaling")))
+              .upgradeFrom(
+                  rs.getString("upgrade_from") == null
+                      ? null
+                      : PoolId.create(rs.getString("upgrade_from")))
               .build();
 
   private static final RowMapper<Resource> RESOURCE_ROW_MAPPER =
@@ -438,6 +1422,15 @@ public class BufferDao {
                       : rs.getObject("deletion", OffsetDateTime.class).toInstant())
               .build();
 
+  private static final RowMapper<ProjectDeletion> PROJECT_DELETION_ROW_MAPPER =
+      (rs, rowNum) ->
+          ProjectDeletion.builder()
+              .projectId(rs.getString("project_id"))
+              .parent(rs.getString("parent"))
+              .operationName(rs.getString("operation_name"))
+              .requested(rs.getObject("requested", OffsetDateTime.class).toInstant())
+              .build();
+
   /**
    * A {@link ResultSetExtractor} for extracting the results of a join of the one pool to many
    * {@link ResourceState} relationship.
@@ -470,12 +1463,47 @@ public class BufferDao {
     }
   }
 
+  /**
+   * A {@link ResultSetExtractor} for extracting resource count for each {@link ResourceState} by
+   * pool.
+   */
+  private static class ResourceStateCountExtractor
+      implements ResultSetExtractor<Map<PoolId, ImmutableMultiset<ResourceState>>> {
+    @Override
+    public Map<PoolId, ImmutableMultiset<ResourceState>> extractData(ResultSet rs)
+        throws SQLException, DataAccessException {
+      Map<PoolId, ImmutableMultiset.Builder<ResourceState>> builders = new HashMap<>();
+      while (rs.next()) {
+        builders
+            .computeIfAbsent(
+                PoolId.create(rs.getString("pool_id")), unused -> ImmutableMultiset.builder())
+            .setCount(ResourceState.valueOf(rs.getString("state")), rs.getInt("resource_count"));
+      }
+      return ImmutableMap.copyOf(Maps.transformValues(builders, ImmutableMultiset.Builder::build));
+    }
+  }
+
+  /**
+   * Invalidates the pool cache now, and again once the current transaction commits so that readers
+   * on other threads don't reload the pools before the change is visible to them.
+   */
+  private void invalidatePoolCache() {
+    poolCache.invalidateAll();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              poolCache.invalidateAll();
+            }
+          });
+    }
+  }
+
   /** Serializes {@link ResourceConfig} into json format string. */
   private static String serializeResourceConfig(ResourceConfig resourceConfig) {
     try {
-      return new ObjectMapper()
-          .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-          .writeValueAsString(resourceConfig);
+      return JSON_MAPPER.writeValueAsString(resourceConfig);
     } catch (JsonProcessingException e) {
       throw new RuntimeException(
           String.format("Failed to serialize ResourceConfig: %s", resourceConfig), e);
@@ -485,19 +1513,40 @@ public class BufferDao {
   /** Deserializes {@link ResourceConfig} into json format string. */
   private static ResourceConfig deserializeResourceConfig(String resourceConfig) {
     try {
-      return new ObjectMapper().readValue(resourceConfig, ResourceConfig.class);
+      return JSON_MAPPER.readValue(resourceConfig, ResourceConfig.class);
     } catch (JsonProcessingException e) {
       throw new RuntimeException(
           String.format("Failed to deserialize ResourceConfig: %s", resourceConfig), e);
     }
   }
 
+  /** Serializes {@link PoolAutoscalingConfig} into json format string, null stays null. */
+  private static String serializeAutoscaling(@Nullable PoolAutoscalingConfig autoscaling) {
+    if (autoscaling == null) {
+      return null;
+    }
+    try {
+      return JSON_MAPPER.writeValueAsString(autoscaling);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException(
+          String.format("Failed to serialize PoolAutoscalingConfig: %s", autoscaling), e);
+    }
+  }
+
+  /** Deserializes {@link PoolAutoscalingConfig} from json format string. */
+  private static PoolAutoscalingConfig deserializeAutoscaling(String autoscaling) {
+    try {
+      return JSON_MAPPER.readValue(autoscaling, PoolAutoscalingConfig.class);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException(
+          String.format("Failed to deserialize PoolAutoscalingConfig: %s", autoscaling), e);
+    }
+  }
+
   /** Serializes {@link CloudResourceUid} into json format string. */
   private static String serializeResourceUid(CloudResourceUid resourceUid) {
     try {
-      return new ObjectMapper()
-          .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-          .writeValueAsString(resourceUid);
+      return JSON_MAPPER.writeValueAsString(resourceUid);
     } catch (JsonProcessingException e) {
       throw new RuntimeException(
           String.format("Failed to serialize ResourceConfig: %s", resourceUid), e);
@@ -507,7 +1556,7 @@ public class BufferDao {
   /** Deserializes {@link CloudResourceUid} into json format string. */
   private static CloudResourceUid deserializeResourceUid(String cloudResourceUid) {
     try {
-      return new ObjectMapper().readValue(cloudResourceUid, CloudResourceUid.class);
+      return JSON_MAPPER.readValue(cloudResourceUid, CloudResourceUid.class);
     } catch (JsonProcessingException e) {
       throw new RuntimeException(
           String.format("Failed to deserialize ResourceConfig: %s", cloudResourceUid), e);
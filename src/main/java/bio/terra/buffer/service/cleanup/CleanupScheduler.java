@@ -4,9 +4,11 @@ import static bio.terra.buffer.app.configuration.CrlConfiguration.CLIENT_NAME;
 import static bio.terra.buffer.app.configuration.CrlConfiguration.TEST_RESOURCE_TIME_TO_LIVE;
 
 import bio.terra.buffer.app.configuration.CrlConfiguration;
+import bio.terra.buffer.common.LogThrowables;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.db.BufferDao;
 import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.service.leader.LeaderElection;
 import bio.terra.janitor.model.CreateResourceRequestBody;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -33,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** Scheduler service to publish message to Janitor to cleanup resource. */
 @Component
@@ -48,15 +51,24 @@ public class CleanupScheduler {
   private final BufferDao bufferDao;
   private final CrlConfiguration crlConfiguration;
   private final Clock clock;
+  private final LeaderElection leaderElection;
+  private final TransactionTemplate transactionTemplate;
 
   private ObjectMapper objectMapper;
   private Publisher publisher;
 
   @Autowired
-  public CleanupScheduler(BufferDao bufferDao, CrlConfiguration crlConfiguration, Clock clock) {
+  public CleanupScheduler(
+      BufferDao bufferDao,
+      CrlConfiguration crlConfiguration,
+      Clock clock,
+      LeaderElection leaderElection,
+      TransactionTemplate transactionTemplate) {
     this.bufferDao = bufferDao;
     this.crlConfiguration = crlConfiguration;
     this.clock = clock;
+    this.leaderElection = leaderElection;
+    this.transactionTemplate = transactionTemplate;
   }
 
   /** Provides an {@link Publisher}. */
@@ -98,20 +110,56 @@ public class CleanupScheduler {
     // The scheduled task will not execute concurrently with itself even if it takes a long time.
     // See javadoc on ScheduledExecutorService#scheduleAtFixedRate.
     executor.scheduleAtFixedRate(
-        new LogThrowables(this::scheduleCleanup),
+        new LogThrowables(CleanupScheduler.class, this::scheduleCleanup),
         /* initialDelay= */ 0,
         /* period= */ 10,
         TimeUnit.MINUTES);
   }
 
+  /**
+   * Records the handed out resources to cleanup, then publishes the unpublished records. Each
+   * record commits before its message is published, so a failed publish or a crash in between
+   * leaves an unpublished record that the next run retries. A message may be published more than
+   * once if marking it published fails.
+   */
   public void scheduleCleanup() {
+    if (!leaderElection.isLeader()) {
+      logger.info("Not the leader, skip scheduling cleanup.");
+      return;
+    }
     List<Resource> resources = bufferDao.retrieveResourceToCleanup(MESSAGE_TO_PUBLISH_PER_RUN);
     for (Resource resource : resources) {
+      if (!transactionTemplate.execute(status -> recordAsLeader(resource))) {
+        logger.info("No longer the leader, stop scheduling cleanup.");
+        return;
+      }
+    }
+    for (Resource resource :
+        bufferDao.retrieveUnpublishedCleanupResources(MESSAGE_TO_PUBLISH_PER_RUN)) {
+      if (!leaderElection.isLeader()) {
+        logger.info("No longer the leader, stop publishing cleanup.");
+        return;
+      }
       publish(resource.cloudResourceUid());
-      bufferDao.insertCleanupRecord(resource.id());
+      bufferDao.updateCleanupRecordAsPublished(resource.id());
     }
   }
 
+  /**
+   * Records {@code resource} for cleanup if this instance is still the leader, holding the
+   * leadership until the record commits. Skips the resource if it was returned for recycling since
+   * it was read.
+   */
+  private boolean recordAsLeader(Resource resource) {
+    if (!leaderElection.lockLeadership()) {
+      return false;
+    }
+    if (!bufferDao.insertCleanupRecord(resource.id())) {
+      logger.info("Resource {} is no longer handed out, skip cleanup.", resource.id());
+    }
+    return true;
+  }
+
   private void publish(CloudResourceUid cloudResourceUid) {
     ByteString data;
     try {
@@ -149,30 +197,4 @@ public class CleanupScheduler {
     // Don't schedule  anything new during shutdown.
     executor.shutdown();
   }
-
-  /**
-   * Wraps a runnable to log any thrown errors to allow the runnable to still be run with a {@link
-   * ScheduledExecutorService}.
-   *
-   * <p>ScheduledExecutorService scheduled tasks that throw errors stop executing.
-   */
-  private class LogThrowables implements Runnable {
-    private final Runnable task;
-
-    private LogThrowables(Runnable task) {
-      this.task = task;
-    }
-
-    @Override
-    public void run() {
-      try {
-        task.run();
-      } catch (Throwable t) {
-        logger.error(
-            "Caught exception in CleanupSchedule ScheduledExecutorService. StackTrace:\n"
-                + t.getStackTrace(),
-            t);
-      }
-    }
-  }
 }
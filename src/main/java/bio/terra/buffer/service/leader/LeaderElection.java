@@ -0,0 +1,141 @@
+package bio.terra.buffer.service.leader;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.db.BufferDao;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Elects one Buffer Service instance as the leader to run the schedulers, using a lease in the
+ * database.
+ *
+ * <p>Every instance tries to acquire or renew the lease a few times per lease duration. If the
+ * leader dies, its lease expires and another instance takes over within {@link
+ * PrimaryConfiguration#getLeaderLeaseDuration()} plus one heartbeat. Each new leader gets a
+ * higher fencing token.
+ *
+ * <p>{@link #isLeader()} only checks the token when it is called, so a leader that is paused right
+ * after the check may still act after another instance took over. Writes that only the leader may
+ * make call {@link #lockLeadership()} in their own transaction instead, which keeps the lease from
+ * changing hands until the transaction ends.
+ */
+@Component
+public class LeaderElection {
+  private final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+  private static final String LEASE_NAME = "scheduler";
+
+  /** Only need as many threads as we have scheduled tasks. */
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  /** Identifies this instance as the lease holder. */
+  private final String holder = UUID.randomUUID().toString();
+
+  private final PrimaryConfiguration primaryConfiguration;
+  private final BufferDao bufferDao;
+
+  /** The current term if this instance is the leader, otherwise null. */
+  private volatile Term term;
+
+  @Autowired
+  public LeaderElection(PrimaryConfiguration primaryConfiguration, BufferDao bufferDao) {
+    this.primaryConfiguration = primaryConfiguration;
+    this.bufferDao = bufferDao;
+  }
+
+  /** Tries to become the leader right away, then kicks off the heartbeat. */
+  public void initialize() {
+    Duration leaseDuration = primaryConfiguration.getLeaderLeaseDuration();
+    Duration heartbeatPeriod = leaseDuration.dividedBy(3);
+    Duration failoverTime = leaseDuration.plus(heartbeatPeriod);
+    if (failoverTime.compareTo(primaryConfiguration.getFlightSubmissionPeriod()) > 0) {
+      logger.warn(
+          "Leader failover may take {}, longer than one flight submission period {}.",
+          failoverTime,
+          primaryConfiguration.getFlightSubmissionPeriod());
+    }
+    heartbeat();
+    executor.scheduleAtFixedRate(
+        new LogThrowables(LeaderElection.class, this::heartbeat),
+        /* initialDelay= */ heartbeatPeriod.toMillis(),
+        /* period= */ heartbeatPeriod.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns true if this instance is the leader. Checks the fencing token in the database, so this
+   * makes one query when the local lease has not expired.
+   */
+  public boolean isLeader() {
+    Term currentTerm = term;
+    if (currentTerm == null || System.nanoTime() - currentTerm.localDeadlineNanos >= 0) {
+      return false;
+    }
+    return bufferDao.isLeaderLeaseHeld(LEASE_NAME, holder, currentTerm.fencingToken);
+  }
+
+  /**
+   * Returns true if this instance is the leader, and keeps it the leader until the caller's
+   * transaction ends. Must be called in a transaction.
+   */
+  public boolean lockLeadership() {
+    Term currentTerm = term;
+    if (currentTerm == null || System.nanoTime() - currentTerm.localDeadlineNanos >= 0) {
+      return false;
+    }
+    return bufferDao.lockLeaderLease(LEASE_NAME, holder, currentTerm.fencingToken);
+  }
+
+  /** Stops the heartbeat and releases the lease, so that another instance takes over quickly. */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    if (term != null) {
+      term = null;
+      bufferDao.releaseLeaderLease(LEASE_NAME, holder);
+      logger.info("Released leadership.");
+    }
+  }
+
+  private void heartbeat() {
+    // Measure the local deadline from before the request, so that it's never later than the
+    // deadline in the database.
+    long startNanos = System.nanoTime();
+    Duration leaseDuration = primaryConfiguration.getLeaderLeaseDuration();
+    Optional<Long> fencingToken =
+        bufferDao.tryAcquireLeaderLease(LEASE_NAME, holder, leaseDuration);
+    Term previousTerm = term;
+    if (fencingToken.isPresent()) {
+      if (previousTerm == null || previousTerm.fencingToken != fencingToken.get()) {
+        logger.info("Became the leader with fencing token {}.", fencingToken.get());
+      }
+      term = new Term(fencingToken.get(), startNanos + leaseDuration.toNanos());
+    } else {
+      if (previousTerm != null) {
+        logger.info("Lost leadership with fencing token {}.", previousTerm.fencingToken);
+      }
+      term = null;
+    }
+  }
+
+  /** A period during which this instance is the leader. */
+  private static class Term {
+    private final long fencingToken;
+    private final long localDeadlineNanos;
+
+    private Term(long fencingToken, long localDeadlineNanos) {
+      this.fencingToken = fencingToken;
+      this.localDeadlineNanos = localDeadlineNanos;
+    }
+  }
+}
@@ -3,6 +3,15 @@ package bio.terra.buffer.service.pool;
 import bio.terra.buffer.common.exception.InvalidPoolConfigException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.generated.model.Subnet;
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Ints;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Validates GCP resource config. Because Resource Buffer Service creates customized network for all
@@ -10,9 +19,16 @@ import bio.terra.buffer.generated.model.ResourceConfig;
  *
  * <ul>
  *   <li>Billing account is present.
+ *   <li>Subnets, if set, are not empty, are in distinct regions and have valid, non-overlapping
+ *       IPv4 ranges.
  * </ul>
  */
 public class GcpResourceConfigValidator implements ResourceConfigValidator {
+  /** The widest and narrowest primary ranges GCP allows for a subnetwork. */
+  private static final int MIN_PREFIX_LENGTH = 8;
+
+  private static final int MAX_PREFIX_LENGTH = 29;
+
   @Override
   public void validate(ResourceConfig config) {
     GcpProjectConfig gcpProjectConfig = config.getGcpProjectConfig();
@@ -21,5 +37,68 @@ public class GcpResourceConfigValidator implements ResourceConfigValidator {
       throw new InvalidPoolConfigException(
           String.format("Missing billing account for config: %s", config.getConfigName()));
     }
+    if (gcpProjectConfig.getNetwork() != null
+        && gcpProjectConfig.getNetwork().getSubnets() != null) {
+      validateSubnets(config.getConfigName(), gcpProjectConfig.getNetwork().getSubnets());
+    }
+  }
+
+  private static void validateSubnets(String configName, List<Subnet> subnets) {
+    if (subnets.isEmpty()) {
+      // Leave subnets out to get the default ones, a network without subnets is of no use.
+      throw new InvalidPoolConfigException(
+          String.format("Empty subnets for config: %s", configName));
+    }
+    Set<String> regions = new HashSet<>();
+    List<long[]> ranges = new ArrayList<>();
+    for (Subnet subnet : subnets) {
+      if (subnet.getRegion() == null || subnet.getRegion().isEmpty()) {
+        throw new InvalidPoolConfigException(
+            String.format("Missing subnet region for config: %s", configName));
+      }
+      if (!regions.add(subnet.getRegion())) {
+        throw new InvalidPoolConfigException(
+            String.format(
+                "Duplicate subnet region %s for config: %s", subnet.getRegion(), configName));
+      }
+      long[] range = parseCidrRange(configName, subnet.getIpCidrRange());
+      for (long[] other : ranges) {
+        if (range[0] <= other[1] && other[0] <= range[1]) {
+          throw new InvalidPoolConfigException(
+              String.format(
+                  "Overlapping subnet IP range %s for config: %s",
+                  subnet.getIpCidrRange(), configName));
+        }
+      }
+      ranges.add(range);
+    }
+  }
+
+  /** Parses an IPv4 CIDR range into its first and last address. */
+  private static long[] parseCidrRange(String configName, String cidrRange) {
+    String[] parts = cidrRange == null ? new String[0] : cidrRange.split("/", -1);
+    if (parts.length != 2 || !InetAddresses.isInetAddress(parts[0])) {
+      throw invalidRange(configName, cidrRange);
+    }
+    InetAddress address = InetAddresses.forString(parts[0]);
+    Integer prefixLength = Ints.tryParse(parts[1]);
+    if (!(address instanceof Inet4Address)
+        || prefixLength == null
+        || prefixLength < MIN_PREFIX_LENGTH
+        || prefixLength > MAX_PREFIX_LENGTH) {
+      throw invalidRange(configName, cidrRange);
+    }
+    long first = Integer.toUnsignedLong(InetAddresses.coerceToInteger(address));
+    long size = 1L << (32 - prefixLength);
+    if (first % size != 0) {
+      // GCP rejects ranges with host bits set.
+      throw invalidRange(configName, cidrRange);
+    }
+    return new long[] {first, first + size - 1};
+  }
+
+  private static InvalidPoolConfigException invalidRange(String configName, String cidrRange) {
+    return new InvalidPoolConfigException(
+        String.format("Invalid subnet IP range %s for config: %s", cidrRange, configName));
   }
 }
@@ -0,0 +1,184 @@
+package bio.terra.buffer.service.pool;
+
+import bio.terra.buffer.app.configuration.ReservoirConfiguration;
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.RequestHandoutId;
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.db.BufferDao;
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a few READY resources of the configured pools leased to this instance as RESERVED, so
+ * that handouts can be served from memory with a single database write.
+ *
+ * <p>A background task renews the leases and tops up the reservoir. Leases go back to READY when
+ * the instance shuts down, or after they expire if the instance dies without shutting down.
+ */
+@Component
+public class HandoutReservoir {
+  private final Logger logger = LoggerFactory.getLogger(HandoutReservoir.class);
+
+  /** How long shutdown waits for a running refill. */
+  private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+  /** Only need as many threads as we have scheduled tasks. */
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  /** Identifies this instance as the holder of its leases. */
+  private final String leaseHolder = UUID.randomUUID().toString();
+
+  private final ReservoirConfiguration reservoirConfiguration;
+  private final BufferDao bufferDao;
+  private final Clock clock;
+
+  /** The RESERVED resources leased to this instance, per pool. */
+  private final Map<PoolId, Deque<Resource>> reservedResources = new ConcurrentHashMap<>();
+
+  @Autowired
+  public HandoutReservoir(
+      ReservoirConfiguration reservoirConfiguration, BufferDao bufferDao, Clock clock) {
+    this.reservoirConfiguration = reservoirConfiguration;
+    this.bufferDao = bufferDao;
+    this.clock = clock;
+    reservoirConfiguration
+        .getPoolIds()
+        .forEach(id -> reservedResources.put(PoolId.create(id), new ConcurrentLinkedDeque<>()));
+  }
+
+  /**
+   * Initialize the HandoutReservoir, kicking off its tasks. The task also runs when no pool is
+   * configured, so that leases left behind by other instances still expire.
+   */
+  public void initialize() {
+    if (reservoirConfiguration.getPoolIds().isEmpty()) {
+      logger.info("Handout reservoir disabled.");
+    } else {
+      logger.info(
+          "Handout reservoir enabled for pools {} with lease holder {}.",
+          reservoirConfiguration.getPoolIds(),
+          leaseHolder);
+    }
+    executor.scheduleAtFixedRate(
+        new LogThrowables(HandoutReservoir.class, this::refill),
+        /* initialDelay= */ 0,
+        /* period= */ reservoirConfiguration.getRefillPeriod().toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Hands out a RESERVED resource of the pool to the {@link RequestHandoutId}. Returns empty if the
+   * pool has no reservoir or it is drained, or if the {@link RequestHandoutId} was already used in
+   * the pool. The caller should fall back to the database in that case.
+   */
+  public Optional<Resource> handout(PoolId poolId, RequestHandoutId requestHandoutId) {
+    Deque<Resource> resources = reservedResources.get(poolId);
+    if (resources == null) {
+      return Optional.empty();
+    }
+    Resource resource;
+    while ((resource = resources.pollFirst()) != null) {
+      try {
+        Optional<Resource> handedOut =
+            bufferDao.updateLeasedResourceToHandedOut(
+                resource.id(), leaseHolder, requestHandoutId);
+        if (handedOut.isPresent()) {
+          return handedOut;
+        }
+        logger.info("Lease on resource {} was lost, trying the next one.", resource.id());
+      } catch (DuplicateKeyException e) {
+        // The requestHandoutId already has a resource. Keep the lease and let the caller replay.
+        resources.offerFirst(resource);
+        return Optional.empty();
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Stops refilling and returns all leased resources to READY. Waits for a running refill first, so
+   * that it doesn't lease resources after they are released.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        logger.warn("Refill still running after {}, its leases expire instead.", SHUTDOWN_TIMEOUT);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    reservedResources.clear();
+    if (!reservoirConfiguration.getPoolIds().isEmpty()) {
+      logger.info("Released {} leased resources.", bufferDao.releaseLeases(leaseHolder));
+    }
+  }
+
+  @VisibleForTesting
+  int reservedCount(PoolId poolId) {
+    return reservedResources.getOrDefault(poolId, new ConcurrentLinkedDeque<>()).size();
+  }
+
+  /**
+   * Renews the leases on resources still in the reservoir, releases expired leases of any
+   * instance, then tops up the reservoir of each active pool.
+   */
+  @VisibleForTesting
+  void refill() {
+    Instant leaseExpiration = clock.instant().plus(reservoirConfiguration.getLeaseDuration());
+    List<ResourceId> reservedIds =
+        reservedResources.values().stream()
+            .flatMap(Deque::stream)
+            .map(Resource::id)
+            .collect(Collectors.toList());
+    Set<ResourceId> stillLeased =
+        new HashSet<>(bufferDao.renewLeases(leaseHolder, reservedIds, leaseExpiration));
+    int released = bufferDao.releaseExpiredLeases(clock.instant());
+    if (released > 0) {
+      logger.info("Released {} resources with expired leases.", released);
+    }
+
+    for (Map.Entry<PoolId, Deque<Resource>> entry : reservedResources.entrySet()) {
+      Deque<Resource> resources = entry.getValue();
+      resources.removeIf(resource -> !stillLeased.contains(resource.id()));
+      Optional<Pool> pool = bufferDao.retrieveCachedPool(entry.getKey());
+      if (pool.isEmpty() || !pool.get().status().equals(PoolStatus.ACTIVE)) {
+        // Deactivating the pool released the leases, so that the resources are cleaned up with
+        // the rest of the pool.
+        resources.clear();
+        continue;
+      }
+      int missing = reservoirConfiguration.getSize() - resources.size();
+      if (missing > 0) {
+        resources.addAll(
+            bufferDao.leaseReadyResources(entry.getKey(), leaseHolder, missing, leaseExpiration));
+      }
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package bio.terra.buffer.service.pool;
+
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.RequestHandoutId;
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.db.BufferDao;
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds handout requests waiting for a pool to have a READY resource, and completes them in FIFO
+ * order per pool as resources become READY.
+ *
+ * <p>Waiters do not hold a database connection or a request thread while parked. The queue is
+ * served when a creation flight on this instance marks a resource READY, when notified of resources
+ * made READY by other instances, and periodically in case a notification was missed.
+ *
+ * <p>Claims and timeouts both run on the queue's single thread, and only that thread completes a
+ * waiter's future. So a waiter either gets the resource claimed for it or times out, and a claimed
+ * resource is never left HANDED_OUT to a request that stopped waiting.
+ */
+@Component
+public class HandoutWaitQueue {
+  private final Logger logger = LoggerFactory.getLogger(HandoutWaitQueue.class);
+
+  /** How often to serve all waiting pools regardless of notifications. */
+  @VisibleForTesting static final Duration SWEEP_PERIOD = Duration.ofSeconds(5);
+
+  /** A single thread, so that each pool's waiters are served in order. */
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  private final BufferDao bufferDao;
+
+  /** Waiters per pool, oldest first. Guarded by {@code this}. */
+  private final Map<PoolId, Deque<Waiter>> waiters = new HashMap<>();
+
+  @Autowired
+  public HandoutWaitQueue(BufferDao bufferDao) {
+    this.bufferDao = bufferDao;
+  }
+
+  /** Kicks off the periodic sweep. */
+  public void initialize() {
+    executor.scheduleAtFixedRate(
+        new LogThrowables(HandoutWaitQueue.class, this::serveAllPools),
+        /* initialDelay= */ SWEEP_PERIOD.toMillis(),
+        /* period= */ SWEEP_PERIOD.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a waiter at the end of the pool's queue. The returned future completes with the handed out
+   * resource once one is claimed for this waiter, or with empty once {@code timeout} passes.
+   * Cancelling the returned future doesn't stop the wait.
+   */
+  public CompletableFuture<Optional<Resource>> await(
+      PoolId poolId, RequestHandoutId requestHandoutId, Duration timeout) {
+    Waiter waiter = new Waiter(requestHandoutId);
+    synchronized (this) {
+      waiters.computeIfAbsent(poolId, unused -> new ArrayDeque<>()).addLast(waiter);
+    }
+    executor.schedule(
+        new LogThrowables(HandoutWaitQueue.class, () -> expire(poolId, waiter)),
+        timeout.toMillis(),
+        TimeUnit.MILLISECONDS);
+    // A resource may have become READY after the caller's last claim attempt.
+    notifyResourceReady(poolId);
+    return waiter.future.copy();
+  }
+
+  /** Notifies that a resource in the pool became READY, serving its waiters asynchronously. */
+  public void notifyResourceReady(PoolId poolId) {
+    executor.execute(new LogThrowables(HandoutWaitQueue.class, () -> servePool(poolId)));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @VisibleForTesting
+  synchronized int waiterCount(PoolId poolId) {
+    return waiters.getOrDefault(poolId, new ArrayDeque<>()).size();
+  }
+
+  private void serveAllPools() {
+    List<PoolId> poolIds;
+    synchronized (this) {
+      poolIds = new ArrayList<>(waiters.keySet());
+    }
+    poolIds.forEach(this::servePool);
+  }
+
+  /** Claims READY resources for the pool's waiters, oldest first, until the pool runs out. */
+  private void servePool(PoolId poolId) {
+    Optional<Waiter> waiter;
+    while ((waiter = nextWaiter(poolId)).isPresent()) {
+      Optional<Resource> resource;
+      try {
+        resource = claim(poolId, waiter.get().requestHandoutId);
+      } catch (RuntimeException e) {
+        removeWaiter(poolId, waiter.get());
+        waiter.get().future.completeExceptionally(e);
+        continue;
+      }
+      if (resource.isEmpty()) {
+        return;
+      }
+      removeWaiter(poolId, waiter.get());
+      waiter.get().future.complete(resource);
+    }
+  }
+
+  /** Completes {@code waiter} with empty if it is still waiting. */
+  private void expire(PoolId poolId, Waiter waiter) {
+    removeWaiter(poolId, waiter);
+    if (waiter.future.complete(Optional.empty())) {
+      logger.info("No resource became READY for requestHandoutId {}", waiter.requestHandoutId);
+    }
+  }
+
+  private Optional<Resource> claim(PoolId poolId, RequestHandoutId requestHandoutId) {
+    try {
+      return bufferDao.claimOneReadyResource(poolId, requestHandoutId);
+    } catch (DuplicateKeyException e) {
+      return bufferDao.retrieveResource(poolId, requestHandoutId);
+    }
+  }
+
+  /** Returns the oldest waiter still waiting, dropping the ones that timed out. */
+  private synchronized Optional<Waiter> nextWaiter(PoolId poolId) {
+    Deque<Waiter> poolWaiters = waiters.get(poolId);
+    while (poolWaiters != null && !poolWaiters.isEmpty()) {
+      if (!poolWaiters.peekFirst().future.isDone()) {
+        return Optional.of(poolWaiters.peekFirst());
+      }
+      poolWaiters.removeFirst();
+    }
+    waiters.remove(poolId);
+    return Optional.empty();
+  }
+
+  private synchronized void removeWaiter(PoolId poolId, Waiter waiter) {
+    Deque<Waiter> poolWaiters = waiters.get(poolId);
+    if (poolWaiters != null) {
+      poolWaiters.remove(waiter);
+    }
+  }
+
+  /** A handout request waiting for a READY resource. */
+  private static class Waiter {
+    private final RequestHandoutId requestHandoutId;
+    /** Only completed on the queue's thread. */
+    private final CompletableFuture<Optional<Resource>> future = new CompletableFuture<>();
+
+    private Waiter(RequestHandoutId requestHandoutId) {
+      this.requestHandoutId = requestHandoutId;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package bio.terra.buffer.service.pool;
 
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.PoolConfig;
 import bio.terra.buffer.generated.model.PoolConfigs;
 import bio.terra.buffer.generated.model.ResourceConfig;
@@ -22,6 +23,7 @@ import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
  * <ul>
  *   <li>Duplicate pool ids in pool config.
  *   <li>Pools' corresponding resource config file.
+ *   <li>Autoscaling bounds that are negative, out of order or don't include the pool size.
  *   <li>Any file or json parsing error.
  * </ul>
  */
@@ -102,6 +104,7 @@ public class PoolConfigLoader {
             String.format(
                 "ResourceConfig not found for name: %s", poolConfig.getResourceConfigName()));
       }
+      validateAutoscaling(poolConfig);
       result.add(
           PoolWithResourceConfig.create(
               poolConfig, resourceConfigNameMap.get(poolConfig.getResourceConfigName())));
@@ -109,6 +112,27 @@ public class PoolConfigLoader {
     return result;
   }
 
+  /** Validates {@link PoolAutoscalingConfig} of the pool, if any. */
+  private static void validateAutoscaling(PoolConfig poolConfig) {
+    PoolAutoscalingConfig autoscaling = poolConfig.getAutoscaling();
+    if (autoscaling == null) {
+      return;
+    }
+    if (autoscaling.getMinSize() < 0
+        || autoscaling.getMinSize() > poolConfig.getSize()
+        || poolConfig.getSize() > autoscaling.getMaxSize()) {
+      throw new BadPoolConfigException(
+          String.format(
+              "Autoscaling bounds must satisfy 0 <= minSize <= size <= maxSize for pool: %s",
+              poolConfig.getPoolId()));
+    }
+    if (autoscaling.getSafetyMargin() != null && autoscaling.getSafetyMargin() <= 0) {
+      throw new BadPoolConfigException(
+          String.format(
+              "Autoscaling safetyMargin must be positive for pool: %s", poolConfig.getPoolId()));
+    }
+  }
+
   /** Validates {@link ResourceConfig}. */
   private static void validateResourceConfig(List<ResourceConfig> resourceConfigs) {
     for (ResourceConfig config : resourceConfigs) {
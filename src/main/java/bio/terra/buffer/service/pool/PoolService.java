@@ -1,11 +1,11 @@
 package bio.terra.buffer.service.pool;
 
 import static bio.terra.buffer.service.pool.PoolConfigLoader.loadPoolConfig;
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isRecyclable;
 import static bio.terra.common.db.DatabaseRetryUtils.executeAndRetry;
 
 import bio.terra.buffer.app.configuration.PoolConfiguration;
 import bio.terra.buffer.common.Pool;
-import bio.terra.buffer.common.PoolAndResourceStates;
 import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.common.PoolStatus;
 import bio.terra.buffer.common.RequestHandoutId;
@@ -14,9 +14,13 @@ import bio.terra.buffer.common.ResourceConfigVisitor;
 import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.exception.NotFoundException;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.BatchHandoutResponse;
+import bio.terra.buffer.generated.model.HandoutResult;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.PoolConfig;
 import bio.terra.buffer.generated.model.PoolInfo;
 import bio.terra.buffer.generated.model.ResourceInfo;
+import bio.terra.buffer.service.resource.FlightManager;
 import bio.terra.common.exception.BadRequestException;
 import bio.terra.common.exception.InternalServerErrorException;
 import com.google.common.annotations.VisibleForTesting;
@@ -27,15 +31,19 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -45,18 +53,30 @@ import org.springframework.transaction.support.TransactionTemplate;
 public class PoolService {
   private final Logger logger = LoggerFactory.getLogger(PoolService.class);
 
+  /** The maximum number of resources that can be handed out in one batch request. */
+  @VisibleForTesting static final int MAX_BATCH_HANDOUT_SIZE = 1000;
+
   private final PoolConfiguration poolConfiguration;
   private final BufferDao bufferDao;
   private final TransactionTemplate transactionTemplate;
+  private final HandoutWaitQueue handoutWaitQueue;
+  private final HandoutReservoir handoutReservoir;
+  private final FlightManager flightManager;
 
   @Autowired
   public PoolService(
       PoolConfiguration poolConfiguration,
       BufferDao bufferDao,
-      TransactionTemplate transactionTemplate) {
+      TransactionTemplate transactionTemplate,
+      HandoutWaitQueue handoutWaitQueue,
+      HandoutReservoir handoutReservoir,
+      FlightManager flightManager) {
     this.poolConfiguration = poolConfiguration;
     this.bufferDao = bufferDao;
     this.transactionTemplate = transactionTemplate;
+    this.handoutWaitQueue = handoutWaitQueue;
+    this.handoutReservoir = handoutReservoir;
+    this.flightManager = flightManager;
   }
 
   /** Initialize Pool from config and figure out pools to create/deactivate/update */
@@ -69,44 +89,144 @@ public class PoolService {
     }
   }
 
+  /**
+   * Handout resource to client by given {@link PoolId} and {@link RequestHandoutId}. If no
+   * resource is READY, the returned future waits up to {@code waitTimeout} (capped by {@link
+   * PoolConfiguration#getMaxHandoutWaitTime()}) for one to become READY, without blocking the
+   * calling thread. Waiting requests are served in the order they arrive.
+   */
+  public CompletableFuture<ResourceInfo> handoutResource(
+      PoolId poolId, RequestHandoutId requestHandoutId, Duration waitTimeout) {
+    if (waitTimeout.isZero() || waitTimeout.isNegative()) {
+      return CompletableFuture.completedFuture(handoutResource(poolId, requestHandoutId));
+    }
+    return claimResourceOrWait(poolId, requestHandoutId, waitTimeout)
+        .thenApply(resource -> createResourceInfo(resource, requestHandoutId));
+  }
+
   /** Handout resource to client by given {@link PoolId} and {@link RequestHandoutId}. */
   public ResourceInfo handoutResource(PoolId poolId, RequestHandoutId requestHandoutId) {
+    if (poolConfiguration.isLockFreeHandoutEnabled()) {
+      return createResourceInfo(claimResource(poolId, requestHandoutId), requestHandoutId);
+    }
     return createResourceInfo(
         transactionTemplate.execute(
             status -> handoutResourceTransactionally(poolId, requestHandoutId, status)),
         requestHandoutId);
   }
 
+  /**
+   * Handout up to one resource for each given {@link RequestHandoutId} in one database round trip.
+   * Each {@link RequestHandoutId} has the same idempotency as {@link #handoutResource(PoolId,
+   * RequestHandoutId)}. Results are in request order, and ids with no resource available have no
+   * {@link ResourceInfo}.
+   */
+  public BatchHandoutResponse handoutResources(
+      PoolId poolId, List<RequestHandoutId> requestHandoutIds) {
+    List<RequestHandoutId> distinctIds = new ArrayList<>(new LinkedHashSet<>(requestHandoutIds));
+    if (distinctIds.size() > MAX_BATCH_HANDOUT_SIZE) {
+      throw new BadRequestException(
+          String.format(
+              "At most %d handoutRequestIds are allowed in one request, got %d.",
+              MAX_BATCH_HANDOUT_SIZE, distinctIds.size()));
+    }
+    Optional<Pool> pool = bufferDao.retrieveCachedPool(poolId);
+    if (!pool.isPresent() || !pool.get().status().equals(PoolStatus.ACTIVE)) {
+      throw new BadRequestException(String.format("Invalid pool id: %s.", poolId));
+    }
+    List<Resource> resources =
+        poolConfiguration.isLockFreeHandoutEnabled()
+            ? claimResources(poolId, distinctIds)
+            : handoutResourcesTransactionally(poolId, distinctIds);
+    Map<RequestHandoutId, Resource> resourcesById =
+        Maps.uniqueIndex(resources, Resource::requestHandoutId);
+    BatchHandoutResponse response = new BatchHandoutResponse().results(new ArrayList<>());
+    for (RequestHandoutId requestHandoutId : distinctIds) {
+      HandoutResult result = new HandoutResult().handoutRequestId(requestHandoutId.id());
+      if (resourcesById.containsKey(requestHandoutId)) {
+        result.resourceInfo(
+            createResourceInfo(resourcesById.get(requestHandoutId), requestHandoutId));
+      }
+      response.addResultsItem(result);
+    }
+    return response;
+  }
+
+  /**
+   * Returns the resource handed out for {@link RequestHandoutId} to the pool. The resource is
+   * scrubbed back to the pool's config and made READY again in the background, or cleaned up as
+   * usual if that fails. Returning a resource that is already being recycled has no effect.
+   */
+  public void returnResource(PoolId poolId, RequestHandoutId requestHandoutId) {
+    Optional<Pool> pool = bufferDao.retrieveCachedPool(poolId);
+    if (!pool.isPresent() || !pool.get().status().equals(PoolStatus.ACTIVE)) {
+      throw new BadRequestException(String.format("Invalid pool id: %s.", poolId));
+    }
+    if (pool.get().resourceConfig().getGcpProjectConfig() == null
+        || !isRecyclable(pool.get().resourceConfig().getGcpProjectConfig())) {
+      throw new BadRequestException(
+          String.format("Resources of pool %s can not be returned.", poolId));
+    }
+    Resource resource =
+        bufferDao
+            .retrieveResource(poolId, requestHandoutId)
+            .orElseThrow(
+                () ->
+                    new NotFoundException(
+                        String.format(
+                            "No resource handed out for requestHandoutId %s in pool %s",
+                            requestHandoutId, poolId)));
+    if (resource.state().equals(ResourceState.RECYCLING)
+        || flightManager.submitRecyclingFlight(pool.get(), resource).isPresent()) {
+      return;
+    }
+    // A concurrent return may have won the update, anything else can't be recycled.
+    Optional<Resource> current = bufferDao.retrieveResource(resource.id());
+    if (current.isPresent() && current.get().state().equals(ResourceState.RECYCLING)) {
+      return;
+    }
+    throw new BadRequestException(
+        String.format(
+            "Resource for requestHandoutId %s in pool %s can not be recycled.",
+            requestHandoutId, poolId));
+  }
+
   /** Gets pool information by given {@link PoolId}. */
   public PoolInfo getPoolInfo(PoolId poolId) {
-    Optional<PoolAndResourceStates> poolAndResourceStates =
-        bufferDao.retrievePoolAndResourceStatesById(poolId);
-    if (!poolAndResourceStates.isPresent()) {
-      throw new NotFoundException(String.format("Pool %s not found", poolId));
-    }
-    Pool pool = poolAndResourceStates.get().pool();
-    Multiset<ResourceState> resourceStates = poolAndResourceStates.get().resourceStates();
+    Pool pool =
+        bufferDao
+            .retrieveCachedPool(poolId)
+            .orElseThrow(() -> new NotFoundException(String.format("Pool %s not found", poolId)));
+    Multiset<ResourceState> resourceStates = bufferDao.retrieveResourceStateCounts(poolId);
     return new PoolInfo()
         .poolConfig(
             new PoolConfig()
                 .poolId(poolId.toString())
                 .size(pool.size())
-                .resourceConfigName(pool.resourceConfig().getConfigName()))
+                .resourceConfigName(pool.resourceConfig().getConfigName())
+                .autoscaling(pool.autoscaling())
+                .upgradeFromPoolId(pool.upgradeFrom() == null ? null : pool.upgradeFrom().id()))
         .status(bio.terra.buffer.generated.model.PoolStatus.valueOf(pool.status().toString()))
         .putResourceStateCountItem(
             ResourceState.CREATING.name(), resourceStates.count(ResourceState.CREATING))
         .putResourceStateCountItem(
             ResourceState.READY.name(), resourceStates.count(ResourceState.READY))
+        .putResourceStateCountItem(
+            ResourceState.RESERVED.name(), resourceStates.count(ResourceState.RESERVED))
         .putResourceStateCountItem(
             ResourceState.DELETED.name(), resourceStates.count(ResourceState.DELETED))
         .putResourceStateCountItem(
-            ResourceState.HANDED_OUT.name(), resourceStates.count(ResourceState.HANDED_OUT));
+            ResourceState.HANDED_OUT.name(), resourceStates.count(ResourceState.HANDED_OUT))
+        .putResourceStateCountItem(
+            ResourceState.RECYCLING.name(), resourceStates.count(ResourceState.RECYCLING))
+        .putResourceStateCountItem(
+            ResourceState.UPGRADING.name(), resourceStates.count(ResourceState.UPGRADING));
   }
 
   /** Process handout resource in on transcation(anything failure will cause database rollback). */
   private Resource handoutResourceTransactionally(
       PoolId poolId, RequestHandoutId requestHandoutId, TransactionStatus unused) {
-    Optional<Pool> pool = bufferDao.retrievePool(poolId);
+    Optional<Pool> pool = bufferDao.retrieveCachedPool(poolId);
     if (!pool.isPresent() || !pool.get().status().equals(PoolStatus.ACTIVE)) {
       throw new BadRequestException(String.format("Invalid pool id: %s.", poolId));
     }
@@ -132,6 +252,110 @@ public class PoolService {
     }
   }
 
+  /**
+   * Batch version of {@link #handoutResourceTransactionally}, handing out one resource per id in
+   * its own transaction. Ids with no resource available are absent from the returned list.
+   */
+  private List<Resource> handoutResourcesTransactionally(
+      PoolId poolId, List<RequestHandoutId> requestHandoutIds) {
+    List<Resource> resources = new ArrayList<>();
+    for (RequestHandoutId requestHandoutId : requestHandoutIds) {
+      try {
+        resources.add(
+            transactionTemplate.execute(
+                status -> handoutResourceTransactionally(poolId, requestHandoutId, status)));
+      } catch (NotFoundException e) {
+        // Ids handed out before still get their resource back, keep going.
+      }
+    }
+    return resources;
+  }
+
+  /**
+   * Claims READY resources for the ids using {@link BufferDao#claimReadyResources(PoolId, List)}.
+   * If concurrent requests with some of the same ids keep winning the claims, falls back to
+   * claiming one id at a time, which hands out the winners' resources for those ids.
+   */
+  private List<Resource> claimResources(PoolId poolId, List<RequestHandoutId> requestHandoutIds) {
+    try {
+      return bufferDao.claimReadyResources(poolId, requestHandoutIds);
+    } catch (DuplicateKeyException e) {
+      // A concurrent request used one of the same requestHandoutIds. Running it again hands out the
+      // concurrent request's resource for that id.
+      logger.info("Concurrent handout found for pool {}, retrying batch handout", poolId);
+    }
+    try {
+      return bufferDao.claimReadyResources(poolId, requestHandoutIds);
+    } catch (DuplicateKeyException e) {
+      logger.info("Concurrent handout found again for pool {}, handing out one by one", poolId);
+      return requestHandoutIds.stream()
+          .map(requestHandoutId -> claimOneResource(poolId, requestHandoutId))
+          .flatMap(Optional::stream)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Claims one READY resource using {@link BufferDao#claimOneReadyResource(PoolId,
+   * RequestHandoutId)}, or replays the handout of a concurrent request with the same {@link
+   * RequestHandoutId} that won the claim.
+   */
+  private Optional<Resource> claimOneResource(PoolId poolId, RequestHandoutId requestHandoutId) {
+    try {
+      return bufferDao.claimOneReadyResource(poolId, requestHandoutId);
+    } catch (DuplicateKeyException e) {
+      // A concurrent request with the same requestHandoutId won the claim, hand out its resource.
+      logger.info("Concurrent handout found for requestHandoutId {}", requestHandoutId);
+      return bufferDao.retrieveResource(poolId, requestHandoutId);
+    }
+  }
+
+  /**
+   * Claims one READY resource of an ACTIVE pool, from this instance's {@link HandoutReservoir} if
+   * it has one for the pool, otherwise using {@link #claimOneResource}. Concurrent claims skip each
+   * other's rows, so there is nothing to retry.
+   */
+  private Resource claimResource(PoolId poolId, RequestHandoutId requestHandoutId) {
+    Optional<Pool> pool = bufferDao.retrieveCachedPool(poolId);
+    if (!pool.isPresent() || !pool.get().status().equals(PoolStatus.ACTIVE)) {
+      throw new BadRequestException(String.format("Invalid pool id: %s.", poolId));
+    }
+    Optional<Resource> reserved = handoutReservoir.handout(poolId, requestHandoutId);
+    if (reserved.isPresent()) {
+      return reserved.get();
+    }
+    return claimOneResource(poolId, requestHandoutId)
+        .orElseThrow(
+            () ->
+                new NotFoundException(
+                    String.format(
+                        "No resource is ready to use at this moment for pool: %s. Please try later",
+                        poolId)));
+  }
+
+  /**
+   * Claims one READY resource, or parks the request in {@link HandoutWaitQueue} until one is READY
+   * or the timeout passes. Neither a database connection nor a thread is held while waiting.
+   */
+  private CompletableFuture<Resource> claimResourceOrWait(
+      PoolId poolId, RequestHandoutId requestHandoutId, Duration waitTimeout) {
+    try {
+      return CompletableFuture.completedFuture(claimResource(poolId, requestHandoutId));
+    } catch (NotFoundException e) {
+      // Fall through to wait for a resource.
+    }
+    Duration timeout =
+        waitTimeout.compareTo(poolConfiguration.getMaxHandoutWaitTime()) > 0
+            ? poolConfiguration.getMaxHandoutWaitTime()
+            : waitTimeout;
+    String timeoutMessage =
+        String.format(
+            "No resource became ready within %s for pool: %s. Please try later", timeout, poolId);
+    return handoutWaitQueue
+        .await(poolId, requestHandoutId, timeout)
+        .thenApply(resource -> resource.orElseThrow(() -> new NotFoundException(timeoutMessage)));
+  }
+
   @VisibleForTesting
   public void updateFromConfig(List<PoolWithResourceConfig> parsedPoolConfigs) {
     transactionTemplate.execute(
@@ -147,6 +371,17 @@ public class PoolService {
           List<PoolWithResourceConfig> poolsToCreate = new ArrayList<>();
           List<Pool> poolsToDeactivate = new ArrayList<>();
           Map<PoolId, Integer> poolsToUpdateSize = new HashMap<>();
+          Map<PoolId, Optional<PoolAutoscalingConfig>> poolsToUpdateAutoscaling = new HashMap<>();
+          Map<PoolId, Optional<PoolId>> poolsToUpdateUpgradeFrom = new HashMap<>();
+
+          for (PoolWithResourceConfig parsedPoolConfig : parsedPoolConfigs) {
+            PoolConfig poolConfig = parsedPoolConfig.poolConfig();
+            if (poolConfig.getPoolId().equals(poolConfig.getUpgradeFromPoolId())) {
+              throw new RuntimeException(
+                  String.format(
+                      "Pool(id= %s) can not upgrade resources from itself", poolConfig.getPoolId()));
+            }
+          }
 
           // Compare pool ids in DB and config. Validate config change is valid then update DB based
           // on
@@ -181,15 +416,30 @@ public class PoolService {
                 // Exists in both places but need to update size.
                 poolsToUpdateSize.put(dbPool.id(), configPool.poolConfig().getSize());
               }
+              if (!Objects.equals(dbPool.autoscaling(), configPool.poolConfig().getAutoscaling())) {
+                poolsToUpdateAutoscaling.put(
+                    dbPool.id(), Optional.ofNullable(configPool.poolConfig().getAutoscaling()));
+              }
+              Optional<PoolId> upgradeFrom = upgradeFrom(configPool);
+              if (!Objects.equals(Optional.ofNullable(dbPool.upgradeFrom()), upgradeFrom)) {
+                poolsToUpdateUpgradeFrom.put(dbPool.id(), upgradeFrom);
+              }
             }
           }
           createPools(poolsToCreate);
           deactivatePools(poolsToDeactivate);
           updatePoolSize(poolsToUpdateSize);
+          bufferDao.updatePoolsAutoscaling(poolsToUpdateAutoscaling);
+          bufferDao.updatePoolsUpgradeFrom(poolsToUpdateUpgradeFrom);
           return true;
         });
   }
 
+  /** The pool the config says to upgrade resources from, if any. */
+  private static Optional<PoolId> upgradeFrom(PoolWithResourceConfig poolConfig) {
+    return Optional.ofNullable(poolConfig.poolConfig().getUpgradeFromPoolId()).map(PoolId::create);
+  }
+
   private void createPools(List<PoolWithResourceConfig> poolsToCreate) {
     List<Pool> pools = new ArrayList<>();
     for (PoolWithResourceConfig poolConfig : poolsToCreate) {
@@ -197,6 +447,8 @@ public class PoolService {
           Pool.builder()
               .id(PoolId.create(poolConfig.poolConfig().getPoolId()))
               .size(poolConfig.poolConfig().getSize())
+              .autoscaling(poolConfig.poolConfig().getAutoscaling())
+              .upgradeFrom(upgradeFrom(poolConfig).orElse(null))
               .resourceConfig(poolConfig.resourceConfig())
               .creation(Instant.now())
               .resourceType(
@@ -0,0 +1,30 @@
+package bio.terra.buffer.service.quota;
+
+import bio.terra.buffer.app.configuration.QuotaConfiguration;
+import java.util.function.Function;
+
+/** The cloud API quotas resource flights spend. */
+public enum QuotaBucket {
+  BATCH_ENABLE("batch_enable", QuotaConfiguration::getBatchEnable),
+  PROJECT_CREATE("project_create", QuotaConfiguration::getProjectCreate),
+  COMPUTE_WRITE("compute_write", QuotaConfiguration::getComputeWrite),
+  DNS_WRITE("dns_write", QuotaConfiguration::getDnsWrite);
+
+  private final String bucketName;
+  private final Function<QuotaConfiguration, QuotaConfiguration.Bucket> configGetter;
+
+  QuotaBucket(
+      String bucketName, Function<QuotaConfiguration, QuotaConfiguration.Bucket> configGetter) {
+    this.bucketName = bucketName;
+    this.configGetter = configGetter;
+  }
+
+  /** The name of the bucket in the database. */
+  public String bucketName() {
+    return bucketName;
+  }
+
+  public QuotaConfiguration.Bucket config(QuotaConfiguration quotaConfiguration) {
+    return configGetter.apply(quotaConfiguration);
+  }
+}
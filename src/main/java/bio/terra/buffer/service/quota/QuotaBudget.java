@@ -0,0 +1,83 @@
+package bio.terra.buffer.service.quota;
+
+import bio.terra.buffer.app.configuration.QuotaConfiguration;
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
+import bio.terra.buffer.db.BufferDao;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spends the cloud API quotas shared by all Buffer Service instances. Steps acquire tokens right
+ * before calling a quota limited API, and the scheduler only admits as many flights as the
+ * remaining tokens can serve.
+ */
+@Component
+public class QuotaBudget {
+  private final Logger logger = LoggerFactory.getLogger(QuotaBudget.class);
+
+  private final QuotaConfiguration quotaConfiguration;
+  private final BufferDao bufferDao;
+
+  @Autowired
+  public QuotaBudget(QuotaConfiguration quotaConfiguration, BufferDao bufferDao) {
+    this.quotaConfiguration = quotaConfiguration;
+    this.bufferDao = bufferDao;
+  }
+
+  /**
+   * Takes {@code permits} tokens from the bucket, waiting for it to refill if needed. Throws
+   * {@link QuotaExhaustedException} if the tokens can't be taken within {@link
+   * QuotaConfiguration#getMaxWait()}.
+   */
+  public void acquire(QuotaBucket bucket, int permits) throws InterruptedException {
+    if (!quotaConfiguration.isEnabled()) {
+      return;
+    }
+    QuotaConfiguration.Bucket config = bucket.config(quotaConfiguration);
+    // More than the capacity can never be taken at once.
+    int tokens = Math.min(permits, config.getCapacity());
+    long deadlineNanos = System.nanoTime() + quotaConfiguration.getMaxWait().toNanos();
+    while (true) {
+      double missing =
+          bufferDao.acquireQuotaTokens(
+              bucket.bucketName(), tokens, config.getCapacity(), config.refillPerSecond());
+      if (missing <= 0) {
+        return;
+      }
+      // Other instances may take the refilled tokens first, so this is the shortest wait.
+      long waitNanos =
+          Duration.ofMillis((long) Math.ceil(missing * 1000 / config.refillPerSecond())).toNanos();
+      if (System.nanoTime() + waitNanos > deadlineNanos) {
+        throw new QuotaExhaustedException(
+            String.format(
+                "No %s quota left within %s", bucket.bucketName(), quotaConfiguration.getMaxWait()));
+      }
+      logger.debug("Waiting {}ms for {} quota.", waitNanos / 1_000_000, bucket.bucketName());
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Returns how many flights the remaining tokens can serve, if each flight takes the given number
+   * of tokens from each bucket.
+   */
+  public int flightAllowance(Map<QuotaBucket, Integer> flightCost) {
+    if (!quotaConfiguration.isEnabled()) {
+      return Integer.MAX_VALUE;
+    }
+    int allowance = Integer.MAX_VALUE;
+    for (Map.Entry<QuotaBucket, Integer> cost : flightCost.entrySet()) {
+      QuotaConfiguration.Bucket config = cost.getKey().config(quotaConfiguration);
+      double tokens =
+          bufferDao.retrieveQuotaTokens(
+              cost.getKey().bucketName(), config.getCapacity(), config.refillPerSecond());
+      allowance = Math.min(allowance, (int) (tokens / cost.getValue()));
+    }
+    return allowance;
+  }
+}
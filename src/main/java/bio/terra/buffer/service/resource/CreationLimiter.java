@@ -0,0 +1,82 @@
+package bio.terra.buffer.service.resource;
+
+import static bio.terra.buffer.common.MetricsHelper.recordCreationLimit;
+
+import bio.terra.buffer.app.configuration.CreationLimitConfiguration;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.db.BufferDao;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adapts how many creation flights each pool may have in progress to how its flights fare, with
+ * additive increase and multiplicative decrease.
+ *
+ * <p>Pools whose flights succeed speed up, while pools whose flights fail back off quickly instead
+ * of retrying against a broken API. Like TCP congestion control, the limit is cut at most once per
+ * {@link CreationLimitConfiguration#getDecreaseWindow()}, since the flights that were already in
+ * progress when it was cut are likely to fail for the same reason. Limits are kept on the pool row
+ * so that all instances report outcomes to, and schedule from, the same limit.
+ */
+@Component
+public class CreationLimiter {
+  private final Logger logger = LoggerFactory.getLogger(CreationLimiter.class);
+
+  private final CreationLimitConfiguration creationLimitConfiguration;
+  private final BufferDao bufferDao;
+
+  @Autowired
+  public CreationLimiter(
+      CreationLimitConfiguration creationLimitConfiguration, BufferDao bufferDao) {
+    this.creationLimitConfiguration = creationLimitConfiguration;
+    this.bufferDao = bufferDao;
+  }
+
+  /** Grows the pool's limit after a creation flight succeeded. */
+  public void recordSuccess(PoolId poolId) {
+    bufferDao
+        .adjustCreationLimit(
+            poolId,
+            1,
+            creationLimitConfiguration.getAdditiveIncrease(),
+            creationLimitConfiguration.getInitialLimit(),
+            creationLimitConfiguration.getMinLimit(),
+            creationLimitConfiguration.getMaxLimit())
+        .ifPresent(limit -> recordCreationLimit(poolId, limit));
+  }
+
+  /**
+   * Shrinks the pool's limit after a creation flight failed, unless it was already cut within the
+   * decrease window.
+   */
+  public void recordFailure(PoolId poolId) {
+    bufferDao
+        .cutCreationLimit(
+            poolId,
+            creationLimitConfiguration.getMultiplicativeDecrease(),
+            creationLimitConfiguration.getInitialLimit(),
+            creationLimitConfiguration.getMinLimit(),
+            creationLimitConfiguration.getMaxLimit(),
+            creationLimitConfiguration.getDecreaseWindow())
+        .ifPresent(
+            limit -> {
+              logger.info("Creation limit of pool {} cut to {}.", poolId, limit);
+              recordCreationLimit(poolId, limit);
+            });
+  }
+
+  /** Returns how many creation flights the pool may have in progress. */
+  public int limit(PoolId poolId, Map<PoolId, Double> limits) {
+    double limit = limits.getOrDefault(poolId, creationLimitConfiguration.getInitialLimit());
+    recordCreationLimit(poolId, limit);
+    return (int) limit;
+  }
+
+  /** Retrieves the current limits, to pass to {@link #limit(PoolId, Map)}. */
+  public Map<PoolId, Double> retrieveLimits() {
+    return bufferDao.retrieveCreationLimits();
+  }
+}
@@ -0,0 +1,60 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.service.resource.flight.GoogleProjectCreationFlight;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.HookAction;
+import bio.terra.stairway.StairwayHook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * A {@link StairwayHook} reporting the outcome of creation flights to the {@link CreationLimiter}.
+ *
+ * <p>Step retries, including rate limited ones, are not reported: steps back off on their own and
+ * {@link bio.terra.buffer.service.quota.QuotaBudget} paces the calls, so only a flight that fails
+ * for good counts as a failure.
+ */
+@Component
+public class CreationOutcomeHook implements StairwayHook {
+  private final CreationLimiter creationLimiter;
+
+  @Autowired
+  public CreationOutcomeHook(CreationLimiter creationLimiter) {
+    this.creationLimiter = creationLimiter;
+  }
+
+  @Override
+  public HookAction startFlight(FlightContext context) {
+    return HookAction.CONTINUE;
+  }
+
+  @Override
+  public HookAction startStep(FlightContext context) {
+    return HookAction.CONTINUE;
+  }
+
+  @Override
+  public HookAction endStep(FlightContext context) {
+    return HookAction.CONTINUE;
+  }
+
+  @Override
+  public HookAction endFlight(FlightContext context) {
+    if (!isCreationFlight(context)) {
+      return HookAction.CONTINUE;
+    }
+    FlightStatus status = context.getFlightStatus();
+    if (status == FlightStatus.SUCCESS) {
+      creationLimiter.recordSuccess(PoolId.retrieve(context.getInputParameters()));
+    } else if (status == FlightStatus.ERROR || status == FlightStatus.FATAL) {
+      creationLimiter.recordFailure(PoolId.retrieve(context.getInputParameters()));
+    }
+    return HookAction.CONTINUE;
+  }
+
+  private static boolean isCreationFlight(FlightContext context) {
+    return GoogleProjectCreationFlight.class.getName().equals(context.getFlightClassName());
+  }
+}
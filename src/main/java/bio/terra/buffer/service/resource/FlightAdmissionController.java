@@ -0,0 +1,127 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.PoolId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how many of the demanded flights to submit, sharing a global concurrency limit between
+ * pools in deficit round robin order.
+ *
+ * <p>Each round, every pool with unmet demand earns credit in proportion to its weight: the pool's
+ * configured weight times the number of flights it demands, so a nearly empty pool gets more of
+ * the capacity than an almost full one. A pool is admitted one flight per whole credit. Fractional
+ * credit carries over to the next round, and to the next call while the pool keeps demanding
+ * flights, so that small pools are not starved by rounding.
+ */
+@Component
+public class FlightAdmissionController {
+  private final PrimaryConfiguration primaryConfiguration;
+
+  /** Credit carried over per pool, by flight type. Guarded by {@code this}. */
+  private final Map<FlightDemand.Type, Map<PoolId, Double>> credits =
+      new EnumMap<>(FlightDemand.Type.class);
+
+  /** Rotates the pool that is served first in a round between calls. Guarded by {@code this}. */
+  private int rotation = 0;
+
+  @Autowired
+  public FlightAdmissionController(PrimaryConfiguration primaryConfiguration) {
+    this.primaryConfiguration = primaryConfiguration;
+    for (FlightDemand.Type type : FlightDemand.Type.values()) {
+      credits.put(type, new HashMap<>());
+    }
+  }
+
+  /**
+   * Returns how many flights to submit for each demand, admitting at most {@code concurrencyLimit}
+   * flights in total and at most {@code creationLimit} creation flights. Demands with nothing
+   * admitted are absent.
+   */
+  public synchronized Map<FlightDemand, Integer> admit(
+      List<FlightDemand> demands, int concurrencyLimit, int creationLimit) {
+    List<FlightDemand> ordered =
+        demands.stream()
+            .filter(demand -> demand.count() > 0 && weight(demand) > 0)
+            .sorted(
+                Comparator.comparing((FlightDemand demand) -> demand.pool().id().id())
+                    .thenComparing(FlightDemand::type))
+            .collect(Collectors.toList());
+    // Pools that stopped demanding flights lose their credit.
+    for (FlightDemand.Type type : FlightDemand.Type.values()) {
+      credits
+          .get(type)
+          .keySet()
+          .retainAll(
+              ordered.stream()
+                  .filter(demand -> demand.type().equals(type))
+                  .map(demand -> demand.pool().id())
+                  .collect(Collectors.toSet()));
+    }
+    if (!ordered.isEmpty()) {
+      rotation = (rotation + 1) % ordered.size();
+      List<FlightDemand> rotated = new ArrayList<>(ordered.subList(rotation, ordered.size()));
+      rotated.addAll(ordered.subList(0, rotation));
+      ordered = rotated;
+    }
+
+    Map<FlightDemand, Integer> admitted = new LinkedHashMap<>();
+    int concurrencyLeft = concurrencyLimit;
+    int creationLeft = creationLimit;
+    while (concurrencyLeft > 0) {
+      List<FlightDemand> active = new ArrayList<>();
+      for (FlightDemand demand : ordered) {
+        if (remaining(demand, admitted) > 0
+            && (demand.type() != FlightDemand.Type.CREATION || creationLeft > 0)) {
+          active.add(demand);
+        }
+      }
+      if (active.isEmpty()) {
+        break;
+      }
+      double totalWeight = active.stream().mapToDouble(this::weight).sum();
+      int demanded = active.stream().mapToInt(demand -> remaining(demand, admitted)).sum();
+      int roundSize = Math.min(concurrencyLeft, demanded);
+      for (FlightDemand demand : active) {
+        Map<PoolId, Double> typeCredits = credits.get(demand.type());
+        double credit =
+            typeCredits.getOrDefault(demand.pool().id(), 0.0)
+                + roundSize * weight(demand) / totalWeight;
+        int count = Math.min((int) credit, Math.min(remaining(demand, admitted), concurrencyLeft));
+        if (demand.type() == FlightDemand.Type.CREATION) {
+          count = Math.min(count, creationLeft);
+          creationLeft -= count;
+        }
+        concurrencyLeft -= count;
+        admitted.merge(demand, count, Integer::sum);
+        // A pool whose demand is fully met starts over, as a flow with an empty queue would.
+        typeCredits.put(
+            demand.pool().id(), remaining(demand, admitted) == 0 ? 0.0 : credit - count);
+        if (concurrencyLeft == 0) {
+          break;
+        }
+      }
+    }
+    admitted.values().removeIf(count -> count == 0);
+    return admitted;
+  }
+
+  /** The share of capacity a demand earns each round, see the class doc. */
+  private double weight(FlightDemand demand) {
+    return primaryConfiguration.getPoolWeights().getOrDefault(demand.pool().id().id(), 1.0)
+        * demand.count();
+  }
+
+  private static int remaining(FlightDemand demand, Map<FlightDemand, Integer> admitted) {
+    return demand.count() - admitted.getOrDefault(demand, 0);
+  }
+}
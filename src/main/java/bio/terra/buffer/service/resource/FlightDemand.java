@@ -0,0 +1,29 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.common.Pool;
+import com.google.auto.value.AutoValue;
+
+/**
+ * The number of creation or deletion flights a pool needs to reach its target size, or of upgrade
+ * flights moving a deactivated pool's resources into the pool replacing it.
+ */
+@AutoValue
+public abstract class FlightDemand {
+  /** The kind of flights demanded. */
+  public enum Type {
+    CREATION,
+    DELETION,
+    /** Upgrades of the pool's READY resources into the pool configured to upgrade from it. */
+    UPGRADE,
+  }
+
+  public abstract Pool pool();
+
+  public abstract Type type();
+
+  public abstract int count();
+
+  public static FlightDemand create(Pool pool, Type type, int count) {
+    return new AutoValue_FlightDemand(pool, type, count);
+  }
+}
@@ -6,6 +6,8 @@ import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.ResourceType;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
 import bio.terra.common.stairway.StairwayComponent;
 import bio.terra.stairway.Stairway;
 import bio.terra.stairway.exception.StairwayException;
@@ -19,7 +21,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionTemplate;
 
-/** Manages the Stairway flights to create or delete resources. */
+/** Manages the Stairway flights to create, delete, recycle or upgrade resources. */
 @Component
 public class FlightManager {
   private Logger logger = LoggerFactory.getLogger(FlightManager.class);
@@ -28,28 +30,62 @@ public class FlightManager {
   private final FlightSubmissionFactory flightSubmissionFactory;
   private final StairwayComponent stairwayComponent;
   private final TransactionTemplate transactionTemplate;
+  private final LeaderElection leaderElection;
 
   @Autowired
   public FlightManager(
       BufferDao bufferDao,
       FlightSubmissionFactory flightSubmissionFactory,
       StairwayComponent stairwayComponent,
-      TransactionTemplate transactionTemplate) {
+      TransactionTemplate transactionTemplate,
+      LeaderElection leaderElection) {
     this.bufferDao = bufferDao;
     this.flightSubmissionFactory = flightSubmissionFactory;
     this.stairwayComponent = stairwayComponent;
     this.transactionTemplate = transactionTemplate;
+    this.leaderElection = leaderElection;
   }
 
-  /** Submit Stairway Flight to create resource. */
+  /** Submit Stairway Flight to create resource. Only the leader may do this. */
   public Optional<String> submitCreationFlight(Pool pool) {
-    return transactionTemplate.execute(status -> createResourceEntityAndSubmitFlight(pool, status));
+    return transactionTemplate.execute(
+        status ->
+            leaderElection.lockLeadership()
+                ? createResourceEntityAndSubmitFlight(pool, status)
+                : notLeader());
   }
 
-  /** Submit Stairway Flight to delete resource. */
+  /** Submit Stairway Flight to delete resource. Only the leader may do this. */
   public Optional<String> submitDeletionFlight(Resource resource, ResourceType resourceType) {
     return transactionTemplate.execute(
-        status -> updateResourceAsDeletingAndSubmitFlight(resource, resourceType, status));
+        status ->
+            leaderElection.lockLeadership()
+                ? updateResourceAsDeletingAndSubmitFlight(resource, resourceType, status)
+                : notLeader());
+  }
+
+  /** Submit Stairway Flight to scrub a returned resource and make it READY again. */
+  public Optional<String> submitRecyclingFlight(Pool pool, Resource resource) {
+    return transactionTemplate.execute(
+        status -> updateResourceAsRecyclingAndSubmitFlight(pool, resource, status));
+  }
+
+  /**
+   * Submit Stairway Flight to upgrade a READY resource to {@code pool}'s config by applying {@code
+   * delta}, moving it to {@code pool}. Only the leader may do this.
+   */
+  public Optional<String> submitUpgradeFlight(
+      Pool pool, Resource resource, GcpProjectConfig delta) {
+    return transactionTemplate.execute(
+        status ->
+            leaderElection.lockLeadership()
+                ? updateResourceAsUpgradingAndSubmitFlight(pool, resource, delta, status)
+                : notLeader());
+  }
+
+  private Optional<String> notLeader() {
+    logger.info("No longer the leader, skip submitting flight.");
+    return Optional.empty();
   }
 
   /**
@@ -90,6 +126,40 @@ public class FlightManager {
     return Optional.empty();
   }
 
+  /**
+   * Update a HANDED_OUT resource state to RECYCLING and submit recycling flight.
+   *
+   * <p>If the Stairway submission fails, the transaction will be rolled back. If the Stairway
+   * submission succeeds but the DB update transaction fails, the flight checks the DB state and
+   * aborts if the state is bad.
+   */
+  private Optional<String> updateResourceAsRecyclingAndSubmitFlight(
+      Pool pool, Resource resource, TransactionStatus status) {
+    if (bufferDao.updateHandedOutResourceToRecycling(resource.id())) {
+      return submitToStairway(
+          flightSubmissionFactory.getRecyclingFlightSubmission(pool, resource), status);
+    }
+    logger.info("Failed to submit resource recycling flight for resource {}", resource.id());
+    return Optional.empty();
+  }
+
+  /**
+   * Update a READY resource state to UPGRADING and submit upgrade flight.
+   *
+   * <p>If the Stairway submission fails, the transaction will be rolled back. If the Stairway
+   * submission succeeds but the DB update transaction fails, the flight checks the DB state and
+   * aborts if the state is bad.
+   */
+  private Optional<String> updateResourceAsUpgradingAndSubmitFlight(
+      Pool pool, Resource resource, GcpProjectConfig delta, TransactionStatus status) {
+    if (bufferDao.updateReadyResourceToUpgrading(resource.id())) {
+      return submitToStairway(
+          flightSubmissionFactory.getUpgradeFlightSubmission(pool, resource, delta), status);
+    }
+    logger.info("Failed to submit resource upgrade flight for resource {}", resource.id());
+    return Optional.empty();
+  }
+
   private Optional<String> submitToStairway(
       FlightSubmissionFactory.FlightSubmission flightSubmission, TransactionStatus status) {
     String flightId =
@@ -8,6 +8,29 @@ public class FlightMapKeys {
   public static final String GOOGLE_PROJECT_ID = "googleProjectId";
   public static final String GOOGLE_PROJECT_NUMBER = "googleProjectNumber";
   public static final String RESOURCE_CONFIG = "resourceConfig";
+  /** The GcpProjectConfig of the changes an upgrade flight applies. */
+  public static final String CONFIG_DELTA = "configDelta";
+
+  /** FlightMap keys for the names of operations steps are waiting for. */
+  public static final String CREATE_PROJECT_OPERATION = "createProjectOperation";
+
+  public static final String ENABLE_SERVICES_OPERATION = "enableServicesOperation";
+
+  /** FlightMap keys for the items multi-item steps are done with, see StepCheckpoint. */
+  public static final String CREATED_SUBNET_REGIONS = "createdSubnetRegions";
+
+  public static final String CREATED_FIREWALL_RULES = "createdFirewallRules";
+
+  public static final String DELETED_DEFAULT_FIREWALL_RULES = "deletedDefaultFirewallRules";
+
+  public static final String SCRUBBED_FIREWALL_RULES = "scrubbedFirewallRules";
+
+  /** FlightMap keys under which ParallelStep branches record their progress. */
+  public static final String PROJECT_SETUP_BRANCHES = "projectSetupBranches";
+
+  public static final String PROJECT_SCRUB_BRANCHES = "projectScrubBranches";
+
+  public static final String PROJECT_UPGRADE_BRANCHES = "projectUpgradeBranches";
 
   /**
    * FlightMap key for a boolean value to indicate if resource creation completes and resource is
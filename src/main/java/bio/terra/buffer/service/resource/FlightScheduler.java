@@ -3,18 +3,33 @@ package bio.terra.buffer.service.resource;
 import static bio.terra.buffer.common.MetricsHelper.recordResourceStateCount;
 
 import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.LogThrowables;
 import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.PoolAndResourceStates;
+import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.common.PoolStatus;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.flight.GcpProjectConfigDiff;
+import bio.terra.buffer.service.resource.flight.GoogleProjectCreationFlight;
 import bio.terra.common.stairway.StairwayComponent;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMultiset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,30 +38,59 @@ import org.springframework.stereotype.Component;
 /**
  * Periodically checks database state and submit Stairway flights to create/delete resource if
  * needed.
+ *
+ * <p>When an ACTIVE pool is configured to upgrade from a DEACTIVATED pool whose config differs only
+ * in ways {@link GcpProjectConfigDiff} can apply in place, the READY resources of the old pool are
+ * upgraded into the new one instead of being deleted, as far as the new pool needs them. The new
+ * pool counts them as supply meanwhile, so it doesn't create replacements in parallel.
  */
 @Component
 public class FlightScheduler {
 
   private final Logger logger = LoggerFactory.getLogger(FlightScheduler.class);
 
-  /** Only need as many threads as we have scheduled tasks. */
+  /**
+   * A single thread for both the periodic full scan and the event driven pool evaluations, so that
+   * they never submit flights for the same pool concurrently.
+   */
   private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
 
   private final FlightManager flightManager;
   private final PrimaryConfiguration primaryConfiguration;
   private final StairwayComponent stairwayComponent;
   private final BufferDao bufferDao;
+  private final LeaderElection leaderElection;
+  private final PoolAutoscaler poolAutoscaler;
+  private final QuotaBudget quotaBudget;
+  private final FlightAdmissionController flightAdmissionController;
+  private final CreationLimiter creationLimiter;
+
+  /** Pools with resources consumed since they were last evaluated. Guarded by {@code this}. */
+  private final Set<PoolId> consumedPools = new HashSet<>();
+
+  /** Whether an evaluation of {@link #consumedPools} is scheduled. Guarded by {@code this}. */
+  private boolean consumedPoolsEvaluationScheduled = false;
 
   @Autowired
   public FlightScheduler(
       FlightManager flightManager,
       PrimaryConfiguration primaryConfiguration,
       StairwayComponent stairwayComponent,
-      BufferDao bufferDao) {
+      BufferDao bufferDao,
+      LeaderElection leaderElection,
+      PoolAutoscaler poolAutoscaler,
+      QuotaBudget quotaBudget,
+      FlightAdmissionController flightAdmissionController,
+      CreationLimiter creationLimiter) {
     this.flightManager = flightManager;
     this.primaryConfiguration = primaryConfiguration;
     this.stairwayComponent = stairwayComponent;
     this.bufferDao = bufferDao;
+    this.leaderElection = leaderElection;
+    this.poolAutoscaler = poolAutoscaler;
+    this.quotaBudget = quotaBudget;
+    this.flightAdmissionController = flightAdmissionController;
+    this.creationLimiter = creationLimiter;
   }
 
   /**
@@ -68,61 +112,294 @@ public class FlightScheduler {
     // The scheduled task will not execute concurrently with itself even if it takes a long time.
     // See javadoc on ScheduledExecutorService#scheduleAtFixedRate.
     executor.scheduleAtFixedRate(
-        new LogThrowables(this::scheduleFlights),
+        new LogThrowables(FlightScheduler.class, this::scheduleFlights),
         /* initialDelay= */ 0,
         /* period= */ primaryConfiguration.getFlightSubmissionPeriod().toMillis(),
         TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * Notifies that a READY resource in the pool was handed out or is being deleted. Failed creations
+   * are not notified, so that they wait for the next full scan. The pool is evaluated after {@link
+   * PrimaryConfiguration#getPoolEventDebounce()}, together with the other pools notified meanwhile,
+   * instead of waiting for the next full scan.
+   */
+  public void onResourceConsumed(PoolId poolId) {
+    if (!primaryConfiguration.isSchedulerEnabled()) {
+      return;
+    }
+    synchronized (this) {
+      consumedPools.add(poolId);
+      if (consumedPoolsEvaluationScheduled) {
+        return;
+      }
+      consumedPoolsEvaluationScheduled = true;
+    }
+    executor.schedule(
+        new LogThrowables(FlightScheduler.class, this::scheduleFlightsForConsumedPools),
+        primaryConfiguration.getPoolEventDebounce().toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
   /**
    * Try to schedule flights to create and delete resources until resource count matches each pool
    * state or reach to configuration limit.
    */
   private void scheduleFlights() {
+    if (!leaderElection.isLeader()) {
+      logger.info("Not the leader, skip scheduling flights.");
+      return;
+    }
     logger.info("Beginning scheduling flights.");
-    List<PoolAndResourceStates> poolAndResourceStatesList =
-        bufferDao.retrievePoolAndResourceStates();
-    for (PoolAndResourceStates poolAndResources : poolAndResourceStatesList) {
+    admitFlights(bufferDao.retrieveCachedPools(), bufferDao.retrieveResourceStateCounts());
+  }
+
+  /** Same as {@link #scheduleFlights()}, only for the pools in {@link #consumedPools}. */
+  private void scheduleFlightsForConsumedPools() {
+    Set<PoolId> poolIds;
+    synchronized (this) {
+      poolIds = new HashSet<>(consumedPools);
+      consumedPools.clear();
+      consumedPoolsEvaluationScheduled = false;
+    }
+    if (!leaderElection.isLeader()) {
+      return;
+    }
+    logger.info("Beginning scheduling flights for pools with consumed resources: {}.", poolIds);
+    List<Pool> pools =
+        poolIds.stream()
+            .map(bufferDao::retrieveCachedPool)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
+    // Counts of all pools, to know how many flights are in progress globally.
+    admitFlights(pools, bufferDao.retrieveResourceStateCounts());
+  }
+
+  /**
+   * Submits the flights the pools need, as many as {@link FlightAdmissionController} admits within
+   * the flight capacity left and the quota budget.
+   */
+  private void admitFlights(
+      List<Pool> pools, Map<PoolId, ImmutableMultiset<ResourceState>> resourceStateCounts) {
+    Map<PoolId, Double> creationLimits = creationLimiter.retrieveLimits();
+    // Upgrades link pools that may not all be evaluated this time, so look at every pool.
+    Map<PoolId, Pool> upgradeTargets = upgradeTargets(bufferDao.retrieveCachedPools());
+    List<FlightDemand> demands = new ArrayList<>();
+    for (Pool pool : pools) {
+      ImmutableMultiset<ResourceState> states =
+          resourceStateCounts.getOrDefault(pool.id(), ImmutableMultiset.of());
+      PoolAndResourceStates poolAndResources =
+          PoolAndResourceStates.builder().setPool(pool).setResourceStateCounts(states).build();
       recordResourceStateCount(poolAndResources);
-      if (poolAndResources.pool().status().equals(PoolStatus.ACTIVE)) {
-        int size = poolAndResources.pool().size();
-        int readyAndCreatingCount =
-            poolAndResources.resourceStates().count(ResourceState.CREATING)
-                + poolAndResources.resourceStates().count(ResourceState.READY);
-        logger.info(
-            "Pool id: {}, size:{}, readyAndCreatingCount: {}.",
-            poolAndResources.pool().id(),
-            size,
-            readyAndCreatingCount);
-        if (size > readyAndCreatingCount) {
-          scheduleCreationFlights(poolAndResources.pool(), size - readyAndCreatingCount);
-        } else if (primaryConfiguration.isDeleteExcessResources()
-            && poolAndResources.resourceStates().count(ResourceState.READY) > size) {
-          // Only deletion READY resource, we hope future schedule runs will deletion resources
-          // just turns to READY from CREATING.
-          scheduleDeletionFlights(
-              poolAndResources.pool(),
-              poolAndResources.resourceStates().count(ResourceState.READY) - size);
-        }
+      Pool upgradeTarget = upgradeTargets.get(pool.id());
+      if (upgradeTarget != null) {
+        demands.addAll(
+            upgradeDemands(
+                pool,
+                states,
+                upgradeTarget,
+                resourceStateCounts.getOrDefault(upgradeTarget.id(), ImmutableMultiset.of())));
+        continue;
+      }
+      int upgradingSupply = 0;
+      if (pool.upgradeFrom() != null && pool.equals(upgradeTargets.get(pool.upgradeFrom()))) {
+        upgradingSupply =
+            upgradeSupply(
+                resourceStateCounts.getOrDefault(pool.upgradeFrom(), ImmutableMultiset.of()));
+      }
+      poolDemand(poolAndResources, upgradingSupply, creationLimits).ifPresent(demands::add);
+    }
+    if (demands.isEmpty()) {
+      return;
+    }
+    // DELETING resources waiting for ProjectDeletionReconciler have no flight.
+    int inProgress =
+        resourceStateCounts.values().stream()
+                .mapToInt(
+                    states ->
+                        states.count(ResourceState.CREATING)
+                            + states.count(ResourceState.DELETING)
+                            + states.count(ResourceState.RECYCLING)
+                            + states.count(ResourceState.UPGRADING))
+                .sum()
+            - bufferDao.countDeletingResourcesAwaitingConfirmation();
+    int concurrencyLimit = Math.max(0, primaryConfiguration.getMaxConcurrentFlights() - inProgress);
+    boolean anyCreation =
+        demands.stream().anyMatch(demand -> demand.type() == FlightDemand.Type.CREATION);
+    int creationLimit =
+        anyCreation ? quotaBudget.flightAllowance(GoogleProjectCreationFlight.QUOTA_COST) : 0;
+    logger.info(
+        "{} flights in progress, concurrency limit: {}, creation limit: {}.",
+        inProgress,
+        concurrencyLimit,
+        creationLimit);
+
+    Map<FlightDemand, Integer> admitted =
+        flightAdmissionController.admit(demands, concurrencyLimit, creationLimit);
+    for (Map.Entry<FlightDemand, Integer> entry : admitted.entrySet()) {
+      Pool pool = entry.getKey().pool();
+      if (entry.getKey().type() == FlightDemand.Type.CREATION) {
+        scheduleCreationFlights(pool, entry.getValue());
+      } else if (entry.getKey().type() == FlightDemand.Type.UPGRADE) {
+        scheduleUpgradeFlights(pool, upgradeTargets.get(pool.id()), entry.getValue());
       } else {
+        scheduleDeletionFlights(pool, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Returns the ACTIVE pools to upgrade the READY resources of DEACTIVATED pools into, by the id of
+   * the pool they upgrade from. Only pools whose configs have a {@link GcpProjectConfigDiff#delta}
+   * are linked, and a pool is upgraded into at most one other pool.
+   */
+  private static Map<PoolId, Pool> upgradeTargets(List<Pool> pools) {
+    Map<PoolId, Pool> poolsById = new HashMap<>();
+    pools.forEach(pool -> poolsById.put(pool.id(), pool));
+    Map<PoolId, Pool> upgradeTargets = new HashMap<>();
+    for (Pool pool : pools) {
+      if (!pool.status().equals(PoolStatus.ACTIVE) || pool.upgradeFrom() == null) {
+        continue;
+      }
+      Pool source = poolsById.get(pool.upgradeFrom());
+      if (source != null
+          && source.status().equals(PoolStatus.DEACTIVATED)
+          && upgradeDelta(source, pool).isPresent()) {
+        upgradeTargets.putIfAbsent(source.id(), pool);
+      }
+    }
+    return upgradeTargets;
+  }
+
+  /** Returns the changes upgrading a resource of {@code source} into {@code target} takes. */
+  private static Optional<GcpProjectConfig> upgradeDelta(Pool source, Pool target) {
+    GcpProjectConfig from = source.resourceConfig().getGcpProjectConfig();
+    GcpProjectConfig to = target.resourceConfig().getGcpProjectConfig();
+    if (from == null || to == null) {
+      return Optional.empty();
+    }
+    return GcpProjectConfigDiff.delta(from, to);
+  }
+
+  /** The resources of a pool being upgraded from that will end up in the pool upgraded into. */
+  private static int upgradeSupply(ImmutableMultiset<ResourceState> sourceStates) {
+    return sourceStates.count(ResourceState.READY) + sourceStates.count(ResourceState.UPGRADING);
+  }
+
+  /**
+   * Returns the flights needed for the READY resources of a DEACTIVATED {@code source} pool: as
+   * many upgrades into {@code target} as it still needs, and deletions for the rest.
+   */
+  private List<FlightDemand> upgradeDemands(
+      Pool source,
+      ImmutableMultiset<ResourceState> sourceStates,
+      Pool target,
+      ImmutableMultiset<ResourceState> targetStates) {
+    int targetSupply =
+        targetStates.count(ResourceState.CREATING)
+            + targetStates.count(ResourceState.READY)
+            + targetStates.count(ResourceState.RESERVED)
+            + targetStates.count(ResourceState.RECYCLING);
+    int ready = sourceStates.count(ResourceState.READY);
+    int upgrades =
+        Math.min(
+            ready,
+            Math.max(
+                0,
+                poolAutoscaler.targetSize(target)
+                    - targetSupply
+                    - sourceStates.count(ResourceState.UPGRADING)));
+    logger.info(
+        "Pool id: {} upgrades into pool id: {}, ready: {}, upgrades: {}.",
+        source.id(),
+        target.id(),
+        ready,
+        upgrades);
+    List<FlightDemand> demands = new ArrayList<>();
+    if (upgrades > 0) {
+      demands.add(FlightDemand.create(source, FlightDemand.Type.UPGRADE, upgrades));
+    }
+    if (ready > upgrades) {
+      demands.add(FlightDemand.create(source, FlightDemand.Type.DELETION, ready - upgrades));
+    }
+    return demands;
+  }
+
+  /**
+   * Returns the flights needed to bring the pool to its target size, if any. Creations are capped
+   * by the pool's {@link CreationLimiter} limit on creation flights in progress.
+   *
+   * <p>{@code upgradingSupply} counts the resources of another pool being upgraded into this one.
+   */
+  private Optional<FlightDemand> poolDemand(
+      PoolAndResourceStates poolAndResources,
+      int upgradingSupply,
+      Map<PoolId, Double> creationLimits) {
+    if (poolAndResources.pool().status().equals(PoolStatus.ACTIVE)) {
+      int size = poolAutoscaler.targetSize(poolAndResources.pool());
+      // RESERVED resources are READY resources leased to an instance's handout reservoir, and
+      // RECYCLING resources become READY once scrubbed.
+      int readyAndCreatingCount =
+          poolAndResources.resourceStates().count(ResourceState.CREATING)
+              + poolAndResources.resourceStates().count(ResourceState.READY)
+              + poolAndResources.resourceStates().count(ResourceState.RESERVED)
+              + poolAndResources.resourceStates().count(ResourceState.RECYCLING)
+              + upgradingSupply;
+      logger.info(
+          "Pool id: {}, target size:{}, readyAndCreatingCount: {}.",
+          poolAndResources.pool().id(),
+          size,
+          readyAndCreatingCount);
+      if (size > readyAndCreatingCount) {
+        int creationLimit =
+            creationLimiter.limit(poolAndResources.pool().id(), creationLimits)
+                - poolAndResources.resourceStates().count(ResourceState.CREATING);
+        if (creationLimit <= 0) {
+          logger.info(
+              "Pool id: {} is at its creation limit, skip creation.", poolAndResources.pool().id());
+          return Optional.empty();
+        }
+        return Optional.of(
+            FlightDemand.create(
+                poolAndResources.pool(),
+                FlightDemand.Type.CREATION,
+                Math.min(size - readyAndCreatingCount, creationLimit)));
+      }
+      // Autoscaled pools always give back READY resources once demand has stayed low for the
+      // scale-down delay.
+      int scaleDownSize = poolAutoscaler.scaleDownSize(poolAndResources.pool());
+      if ((primaryConfiguration.isDeleteExcessResources()
+              || poolAndResources.pool().autoscaling() != null)
+          && poolAndResources.resourceStates().count(ResourceState.READY) > scaleDownSize) {
         // Only deletion READY resource, we hope future schedule runs will deletion resources
         // just turns to READY from CREATING.
-        scheduleDeletionFlights(
-            poolAndResources.pool(), poolAndResources.resourceStates().count(ResourceState.READY));
+        return Optional.of(
+            FlightDemand.create(
+                poolAndResources.pool(),
+                FlightDemand.Type.DELETION,
+                poolAndResources.resourceStates().count(ResourceState.READY) - scaleDownSize));
       }
+    } else if (poolAndResources.resourceStates().count(ResourceState.READY) > 0) {
+      // Only deletion READY resource, we hope future schedule runs will deletion resources
+      // just turns to READY from CREATING.
+      return Optional.of(
+          FlightDemand.create(
+              poolAndResources.pool(),
+              FlightDemand.Type.DELETION,
+              poolAndResources.resourceStates().count(ResourceState.READY)));
     }
+    return Optional.empty();
   }
 
-  /** Schedules up to {@code number} of resources creation flight for a pool. */
+  /** Schedules {@code number} of resources creation flight for a pool. */
   private void scheduleCreationFlights(Pool pool, int number) {
-    int flightToSchedule = Math.min(primaryConfiguration.getResourceCreationPerPoolLimit(), number);
     logger.info(
         "Beginning resource creation flights for pool: {}, target submission number: {} .",
         pool.id(),
-        flightToSchedule);
+        number);
 
     int successSubmitNum = 0;
-    while (flightToSchedule-- > 0) {
+    for (int i = 0; i < number; i++) {
       if (flightManager.submitCreationFlight(pool).isPresent()) {
         ++successSubmitNum;
       }
@@ -133,19 +410,40 @@ public class FlightScheduler {
         pool.id());
   }
 
-  /** Schedules up to {@code number} of resources creation flight for a pool. */
-  private void scheduleDeletionFlights(Pool pool, int number) {
-    if (number == 0) {
-      return;
+  /**
+   * Schedules up to {@code number} of flights upgrading READY resources of {@code source} into
+   * {@code target}.
+   */
+  private void scheduleUpgradeFlights(Pool source, Pool target, int number) {
+    logger.info(
+        "Beginning upgrade flights from pool: {} to pool: {}, target submission number: {} .",
+        source.id(),
+        target.id(),
+        number);
+    GcpProjectConfig delta = upgradeDelta(source, target).get();
+    List<Resource> resources =
+        bufferDao.retrieveResourcesRandomly(source.id(), ResourceState.READY, number);
+    int successSubmitNum = 0;
+    for (Resource resource : resources) {
+      if (flightManager.submitUpgradeFlight(target, resource, delta).isPresent()) {
+        ++successSubmitNum;
+      }
     }
-    int flightToSchedule = Math.min(primaryConfiguration.getResourceDeletionPerPoolLimit(), number);
+    logger.info(
+        "Successfully submitted {} number of resource upgrade flights to pool: {} .",
+        successSubmitNum,
+        target.id());
+  }
+
+  /** Schedules up to {@code number} of resources deletion flight for a pool. */
+  private void scheduleDeletionFlights(Pool pool, int number) {
     logger.info(
         "Beginning resource deletion flights for pool: {}, target submission number: {} .",
         pool.id(),
-        flightToSchedule);
+        number);
 
     List<Resource> resources =
-        bufferDao.retrieveResourcesRandomly(pool.id(), ResourceState.READY, flightToSchedule);
+        bufferDao.retrieveResourcesRandomly(pool.id(), ResourceState.READY, number);
     int successSubmitNum = 0;
     for (Resource resource : resources) {
       boolean submissionSuccessful =
@@ -164,31 +462,4 @@ public class FlightScheduler {
     // Don't schedule  anything new during shutdown.
     executor.shutdown();
   }
-
-  /**
-   * Wraps a runnable to log any thrown errors to allow the runnable to still be run with a {@link
-   * ScheduledExecutorService}.
-   *
-   * <p>ScheduledExecutorService scheduled tasks that throw errors stop executing.
-   */
-  private class LogThrowables implements Runnable {
-
-    private final Runnable task;
-
-    private LogThrowables(Runnable task) {
-      this.task = task;
-    }
-
-    @Override
-    public void run() {
-      try {
-        task.run();
-      } catch (Throwable t) {
-        logger.error(
-            "Caught exception in FlightScheduler ScheduledExecutorService. StackTrace:\n"
-                + t.getStackTrace(),
-            t);
-      }
-    }
-  }
 }
@@ -4,6 +4,7 @@ import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.stairway.Flight;
 import bio.terra.stairway.FlightMap;
 import com.google.auto.value.AutoValue;
@@ -16,6 +17,17 @@ public interface FlightSubmissionFactory {
 
   FlightSubmission getDeletionFlightSubmission(Resource resource, ResourceType type);
 
+  /** Returns the flight scrubbing a returned {@code resource} back to the pool's config. */
+  FlightSubmission getRecyclingFlightSubmission(Pool pool, Resource resource);
+
+  /**
+   * Returns the flight upgrading a READY {@code resource} of another pool to {@code pool}'s config
+   * by applying {@code delta}, see {@link
+   * bio.terra.buffer.service.resource.flight.GcpProjectConfigDiff#delta}.
+   */
+  FlightSubmission getUpgradeFlightSubmission(
+      Pool pool, Resource resource, GcpProjectConfig delta);
+
   /** A value class of the parameters needed to submit a new flight to Stairway. */
   @AutoValue
   abstract class FlightSubmission {
@@ -4,8 +4,11 @@ import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.service.resource.flight.GoogleProjectCreationFlight;
 import bio.terra.buffer.service.resource.flight.GoogleProjectDeletionFlight;
+import bio.terra.buffer.service.resource.flight.GoogleProjectRecyclingFlight;
+import bio.terra.buffer.service.resource.flight.GoogleProjectUpgradeFlight;
 import bio.terra.stairway.Flight;
 import bio.terra.stairway.FlightMap;
 import com.google.common.collect.ImmutableMap;
@@ -21,6 +24,14 @@ public class FlightSubmissionFactoryImpl implements FlightSubmissionFactory {
   private static final ImmutableMap<ResourceType, Class<? extends Flight>> DELETION_FLIGHT_MAP =
       ImmutableMap.of(ResourceType.GOOGLE_PROJECT, GoogleProjectDeletionFlight.class);
 
+  /** Supported resource recycling flight map. */
+  private static final ImmutableMap<ResourceType, Class<? extends Flight>> RECYCLING_FLIGHT_MAP =
+      ImmutableMap.of(ResourceType.GOOGLE_PROJECT, GoogleProjectRecyclingFlight.class);
+
+  /** Supported resource upgrade flight map. */
+  private static final ImmutableMap<ResourceType, Class<? extends Flight>> UPGRADE_FLIGHT_MAP =
+      ImmutableMap.of(ResourceType.GOOGLE_PROJECT, GoogleProjectUpgradeFlight.class);
+
   @Override
   public FlightSubmission getCreationFlightSubmission(Pool pool, ResourceId resourceId) {
     if (!CREATION_FLIGHT_MAP.containsKey(pool.resourceType())) {
@@ -47,4 +58,38 @@ public class FlightSubmissionFactoryImpl implements FlightSubmissionFactory {
     flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
     return FlightSubmission.create(DELETION_FLIGHT_MAP.get(type), flightMap);
   }
+
+  @Override
+  public FlightSubmission getRecyclingFlightSubmission(Pool pool, Resource resource) {
+    if (!RECYCLING_FLIGHT_MAP.containsKey(pool.resourceType())) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "Recycling for ResourceType: %s is not supported, PoolId: %s",
+              pool.resourceType(), pool.id()));
+    }
+    FlightMap flightMap = new FlightMap();
+    pool.id().store(flightMap);
+    resource.id().store(flightMap);
+    flightMap.put(FlightMapKeys.RESOURCE_CONFIG, pool.resourceConfig());
+    flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
+    return FlightSubmission.create(RECYCLING_FLIGHT_MAP.get(pool.resourceType()), flightMap);
+  }
+
+  @Override
+  public FlightSubmission getUpgradeFlightSubmission(
+      Pool pool, Resource resource, GcpProjectConfig delta) {
+    if (!UPGRADE_FLIGHT_MAP.containsKey(pool.resourceType())) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "Upgrade for ResourceType: %s is not supported, PoolId: %s",
+              pool.resourceType(), pool.id()));
+    }
+    FlightMap flightMap = new FlightMap();
+    pool.id().store(flightMap);
+    resource.id().store(flightMap);
+    flightMap.put(FlightMapKeys.RESOURCE_CONFIG, pool.resourceConfig());
+    flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
+    flightMap.put(FlightMapKeys.CONFIG_DELTA, delta);
+    return FlightSubmission.create(UPGRADE_FLIGHT_MAP.get(pool.resourceType()), flightMap);
+  }
 }
@@ -0,0 +1,252 @@
+package bio.terra.buffer.service.resource;
+
+import static bio.terra.buffer.common.MetricsHelper.recordOperationPolled;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.FIRST_POLLING_INTERVAL;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.nextPollingInterval;
+
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.cloudres.google.api.services.common.OperationCow;
+import bio.terra.common.stairway.StairwayComponent;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightFilter;
+import bio.terra.stairway.FlightFilterOp;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.RetryException;
+import bio.terra.stairway.exception.StairwayException;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Polls long running cloud operations on behalf of flights, so that steps waiting for an operation
+ * don't hold a Stairway thread.
+ *
+ * <p>A step starts the operation, records it with {@link #startOperation}, then calls {@link
+ * #awaitOperation}. While the operation is running, the step returns {@code STEP_RESULT_WAIT} and
+ * the flight is parked without a thread. The poller checks all outstanding operations in rounds
+ * and resumes the flight once its operation is done, which reruns the step to see the result.
+ *
+ * <p>Flights left waiting after a missed resume, or by an instance that went away, are resumed by a
+ * periodic sweep on the leader. The resumed step polls its operation once and parks the flight
+ * again if needed.
+ */
+@Component
+public class OperationPoller {
+  private final Logger logger = LoggerFactory.getLogger(OperationPoller.class);
+
+  /** How often to check whether outstanding operations are due to be polled. */
+  @VisibleForTesting static final Duration ROUND_PERIOD = Duration.ofMillis(250);
+
+  /** How often to resume all waiting flights regardless of known operations. */
+  @VisibleForTesting static final Duration SWEEP_PERIOD = Duration.ofMinutes(1);
+
+  /** How many waiting flights to resume per sweep. */
+  private static final int SWEEP_LIMIT = 1000;
+
+  /** A single thread is enough, polls are short calls. */
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  private final StairwayComponent stairwayComponent;
+  private final LeaderElection leaderElection;
+  private final Clock clock;
+
+  /** Outstanding operations by the id of the flight waiting for them. */
+  private final Map<String, PendingOperation> pendingOperations = new ConcurrentHashMap<>();
+
+  @Autowired
+  public OperationPoller(
+      StairwayComponent stairwayComponent, LeaderElection leaderElection, Clock clock) {
+    this.stairwayComponent = stairwayComponent;
+    this.leaderElection = leaderElection;
+    this.clock = clock;
+  }
+
+  /** Kicks off polling rounds and the periodic sweep. */
+  public void initialize() {
+    executor.scheduleAtFixedRate(
+        new LogThrowables(OperationPoller.class, this::pollRound),
+        /* initialDelay= */ ROUND_PERIOD.toMillis(),
+        /* period= */ ROUND_PERIOD.toMillis(),
+        TimeUnit.MILLISECONDS);
+    executor.scheduleAtFixedRate(
+        new LogThrowables(OperationPoller.class, this::resumeWaitingFlights),
+        /* initialDelay= */ SWEEP_PERIOD.toMillis(),
+        /* period= */ SWEEP_PERIOD.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /** Returns the name of the operation the step started under {@code key}, if it is still going. */
+  public static Optional<String> pendingOperationName(FlightContext flightContext, String key) {
+    return Optional.ofNullable(flightContext.getWorkingMap().get(key, String.class));
+  }
+
+  /** Records that the step started {@code operation} under {@code key}, before awaiting it. */
+  public void startOperation(FlightContext flightContext, String key, OperationCow<?> operation) {
+    FlightMap workingMap = flightContext.getWorkingMap();
+    workingMap.put(key, operation.getOperationAdapter().getName());
+    workingMap.put(startTimeKey(key), clock.millis());
+  }
+
+  /**
+   * Returns a {@code STEP_RESULT_WAIT} result if the operation started under {@code key} is still
+   * running, after arranging for the flight to be resumed once it is done. Returns empty once the
+   * operation succeeded.
+   *
+   * <p>Throws a {@link RetryException} if the operation failed or did not finish within {@code
+   * timeout}. The operation is forgotten in both cases, so the retried step starts a new one.
+   */
+  public Optional<StepResult> awaitOperation(
+      FlightContext flightContext, String key, OperationCow<?> operation, Duration timeout)
+      throws RetryException {
+    String name = operation.getOperationAdapter().getName();
+    if (isDone(operation)) {
+      forgetOperation(flightContext, key);
+      if (operation.getOperationAdapter().getError() != null) {
+        throw new RetryException(
+            String.format(
+                "Error polling operation. name [%s] message [%s]",
+                name, operation.getOperationAdapter().getError().getMessage()));
+      }
+      return Optional.empty();
+    }
+    Long startMillis = flightContext.getWorkingMap().get(startTimeKey(key), Long.class);
+    if (startMillis != null
+        && clock.instant().isAfter(Instant.ofEpochMilli(startMillis).plus(timeout))) {
+      forgetOperation(flightContext, key);
+      throw new RetryException(String.format("Timed out polling operation. name [%s]", name));
+    }
+    pendingOperations.put(
+        flightContext.getFlightId(),
+        new PendingOperation(operation, clock.instant().plus(FIRST_POLLING_INTERVAL)));
+    return Optional.of(new StepResult(StepStatus.STEP_RESULT_WAIT));
+  }
+
+  @VisibleForTesting
+  int pendingCount() {
+    return pendingOperations.size();
+  }
+
+  /** Polls the operations that are due, and resumes the flights of operations that are done. */
+  @VisibleForTesting
+  void pollRound() {
+    Instant now = clock.instant();
+    for (Map.Entry<String, PendingOperation> entry : pendingOperations.entrySet()) {
+      PendingOperation pending = entry.getValue();
+      if (pending.nextPoll.isAfter(now)) {
+        continue;
+      }
+      if (!isDone(pending.operation)) {
+        try {
+          pending.operation = pending.operation.getOperation();
+          ++pending.polls;
+        } catch (IOException e) {
+          logger.info("Error polling operation for flight {}", entry.getKey(), e);
+        }
+      }
+      if (isDone(pending.operation)) {
+        recordOperationPolled(pending.polls, pending.interval);
+        // The flight may not be parked yet, keep trying until the sweep takes over.
+        if (resume(entry.getKey()) || now.isAfter(pending.created.plus(SWEEP_PERIOD))) {
+          pendingOperations.remove(entry.getKey());
+        }
+      } else {
+        pending.interval = nextPollingInterval(pending.interval, pending.maxInterval);
+      }
+      pending.nextPoll = now.plus(pending.interval);
+    }
+  }
+
+  /**
+   * Resumes every waiting flight, for the ones whose operations no instance tracks. Only the leader
+   * sweeps, so that the instances don't all rerun the same steps.
+   */
+  @VisibleForTesting
+  void resumeWaitingFlights() {
+    if (!leaderElection.isLeader()) {
+      return;
+    }
+    try {
+      for (FlightState flightState :
+          stairwayComponent
+              .get()
+              .getFlights(
+                  0,
+                  SWEEP_LIMIT,
+                  new FlightFilter()
+                      .addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.WAITING))) {
+        if (!pendingOperations.containsKey(flightState.getFlightId())) {
+          resume(flightState.getFlightId());
+        }
+      }
+    } catch (StairwayException e) {
+      logger.warn("Error listing waiting flights", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean resume(String flightId) {
+    try {
+      return stairwayComponent.get().resume(flightId);
+    } catch (StairwayException e) {
+      logger.warn("Error resuming flight {}", flightId, e);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static void forgetOperation(FlightContext flightContext, String key) {
+    flightContext.getWorkingMap().put(key, null);
+    flightContext.getWorkingMap().put(startTimeKey(key), null);
+  }
+
+  private static String startTimeKey(String key) {
+    return key + "StartMillis";
+  }
+
+  private static boolean isDone(OperationCow<?> operation) {
+    return Boolean.TRUE.equals(operation.getOperationAdapter().getDone());
+  }
+
+  /** An operation a flight is waiting for. Only accessed from the polling thread once added. */
+  private class PendingOperation {
+    private final Instant created = clock.instant();
+    /** The longest interval between polls, as the blocking polls in the steps use. */
+    private final Duration maxInterval = Duration.ofSeconds(5);
+
+    private OperationCow<?> operation;
+    private Instant nextPoll;
+    private Duration interval = FIRST_POLLING_INTERVAL;
+    private int polls = 0;
+
+    private PendingOperation(OperationCow<?> operation, Instant nextPoll) {
+      this.operation = operation;
+      this.nextPoll = nextPoll;
+    }
+  }
+}
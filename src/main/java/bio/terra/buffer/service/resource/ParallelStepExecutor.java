@@ -0,0 +1,60 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.service.resource.flight.ParallelStep;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the branches of {@link ParallelStep}s, shared by all flights so that the number of threads
+ * stays bounded however many flights are in progress.
+ *
+ * <p>Branches waiting for a thread are queued, up to the branches of {@code maxConcurrentFlights}
+ * parallel steps. Past that, e.g. with recovered flights the scheduler did not admit, the flight's
+ * own thread runs the branch instead. Tasks must not wait on other tasks of this executor, since
+ * with all threads waiting none would be left to run them, so {@link ParallelStep} rejects nesting.
+ */
+@Component
+public class ParallelStepExecutor {
+  private final ExecutorService executor;
+
+  @Autowired
+  public ParallelStepExecutor(PrimaryConfiguration primaryConfiguration) {
+    int threads = primaryConfiguration.getParallelStepThreads();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(
+                primaryConfiguration.getMaxConcurrentFlights() * ParallelStep.MAX_BRANCHES),
+            new ThreadFactoryBuilder().setNameFormat("parallel-step-%d").setDaemon(true).build(),
+            (task, pool) -> {
+              if (pool.isShutdown()) {
+                throw new RejectedExecutionException("ParallelStepExecutor is shut down");
+              }
+              task.run();
+            });
+  }
+
+  /** Runs {@code tasks} and waits for all of them, see {@link ExecutorService#invokeAll}. */
+  public <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) throws InterruptedException {
+    return executor.invokeAll(tasks);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
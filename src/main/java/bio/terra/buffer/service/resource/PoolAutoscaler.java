@@ -0,0 +1,175 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.app.configuration.AutoscalingConfiguration;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Picks the number of READY and CREATING resources a pool should have. Pools with a {@link
+ * PoolAutoscalingConfig} keep enough resources to cover the handouts expected while a new resource
+ * is being created, times the pool's safety margin, within the pool's bounds. Other pools keep
+ * {@link Pool#size()}.
+ *
+ * <p>Autoscaled pools only shrink to {@link #scaleDownSize(Pool)}, the largest target size over
+ * the last {@link AutoscalingConfiguration#getScaleDownDelay()}.
+ */
+@Component
+public class PoolAutoscaler {
+  private final Logger logger = LoggerFactory.getLogger(PoolAutoscaler.class);
+
+  /** The safety margin of pools that don't set one, same as the API default. */
+  private static final double DEFAULT_SAFETY_MARGIN = 1.5;
+
+  private final AutoscalingConfiguration autoscalingConfiguration;
+  private final BufferDao bufferDao;
+  private final Clock clock;
+
+  /**
+   * Target sizes computed for each autoscaled pool, oldest first. Keeps the newest size computed
+   * before the scale-down delay and all sizes after it.
+   */
+  private final Map<PoolId, Deque<TargetSize>> recentTargetSizes = new ConcurrentHashMap<>();
+
+  @Autowired
+  public PoolAutoscaler(
+      AutoscalingConfiguration autoscalingConfiguration, BufferDao bufferDao, Clock clock) {
+    this.autoscalingConfiguration = autoscalingConfiguration;
+    this.bufferDao = bufferDao;
+    this.clock = clock;
+  }
+
+  /** Returns the target size of the pool. */
+  public int targetSize(Pool pool) {
+    PoolAutoscalingConfig autoscaling = pool.autoscaling();
+    if (autoscaling == null) {
+      return pool.size();
+    }
+    Instant now = clock.instant();
+    Optional<Duration> creationLatency =
+        bufferDao.retrieveCreationLatency(
+            pool.id(), now.minus(autoscalingConfiguration.getCreationLatencyWindow()));
+    if (creationLatency.isEmpty()) {
+      // Nothing was created recently, so there's no basis to scale on yet.
+      return record(pool.id(), clamp(pool.size(), autoscaling), now);
+    }
+    List<Integer> handoutCounts =
+        bufferDao.retrieveHandoutCounts(
+            pool.id(),
+            now.minus(autoscalingConfiguration.getHandoutWindow()),
+            now,
+            autoscalingConfiguration.getBucketWidth());
+    int targetSize =
+        computeTargetSize(
+            handoutCounts,
+            autoscalingConfiguration.getSmoothingFactor(),
+            autoscalingConfiguration.getBucketWidth(),
+            creationLatency.get(),
+            autoscaling);
+    logger.info(
+        "Pool id: {}, creation latency: {}, target size: {}.",
+        pool.id(),
+        creationLatency.get(),
+        targetSize);
+    return record(pool.id(), targetSize, now);
+  }
+
+  /**
+   * Returns the size the pool may shrink to. For autoscaled pools, that is the largest target size
+   * over the last scale-down delay, and no shrinking at all until this instance has computed
+   * target sizes for that long, e.g. after becoming the leader.
+   */
+  public int scaleDownSize(Pool pool) {
+    if (pool.autoscaling() == null) {
+      return pool.size();
+    }
+    Deque<TargetSize> targetSizes = recentTargetSizes.get(pool.id());
+    if (targetSizes == null) {
+      return Integer.MAX_VALUE;
+    }
+    Instant delayStart = clock.instant().minus(autoscalingConfiguration.getScaleDownDelay());
+    synchronized (targetSizes) {
+      prune(targetSizes, delayStart);
+      if (targetSizes.getFirst().time.isAfter(delayStart)) {
+        return Integer.MAX_VALUE;
+      }
+      return targetSizes.stream().mapToInt(targetSize -> targetSize.size).max().getAsInt();
+    }
+  }
+
+  private int record(PoolId poolId, int size, Instant now) {
+    Deque<TargetSize> targetSizes =
+        recentTargetSizes.computeIfAbsent(poolId, id -> new ArrayDeque<>());
+    synchronized (targetSizes) {
+      targetSizes.addLast(new TargetSize(now, size));
+      prune(targetSizes, now.minus(autoscalingConfiguration.getScaleDownDelay()));
+    }
+    return size;
+  }
+
+  /** Drops the sizes superseded before {@code delayStart}. */
+  private static void prune(Deque<TargetSize> targetSizes, Instant delayStart) {
+    while (targetSizes.size() > 1) {
+      TargetSize oldest = targetSizes.removeFirst();
+      if (targetSizes.getFirst().time.isAfter(delayStart)) {
+        targetSizes.addFirst(oldest);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Computes the target size from the handout counts per {@code bucketWidth}, oldest first, and
+   * the time it takes to create a resource.
+   */
+  @VisibleForTesting
+  static int computeTargetSize(
+      List<Integer> handoutCounts,
+      double smoothingFactor,
+      Duration bucketWidth,
+      Duration creationLatency,
+      PoolAutoscalingConfig autoscaling) {
+    double handoutsPerBucket = 0;
+    boolean first = true;
+    for (int count : handoutCounts) {
+      handoutsPerBucket =
+          first ? count : smoothingFactor * count + (1 - smoothingFactor) * handoutsPerBucket;
+      first = false;
+    }
+    double expectedHandouts =
+        handoutsPerBucket * creationLatency.toMillis() / bucketWidth.toMillis();
+    double safetyMargin =
+        autoscaling.getSafetyMargin() == null ? DEFAULT_SAFETY_MARGIN : autoscaling.getSafetyMargin();
+    return clamp((int) Math.ceil(expectedHandouts * safetyMargin), autoscaling);
+  }
+
+  private static int clamp(int size, PoolAutoscalingConfig autoscaling) {
+    return Math.max(autoscaling.getMinSize(), Math.min(autoscaling.getMaxSize(), size));
+  }
+
+  /** A target size computed at {@code time}. */
+  private static class TargetSize {
+    private final Instant time;
+    private final int size;
+
+    private TargetSize(Instant time, int size) {
+      this.time = time;
+      this.size = size;
+    }
+  }
+}
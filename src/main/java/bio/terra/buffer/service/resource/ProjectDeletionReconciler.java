@@ -0,0 +1,163 @@
+package bio.terra.buffer.service.resource;
+
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.isProjectDeleting;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.common.ProjectDeletion;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import com.google.api.services.cloudresourcemanager.v3.model.ListProjectsResponse;
+import com.google.api.services.cloudresourcemanager.v3.model.Operation;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Requests GCP project deletions without waiting for them, and confirms them in the background.
+ *
+ * <p>Deleting a project only marks it DELETE_REQUESTED, nothing of ours waits on it. So instead of
+ * blocking a flight thread polling the delete operation, {@link #deleteProject} records a
+ * tombstone in the project_deletion table next to the request. The leader periodically lists the
+ * projects under each parent with tombstones, drops the tombstones of projects that are deleting
+ * or gone, and requests the deletion again for projects still active well after the request.
+ *
+ * <p>Dropping a tombstone also marks the project's resource DELETED if it is still DELETING, e.g.
+ * after a failed upgrade, see {@link
+ * bio.terra.buffer.service.resource.flight.UndoUpgradingResourceStep}.
+ */
+@Component
+public class ProjectDeletionReconciler {
+  private final Logger logger = LoggerFactory.getLogger(ProjectDeletionReconciler.class);
+
+  /** How many tombstones to confirm per run, the rest wait for the next run. */
+  private static final int TOMBSTONES_PER_RUN = 1000;
+
+  /** How long after a request an active project is taken to mean the delete did not take. */
+  @VisibleForTesting static final Duration DELETE_GRACE_PERIOD = Duration.ofMinutes(5);
+
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  private final PrimaryConfiguration primaryConfiguration;
+  private final BufferDao bufferDao;
+  private final CloudResourceManagerCow rmCow;
+  private final LeaderElection leaderElection;
+  private final Clock clock;
+
+  @Autowired
+  public ProjectDeletionReconciler(
+      PrimaryConfiguration primaryConfiguration,
+      BufferDao bufferDao,
+      CloudResourceManagerCow rmCow,
+      LeaderElection leaderElection,
+      Clock clock) {
+    this.primaryConfiguration = primaryConfiguration;
+    this.bufferDao = bufferDao;
+    this.rmCow = rmCow;
+    this.leaderElection = leaderElection;
+    this.clock = clock;
+  }
+
+  /** Initialize the ProjectDeletionReconciler, kicking off its task. */
+  public void initialize() {
+    long periodMillis = primaryConfiguration.getProjectDeletionReconciliationPeriod().toMillis();
+    executor.scheduleAtFixedRate(
+        new LogThrowables(ProjectDeletionReconciler.class, this::reconcile),
+        /* initialDelay= */ periodMillis,
+        /* period= */ periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // Don't schedule  anything new during shutdown.
+    executor.shutdown();
+  }
+
+  /** Requests the deletion of {@code project} and records a tombstone to confirm it later. */
+  public void deleteProject(Project project) throws IOException {
+    deleteProject(project.getProjectId(), project.getParent());
+  }
+
+  private void deleteProject(String projectId, String parent) throws IOException {
+    Operation operation = rmCow.projects().delete(projectId).execute();
+    bufferDao.upsertProjectDeletion(projectId, parent, operation.getName());
+  }
+
+  /** Confirms the oldest tombstones, one listing per parent. */
+  @VisibleForTesting
+  void reconcile() {
+    if (!leaderElection.isLeader()) {
+      return;
+    }
+    Map<String, List<ProjectDeletion>> deletionsByParent =
+        bufferDao.retrieveProjectDeletions(TOMBSTONES_PER_RUN).stream()
+            .collect(Collectors.groupingBy(ProjectDeletion::parent));
+    for (Map.Entry<String, List<ProjectDeletion>> entry : deletionsByParent.entrySet()) {
+      Map<String, Project> projects;
+      try {
+        projects = listProjects(entry.getKey());
+      } catch (IOException e) {
+        logger.info("Error listing projects under {}", entry.getKey(), e);
+        continue;
+      }
+      List<String> confirmed = new ArrayList<>();
+      for (ProjectDeletion deletion : entry.getValue()) {
+        Project project = projects.get(deletion.projectId());
+        if (project == null || isProjectDeleting(project)) {
+          confirmed.add(deletion.projectId());
+        } else if (clock.instant().isAfter(deletion.requested().plus(DELETE_GRACE_PERIOD))) {
+          logger.warn(
+              "Project {} is still active after delete operation {}, deleting it again",
+              deletion.projectId(),
+              deletion.operationName());
+          try {
+            deleteProject(deletion.projectId(), deletion.parent());
+          } catch (IOException e) {
+            logger.info("Error deleting GCP project {}", deletion.projectId(), e);
+          }
+        }
+      }
+      bufferDao.updateDeletingResourcesAsDeleted(confirmed, clock.instant());
+      int removed = bufferDao.deleteProjectDeletions(confirmed);
+      logger.debug("Confirmed {} project deletions under {}.", removed, entry.getKey());
+    }
+  }
+
+  /** Returns the projects under {@code parent} by id, including the ones being deleted. */
+  private Map<String, Project> listProjects(String parent) throws IOException {
+    Map<String, Project> projects = new HashMap<>();
+    String pageToken = null;
+    do {
+      ListProjectsResponse response =
+          rmCow
+              .projects()
+              .list()
+              .setParent(parent)
+              .setShowDeleted(true)
+              .setPageToken(pageToken)
+              .execute();
+      if (response.getProjects() != null) {
+        response.getProjects().forEach(project -> projects.put(project.getProjectId(), project));
+      }
+      pageToken = response.getNextPageToken();
+    } while (pageToken != null && !pageToken.isEmpty());
+    return projects;
+  }
+}
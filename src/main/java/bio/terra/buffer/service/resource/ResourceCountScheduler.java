@@ -0,0 +1,77 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.LogThrowables;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.leader.LeaderElection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically maintains the per pool resource state counts read by {@link FlightScheduler} and
+ * pool info: folds pending changes into the counts, and repairs the counts if they ever drift from
+ * the resource table.
+ */
+@Component
+public class ResourceCountScheduler {
+  private final Logger logger = LoggerFactory.getLogger(ResourceCountScheduler.class);
+
+  /** Both tasks take the same table lock, no point running them on separate threads. */
+  private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+  private final PrimaryConfiguration primaryConfiguration;
+  private final BufferDao bufferDao;
+  private final LeaderElection leaderElection;
+
+  @Autowired
+  public ResourceCountScheduler(
+      PrimaryConfiguration primaryConfiguration,
+      BufferDao bufferDao,
+      LeaderElection leaderElection) {
+    this.primaryConfiguration = primaryConfiguration;
+    this.bufferDao = bufferDao;
+    this.leaderElection = leaderElection;
+  }
+
+  /** Initialize the ResourceCountScheduler, kicking off its tasks. */
+  public void initialize() {
+    executor.scheduleAtFixedRate(
+        new LogThrowables(ResourceCountScheduler.class, this::compact),
+        /* initialDelay= */ primaryConfiguration.getResourceCountCompactionPeriod().toMillis(),
+        /* period= */ primaryConfiguration.getResourceCountCompactionPeriod().toMillis(),
+        TimeUnit.MILLISECONDS);
+    executor.scheduleAtFixedRate(
+        new LogThrowables(ResourceCountScheduler.class, this::reconcile),
+        /* initialDelay= */ primaryConfiguration.getResourceCountReconciliationPeriod().toMillis(),
+        /* period= */ primaryConfiguration.getResourceCountReconciliationPeriod().toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void compact() {
+    if (!leaderElection.isLeader()) {
+      return;
+    }
+    int compacted = bufferDao.compactResourceStateCounts();
+    logger.debug("Compacted {} resource state changes.", compacted);
+  }
+
+  private void reconcile() {
+    if (!leaderElection.isLeader()) {
+      return;
+    }
+    int drifted = bufferDao.reconcileResourceStateCounts();
+    if (drifted > 0) {
+      logger.warn("Repaired {} drifted resource state counts.", drifted);
+    }
+  }
+
+  public void shutdown() {
+    // Don't schedule  anything new during shutdown.
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,135 @@
+package bio.terra.buffer.service.resource;
+
+import bio.terra.buffer.app.configuration.BufferDatabaseConfiguration;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listens to the resource_ready and resource_consumed notifications sent by the resource table
+ * trigger on commit, and passes the pool ids on to {@link HandoutWaitQueue} and {@link
+ * FlightScheduler} so that they react right away instead of on their next poll.
+ *
+ * <p>Notifications sent while the listening connection is down are lost. The periodic polls stay
+ * as the safety net.
+ */
+@Component
+public class ResourceStateListener {
+  private final Logger logger = LoggerFactory.getLogger(ResourceStateListener.class);
+
+  private static final String RESOURCE_READY_CHANNEL = "resource_ready";
+  private static final String RESOURCE_CONSUMED_CHANNEL = "resource_consumed";
+
+  /** How long to block waiting for notifications, and so how long shutdown may take. */
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+  /** How often to check that an idle connection is still alive. */
+  private static final Duration KEEP_ALIVE_PERIOD = Duration.ofMinutes(1);
+
+  /** How long to wait before reconnecting after the connection fails. */
+  private static final Duration RECONNECT_DELAY = Duration.ofSeconds(10);
+
+  /** A dedicated thread holding the listening connection. */
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private final BufferDatabaseConfiguration bufferDatabaseConfiguration;
+  private final HandoutWaitQueue handoutWaitQueue;
+  private final FlightScheduler flightScheduler;
+
+  private volatile boolean running = false;
+
+  @Autowired
+  public ResourceStateListener(
+      BufferDatabaseConfiguration bufferDatabaseConfiguration,
+      HandoutWaitQueue handoutWaitQueue,
+      FlightScheduler flightScheduler) {
+    this.bufferDatabaseConfiguration = bufferDatabaseConfiguration;
+    this.handoutWaitQueue = handoutWaitQueue;
+    this.flightScheduler = flightScheduler;
+  }
+
+  /** Starts listening. The database schema must be up to date before calling this. */
+  public void initialize() {
+    running = true;
+    executor.execute(this::listenUntilShutdown);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    executor.shutdown();
+  }
+
+  private void listenUntilShutdown() {
+    while (running) {
+      try {
+        listen();
+      } catch (SQLException | RuntimeException e) {
+        logger.error("Lost the resource state notification connection, reconnecting.", e);
+        try {
+          Thread.sleep(RECONNECT_DELAY.toMillis());
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /** Listens on one connection until it fails or the listener shuts down. */
+  private void listen() throws SQLException {
+    try (Connection connection = bufferDatabaseConfiguration.getDataSource().getConnection()) {
+      connection.setAutoCommit(true);
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("LISTEN " + RESOURCE_READY_CHANNEL);
+        statement.execute("LISTEN " + RESOURCE_CONSUMED_CHANNEL);
+      }
+      logger.info("Listening to resource state notifications.");
+      PGConnection pgConnection = connection.unwrap(PGConnection.class);
+      long lastKeepAliveNanos = System.nanoTime();
+      while (running) {
+        PGNotification[] notifications =
+            pgConnection.getNotifications((int) POLL_TIMEOUT.toMillis());
+        if (notifications != null) {
+          dispatch(notifications);
+        }
+        if (System.nanoTime() - lastKeepAliveNanos > KEEP_ALIVE_PERIOD.toNanos()) {
+          try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+          }
+          lastKeepAliveNanos = System.nanoTime();
+        }
+      }
+    }
+  }
+
+  /** Passes on each pool id once per batch, however many resources changed. */
+  private void dispatch(PGNotification[] notifications) {
+    Set<PoolId> readyPools = new HashSet<>();
+    Set<PoolId> consumedPools = new HashSet<>();
+    for (PGNotification notification : notifications) {
+      PoolId poolId = PoolId.create(notification.getParameter());
+      if (RESOURCE_READY_CHANNEL.equals(notification.getName())) {
+        readyPools.add(poolId);
+      } else if (RESOURCE_CONSUMED_CHANNEL.equals(notification.getName())) {
+        consumedPools.add(poolId);
+      }
+    }
+    readyPools.forEach(handoutWaitQueue::notifyResourceReady);
+    consumedPools.forEach(flightScheduler::onResourceConsumed);
+  }
+}
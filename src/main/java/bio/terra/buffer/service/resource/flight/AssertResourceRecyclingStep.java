@@ -0,0 +1,50 @@
+package bio.terra.buffer.service.resource.flight;
+
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.common.ResourceState;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks if resource exists and in RECYCLING state before scrubbing it. It may happen when
+ * submitting flight success but updating DB fails.
+ *
+ * <p>Its undo puts the resource back to HANDED_OUT, so that a resource that could not be scrubbed
+ * is cleaned up like any other handed out resource instead of being handed out again.
+ */
+public class AssertResourceRecyclingStep implements Step {
+  private final Logger logger = LoggerFactory.getLogger(AssertResourceRecyclingStep.class);
+
+  private final BufferDao bufferDao;
+
+  public AssertResourceRecyclingStep(BufferDao bufferDao) {
+    this.bufferDao = bufferDao;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    Optional<Resource> resource =
+        bufferDao.retrieveResource(ResourceId.retrieve(flightContext.getInputParameters()));
+    if (resource.isPresent() && resource.get().state().equals(ResourceState.RECYCLING)) {
+      return StepResult.getStepResultSuccess();
+    }
+    logger.warn("Resource {} does not exist or not in RECYCLING state", resource);
+    // Retry this steps to avoid the potential race that "submitting Flight and update DB"
+    // transaction does not complete but the flight begins and it reaches here.
+    return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY);
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    bufferDao.updateRecyclingResourceToHandedOut(
+        ResourceId.retrieve(flightContext.getInputParameters()));
+    return StepResult.getStepResultSuccess();
+  }
+}
@@ -0,0 +1,172 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.nextPollingInterval;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.withJitter;
+
+import bio.terra.buffer.service.resource.flight.CloudErrorClassifier.ErrorClass;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.RetryRule;
+import bio.terra.stairway.StepResult;
+import com.google.common.collect.ImmutableList;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * A {@link RetryRule} for cloud steps that waits according to why the step failed, see {@link
+ * CloudErrorClassifier}:
+ *
+ * <ul>
+ *   <li>{@link ErrorClass#RETRY_SOON}: exponential backoff with jitter, so a blip costs seconds.
+ *   <li>{@link ErrorClass#RETRY_AFTER_QUOTA_WINDOW}: waits for a quota window with jitter, so
+ *       flights limited together don't all retry together.
+ *   <li>{@link ErrorClass#RETRY_FEW}: like {@link ErrorClass#RETRY_SOON}, up to {@link
+ *       Builder#maxFewCount} times.
+ *   <li>{@link ErrorClass#FAIL_FAST}: no retry.
+ * </ul>
+ *
+ * <p>Steps may override the classification of specific errors, see {@link Builder#override}.
+ */
+public class CloudApiRetryRule implements RetryRule {
+  private final Duration initialInterval;
+  private final Duration maxInterval;
+  private final Duration quotaWindow;
+  private final int maxCount;
+  private final int maxFewCount;
+  private final ImmutableList<ClassificationOverride> overrides;
+
+  private Duration interval;
+  private int retryCount;
+  private int fewRetryCount;
+
+  private CloudApiRetryRule(Builder builder) {
+    this.initialInterval = builder.initialInterval;
+    this.maxInterval = builder.maxInterval;
+    this.quotaWindow = builder.quotaWindow;
+    this.maxCount = builder.maxCount;
+    this.maxFewCount = builder.maxFewCount;
+    this.overrides = builder.overrides.build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public void initialize() {
+    interval = initialInterval;
+    retryCount = 0;
+    fewRetryCount = 0;
+  }
+
+  @Override
+  public boolean retrySleep(FlightContext flightContext) throws InterruptedException {
+    return retrySleep(flightContext.getResult());
+  }
+
+  /**
+   * Like {@link #retrySleep(FlightContext)}, for a step whose {@code result} is not on the flight
+   * context, e.g. a step of a {@link ParallelStep} branch.
+   */
+  public boolean retrySleep(StepResult result) throws InterruptedException {
+    if (retryCount >= maxCount) {
+      return false;
+    }
+    Duration sleep;
+    switch (classify(result)) {
+      case FAIL_FAST:
+        return false;
+      case RETRY_AFTER_QUOTA_WINDOW:
+        sleep = withJitter(quotaWindow);
+        break;
+      case RETRY_FEW:
+        if (fewRetryCount >= maxFewCount) {
+          return false;
+        }
+        ++fewRetryCount;
+        // Fall through, retried like a transient error.
+      default:
+        sleep = withJitter(interval);
+        interval = nextPollingInterval(interval, maxInterval);
+    }
+    ++retryCount;
+    TimeUnit.MILLISECONDS.sleep(sleep.toMillis());
+    return true;
+  }
+
+  private ErrorClass classify(StepResult result) {
+    Optional<Exception> exception = result == null ? Optional.empty() : result.getException();
+    if (exception.isEmpty()) {
+      // Steps asking for a retry without an error, e.g. waiting on state, retry soon.
+      return ErrorClass.RETRY_SOON;
+    }
+    for (ClassificationOverride override : overrides) {
+      if (override.matches.test(exception.get())) {
+        return override.errorClass;
+      }
+    }
+    return CloudErrorClassifier.classify(exception.get());
+  }
+
+  /** A step specific classification, taking precedence over {@link CloudErrorClassifier}. */
+  private static class ClassificationOverride {
+    private final Predicate<Exception> matches;
+    private final ErrorClass errorClass;
+
+    private ClassificationOverride(Predicate<Exception> matches, ErrorClass errorClass) {
+      this.matches = matches;
+      this.errorClass = errorClass;
+    }
+  }
+
+  /** Builder for {@link CloudApiRetryRule}. */
+  public static class Builder {
+    private Duration initialInterval = Duration.ofSeconds(2);
+    private Duration maxInterval = Duration.ofSeconds(60);
+    private Duration quotaWindow = Duration.ofSeconds(60);
+    private int maxCount = 10;
+    private int maxFewCount = 3;
+    private final ImmutableList.Builder<ClassificationOverride> overrides = ImmutableList.builder();
+
+    /** The wait before the first retry of a transient error, doubled for each retry after. */
+    public Builder initialInterval(Duration initialInterval) {
+      this.initialInterval = initialInterval;
+      return this;
+    }
+
+    /** The longest wait between retries of transient errors. */
+    public Builder maxInterval(Duration maxInterval) {
+      this.maxInterval = maxInterval;
+      return this;
+    }
+
+    /** The wait before retrying a rate limited step. */
+    public Builder quotaWindow(Duration quotaWindow) {
+      this.quotaWindow = quotaWindow;
+      return this;
+    }
+
+    /** The most retries of a step, whatever the errors. */
+    public Builder maxCount(int maxCount) {
+      this.maxCount = maxCount;
+      return this;
+    }
+
+    /** The most retries of a step for {@link ErrorClass#RETRY_FEW} errors. */
+    public Builder maxFewCount(int maxFewCount) {
+      this.maxFewCount = maxFewCount;
+      return this;
+    }
+
+    /** Classifies errors matching {@code matches} as {@code errorClass} for this step. */
+    public Builder override(Predicate<Exception> matches, ErrorClass errorClass) {
+      overrides.add(new ClassificationOverride(matches, errorClass));
+      return this;
+    }
+
+    public CloudApiRetryRule build() {
+      return new CloudApiRetryRule(this);
+    }
+  }
+}
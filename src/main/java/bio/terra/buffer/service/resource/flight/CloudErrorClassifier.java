@@ -0,0 +1,59 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.isRateLimited;
+
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+
+/** Classifies errors from cloud steps by how a retry should treat them. */
+public class CloudErrorClassifier {
+  /** How to treat a failed step. */
+  public enum ErrorClass {
+    /** Transient errors, e.g. 5xx or a network blip. Likely to succeed after a short wait. */
+    RETRY_SOON,
+    /** Rate limited by Google or by our own quota budget. Worth retrying once quota refills. */
+    RETRY_AFTER_QUOTA_WINDOW,
+    /**
+     * Usually permanent errors that may be transient, e.g. a permission denied until a grant made
+     * right before propagates. Retried soon, but only a few times.
+     */
+    RETRY_FEW,
+    /** Permanent errors, e.g. a bad request. Retrying won't help. */
+    FAIL_FAST,
+  }
+
+  /**
+   * Classifies an exception a cloud step failed with. Anything not recognized as a permanent Google
+   * API error is retried soon, as the fixed interval retry rule used to do.
+   */
+  public static ErrorClass classify(Exception e) {
+    if (e instanceof QuotaExhaustedException || isRateLimited(e)) {
+      return ErrorClass.RETRY_AFTER_QUOTA_WINDOW;
+    }
+    if (!(e instanceof GoogleJsonResponseException)) {
+      return ErrorClass.RETRY_SOON;
+    }
+    GoogleJsonResponseException jsonException = (GoogleJsonResponseException) e;
+    switch (jsonException.getStatusCode()) {
+      case 400:
+      case 401:
+      case 405:
+      case 501:
+        return ErrorClass.FAIL_FAST;
+      case 403:
+        // Right after a service is enabled, calls to it are rejected until enablement propagates.
+        // Other permission errors are mostly permanent, but also happen until a grant propagates.
+        return hasReason(jsonException, "accessNotConfigured")
+            ? ErrorClass.RETRY_SOON
+            : ErrorClass.RETRY_FEW;
+      default:
+        return ErrorClass.RETRY_SOON;
+    }
+  }
+
+  private static boolean hasReason(GoogleJsonResponseException e, String reason) {
+    return e.getDetails() != null
+        && e.getDetails().getErrors() != null
+        && e.getDetails().getErrors().stream().anyMatch(error -> reason.equals(error.getReason()));
+  }
+}
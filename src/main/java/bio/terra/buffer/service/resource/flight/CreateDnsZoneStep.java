@@ -1,10 +1,14 @@
 package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.networkSelfLink;
 import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isNetworkMonitoringEnabled;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.service.quota.QuotaBucket;
+import bio.terra.buffer.service.quota.QuotaBudget;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.cloudres.google.dns.DnsCow;
 import bio.terra.stairway.FlightContext;
@@ -12,7 +16,6 @@ import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
-import com.google.api.services.compute.model.Network;
 import com.google.api.services.dns.model.*;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
@@ -42,12 +45,17 @@ public class CreateDnsZoneStep implements Step {
   private final CloudComputeCow computeCow;
   private final DnsCow dnsCow;
   private final GcpProjectConfig gcpProjectConfig;
+  private final QuotaBudget quotaBudget;
 
   public CreateDnsZoneStep(
-      CloudComputeCow computeCow, DnsCow dnsCow, GcpProjectConfig gcpProjectConfig) {
+      CloudComputeCow computeCow,
+      DnsCow dnsCow,
+      GcpProjectConfig gcpProjectConfig,
+      QuotaBudget quotaBudget) {
     this.computeCow = computeCow;
     this.dnsCow = dnsCow;
     this.gcpProjectConfig = gcpProjectConfig;
+    this.quotaBudget = quotaBudget;
   }
 
   @Override
@@ -59,9 +67,7 @@ public class CreateDnsZoneStep implements Step {
     try {
       // Network is already created and checked in previous step so here won't be empty.
       // If we got NPE, that means something went wrong with GCP, fine to just throw NPE here.
-      Network network =
-          getResource(() -> computeCow.networks().get(projectId, NETWORK_NAME).execute(), 404)
-              .get();
+      String networkSelfLink = networkSelfLink(flightContext, computeCow);
 
       // Skip ManagedZone creation if ManagedZone already present.
       ManagedZone managedZone =
@@ -70,11 +76,12 @@ public class CreateDnsZoneStep implements Step {
                   .setNetworks(
                       ImmutableList.of(
                           new ManagedZonePrivateVisibilityConfigNetwork()
-                              .setNetworkUrl(network.getSelfLink()))));
+                              .setNetworkUrl(networkSelfLink))));
 
+      quotaBudget.acquire(QuotaBucket.DNS_WRITE, 1);
       createResourceAndIgnoreConflict(
           () -> dnsCow.managedZones().create(projectId, managedZone).execute());
-    } catch (IOException e) {
+    } catch (IOException | InterruptedException | QuotaExhaustedException e) {
       logger.info("Error when configuring DNS ", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
     }
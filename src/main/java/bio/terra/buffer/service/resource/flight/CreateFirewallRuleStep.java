@@ -1,26 +1,31 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.service.resource.FlightMapKeys.CREATED_FIREWALL_RULES;
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.networkSelfLink;
 import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.keepDefaultNetwork;
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.subnetRegionToIpRange;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
 import bio.terra.buffer.generated.model.GcpProjectConfig;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
 import com.google.api.services.compute.model.Firewall;
 import com.google.api.services.compute.model.Network;
+import com.google.api.services.compute.model.Operation;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,33 +49,38 @@ public class CreateFirewallRuleStep implements Step {
   public static final String LEONARDO_SSL_RULE_NAME_FOR_DEFAULT =
       DEFAULT_NETWORK_NAME + "-vpc-" + LEONARDO_SSL_RULE_NAME_FOR_NETWORK;
 
+  /** The IP range of the subnets of an auto mode network, like the default network. */
+  @VisibleForTesting public static final String AUTO_MODE_NETWORK_IP_RANGE = "10.128.0.0/9";
+
   private final Logger logger = LoggerFactory.getLogger(CreateFirewallRuleStep.class);
   private final CloudComputeCow computeCow;
+  private final Compute compute;
   private final GcpProjectConfig gcpProjectConfig;
-
-  public CreateFirewallRuleStep(CloudComputeCow computeCow, GcpProjectConfig gcpProjectConfig) {
+  public CreateFirewallRuleStep(
+      CloudComputeCow computeCow, Compute compute, GcpProjectConfig gcpProjectConfig) {
     this.computeCow = computeCow;
+    this.compute = compute;
     this.gcpProjectConfig = gcpProjectConfig;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) throws RetryException {
     String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    // The names of the rules created, so that a retry skips them.
+    StepCheckpoint checkpoint = new StepCheckpoint(flightContext, CREATED_FIREWALL_RULES);
     try {
-      // Keep track of operations to poll for completion.
-      List<OperationCow<?>> operationsToPoll = new ArrayList<>();
+      // Rules to insert in one batch.
+      List<Firewall> rules = new ArrayList<>();
 
       // Network is already created and checked in previous step so here won't be empty.
       // If we got NPE, that means something went wrong with GCP, fine to just throw NPE here.
-      Network highSecurityNetwork =
-          getResource(() -> computeCow.networks().get(projectId, NETWORK_NAME).execute(), 404)
-              .get();
-      Firewall allowInternalRuleForNetwork =
-          buildAllowInternalFirewallRule(highSecurityNetwork, ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK);
-      Firewall leonardoSslRuleForNetwork =
-          buildLeonardoSslFirewallRule(highSecurityNetwork, LEONARDO_SSL_RULE_NAME_FOR_NETWORK);
-      addFirewallRule(projectId, allowInternalRuleForNetwork).ifPresent(operationsToPoll::add);
-      addFirewallRule(projectId, leonardoSslRuleForNetwork).ifPresent(operationsToPoll::add);
+      String networkSelfLink = networkSelfLink(flightContext, computeCow);
+      rules.add(
+          buildAllowInternalFirewallRule(
+              networkSelfLink,
+              ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK,
+              ImmutableList.copyOf(subnetRegionToIpRange(gcpProjectConfig).values())));
+      rules.add(buildLeonardoSslFirewallRule(networkSelfLink, LEONARDO_SSL_RULE_NAME_FOR_NETWORK));
 
       // TODO(PF-538): revisit whether we still need this flag after NF allows specifying a network
       // If the default network was not deleted, then create identical firewall rules for it.
@@ -79,17 +89,30 @@ public class CreateFirewallRuleStep implements Step {
             getResource(
                     () -> computeCow.networks().get(projectId, DEFAULT_NETWORK_NAME).execute(), 404)
                 .get();
-        Firewall allowInternalRuleForDefault =
-            buildAllowInternalFirewallRule(defaultNetwork, ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT);
-        Firewall leonardoSslRuleForDefault =
-            buildLeonardoSslFirewallRule(defaultNetwork, LEONARDO_SSL_RULE_NAME_FOR_DEFAULT);
-        addFirewallRule(projectId, allowInternalRuleForDefault).ifPresent(operationsToPoll::add);
-        addFirewallRule(projectId, leonardoSslRuleForDefault).ifPresent(operationsToPoll::add);
+        rules.add(
+            buildAllowInternalFirewallRule(
+                defaultNetwork.getSelfLink(),
+                ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT,
+                ImmutableList.of(AUTO_MODE_NETWORK_IP_RANGE)));
+        rules.add(
+            buildLeonardoSslFirewallRule(
+                defaultNetwork.getSelfLink(), LEONARDO_SSL_RULE_NAME_FOR_DEFAULT));
       }
 
-      for (OperationCow<?> operation : operationsToPoll) {
-        pollUntilSuccess(operation, Duration.ofSeconds(3), Duration.ofMinutes(5));
+      Map<String, Compute.Firewalls.Insert> inserts = new LinkedHashMap<>();
+      for (Firewall rule : rules) {
+        if (!checkpoint.isCompleted(rule.getName())) {
+          inserts.put(rule.getName(), compute.firewalls().insert(projectId, rule));
+        }
       }
+      // Rules that already exist are skipped, there is nothing to poll for them.
+      BatchResult<String, Operation> batch = executeBatch(compute, inserts, 409);
+      checkpoint.completeAll(batch.tolerated());
+      for (Map.Entry<String, Operation> insert : batch.results().entrySet()) {
+        waitForComputeOperation(compute, projectId, insert.getValue(), Duration.ofMinutes(5));
+        checkpoint.complete(insert.getKey());
+      }
+      batch.throwIfFailed();
     } catch (IOException | InterruptedException e) {
       logger.info("Error when creating firewall rule", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
@@ -103,39 +126,35 @@ public class CreateFirewallRuleStep implements Step {
     return StepResult.getStepResultSuccess();
   }
 
-  /**
-   * Helper method to add a firewall rule to the project. Ignores conflicts if the rule already
-   * exists.
-   *
-   * @param projectId project where the network lives
-   * @param rule firewall rule object to add to the project
-   * @return pointer to the operation to poll for completion
-   */
-  private Optional<OperationCow<?>> addFirewallRule(String projectId, Firewall rule)
-      throws IOException {
-    return createResourceAndIgnoreConflict(
-            () -> computeCow.firewalls().insert(projectId, rule).execute())
-        .map(
-            insertOperation ->
-                computeCow.globalOperations().operationCow(projectId, insertOperation));
+  /** Returns the names of the firewall rules this step creates for {@code gcpProjectConfig}. */
+  public static List<String> ruleNames(GcpProjectConfig gcpProjectConfig) {
+    ImmutableList.Builder<String> names =
+        ImmutableList.<String>builder()
+            .add(ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK, LEONARDO_SSL_RULE_NAME_FOR_NETWORK);
+    if (keepDefaultNetwork(gcpProjectConfig)) {
+      names.add(ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT, LEONARDO_SSL_RULE_NAME_FOR_DEFAULT);
+    }
+    return names.build();
   }
 
   /**
    * Helper method to build a firewall rule that allows internal traffic on the network. See <a
    * href="https://cloud.google.com/vpc/docs/firewalls#more_rules_default_vpc">default-allow-internal</a>.
    *
-   * @param network the network to add the firewall rule to
+   * @param networkSelfLink selfLink of the network to add the firewall rule to
    * @param ruleName name of the firewall rule (unique within a project)
+   * @param sourceRanges IP ranges of the network's subnets
    * @return firewall rule object
    */
   @VisibleForTesting
-  public static Firewall buildAllowInternalFirewallRule(Network network, String ruleName) {
+  public static Firewall buildAllowInternalFirewallRule(
+      String networkSelfLink, String ruleName, List<String> sourceRanges) {
     return new Firewall()
-        .setNetwork(network.getSelfLink())
+        .setNetwork(networkSelfLink)
         .setName(ruleName)
         .setDescription("Allow internal traffic on the network.")
         .setDirection("INGRESS")
-        .setSourceRanges(ImmutableList.of("10.128.0.0/9"))
+        .setSourceRanges(sourceRanges)
         .setPriority(65534)
         .setAllowed(
             ImmutableList.of(
@@ -148,14 +167,14 @@ public class CreateFirewallRuleStep implements Step {
    * Helper method to build a firewall rule that allows SSL traffic from Leonardo-managed VMs on the
    * network.
    *
-   * @param network the network to add the firewall rule to
+   * @param networkSelfLink selfLink of the network to add the firewall rule to
    * @param ruleName name of the firewall rule (unique within a project)
    * @return firewall rule object
    */
   @VisibleForTesting
-  public static Firewall buildLeonardoSslFirewallRule(Network network, String ruleName) {
+  public static Firewall buildLeonardoSslFirewallRule(String networkSelfLink, String ruleName) {
     return new Firewall()
-        .setNetwork(network.getSelfLink())
+        .setNetwork(networkSelfLink)
         .setName(ruleName)
         .setDescription("Allow SSL traffic from Leonardo-managed VMs.")
         .setDirection("INGRESS")
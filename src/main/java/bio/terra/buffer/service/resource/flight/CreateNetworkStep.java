@@ -1,16 +1,18 @@
 package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.NETWORK_SELF_LINK;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.publish;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
 import bio.terra.buffer.generated.model.GcpProjectConfig;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
 import com.google.api.services.compute.model.Network;
 import com.google.api.services.compute.model.Operation;
 import java.io.IOException;
@@ -24,10 +26,13 @@ public class CreateNetworkStep implements Step {
 
   private final Logger logger = LoggerFactory.getLogger(CreateNetworkStep.class);
   private final CloudComputeCow computeCow;
+  private final Compute compute;
   private final GcpProjectConfig gcpProjectConfig;
 
-  public CreateNetworkStep(CloudComputeCow computeCow, GcpProjectConfig gcpProjectConfig) {
+  public CreateNetworkStep(
+      CloudComputeCow computeCow, Compute compute, GcpProjectConfig gcpProjectConfig) {
     this.computeCow = computeCow;
+    this.compute = compute;
     this.gcpProjectConfig = gcpProjectConfig;
   }
 
@@ -42,11 +47,14 @@ public class CreateNetworkStep implements Step {
       Optional<Operation> insertOperation =
           createResourceAndIgnoreConflict(
               () -> computeCow.networks().insert(projectId, network).execute());
+      String selfLink;
       if (insertOperation.isPresent()) {
-        OperationCow<?> operation =
-            computeCow.globalOperations().operationCow(projectId, insertOperation.get());
-        pollUntilSuccess(operation, Duration.ofSeconds(3), Duration.ofMinutes(5));
+        waitForComputeOperation(compute, projectId, insertOperation.get(), Duration.ofMinutes(5));
+        selfLink = insertOperation.get().getTargetLink();
+      } else {
+        selfLink = computeCow.networks().get(projectId, NETWORK_NAME).execute().getSelfLink();
       }
+      publish(flightContext, NETWORK_SELF_LINK, selfLink);
     } catch (IOException | InterruptedException e) {
       logger.info("Error when creating network", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
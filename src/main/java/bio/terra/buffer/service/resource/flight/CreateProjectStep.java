@@ -1,13 +1,24 @@
 package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.FlightMapKeys.*;
+import static bio.terra.buffer.service.resource.OperationPoller.pendingOperationName;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.PROJECT_NUMBER;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.publish;
+import static bio.terra.buffer.service.resource.flight.GenerateProjectIdStep.putProjectId;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 import static bio.terra.buffer.service.resource.flight.StepUtils.isResourceReady;
 
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.quota.QuotaBucket;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
+import bio.terra.buffer.service.resource.projectid.ProjectIdAllocator;
 import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.common.exception.InternalServerErrorException;
 import bio.terra.stairway.*;
 import bio.terra.stairway.exception.RetryException;
 import com.google.api.services.cloudresourcemanager.v3.model.Project;
@@ -26,42 +37,123 @@ public class CreateProjectStep implements Step {
   @VisibleForTesting public static final String SUB_NETWORK_LABEL_KEY = "vpc-subnetwork-name";
   @VisibleForTesting public static final String CONFIG_NAME_LABEL_LEY = "buffer-config-name";
 
+  /** How many taken project ids to replace before failing the flight. */
+  private static final int MAX_ID_ATTEMPTS = 5;
+
   private final Logger logger = LoggerFactory.getLogger(CreateProjectStep.class);
   private final CloudResourceManagerCow rmCow;
   private final GcpProjectConfig gcpProjectConfig;
+  private final QuotaBudget quotaBudget;
+  private final OperationPoller operationPoller;
+  private final ProjectIdAllocator projectIdAllocator;
+  private final ProjectDeletionReconciler projectDeletionReconciler;
 
-  public CreateProjectStep(CloudResourceManagerCow rmCow, GcpProjectConfig gcpProjectConfig) {
+  public CreateProjectStep(
+      CloudResourceManagerCow rmCow,
+      GcpProjectConfig gcpProjectConfig,
+      QuotaBudget quotaBudget,
+      OperationPoller operationPoller,
+      ProjectIdAllocator projectIdAllocator,
+      ProjectDeletionReconciler projectDeletionReconciler) {
     this.rmCow = rmCow;
     this.gcpProjectConfig = gcpProjectConfig;
+    this.quotaBudget = quotaBudget;
+    this.operationPoller = operationPoller;
+    this.projectIdAllocator = projectIdAllocator;
+    this.projectDeletionReconciler = projectDeletionReconciler;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) throws RetryException {
-    String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
     try {
-      // If the project id us used. Fail the flight and let Stairway rollback the flight.
-      if (retrieveProject(rmCow, projectId).isPresent()) {
-        return new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL);
+      Optional<String> operationName =
+          pendingOperationName(flightContext, CREATE_PROJECT_OPERATION);
+      OperationCow<?> operation = null;
+      if (operationName.isPresent()) {
+        // Resumed after waiting for the creation started by an earlier run of this step.
+        operation =
+            rmCow.operations().operationCow(rmCow.operations().get(operationName.get()).execute());
+      } else {
+        // Empty if an earlier run of this step created the project, but failed before it saw the
+        // creation finish, e.g. the request timed out or the operation polling did.
+        Optional<String> projectId = allocateUnusedProjectId(flightContext);
+        if (projectId.isPresent()) {
+          Project project =
+              new Project()
+                  .setProjectId(projectId.get())
+                  .setLabels(createLabelMap(flightContext))
+                  .setParent(parentFolder());
+          quotaBudget.acquire(QuotaBucket.PROJECT_CREATE, 1);
+          operation = rmCow.operations().operationCow(rmCow.projects().create(project).execute());
+          operationPoller.startOperation(flightContext, CREATE_PROJECT_OPERATION, operation);
+        }
+      }
+      if (operation != null) {
+        Optional<StepResult> waitResult =
+            operationPoller.awaitOperation(
+                flightContext, CREATE_PROJECT_OPERATION, operation, Duration.ofMinutes(5));
+        if (waitResult.isPresent()) {
+          return waitResult.get();
+        }
       }
-      Project project =
-          new Project()
-              .setProjectId(projectId)
-              .setLabels(createLabelMap(flightContext))
-              .setParent("folders/" + gcpProjectConfig.getParentFolderId());
-      OperationCow<?> operation =
-          rmCow.operations().operationCow(rmCow.projects().create(project).execute());
-      pollUntilSuccess(operation, Duration.ofSeconds(5), Duration.ofMinutes(5));
+      String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
       Project createdProject = rmCow.projects().get(projectId).execute();
-      flightContext.getWorkingMap().put(GOOGLE_PROJECT_NUMBER, getNumber(createdProject));
-    } catch (IOException | InterruptedException e) {
+      publish(flightContext, PROJECT_NUMBER, getNumber(createdProject));
+    } catch (IOException | InterruptedException | QuotaExhaustedException e) {
       logger.info("Error when creating GCP project", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
     }
     return StepResult.getStepResultSuccess();
   }
 
+  /**
+   * Returns the flight's project id, after replacing it with a newly allocated one while a project
+   * with that id exists. The id may be taken by a project this service didn't create, or created
+   * before ids were tracked. Returns empty if the existing project is the one this flight created.
+   */
+  private Optional<String> allocateUnusedProjectId(FlightContext flightContext)
+      throws IOException {
+    String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    for (int attempt = 0; ; attempt++) {
+      Optional<Project> existing = retrieveProject(rmCow, projectId);
+      if (existing.isEmpty()) {
+        return Optional.of(projectId);
+      }
+      if (isCreatedByFlight(existing.get(), flightContext)) {
+        logger.info("Project {} was already created by this flight", projectId);
+        return Optional.empty();
+      }
+      if (attempt == MAX_ID_ATTEMPTS) {
+        throw new InternalServerErrorException(
+            String.format("Project ids are taken, last tried %s", projectId));
+      }
+      logger.info("Project id {} is taken, allocating another one", projectId);
+      projectIdAllocator.markTaken(projectId);
+      projectId = projectIdAllocator.allocate(gcpProjectConfig.getProjectIdSchema());
+      putProjectId(flightContext.getWorkingMap(), projectId);
+    }
+  }
+
+  /**
+   * Whether {@code project}, which has the flight's project id, was created by an earlier run of
+   * this step. Ids are allocated to one flight only, so a live project with the id, in the folder
+   * and with the config label this step creates projects with, is the flight's.
+   */
+  private boolean isCreatedByFlight(Project project, FlightContext flightContext) {
+    return !isProjectDeleting(project)
+        && parentFolder().equals(project.getParent())
+        && project.getLabels() != null
+        && createLabelMap(flightContext)
+            .get(CONFIG_NAME_LABEL_LEY)
+            .equals(project.getLabels().get(CONFIG_NAME_LABEL_LEY));
+  }
+
+  private String parentFolder() {
+    return "folders/" + gcpProjectConfig.getParentFolderId();
+  }
+
   @Override
-  public StepResult undoStep(FlightContext flightContext) throws InterruptedException {
+  public StepResult undoStep(FlightContext flightContext) {
     if (isResourceReady(flightContext)) {
       return StepResult.getStepResultSuccess();
     }
@@ -79,10 +171,9 @@ public class CreateProjectStep implements Step {
         // The project is already being deleted.
         return StepResult.getStepResultSuccess();
       }
-      OperationCow<?> operation =
-          rmCow.operations().operationCow(rmCow.projects().delete(projectId).execute());
-      pollUntilSuccess(operation, Duration.ofSeconds(5), Duration.ofMinutes(5));
-    } catch (IOException | RetryException e) {
+      // Confirmed in the background, so that the undo doesn't hold a thread while it finishes.
+      projectDeletionReconciler.deleteProject(project.get());
+    } catch (IOException e) {
       logger.info("Error when deleting GCP project", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
     }
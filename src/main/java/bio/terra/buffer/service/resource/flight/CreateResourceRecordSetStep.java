@@ -57,13 +57,8 @@ public class CreateResourceRecordSetStep implements Step {
       return StepResult.getStepResultSuccess();
     }
     try {
-      // ManagedZone is already create in previous step so it won't be empty here.
-      // If we got NPE, that means something went wrong in previous step, fine to just throw NPE
-      // here.
-      ManagedZone managedZone =
-          getResource(() -> dnsCow.managedZones().get(projectId, MANAGED_ZONE_NAME).execute(), 404)
-              .get();
-
+      // ManagedZone is already created in previous step. If something went wrong there, listing
+      // its records fails and the step is retried.
       // Find all ResourceRecordSets to check if A and CNAME already created.
       Map<String, ResourceRecordSet> resourceRecordSetMap =
           dnsCow
@@ -84,7 +79,7 @@ public class CreateResourceRecordSetStep implements Step {
           .changes()
           .create(
               projectId,
-              managedZone.getName(),
+              MANAGED_ZONE_NAME,
               new Change().setAdditions(resourceRecordSetsToCreate))
           .execute();
 
@@ -1,18 +1,18 @@
 package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.networkSelfLink;
 import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isNetworkMonitoringEnabled;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
 import bio.terra.buffer.generated.model.GcpProjectConfig;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
-import com.google.api.services.compute.model.Network;
+import com.google.api.services.compute.Compute;
 import com.google.api.services.compute.model.Operation;
 import com.google.api.services.compute.model.Route;
 import com.google.common.annotations.VisibleForTesting;
@@ -40,10 +40,13 @@ public class CreateRouteStep implements Step {
 
   private final Logger logger = LoggerFactory.getLogger(CreateRouteStep.class);
   private final CloudComputeCow computeCow;
+  private final Compute compute;
   private final GcpProjectConfig gcpProjectConfig;
 
-  public CreateRouteStep(CloudComputeCow computeCow, GcpProjectConfig gcpProjectConfig) {
+  public CreateRouteStep(
+      CloudComputeCow computeCow, Compute compute, GcpProjectConfig gcpProjectConfig) {
     this.computeCow = computeCow;
+    this.compute = compute;
     this.gcpProjectConfig = gcpProjectConfig;
   }
 
@@ -56,22 +59,17 @@ public class CreateRouteStep implements Step {
     try {
       // Network is already created and checked in previous step so here won't be empty.
       // If we got NPE, that means something went wrong with GCP, fine to just throw NPE here.
-      Network network =
-          getResource(() -> computeCow.networks().get(projectId, NETWORK_NAME).execute(), 404)
-              .get();
       Route route =
           new Route()
               .setName(ROUTE_NAME)
               .setDestRange(DESTINATION_RANGE)
-              .setNetwork(network.getSelfLink())
+              .setNetwork(networkSelfLink(flightContext, computeCow))
               .setNextHopGateway("projects/" + projectId + DEFAULT_GATEWAY);
       Optional<Operation> insertOperation =
           createResourceAndIgnoreConflict(
               () -> computeCow.routes().insert(projectId, route).execute());
       if (insertOperation.isPresent()) {
-        OperationCow<?> operation =
-            computeCow.globalOperations().operationCow(projectId, insertOperation.get());
-        pollUntilSuccess(operation, Duration.ofSeconds(3), Duration.ofMinutes(5));
+        waitForComputeOperation(compute, projectId, insertOperation.get(), Duration.ofMinutes(5));
       }
     } catch (IOException | InterruptedException e) {
       logger.info("Error when creating route", e);
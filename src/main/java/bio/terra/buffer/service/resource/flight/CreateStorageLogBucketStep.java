@@ -49,7 +49,7 @@ public class CreateStorageLogBucketStep implements Step {
     String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
     StorageCow storageCow =
         new StorageCow(clientConfig, StorageOptions.newBuilder().setProjectId(projectId).build());
-    String bucketName = "storage-logs-" + projectId;
+    String bucketName = storageLogBucketName(projectId);
     if (storageCow.get(bucketName) != null) {
       return StepResult.getStepResultSuccess();
     }
@@ -68,6 +68,11 @@ public class CreateStorageLogBucketStep implements Step {
     return StepResult.getStepResultSuccess();
   }
 
+  /** Returns the name of the storage log bucket of project {@code projectId}. */
+  public static String storageLogBucketName(String projectId) {
+    return "storage-logs-" + projectId;
+  }
+
   @Override
   public StepResult undoStep(FlightContext flightContext) {
     // Flight undo will just need to delete the project on GCP.
@@ -1,27 +1,31 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.service.resource.FlightMapKeys.CREATED_SUBNET_REGIONS;
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.networkSelfLink;
 import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isNetworkMonitoringEnabled;
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.subnetRegionToIpRange;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
-import static bio.terra.buffer.service.resource.flight.GoogleUtils.NETWORK_NAME;
 
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
+import bio.terra.buffer.service.quota.QuotaBucket;
+import bio.terra.buffer.service.quota.QuotaBudget;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
-import com.google.api.services.compute.model.Network;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
 import com.google.api.services.compute.model.Subnetwork;
 import com.google.api.services.compute.model.SubnetworkLogConfig;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +51,9 @@ public class CreateSubnetsStep implements Step {
   /**
    * All current Google Compute Engine regions with the default Ip ranges listed (and manually
    * copied) in: https://cloud.google.com/vpc/docs/vpc#ip-ranges.
+   *
+   * <p>These are the subnets created unless the pool's config lists its own, see {@link
+   * GoogleProjectConfigUtils#subnetRegionToIpRange}.
    */
   @VisibleForTesting
   public static final Map<String, String> REGION_TO_IP_RANGE =
@@ -95,51 +102,65 @@ public class CreateSubnetsStep implements Step {
 
   private final Logger logger = LoggerFactory.getLogger(CreateSubnetsStep.class);
   private final CloudComputeCow computeCow;
+  private final Compute compute;
   private final GcpProjectConfig gcpProjectConfig;
-
-  public CreateSubnetsStep(CloudComputeCow computeCow, GcpProjectConfig gcpProjectConfig) {
+  private final QuotaBudget quotaBudget;
+  public CreateSubnetsStep(
+      CloudComputeCow computeCow,
+      Compute compute,
+      GcpProjectConfig gcpProjectConfig,
+      QuotaBudget quotaBudget) {
     this.computeCow = computeCow;
+    this.compute = compute;
     this.gcpProjectConfig = gcpProjectConfig;
+    this.quotaBudget = quotaBudget;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) throws RetryException {
     String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    // The regions whose subnets are created, so that a retry skips them.
+    StepCheckpoint checkpoint = new StepCheckpoint(flightContext, CREATED_SUBNET_REGIONS);
     boolean networkMonitoringEnabled = isNetworkMonitoringEnabled(gcpProjectConfig);
-    List<OperationCow<?>> operationsToPoll = new ArrayList<>();
     try {
-      Network network =
-          getResource(() -> computeCow.networks().get(projectId, NETWORK_NAME).execute(), 404)
-              .get();
-      for (Map.Entry<String, String> entry : REGION_TO_IP_RANGE.entrySet()) {
+      Map<String, String> regionToIpRange = new LinkedHashMap<>();
+      for (Map.Entry<String, String> entry : subnetRegionToIpRange(gcpProjectConfig).entrySet()) {
+        if (!checkpoint.isCompleted(entry.getKey())) {
+          regionToIpRange.put(entry.getKey(), entry.getValue());
+        }
+      }
+      if (regionToIpRange.isEmpty()) {
+        return StepResult.getStepResultSuccess();
+      }
+      String networkSelfLink = networkSelfLink(flightContext, computeCow);
+      // One insertion per remaining region, all sent in one batch.
+      quotaBudget.acquire(QuotaBucket.COMPUTE_WRITE, regionToIpRange.size());
+      Map<String, Compute.Subnetworks.Insert> inserts = new LinkedHashMap<>();
+      for (Map.Entry<String, String> entry : regionToIpRange.entrySet()) {
         String region = entry.getKey();
         Subnetwork subnetwork =
             new Subnetwork()
                 .setName(SUBNETWORK_NAME)
                 .setRegion(region)
-                .setNetwork(network.getSelfLink())
+                .setNetwork(networkSelfLink)
                 .setIpCidrRange(entry.getValue())
                 .setEnableFlowLogs(networkMonitoringEnabled)
                 .setPrivateIpGoogleAccess(networkMonitoringEnabled);
         if (networkMonitoringEnabled) {
           subnetwork.setLogConfig(LOG_CONFIG);
         }
-
-        createResourceAndIgnoreConflict(
-                () -> computeCow.subnetworks().insert(projectId, region, subnetwork).execute())
-            .ifPresent(
-                insertOperation ->
-                    operationsToPoll.add(
-                        computeCow
-                            .regionalOperations()
-                            .operationCow(projectId, region, insertOperation)));
+        inserts.put(region, compute.subnetworks().insert(projectId, region, subnetwork));
       }
 
       // Kick off all the operations first then poll all operations
-      for (OperationCow<?> operation : operationsToPoll) {
-        pollUntilSuccess(operation, Duration.ofSeconds(5), Duration.ofMinutes(5));
+      BatchResult<String, Operation> batch = executeBatch(compute, inserts, 409);
+      checkpoint.completeAll(batch.tolerated());
+      for (Map.Entry<String, Operation> insert : batch.results().entrySet()) {
+        waitForComputeOperation(compute, projectId, insert.getValue(), Duration.ofMinutes(5));
+        checkpoint.complete(insert.getKey());
       }
-    } catch (IOException | InterruptedException e) {
+      batch.throwIfFailed();
+    } catch (IOException | InterruptedException | QuotaExhaustedException e) {
       logger.info("Error when creating subnets", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
     }
@@ -1,20 +1,22 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.service.resource.FlightMapKeys.DELETED_DEFAULT_FIREWALL_RULES;
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
-import bio.terra.cloudres.google.api.services.common.OperationCow;
-import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.time.Duration;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,34 +32,32 @@ public class DeleteDefaultFirewallRulesStep implements Step {
           "default-allow-icmp", "default-allow-internal", "default-allow-rdp", "default-allow-ssh");
 
   private final Logger logger = LoggerFactory.getLogger(DeleteDefaultFirewallRulesStep.class);
-  private final CloudComputeCow computeCow;
+  private final Compute compute;
 
-  public DeleteDefaultFirewallRulesStep(CloudComputeCow computeCow) {
-    this.computeCow = computeCow;
+  public DeleteDefaultFirewallRulesStep(Compute compute) {
+    this.compute = compute;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) throws RetryException {
     String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    // The names of the rules deleted, so that a retry skips them.
+    StepCheckpoint checkpoint = new StepCheckpoint(flightContext, DELETED_DEFAULT_FIREWALL_RULES);
     try {
-      List<OperationCow<?>> operationsToPoll = new ArrayList<>();
+      Map<String, Compute.Firewalls.Delete> deletes = new LinkedHashMap<>();
       for (String firewallName : DEFAULT_FIREWALL_NAMES) {
-        if (!resourceExists(
-            () -> computeCow.firewalls().get(projectId, firewallName).execute(), 404)) {
-          logger.info(
-              "firewall rules {} is already deleted for project: {}.", firewallName, projectId);
-        } else {
-          operationsToPoll.add(
-              computeCow
-                  .globalOperations()
-                  .operationCow(
-                      projectId, computeCow.firewalls().delete(projectId, firewallName).execute()));
+        if (!checkpoint.isCompleted(firewallName)) {
+          deletes.put(firewallName, compute.firewalls().delete(projectId, firewallName));
         }
       }
-
-      for (OperationCow<?> operation : operationsToPoll) {
-        pollUntilSuccess(operation, Duration.ofSeconds(3), Duration.ofMinutes(5));
+      // Rules that are already deleted fail with 404 and are skipped.
+      BatchResult<String, Operation> batch = executeBatch(compute, deletes, 404);
+      checkpoint.completeAll(batch.tolerated());
+      for (Map.Entry<String, Operation> delete : batch.results().entrySet()) {
+        waitForComputeOperation(compute, projectId, delete.getValue(), Duration.ofMinutes(5));
+        checkpoint.complete(delete.getKey());
       }
+      batch.throwIfFailed();
     } catch (IOException | InterruptedException e) {
       logger.info("Error when deleting firewall rule", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
@@ -3,17 +3,18 @@ package bio.terra.buffer.service.resource.flight;
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
 import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.keepDefaultNetwork;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.DEFAULT_NETWORK_NAME;
-import static bio.terra.buffer.service.resource.flight.GoogleUtils.pollUntilSuccess;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.resourceExists;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.waitForComputeOperation;
 
 import bio.terra.buffer.generated.model.GcpProjectConfig;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.compute.CloudComputeCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
 import java.io.IOException;
 import java.time.Duration;
 import org.slf4j.Logger;
@@ -23,10 +24,13 @@ import org.slf4j.LoggerFactory;
 public class DeleteDefaultNetworkStep implements Step {
   private final Logger logger = LoggerFactory.getLogger(DeleteDefaultNetworkStep.class);
   private final CloudComputeCow computeCow;
+  private final Compute compute;
   private final GcpProjectConfig gcpProjectConfig;
 
-  public DeleteDefaultNetworkStep(CloudComputeCow computeCow, GcpProjectConfig gcpProjectConfig) {
+  public DeleteDefaultNetworkStep(
+      CloudComputeCow computeCow, Compute compute, GcpProjectConfig gcpProjectConfig) {
     this.computeCow = computeCow;
+    this.compute = compute;
     this.gcpProjectConfig = gcpProjectConfig;
   }
 
@@ -51,13 +55,8 @@ public class DeleteDefaultNetworkStep implements Step {
         return StepResult.getStepResultSuccess();
       }
 
-      OperationCow<?> operation =
-          computeCow
-              .globalOperations()
-              .operationCow(
-                  projectId,
-                  computeCow.networks().delete(projectId, DEFAULT_NETWORK_NAME).execute());
-      pollUntilSuccess(operation, Duration.ofSeconds(3), Duration.ofMinutes(5));
+      Operation operation = computeCow.networks().delete(projectId, DEFAULT_NETWORK_NAME).execute();
+      waitForComputeOperation(compute, projectId, operation, Duration.ofMinutes(5));
     } catch (IOException | InterruptedException e) {
       logger.info("Error when deleting default network", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
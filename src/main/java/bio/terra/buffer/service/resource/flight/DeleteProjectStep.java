@@ -4,32 +4,35 @@ import static bio.terra.buffer.service.resource.FlightMapKeys.CLOUD_RESOURCE_UID
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
 
 import bio.terra.buffer.generated.model.CloudResourceUid;
-import bio.terra.cloudres.google.api.services.common.OperationCow;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
-import bio.terra.stairway.exception.RetryException;
 import com.google.api.services.cloudresourcemanager.v3.model.Project;
 import java.io.IOException;
-import java.time.Duration;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Deletes the GCP project. */
+/**
+ * Requests the deletion of the GCP project. The deletion is confirmed later by {@link
+ * ProjectDeletionReconciler}, rather than polled here.
+ */
 public class DeleteProjectStep implements Step {
   private final Logger logger = LoggerFactory.getLogger(DeleteProjectStep.class);
   private final CloudResourceManagerCow rmCow;
+  private final ProjectDeletionReconciler projectDeletionReconciler;
 
-  public DeleteProjectStep(CloudResourceManagerCow rmCow) {
+  public DeleteProjectStep(
+      CloudResourceManagerCow rmCow, ProjectDeletionReconciler projectDeletionReconciler) {
     this.rmCow = rmCow;
+    this.projectDeletionReconciler = projectDeletionReconciler;
   }
 
   @Override
-  public StepResult doStep(FlightContext flightContext)
-      throws InterruptedException, RetryException {
+  public StepResult doStep(FlightContext flightContext) {
     String projectId =
         flightContext
             .getInputParameters()
@@ -46,9 +49,7 @@ public class DeleteProjectStep implements Step {
         logger.info("Project id: {} is deleted or being deleted", projectId);
         return StepResult.getStepResultSuccess();
       }
-      OperationCow<?> operation =
-          rmCow.operations().operationCow(rmCow.projects().delete(projectId).execute());
-      pollUntilSuccess(operation, Duration.ofSeconds(5), Duration.ofMinutes(5));
+      projectDeletionReconciler.deleteProject(project.get());
     } catch (IOException e) {
       logger.info("Error when deleting GCP project", e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
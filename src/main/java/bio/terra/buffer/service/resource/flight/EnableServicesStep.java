@@ -1,10 +1,15 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.service.resource.FlightMapKeys.ENABLE_SERVICES_OPERATION;
 import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
-import static bio.terra.buffer.service.resource.flight.GoogleUtils.pollUntilSuccess;
+import static bio.terra.buffer.service.resource.OperationPoller.pendingOperationName;
 import static bio.terra.buffer.service.resource.flight.GoogleUtils.projectIdToName;
 
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.service.quota.QuotaBucket;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.OperationPoller;
 import bio.terra.cloudres.google.api.services.common.OperationCow;
 import bio.terra.cloudres.google.serviceusage.ServiceUsageCow;
 import bio.terra.stairway.FlightContext;
@@ -15,6 +20,7 @@ import bio.terra.stairway.exception.RetryException;
 import com.google.api.services.serviceusage.v1.model.BatchEnableServicesRequest;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,10 +29,18 @@ public class EnableServicesStep implements Step {
   private final Logger logger = LoggerFactory.getLogger(EnableServicesStep.class);
   private final ServiceUsageCow serviceUsageCow;
   private final GcpProjectConfig gcpProjectConfig;
+  private final QuotaBudget quotaBudget;
+  private final OperationPoller operationPoller;
 
-  public EnableServicesStep(ServiceUsageCow serviceUsageCow, GcpProjectConfig gcpProjectConfig) {
+  public EnableServicesStep(
+      ServiceUsageCow serviceUsageCow,
+      GcpProjectConfig gcpProjectConfig,
+      QuotaBudget quotaBudget,
+      OperationPoller operationPoller) {
     this.serviceUsageCow = serviceUsageCow;
     this.gcpProjectConfig = gcpProjectConfig;
+    this.quotaBudget = quotaBudget;
+    this.operationPoller = operationPoller;
   }
 
   @Override
@@ -37,19 +51,37 @@ public class EnableServicesStep implements Step {
     }
     String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
     try {
-      OperationCow<?> operation =
-          serviceUsageCow
-              .operations()
-              .operationCow(
-                  serviceUsageCow
-                      .services()
-                      .batchEnable(
-                          projectIdToName(projectId),
-                          new BatchEnableServicesRequest()
-                              .setServiceIds(gcpProjectConfig.getEnabledApis()))
-                      .execute());
-      pollUntilSuccess(operation, Duration.ofSeconds(5), Duration.ofMinutes(5));
-    } catch (IOException | InterruptedException e) {
+      Optional<String> operationName =
+          pendingOperationName(flightContext, ENABLE_SERVICES_OPERATION);
+      OperationCow<?> operation;
+      if (operationName.isPresent()) {
+        // Resumed after waiting for the batch enable started by an earlier run of this step.
+        operation =
+            serviceUsageCow
+                .operations()
+                .operationCow(serviceUsageCow.operations().get(operationName.get()).execute());
+      } else {
+        quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1);
+        operation =
+            serviceUsageCow
+                .operations()
+                .operationCow(
+                    serviceUsageCow
+                        .services()
+                        .batchEnable(
+                            projectIdToName(projectId),
+                            new BatchEnableServicesRequest()
+                                .setServiceIds(gcpProjectConfig.getEnabledApis()))
+                        .execute());
+        operationPoller.startOperation(flightContext, ENABLE_SERVICES_OPERATION, operation);
+      }
+      Optional<StepResult> waitResult =
+          operationPoller.awaitOperation(
+              flightContext, ENABLE_SERVICES_OPERATION, operation, Duration.ofMinutes(5));
+      if (waitResult.isPresent()) {
+        return waitResult.get();
+      }
+    } catch (IOException | InterruptedException | QuotaExhaustedException e) {
       logger.info("Error enabling services GCP project, id: {}", projectId, e);
       return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
     }
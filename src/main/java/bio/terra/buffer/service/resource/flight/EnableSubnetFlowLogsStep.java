@@ -0,0 +1,114 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.CreateSubnetsStep.LOG_CONFIG;
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.subnetRegionToIpRange;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
+
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
+import com.google.api.services.compute.model.Subnetwork;
+import com.google.api.services.compute.model.SubnetworksSetPrivateIpGoogleAccessRequest;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns on flow logs and private Google access on the existing subnetworks of a project, the way
+ * {@link CreateSubnetsStep} creates them when network monitoring is enabled. Used to upgrade a
+ * project created without network monitoring.
+ *
+ * <p>Subnetworks already set up are skipped, so a retry picks up where the last attempt stopped.
+ */
+public class EnableSubnetFlowLogsStep implements Step {
+  private final Logger logger = LoggerFactory.getLogger(EnableSubnetFlowLogsStep.class);
+  private final Compute compute;
+  private final GcpProjectConfig gcpProjectConfig;
+
+  public EnableSubnetFlowLogsStep(Compute compute, GcpProjectConfig gcpProjectConfig) {
+    this.compute = compute;
+    this.gcpProjectConfig = gcpProjectConfig;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) throws RetryException {
+    String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    try {
+      Map<String, Compute.Subnetworks.Get> gets = new LinkedHashMap<>();
+      for (String region : subnetRegionToIpRange(gcpProjectConfig).keySet()) {
+        gets.put(region, compute.subnetworks().get(projectId, region, SUBNETWORK_NAME));
+      }
+      BatchResult<String, Subnetwork> subnetworks = executeBatch(compute, gets, 404);
+      subnetworks.throwIfFailed();
+      if (!subnetworks.tolerated().isEmpty()) {
+        // The project's network doesn't match its config, it can't be upgraded in place.
+        logger.warn("Subnetworks missing in regions {}", subnetworks.tolerated());
+        return new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL);
+      }
+
+      // Updating a subnetwork twice at once fails, so flow logs go first, then private access.
+      Map<String, Compute.Subnetworks.Patch> patches = new LinkedHashMap<>();
+      Map<String, Compute.Subnetworks.SetPrivateIpGoogleAccess> accesses = new LinkedHashMap<>();
+      for (Map.Entry<String, Subnetwork> entry : subnetworks.results().entrySet()) {
+        String region = entry.getKey();
+        Subnetwork subnetwork = entry.getValue();
+        if (!Boolean.TRUE.equals(subnetwork.getEnableFlowLogs())) {
+          patches.put(
+              region,
+              compute
+                  .subnetworks()
+                  .patch(
+                      projectId,
+                      region,
+                      SUBNETWORK_NAME,
+                      new Subnetwork()
+                          .setEnableFlowLogs(true)
+                          .setLogConfig(LOG_CONFIG)
+                          .setFingerprint(subnetwork.getFingerprint())));
+        }
+        if (!Boolean.TRUE.equals(subnetwork.getPrivateIpGoogleAccess())) {
+          accesses.put(
+              region,
+              compute
+                  .subnetworks()
+                  .setPrivateIpGoogleAccess(
+                      projectId,
+                      region,
+                      SUBNETWORK_NAME,
+                      new SubnetworksSetPrivateIpGoogleAccessRequest()
+                          .setPrivateIpGoogleAccess(true)));
+        }
+      }
+      pollAll(projectId, executeBatch(compute, patches, 404));
+      pollAll(projectId, executeBatch(compute, accesses, 404));
+    } catch (IOException | InterruptedException e) {
+      logger.info("Error when enabling subnetwork flow logs", e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    // The project is deleted if the upgrade fails, nothing to turn off.
+    return StepResult.getStepResultSuccess();
+  }
+
+  /** Waits for the operations of a batch by region, then fails if any of its requests failed. */
+  private void pollAll(String projectId, BatchResult<String, Operation> batch)
+      throws IOException, InterruptedException, RetryException {
+    for (Map.Entry<String, Operation> operation : batch.results().entrySet()) {
+      waitForComputeOperation(compute, projectId, operation.getValue(), Duration.ofMinutes(5));
+    }
+    batch.throwIfFailed();
+  }
+}
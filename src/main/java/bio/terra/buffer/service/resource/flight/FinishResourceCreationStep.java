@@ -2,25 +2,30 @@ package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.flight.StepUtils.markResourceReady;
 
+import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.db.*;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 
 /**
  * The step after resource is successfully created, it updates resource entity to set
- * CloudResourceUid and state to READY.
+ * CloudResourceUid and state to READY, then wakes up handout requests waiting on the pool.
  */
 public class FinishResourceCreationStep implements Step {
   private final BufferDao bufferDao;
+  private final HandoutWaitQueue handoutWaitQueue;
 
-  public FinishResourceCreationStep(BufferDao bufferDao) {
+  public FinishResourceCreationStep(BufferDao bufferDao, HandoutWaitQueue handoutWaitQueue) {
     this.bufferDao = bufferDao;
+    this.handoutWaitQueue = handoutWaitQueue;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) {
     markResourceReady(bufferDao, flightContext);
+    handoutWaitQueue.notifyResourceReady(PoolId.retrieve(flightContext.getInputParameters()));
     return StepResult.getStepResultSuccess();
   }
 
@@ -0,0 +1,36 @@
+package bio.terra.buffer.service.resource.flight;
+
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+
+/**
+ * The step after a returned resource is scrubbed, it updates the resource state back to READY,
+ * then wakes up handout requests waiting on the pool.
+ */
+public class FinishResourceRecyclingStep implements Step {
+  private final BufferDao bufferDao;
+  private final HandoutWaitQueue handoutWaitQueue;
+
+  public FinishResourceRecyclingStep(BufferDao bufferDao, HandoutWaitQueue handoutWaitQueue) {
+    this.bufferDao = bufferDao;
+    this.handoutWaitQueue = handoutWaitQueue;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    bufferDao.updateRecyclingResourceToReady(
+        ResourceId.retrieve(flightContext.getInputParameters()));
+    handoutWaitQueue.notifyResourceReady(PoolId.retrieve(flightContext.getInputParameters()));
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    return StepResult.getStepResultSuccess();
+  }
+}
@@ -0,0 +1,37 @@
+package bio.terra.buffer.service.resource.flight;
+
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+
+/**
+ * The step after a resource is upgraded, it moves the resource to the pool it was upgraded for as
+ * READY, then wakes up handout requests waiting on that pool.
+ */
+public class FinishResourceUpgradeStep implements Step {
+  private final BufferDao bufferDao;
+  private final HandoutWaitQueue handoutWaitQueue;
+
+  public FinishResourceUpgradeStep(BufferDao bufferDao, HandoutWaitQueue handoutWaitQueue) {
+    this.bufferDao = bufferDao;
+    this.handoutWaitQueue = handoutWaitQueue;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    PoolId poolId = PoolId.retrieve(flightContext.getInputParameters());
+    bufferDao.updateUpgradingResourceToReady(
+        ResourceId.retrieve(flightContext.getInputParameters()), poolId);
+    handoutWaitQueue.notifyResourceReady(poolId);
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    return StepResult.getStepResultSuccess();
+  }
+}
@@ -0,0 +1,70 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_NUMBER;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.NETWORK_NAME;
+
+import bio.terra.buffer.service.resource.flight.GoogleUtils.CloudExecute;
+import bio.terra.cloudres.google.compute.CloudComputeCow;
+import bio.terra.stairway.FlightContext;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Cloud resource attributes a flight's steps publish once they created the resource, so later
+ * steps can read them from the working map instead of fetching the resource again.
+ *
+ * <p>The working map is persisted with the flight, so published values survive a restart. Steps
+ * still fall back to fetching the value if it's missing, e.g. for flights that were already past
+ * the publishing step when it started publishing.
+ *
+ * <p>Steps inside a {@link ParallelStep} publish to their branch's working map, which other
+ * branches only see once the parallel step is done. Steps don't publish what they fetched on a
+ * miss.
+ */
+public class FlightResourceCache {
+  /** The number of the created project. Same key steps have always read the number from. */
+  public static final Key<Long> PROJECT_NUMBER = new Key<>(GOOGLE_PROJECT_NUMBER, Long.class);
+
+  /** The selfLink of the network named {@link GoogleUtils#NETWORK_NAME}. */
+  public static final Key<String> NETWORK_SELF_LINK =
+      new Key<>("cachedNetworkSelfLink", String.class);
+
+  /** Publishes a resource attribute for later steps. */
+  public static <T> void publish(FlightContext flightContext, Key<T> key, T value) {
+    ParallelStep.putWorkingMap(flightContext, key.name, value);
+  }
+
+  /** Returns a published resource attribute, if any. */
+  public static <T> Optional<T> get(FlightContext flightContext, Key<T> key) {
+    return Optional.ofNullable(ParallelStep.getWorkingMap(flightContext, key.name, key.type));
+  }
+
+  /** Returns a published resource attribute, fetching it from the cloud if it's missing. */
+  public static <T> T getOrFetch(FlightContext flightContext, Key<T> key, CloudExecute<T> fetch)
+      throws IOException {
+    Optional<T> value = get(flightContext, key);
+    return value.isPresent() ? value.get() : fetch.execute();
+  }
+
+  /** Returns the selfLink of the project's network, see {@link #NETWORK_SELF_LINK}. */
+  public static String networkSelfLink(FlightContext flightContext, CloudComputeCow computeCow)
+      throws IOException {
+    String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    return getOrFetch(
+        flightContext,
+        NETWORK_SELF_LINK,
+        () -> computeCow.networks().get(projectId, NETWORK_NAME).execute().getSelfLink());
+  }
+
+  /** A typed key of a cached resource attribute. */
+  public static class Key<T> {
+    private final String name;
+    private final Class<T> type;
+
+    private Key(String name, Class<T> type) {
+      this.name = name;
+      this.type = type;
+    }
+  }
+}
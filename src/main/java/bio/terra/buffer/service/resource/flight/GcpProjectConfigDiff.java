@@ -0,0 +1,133 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isNetworkMonitoringEnabled;
+
+import bio.terra.buffer.generated.model.ComputeEngine;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.IamBinding;
+import bio.terra.buffer.generated.model.Network;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Computes what it takes to bring a GCP project created for one {@link GcpProjectConfig} to
+ * another, so that existing projects can be upgraded in place instead of recreated.
+ *
+ * <p>Only additive changes are applied in place: enabling more APIs, granting more IAM members,
+ * switching billing accounts and turning on network monitoring. Any other difference, including
+ * fields added to the config after this class, requires recreating the project.
+ */
+public class GcpProjectConfigDiff {
+  private static final ObjectMapper OBJECT_MAPPER =
+      new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+  private static final TypeReference<Map<String, Object>> FIELDS_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  /** The JSON names of the config fields the delta covers, or that don't affect the project. */
+  private static final ImmutableList<String> DELTA_FIELDS =
+      ImmutableList.of("enabledApis", "iamBindings", "billingAccount", "recyclable");
+
+  /** The JSON name of the network field the delta covers. */
+  private static final String NETWORK_MONITORING_FIELD = "enableNetworkMonitoring";
+
+  private GcpProjectConfigDiff() {}
+
+  /**
+   * Returns the changes to apply to a project created for {@code from} to match {@code to}, or
+   * empty if the project has to be recreated instead.
+   *
+   * <p>The changes are returned as a config holding only what to add: the APIs to enable, the IAM
+   * members to grant, the billing account if it changed, and network monitoring if it is turned
+   * on. The project creation steps apply it as is, skipping what it doesn't set.
+   */
+  public static Optional<GcpProjectConfig> delta(GcpProjectConfig from, GcpProjectConfig to) {
+    if (!fixedFields(from).equals(fixedFields(to))) {
+      return Optional.empty();
+    }
+    if (isNetworkMonitoringEnabled(from) && !isNetworkMonitoringEnabled(to)) {
+      return Optional.empty();
+    }
+    List<String> fromApis = Optional.ofNullable(from.getEnabledApis()).orElse(ImmutableList.of());
+    List<String> toApis = Optional.ofNullable(to.getEnabledApis()).orElse(ImmutableList.of());
+    if (!toApis.containsAll(fromApis)) {
+      return Optional.empty();
+    }
+    SetMultimap<String, String> fromMembers = members(from);
+    SetMultimap<String, String> toMembers = members(to);
+    if (!toMembers.entries().containsAll(fromMembers.entries())) {
+      return Optional.empty();
+    }
+    boolean billingChanged = !Objects.equals(from.getBillingAccount(), to.getBillingAccount());
+    if (billingChanged && (to.getBillingAccount() == null || to.getBillingAccount().isEmpty())) {
+      return Optional.empty();
+    }
+
+    GcpProjectConfig delta =
+        new GcpProjectConfig()
+            .projectIdSchema(to.getProjectIdSchema())
+            .enabledApis(
+                toApis.stream()
+                    .filter(api -> !fromApis.contains(api))
+                    .distinct()
+                    .collect(Collectors.toList()));
+    List<IamBinding> addedBindings = new ArrayList<>();
+    for (String role : toMembers.keySet()) {
+      List<String> addedMembers =
+          toMembers.get(role).stream()
+              .filter(member -> !fromMembers.containsEntry(role, member))
+              .collect(Collectors.toList());
+      if (!addedMembers.isEmpty()) {
+        addedBindings.add(new IamBinding().role(role).members(addedMembers));
+      }
+    }
+    delta.iamBindings(addedBindings);
+    if (billingChanged) {
+      delta.billingAccount(to.getBillingAccount());
+    }
+    if (!isNetworkMonitoringEnabled(from) && isNetworkMonitoringEnabled(to)) {
+      delta.network(new Network().enableNetworkMonitoring(true));
+    }
+    return Optional.of(delta);
+  }
+
+  /** The fields of the config that must not change, as JSON, with defaults for unset sections. */
+  private static Map<String, Object> fixedFields(GcpProjectConfig config) {
+    Map<String, Object> fields = OBJECT_MAPPER.convertValue(config, FIELDS_TYPE);
+    DELTA_FIELDS.forEach(fields::remove);
+    Map<String, Object> network =
+        OBJECT_MAPPER.convertValue(
+            Optional.ofNullable(config.getNetwork()).orElseGet(Network::new), FIELDS_TYPE);
+    network.remove(NETWORK_MONITORING_FIELD);
+    fields.put("network", network);
+    fields.put(
+        "computeEngine",
+        OBJECT_MAPPER.convertValue(
+            Optional.ofNullable(config.getComputeEngine()).orElseGet(ComputeEngine::new),
+            FIELDS_TYPE));
+    return fields;
+  }
+
+  /** The members of the config's IAM bindings by role. */
+  private static SetMultimap<String, String> members(GcpProjectConfig config) {
+    SetMultimap<String, String> members = LinkedHashMultimap.create();
+    if (config.getIamBindings() != null) {
+      for (IamBinding iamBinding : config.getIamBindings()) {
+        if (iamBinding.getMembers() != null) {
+          members.putAll(iamBinding.getRole(), iamBinding.getMembers());
+        }
+      }
+    }
+    return members;
+  }
+}
@@ -6,28 +6,25 @@ import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
 import bio.terra.buffer.generated.model.CloudResourceUid;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.GoogleProjectUid;
-import bio.terra.buffer.service.resource.projectid.GcpProjectIdGenerator;
+import bio.terra.buffer.service.resource.projectid.ProjectIdAllocator;
 import bio.terra.stairway.*;
 
 /** Generates Project Id and put it in working map. */
 public class GenerateProjectIdStep implements Step {
   private final GcpProjectConfig gcpProjectConfig;
-  private final GcpProjectIdGenerator projectIdGenerator;
+  private final ProjectIdAllocator projectIdAllocator;
 
   public GenerateProjectIdStep(
-      GcpProjectConfig gcpProjectConfig, GcpProjectIdGenerator projectIdGenerator) {
+      GcpProjectConfig gcpProjectConfig, ProjectIdAllocator projectIdAllocator) {
     this.gcpProjectConfig = gcpProjectConfig;
-    this.projectIdGenerator = projectIdGenerator;
+    this.projectIdAllocator = projectIdAllocator;
   }
 
   @Override
   public StepResult doStep(FlightContext flightContext) {
-    FlightMap workingMap = flightContext.getWorkingMap();
-    String projectId = projectIdGenerator.generateId(gcpProjectConfig.getProjectIdSchema());
-    flightContext.getWorkingMap().put(GOOGLE_PROJECT_ID, projectId);
-    workingMap.put(
-        CLOUD_RESOURCE_UID,
-        new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId(projectId)));
+    putProjectId(
+        flightContext.getWorkingMap(),
+        projectIdAllocator.allocate(gcpProjectConfig.getProjectIdSchema()));
     return StepResult.getStepResultSuccess();
   }
 
@@ -35,4 +32,12 @@ public class GenerateProjectIdStep implements Step {
   public StepResult undoStep(FlightContext flightContext) {
     return StepResult.getStepResultSuccess();
   }
+
+  /** Puts the project id the flight creates its project with in the working map. */
+  static void putProjectId(FlightMap workingMap, String projectId) {
+    workingMap.put(GOOGLE_PROJECT_ID, projectId);
+    workingMap.put(
+        CLOUD_RESOURCE_UID,
+        new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId(projectId)));
+  }
 }
@@ -1,6 +1,9 @@
 package bio.terra.buffer.service.resource.flight;
 
 import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.Subnet;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
 
 /** Utility methods for parsing the Google Project configuration. */
 public class GoogleProjectConfigUtils {
@@ -20,6 +23,28 @@ public class GoogleProjectConfigUtils {
         && gcpProjectConfig.getNetwork().isKeepDefaultNetwork();
   }
 
+  /** Checks if clients may return handed out projects to be recycled, false if not defined. */
+  public static boolean isRecyclable(GcpProjectConfig gcpProjectConfig) {
+    return gcpProjectConfig.isRecyclable() != null && gcpProjectConfig.isRecyclable();
+  }
+
+  /**
+   * Returns the IP range of the subnetwork to create per region. Defaults to {@link
+   * CreateSubnetsStep#REGION_TO_IP_RANGE} if the config doesn't set subnets. Configs setting an
+   * empty list are rejected by validation.
+   */
+  public static Map<String, String> subnetRegionToIpRange(GcpProjectConfig gcpProjectConfig) {
+    if (gcpProjectConfig.getNetwork() == null
+        || gcpProjectConfig.getNetwork().getSubnets() == null) {
+      return CreateSubnetsStep.REGION_TO_IP_RANGE;
+    }
+    ImmutableMap.Builder<String, String> regionToIpRange = ImmutableMap.builder();
+    for (Subnet subnet : gcpProjectConfig.getNetwork().getSubnets()) {
+      regionToIpRange.put(subnet.getRegion(), subnet.getIpCidrRange());
+    }
+    return regionToIpRange.build();
+  }
+
   /** Checks the config to see if we should keep the default compute engine service account. */
   public static boolean keepComputeEngineServiceAcct(GcpProjectConfig gcpProjectConfig) {
     // If computeEngine object or keepDefaultServiceAcct flag are not defined, then use default
@@ -1,13 +1,21 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.service.resource.FlightMapKeys.PROJECT_SETUP_BRANCHES;
 import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_CONFIG;
 import static bio.terra.buffer.service.resource.flight.StepUtils.newCloudApiDefaultRetryRule;
 import static bio.terra.buffer.service.resource.flight.StepUtils.newInternalDefaultRetryRule;
+import static bio.terra.buffer.service.resource.flight.StepUtils.newPermissionPropagationRetryRule;
 
 import bio.terra.buffer.db.BufferDao;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.ResourceConfig;
-import bio.terra.buffer.service.resource.projectid.GcpProjectIdGenerator;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.buffer.service.quota.QuotaBucket;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.ParallelStepExecutor;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
+import bio.terra.buffer.service.resource.projectid.ProjectIdAllocator;
 import bio.terra.cloudres.common.ClientConfig;
 import bio.terra.cloudres.google.billing.CloudBillingClientCow;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
@@ -17,10 +25,26 @@ import bio.terra.cloudres.google.iam.IamCow;
 import bio.terra.cloudres.google.serviceusage.ServiceUsageCow;
 import bio.terra.stairway.Flight;
 import bio.terra.stairway.FlightMap;
+import com.google.api.services.compute.Compute;
+import com.google.common.collect.ImmutableMap;
 import org.springframework.context.ApplicationContext;
 
 /** {@link Flight} to create GCP project. */
 public class GoogleProjectCreationFlight extends Flight {
+  /**
+   * The most quota tokens one flight takes from each bucket. Flights for pools creating fewer
+   * subnets take fewer compute write tokens.
+   */
+  public static final ImmutableMap<QuotaBucket, Integer> QUOTA_COST =
+      ImmutableMap.of(
+          QuotaBucket.PROJECT_CREATE,
+          1,
+          QuotaBucket.BATCH_ENABLE,
+          1,
+          QuotaBucket.COMPUTE_WRITE,
+          CreateSubnetsStep.REGION_TO_IP_RANGE.size(),
+          QuotaBucket.DNS_WRITE,
+          1);
 
   public GoogleProjectCreationFlight(FlightMap inputParameters, Object applicationContext) {
     super(inputParameters, applicationContext);
@@ -33,46 +57,71 @@ public class GoogleProjectCreationFlight extends Flight {
         ((ApplicationContext) applicationContext).getBean(ServiceUsageCow.class);
     CloudComputeCow cloudComputeCow =
         ((ApplicationContext) applicationContext).getBean(CloudComputeCow.class);
+    Compute compute = ((ApplicationContext) applicationContext).getBean(Compute.class);
     DnsCow dnsCow = ((ApplicationContext) applicationContext).getBean(DnsCow.class);
     IamCow iamCow = ((ApplicationContext) applicationContext).getBean(IamCow.class);
     ClientConfig clientConfig =
         ((ApplicationContext) applicationContext).getBean(ClientConfig.class);
     GcpProjectConfig gcpProjectConfig =
         inputParameters.get(RESOURCE_CONFIG, ResourceConfig.class).getGcpProjectConfig();
-    GcpProjectIdGenerator idGenerator =
-        ((ApplicationContext) applicationContext).getBean(GcpProjectIdGenerator.class);
+    ProjectIdAllocator projectIdAllocator =
+        ((ApplicationContext) applicationContext).getBean(ProjectIdAllocator.class);
+    HandoutWaitQueue handoutWaitQueue =
+        ((ApplicationContext) applicationContext).getBean(HandoutWaitQueue.class);
+    QuotaBudget quotaBudget = ((ApplicationContext) applicationContext).getBean(QuotaBudget.class);
+    OperationPoller operationPoller =
+        ((ApplicationContext) applicationContext).getBean(OperationPoller.class);
+    ProjectDeletionReconciler projectDeletionReconciler =
+        ((ApplicationContext) applicationContext).getBean(ProjectDeletionReconciler.class);
+    ParallelStepExecutor parallelStepExecutor =
+        ((ApplicationContext) applicationContext).getBean(ParallelStepExecutor.class);
     addStep(new AssertResourceCreatingStep(bufferDao), newInternalDefaultRetryRule());
     addStep(new UndoCreatingDbEntityStep(bufferDao), newInternalDefaultRetryRule());
     addStep(
-        new GenerateProjectIdStep(gcpProjectConfig, idGenerator), newCloudApiDefaultRetryRule());
-    addStep(new CreateProjectStep(rmCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(new SetBillingInfoStep(billingCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(
-        new EnableServicesStep(serviceUsageCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(new SetIamPolicyStep(rmCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(
-        new CreateStorageLogBucketStep(clientConfig, gcpProjectConfig),
-        newCloudApiDefaultRetryRule());
-    addStep(
-        new DeleteDefaultServiceAccountStep(iamCow, gcpProjectConfig),
+        new GenerateProjectIdStep(gcpProjectConfig, projectIdAllocator),
         newCloudApiDefaultRetryRule());
-    addStep(new DeleteDefaultFirewallRulesStep(cloudComputeCow), newCloudApiDefaultRetryRule());
     addStep(
-        new DeleteDefaultNetworkStep(cloudComputeCow, gcpProjectConfig),
-        newCloudApiDefaultRetryRule());
-    addStep(
-        new CreateNetworkStep(cloudComputeCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(new CreateRouteStep(cloudComputeCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(
-        new CreateFirewallRuleStep(cloudComputeCow, gcpProjectConfig),
+        new CreateProjectStep(
+            rmCow,
+            gcpProjectConfig,
+            quotaBudget,
+            operationPoller,
+            projectIdAllocator,
+            projectDeletionReconciler),
         newCloudApiDefaultRetryRule());
+    addStep(new SetBillingInfoStep(billingCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
     addStep(
-        new CreateSubnetsStep(cloudComputeCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
+        new EnableServicesStep(serviceUsageCow, gcpProjectConfig, quotaBudget, operationPoller),
+        newPermissionPropagationRetryRule());
+    // Once services are enabled, the IAM, log bucket, service account and network setup are
+    // independent of each other. Each branch retries on its own.
     addStep(
-        new CreateDnsZoneStep(cloudComputeCow, dnsCow, gcpProjectConfig),
+        ParallelStep.builder()
+            .key(PROJECT_SETUP_BRANCHES)
+            .executor(parallelStepExecutor)
+            .addBranch(
+                newPermissionPropagationRetryRule(), new SetIamPolicyStep(rmCow, gcpProjectConfig))
+            .addBranch(
+                newPermissionPropagationRetryRule(),
+                new CreateStorageLogBucketStep(clientConfig, gcpProjectConfig))
+            .addBranch(
+                newPermissionPropagationRetryRule(),
+                new DeleteDefaultServiceAccountStep(iamCow, gcpProjectConfig))
+            .addBranch(
+                newPermissionPropagationRetryRule(),
+                new DeleteDefaultFirewallRulesStep(compute),
+                new DeleteDefaultNetworkStep(cloudComputeCow, compute, gcpProjectConfig))
+            .addBranch(
+                newPermissionPropagationRetryRule(),
+                new CreateNetworkStep(cloudComputeCow, compute, gcpProjectConfig),
+                new CreateRouteStep(cloudComputeCow, compute, gcpProjectConfig),
+                new CreateFirewallRuleStep(cloudComputeCow, compute, gcpProjectConfig),
+                new CreateSubnetsStep(cloudComputeCow, compute, gcpProjectConfig, quotaBudget),
+                new CreateDnsZoneStep(cloudComputeCow, dnsCow, gcpProjectConfig, quotaBudget),
+                new CreateResourceRecordSetStep(dnsCow, gcpProjectConfig))
+            .build(),
         newCloudApiDefaultRetryRule());
     addStep(
-        new CreateResourceRecordSetStep(dnsCow, gcpProjectConfig), newCloudApiDefaultRetryRule());
-    addStep(new FinishResourceCreationStep(bufferDao), newInternalDefaultRetryRule());
+        new FinishResourceCreationStep(bufferDao, handoutWaitQueue), newInternalDefaultRetryRule());
   }
 }
@@ -4,6 +4,7 @@ import static bio.terra.buffer.service.resource.flight.StepUtils.newCloudApiDefa
 import static bio.terra.buffer.service.resource.flight.StepUtils.newInternalDefaultRetryRule;
 
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
 import bio.terra.stairway.Flight;
 import bio.terra.stairway.FlightMap;
@@ -17,8 +18,11 @@ public class GoogleProjectDeletionFlight extends Flight {
     BufferDao bufferDao = ((ApplicationContext) applicationContext).getBean(BufferDao.class);
     CloudResourceManagerCow rmCow =
         ((ApplicationContext) applicationContext).getBean(CloudResourceManagerCow.class);
+    ProjectDeletionReconciler projectDeletionReconciler =
+        ((ApplicationContext) applicationContext).getBean(ProjectDeletionReconciler.class);
     addStep(new AssertResourceDeletingStep(bufferDao), newInternalDefaultRetryRule());
-    addStep(new DeleteProjectStep(rmCow), newCloudApiDefaultRetryRule());
+    addStep(
+        new DeleteProjectStep(rmCow, projectDeletionReconciler), newCloudApiDefaultRetryRule());
     addStep(new UpdateResourceAsDeletedStep(bufferDao), newInternalDefaultRetryRule());
   }
 }
@@ -0,0 +1,57 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.PROJECT_SCRUB_BRANCHES;
+import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_CONFIG;
+import static bio.terra.buffer.service.resource.flight.StepUtils.newCloudApiDefaultRetryRule;
+import static bio.terra.buffer.service.resource.flight.StepUtils.newInternalDefaultRetryRule;
+
+import bio.terra.buffer.app.configuration.CrlConfiguration;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.buffer.service.resource.ParallelStepExecutor;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.stairway.Flight;
+import bio.terra.stairway.FlightMap;
+import com.google.api.services.compute.Compute;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * {@link Flight} to scrub a GCP project returned by its client back to its config and make it READY
+ * again. If the project can't be scrubbed, the flight fails and the project goes back to
+ * HANDED_OUT.
+ */
+public class GoogleProjectRecyclingFlight extends Flight {
+  public GoogleProjectRecyclingFlight(FlightMap inputParameters, Object applicationContext) {
+    super(inputParameters, applicationContext);
+    BufferDao bufferDao = ((ApplicationContext) applicationContext).getBean(BufferDao.class);
+    CloudResourceManagerCow rmCow =
+        ((ApplicationContext) applicationContext).getBean(CloudResourceManagerCow.class);
+    Compute compute = ((ApplicationContext) applicationContext).getBean(Compute.class);
+    CrlConfiguration crlConfiguration =
+        ((ApplicationContext) applicationContext).getBean(CrlConfiguration.class);
+    HandoutWaitQueue handoutWaitQueue =
+        ((ApplicationContext) applicationContext).getBean(HandoutWaitQueue.class);
+    ParallelStepExecutor parallelStepExecutor =
+        ((ApplicationContext) applicationContext).getBean(ParallelStepExecutor.class);
+    GcpProjectConfig gcpProjectConfig =
+        inputParameters.get(RESOURCE_CONFIG, ResourceConfig.class).getGcpProjectConfig();
+    addStep(new AssertResourceRecyclingStep(bufferDao), newInternalDefaultRetryRule());
+    // The scrubs touch unrelated resources, so they run concurrently.
+    addStep(
+        ParallelStep.builder()
+            .key(PROJECT_SCRUB_BRANCHES)
+            .executor(parallelStepExecutor)
+            .addBranch(
+                new ScrubIamPolicyStep(
+                    rmCow, gcpProjectConfig, crlConfiguration.serviceAccountEmail()))
+            .addBranch(new ScrubFirewallRulesStep(compute, gcpProjectConfig))
+            .addBranch(new ScrubBucketsStep())
+            .build(),
+        newCloudApiDefaultRetryRule());
+    addStep(
+        new FinishResourceRecyclingStep(bufferDao, handoutWaitQueue),
+        newInternalDefaultRetryRule());
+  }
+}
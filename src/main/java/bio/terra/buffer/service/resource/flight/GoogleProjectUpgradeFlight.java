@@ -0,0 +1,88 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.CONFIG_DELTA;
+import static bio.terra.buffer.service.resource.FlightMapKeys.PROJECT_UPGRADE_BRANCHES;
+import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_CONFIG;
+import static bio.terra.buffer.service.resource.flight.GoogleProjectConfigUtils.isNetworkMonitoringEnabled;
+import static bio.terra.buffer.service.resource.flight.StepUtils.newCloudApiDefaultRetryRule;
+import static bio.terra.buffer.service.resource.flight.StepUtils.newInternalDefaultRetryRule;
+
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.ParallelStepExecutor;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
+import bio.terra.cloudres.google.billing.CloudBillingClientCow;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.cloudres.google.compute.CloudComputeCow;
+import bio.terra.cloudres.google.dns.DnsCow;
+import bio.terra.cloudres.google.serviceusage.ServiceUsageCow;
+import bio.terra.stairway.Flight;
+import bio.terra.stairway.FlightMap;
+import com.google.api.services.compute.Compute;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * {@link Flight} to upgrade a READY GCP project of a deactivated pool to the config of the pool
+ * replacing it, by applying the {@link GcpProjectConfigDiff#delta} between the two configs. The
+ * project's buffer-config-name label is updated too, and it then becomes READY in the new pool. If
+ * the upgrade fails, the project is deleted.
+ */
+public class GoogleProjectUpgradeFlight extends Flight {
+  public GoogleProjectUpgradeFlight(FlightMap inputParameters, Object applicationContext) {
+    super(inputParameters, applicationContext);
+    BufferDao bufferDao = ((ApplicationContext) applicationContext).getBean(BufferDao.class);
+    CloudResourceManagerCow rmCow =
+        ((ApplicationContext) applicationContext).getBean(CloudResourceManagerCow.class);
+    CloudBillingClientCow billingCow =
+        ((ApplicationContext) applicationContext).getBean(CloudBillingClientCow.class);
+    ServiceUsageCow serviceUsageCow =
+        ((ApplicationContext) applicationContext).getBean(ServiceUsageCow.class);
+    CloudComputeCow cloudComputeCow =
+        ((ApplicationContext) applicationContext).getBean(CloudComputeCow.class);
+    Compute compute = ((ApplicationContext) applicationContext).getBean(Compute.class);
+    DnsCow dnsCow = ((ApplicationContext) applicationContext).getBean(DnsCow.class);
+    HandoutWaitQueue handoutWaitQueue =
+        ((ApplicationContext) applicationContext).getBean(HandoutWaitQueue.class);
+    ParallelStepExecutor parallelStepExecutor =
+        ((ApplicationContext) applicationContext).getBean(ParallelStepExecutor.class);
+    QuotaBudget quotaBudget = ((ApplicationContext) applicationContext).getBean(QuotaBudget.class);
+    OperationPoller operationPoller =
+        ((ApplicationContext) applicationContext).getBean(OperationPoller.class);
+    ProjectDeletionReconciler projectDeletionReconciler =
+        ((ApplicationContext) applicationContext).getBean(ProjectDeletionReconciler.class);
+    GcpProjectConfig gcpProjectConfig =
+        inputParameters.get(RESOURCE_CONFIG, ResourceConfig.class).getGcpProjectConfig();
+    GcpProjectConfig delta = inputParameters.get(CONFIG_DELTA, GcpProjectConfig.class);
+    addStep(new AssertResourceUpgradingStep(bufferDao), newInternalDefaultRetryRule());
+    addStep(
+        new UndoUpgradingResourceStep(bufferDao, rmCow, projectDeletionReconciler),
+        newCloudApiDefaultRetryRule());
+    // The creation steps skip what the delta doesn't set.
+    addStep(new SetBillingInfoStep(billingCow, delta), newCloudApiDefaultRetryRule());
+    addStep(
+        new EnableServicesStep(serviceUsageCow, delta, quotaBudget, operationPoller),
+        newCloudApiDefaultRetryRule());
+    addStep(new SetIamPolicyStep(rmCow, delta), newCloudApiDefaultRetryRule());
+    addStep(new UpdateConfigNameLabelStep(rmCow), newCloudApiDefaultRetryRule());
+    if (isNetworkMonitoringEnabled(delta)) {
+      // Sets up the network as the creation flight does with network monitoring enabled.
+      addStep(
+          ParallelStep.builder()
+              .key(PROJECT_UPGRADE_BRANCHES)
+              .executor(parallelStepExecutor)
+              .addBranch(new EnableSubnetFlowLogsStep(compute, gcpProjectConfig))
+              .addBranch(
+                  new CreateRouteStep(cloudComputeCow, compute, gcpProjectConfig),
+                  new CreateDnsZoneStep(cloudComputeCow, dnsCow, gcpProjectConfig, quotaBudget),
+                  new CreateResourceRecordSetStep(dnsCow, gcpProjectConfig))
+              .build(),
+          newCloudApiDefaultRetryRule());
+    }
+    addStep(
+        new FinishResourceUpgradeStep(bufferDao, handoutWaitQueue), newInternalDefaultRetryRule());
+  }
+}
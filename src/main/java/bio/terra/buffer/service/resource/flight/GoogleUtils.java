@@ -1,15 +1,36 @@
 package bio.terra.buffer.service.resource.flight;
 
+import static bio.terra.buffer.common.MetricsHelper.recordOperationPolled;
+
 import bio.terra.cloudres.google.api.services.common.OperationCow;
-import bio.terra.cloudres.google.api.services.common.OperationUtils;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
 import bio.terra.stairway.exception.RetryException;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClient;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /** Utilities when use Google APIs. */
 public class GoogleUtils {
@@ -26,14 +47,91 @@ public class GoogleUtils {
   /** The name of the default network that exists in the project. */
   public static final String DEFAULT_NETWORK_NAME = "default";
 
+  /** How long to wait before the first poll of an operation, many finish within a second. */
+  public static final Duration FIRST_POLLING_INTERVAL = Duration.ofMillis(500);
+
+  /**
+   * How much polling intervals are randomized either way, so that operations started together do
+   * not poll together.
+   */
+  private static final double POLLING_JITTER = 0.2;
+
+  /** The most requests Google accepts in one batch request. */
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 1000;
+
+  /**
+   * Waits until the global or regional compute {@code operation} of project {@code projectId} has
+   * completed. Throws any error or timeouts as a {@link RetryException}.
+   *
+   * <p>Uses the compute API's operation wait, which returns as soon as the operation is done or
+   * after about two minutes, so the operation is seen done without delay and without polling.
+   */
+  public static void waitForComputeOperation(
+      Compute compute, String projectId, Operation operation, Duration timeout)
+      throws RetryException, IOException, InterruptedException {
+    Instant deadline = Instant.now().plus(timeout);
+    int waits = 0;
+    while (!"DONE".equals(operation.getStatus())) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (Instant.now().isAfter(deadline)) {
+        throw new RetryException(
+            String.format("Timed out waiting for operation. name [%s]", operation.getName()));
+      }
+      operation =
+          operation.getRegion() == null
+              ? compute.globalOperations().wait(projectId, operation.getName()).execute()
+              : compute
+                  .regionOperations()
+                  .wait(projectId, lastPathSegment(operation.getRegion()), operation.getName())
+                  .execute();
+      ++waits;
+    }
+    recordOperationPolled(waits, Duration.ZERO);
+    if (operation.getError() != null) {
+      throw new RetryException(
+          String.format(
+              "Error waiting for operation. name [%s] errors [%s]",
+              operation.getName(), operation.getError().getErrors()));
+    }
+  }
+
+  /** Returns the last segment of a resource URL, e.g. the region name of a region URL. */
+  private static String lastPathSegment(String url) {
+    return url.substring(url.lastIndexOf('/') + 1);
+  }
+
   /**
    * Poll until the Google Service API operation has completed. Throws any error or timeouts as a
-   * {@link RetryException}.
+   * {@link RetryException}. Compute operations use {@link #waitForComputeOperation} instead.
+   *
+   * <p>Polls soon after the operation started, then backs off exponentially up to {@code
+   * maxPollingInterval}, so that quick operations are seen done quickly without polling long ones
+   * too often.
    */
   public static void pollUntilSuccess(
-      OperationCow<?> operation, Duration pollingInterval, Duration timeout)
+      OperationCow<?> operation, Duration maxPollingInterval, Duration timeout)
       throws RetryException, IOException, InterruptedException {
-    operation = OperationUtils.pollUntilComplete(operation, pollingInterval, timeout);
+    Instant deadline = Instant.now().plus(timeout);
+    Duration interval = FIRST_POLLING_INTERVAL;
+    Duration lastSleep = Duration.ZERO;
+    int polls = 0;
+    while (!isDone(operation)) {
+      Duration sleep = withJitter(interval);
+      if (Instant.now().plus(sleep).isAfter(deadline)) {
+        throw new RetryException(
+            String.format(
+                "Timed out polling operation. name [%s]",
+                operation.getOperationAdapter().getName()));
+      }
+      TimeUnit.MILLISECONDS.sleep(sleep.toMillis());
+      operation = operation.getOperation();
+      lastSleep = sleep;
+      ++polls;
+      interval = nextPollingInterval(interval, maxPollingInterval);
+    }
+    recordOperationPolled(polls, lastSleep);
     if (operation.getOperationAdapter().getError() != null) {
       throw new RetryException(
           String.format(
@@ -43,6 +141,22 @@ public class GoogleUtils {
     }
   }
 
+  /** Returns the interval to wait after {@code interval}: twice as long, up to {@code max}. */
+  public static Duration nextPollingInterval(Duration interval, Duration max) {
+    Duration next = interval.multipliedBy(2);
+    return next.compareTo(max) > 0 ? max : next;
+  }
+
+  /** Randomizes {@code interval} by up to {@link #POLLING_JITTER} either way. */
+  static Duration withJitter(Duration interval) {
+    double factor = 1 + POLLING_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Duration.ofMillis((long) (interval.toMillis() * factor));
+  }
+
+  private static boolean isDone(OperationCow<?> operation) {
+    return Boolean.TRUE.equals(operation.getOperationAdapter().getDone());
+  }
+
   /** Retrieves a project by id. Returns {@code Optional.empty} for 403 error code. */
   public static Optional<Project> retrieveProject(CloudResourceManagerCow rmCow, String projectId)
       throws IOException {
@@ -103,6 +217,110 @@ public class GoogleUtils {
     }
   }
 
+  /**
+   * Sends {@code requests} to Google in batches, so that many small mutations cost a few HTTP calls
+   * instead of one each. Requests are keyed by the item they act on, e.g. a region or rule name.
+   *
+   * <p>Items failing with the {@code acceptable} status code are reported as tolerated, like {@link
+   * #createResourceAndIgnoreConflict} does for 409 when creating. Other item failures don't stop
+   * the batch, see {@link BatchResult#throwIfFailed}.
+   */
+  public static <K, T> BatchResult<K, T> executeBatch(
+      AbstractGoogleJsonClient client,
+      Map<K, ? extends AbstractGoogleJsonClientRequest<T>> requests,
+      int acceptable)
+      throws IOException {
+    BatchResult<K, T> result = new BatchResult<>(requests.size());
+    for (List<K> partition : Lists.partition(new ArrayList<>(requests.keySet()), MAX_BATCH_SIZE)) {
+      BatchRequest batch = client.batch();
+      for (K item : partition) {
+        requests
+            .get(item)
+            .queue(
+                batch,
+                new JsonBatchCallback<T>() {
+                  @Override
+                  public void onSuccess(T response, HttpHeaders responseHeaders) {
+                    result.results.put(item, response);
+                  }
+
+                  @Override
+                  public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                    if (error.getCode() == acceptable) {
+                      result.tolerated.add(item);
+                    } else {
+                      result.failures.add(error);
+                    }
+                  }
+                });
+      }
+      batch.execute();
+    }
+    return result;
+  }
+
+  /** The outcome of {@link #executeBatch}. */
+  public static class BatchResult<K, T> {
+    private final Map<K, T> results = new LinkedHashMap<>();
+    private final Set<K> tolerated = new LinkedHashSet<>();
+    private final List<GoogleJsonError> failures = new ArrayList<>();
+    private final int size;
+
+    private BatchResult(int size) {
+      this.size = size;
+    }
+
+    /** The responses of the items that succeeded, e.g. operations to poll. */
+    public Map<K, T> results() {
+      return Collections.unmodifiableMap(results);
+    }
+
+    /** The items that failed with the acceptable status code. */
+    public Set<K> tolerated() {
+      return Collections.unmodifiableSet(tolerated);
+    }
+
+    /**
+     * Throws the first item failure as a {@link GoogleJsonResponseException}, if any item failed
+     * with a status code other than the acceptable one.
+     */
+    public void throwIfFailed() throws GoogleJsonResponseException {
+      if (failures.isEmpty()) {
+        return;
+      }
+      GoogleJsonError error = failures.get(0);
+      throw new GoogleJsonResponseException(
+          new HttpResponseException.Builder(error.getCode(), error.getMessage(), new HttpHeaders())
+              .setMessage(
+                  String.format(
+                      "%d of %d batched requests failed, first error: %s",
+                      failures.size(), size, error.getMessage())),
+          error);
+    }
+  }
+
+  /**
+   * Checks if the exception is Google rejecting a request for going over a rate limit, either 429
+   * or 403 with a rateLimitExceeded reason.
+   */
+  public static boolean isRateLimited(Exception e) {
+    if (!(e instanceof GoogleJsonResponseException)) {
+      return false;
+    }
+    GoogleJsonResponseException jsonException = (GoogleJsonResponseException) e;
+    if (jsonException.getStatusCode() == 429) {
+      return true;
+    }
+    return jsonException.getStatusCode() == 403
+        && jsonException.getDetails() != null
+        && jsonException.getDetails().getErrors() != null
+        && jsonException.getDetails().getErrors().stream()
+            .anyMatch(
+                error ->
+                    "rateLimitExceeded".equals(error.getReason())
+                        || "userRateLimitExceeded".equals(error.getReason()));
+  }
+
   /** Checks if project is being deleted. */
   public static boolean isProjectDeleting(Project project) {
     return project.getState().equals("DELETE_REQUESTED")
@@ -0,0 +1,308 @@
+package bio.terra.buffer.service.resource.flight;
+
+import bio.terra.buffer.service.resource.ParallelStepExecutor;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.RetryException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A {@link Step} running branches of steps concurrently. Steps within a branch run in order, so a
+ * flight can be laid out as a DAG: steps before the parallel step, then independent branches, then
+ * steps that need all branches done.
+ *
+ * <p>The flight's working map is not thread safe, so steps in a branch write to their branch's own
+ * working map with {@link #putWorkingMap} and read with {@link #getWorkingMap}, which falls back to
+ * the flight's working map. Once all branches are done, whether they succeeded or not, the branch
+ * working maps are merged into the flight's, so that later steps and retries see what the branches
+ * wrote. Branches must not write the same keys.
+ *
+ * <p>Each branch retries its failing step with its own {@link CloudApiRetryRule}, while the other
+ * branches carry on. The parallel step fails once all branches are done and any of them gave up,
+ * fatally so that Stairway undoes the flight instead of retrying all branches again. Undo runs the
+ * undo of every step a branch started, in reverse order, with branches concurrently.
+ *
+ * <p>Each branch records how many of its steps it started in the working map under the step's key,
+ * like {@link StepCheckpoint}, so that undo of a flight recovered after a restart only undoes those.
+ * A branch without a record, e.g. the flight stopped before the working map was persisted, undoes
+ * all of its steps, which Stairway steps already need to tolerate.
+ *
+ * <p>Branches of all flights run on the shared {@link ParallelStepExecutor}. Parallel steps must not
+ * be nested, since a branch waiting for its own branches could hold the last thread they need.
+ */
+public class ParallelStep implements Step {
+  /** The most branches a parallel step may have, see {@link ParallelStepExecutor}. */
+  public static final int MAX_BRANCHES = 8;
+
+  /** The working map of the branch running on the current thread, if any. */
+  private static final ThreadLocal<Map<String, Object>> BRANCH_WORKING_MAP = new ThreadLocal<>();
+
+  private final String key;
+  private final ImmutableList<Branch> branches;
+  private final ParallelStepExecutor executor;
+
+  /** Per branch, how many of its steps succeeded. */
+  private final AtomicIntegerArray completed;
+
+  /** Per branch, how many of its steps were started and not undone yet. */
+  private final AtomicIntegerArray started;
+
+  private volatile boolean doStepRun = false;
+
+  private ParallelStep(
+      String key, ImmutableList<Branch> branches, ParallelStepExecutor executor) {
+    this.key = key;
+    this.branches = branches;
+    this.executor = executor;
+    this.completed = new AtomicIntegerArray(branches.size());
+    this.started = new AtomicIntegerArray(branches.size());
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Puts {@code value} in the working map of the branch running the calling step, or in the
+   * flight's working map if the step doesn't run in a branch.
+   */
+  public static void putWorkingMap(FlightContext flightContext, String key, Object value) {
+    Map<String, Object> branchWorkingMap = BRANCH_WORKING_MAP.get();
+    if (branchWorkingMap == null) {
+      flightContext.getWorkingMap().put(key, value);
+    } else {
+      branchWorkingMap.put(key, value);
+    }
+  }
+
+  /**
+   * Gets the value of {@code key} put by {@link #putWorkingMap}, from the working map of the branch
+   * running the calling step if it has one, otherwise from the flight's working map.
+   */
+  public static <T> T getWorkingMap(FlightContext flightContext, String key, Class<T> type) {
+    Map<String, Object> branchWorkingMap = BRANCH_WORKING_MAP.get();
+    if (branchWorkingMap != null && branchWorkingMap.containsKey(key)) {
+      return type.cast(branchWorkingMap.get(key));
+    }
+    return flightContext.getWorkingMap().get(key, type);
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) throws InterruptedException {
+    doStepRun = true;
+    return runBranches(flightContext, this::doBranch);
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) throws InterruptedException {
+    if (!doStepRun) {
+      for (int i = 0; i < branches.size(); i++) {
+        Integer saved = getWorkingMap(flightContext, startedKey(i), Integer.class);
+        started.set(i, saved == null ? branches.get(i).steps.size() : saved);
+      }
+    }
+    return runBranches(flightContext, this::undoBranch);
+  }
+
+  private StepResult doBranch(int branch, FlightContext flightContext)
+      throws InterruptedException {
+    Branch current = branches.get(branch);
+    for (int i = completed.get(branch); i < current.steps.size(); i++) {
+      putWorkingMap(
+          flightContext, startedKey(branch), started.accumulateAndGet(branch, i + 1, Math::max));
+      Step step = current.steps.get(i);
+      StepResult result = runWithRetries(() -> step.doStep(flightContext), current.retryRule);
+      if (result.getStepStatus() == StepStatus.STEP_RESULT_FAILURE_RETRY) {
+        // The branch gave up, don't have Stairway retry the other branches.
+        return result
+            .getException()
+            .map(e -> new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL, e))
+            .orElseGet(() -> new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL));
+      } else if (!result.isSuccess()) {
+        return result;
+      }
+      completed.set(branch, i + 1);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  private StepResult undoBranch(int branch, FlightContext flightContext)
+      throws InterruptedException {
+    Branch current = branches.get(branch);
+    for (int i = started.get(branch) - 1; i >= 0; i--) {
+      Step step = current.steps.get(i);
+      StepResult result = runWithRetries(() -> step.undoStep(flightContext), current.retryRule);
+      if (!result.isSuccess()) {
+        return result;
+      }
+      started.set(branch, i);
+      putWorkingMap(flightContext, startedKey(branch), i);
+      completed.set(branch, Math.min(completed.get(branch), i));
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  /** The working map key of how many steps of {@code branch} were started and not undone yet. */
+  private String startedKey(int branch) {
+    return key + ".started." + branch;
+  }
+
+  /**
+   * Runs {@code stepCall}, retrying it as long as {@code retryRule} allows. Converts exceptions the
+   * same way Stairway does.
+   */
+  private static StepResult runWithRetries(StepCall stepCall, CloudApiRetryRule retryRule)
+      throws InterruptedException {
+    retryRule.initialize();
+    while (true) {
+      StepResult result;
+      try {
+        result = stepCall.call();
+      } catch (RetryException e) {
+        result = new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+      } catch (RuntimeException e) {
+        result = new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL, e);
+      }
+      if (result.getStepStatus() != StepStatus.STEP_RESULT_FAILURE_RETRY
+          || !retryRule.retrySleep(result)) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Runs {@code runner} for every branch on the shared executor, each with its own working map,
+   * and waits for all of them. Returns success if all succeeded, otherwise the first fatal failure,
+   * or the first failure if none is fatal.
+   */
+  private StepResult runBranches(FlightContext flightContext, BranchRunner runner)
+      throws InterruptedException {
+    Preconditions.checkState(
+        BRANCH_WORKING_MAP.get() == null, "ParallelStep must not run in a ParallelStep branch");
+    List<Map<String, Object>> branchWorkingMaps = new ArrayList<>();
+    List<Callable<StepResult>> tasks = new ArrayList<>();
+    for (int i = 0; i < branches.size(); i++) {
+      int branch = i;
+      Map<String, Object> branchWorkingMap = new HashMap<>();
+      branchWorkingMaps.add(branchWorkingMap);
+      tasks.add(
+          () -> {
+            BRANCH_WORKING_MAP.set(branchWorkingMap);
+            try {
+              return runner.run(branch, flightContext);
+            } finally {
+              BRANCH_WORKING_MAP.remove();
+            }
+          });
+    }
+    List<Future<StepResult>> futures = executor.invokeAll(tasks);
+    // All branches are done, so nothing else uses the flight's working map.
+    for (Map<String, Object> branchWorkingMap : branchWorkingMaps) {
+      branchWorkingMap.forEach((key, value) -> flightContext.getWorkingMap().put(key, value));
+    }
+    StepResult combined = StepResult.getStepResultSuccess();
+    for (Future<StepResult> future : futures) {
+      StepResult result = toStepResult(future);
+      if (combined.isSuccess()
+          || (result.getStepStatus() == StepStatus.STEP_RESULT_FAILURE_FATAL
+              && combined.getStepStatus() != StepStatus.STEP_RESULT_FAILURE_FATAL)) {
+        combined = result;
+      }
+    }
+    return combined;
+  }
+
+  /** Converts exceptions thrown by a branch the same way Stairway does for a step. */
+  private static StepResult toStepResult(Future<StepResult> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof InterruptedException) {
+        throw (InterruptedException) e.getCause();
+      } else if (e.getCause() instanceof Exception) {
+        return new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL, (Exception) e.getCause());
+      }
+      throw (Error) e.getCause();
+    }
+  }
+
+  /** Runs one branch's steps, or their undos. */
+  @FunctionalInterface
+  private interface BranchRunner {
+    StepResult run(int branch, FlightContext flightContext) throws InterruptedException;
+  }
+
+  /** A call to a step's do or undo. */
+  @FunctionalInterface
+  private interface StepCall {
+    StepResult call() throws InterruptedException, RetryException;
+  }
+
+  /** The steps of a branch and the rule retrying them. */
+  private static class Branch {
+    private final ImmutableList<Step> steps;
+    private final CloudApiRetryRule retryRule;
+
+    private Branch(ImmutableList<Step> steps, CloudApiRetryRule retryRule) {
+      this.steps = steps;
+      this.retryRule = retryRule;
+    }
+  }
+
+  /** Builder for {@link ParallelStep}. */
+  public static class Builder {
+    private final ImmutableList.Builder<Branch> branches = ImmutableList.builder();
+    private String key;
+    private ParallelStepExecutor executor;
+
+    /**
+     * The working map key under which branches record their progress, unique within the flight.
+     * Required.
+     */
+    public Builder key(String key) {
+      this.key = key;
+      return this;
+    }
+
+    /** The executor to run the branches on. Required. */
+    public Builder executor(ParallelStepExecutor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Adds a branch running {@code steps} in order, concurrently with the other branches. Steps are
+     * retried with the default {@link CloudApiRetryRule}.
+     */
+    public Builder addBranch(Step... steps) {
+      return addBranch(CloudApiRetryRule.builder().build(), steps);
+    }
+
+    /** Adds a branch running {@code steps} in order, each retried with {@code retryRule}. */
+    public Builder addBranch(CloudApiRetryRule retryRule, Step... steps) {
+      branches.add(new Branch(ImmutableList.copyOf(steps), retryRule));
+      return this;
+    }
+
+    public ParallelStep build() {
+      ImmutableList<Branch> built = branches.build();
+      Preconditions.checkState(!built.isEmpty(), "ParallelStep needs at least one branch");
+      Preconditions.checkState(
+          built.size() <= MAX_BRANCHES, "ParallelStep has more than %s branches", MAX_BRANCHES);
+      Preconditions.checkState(key != null, "ParallelStep needs a key");
+      Preconditions.checkState(executor != null, "ParallelStep needs an executor");
+      return new ParallelStep(key, built, executor);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.CreateStorageLogBucketStep.storageLogBucketName;
+import static bio.terra.buffer.service.resource.flight.StepUtils.getInputProjectId;
+
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.StorageOptions;
+import com.google.common.collect.Iterables;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the buckets of a returned project and all their objects, except the storage log bucket
+ * created with the project, which is only emptied.
+ *
+ * <p>Uses the Cloud Storage client directly, as CRL's StorageCow can't list buckets or objects.
+ */
+public class ScrubBucketsStep implements Step {
+  /** How many objects to delete per batch request, the most a Cloud Storage batch allows. */
+  private static final int DELETE_BATCH_SIZE = 100;
+
+  private final Logger logger = LoggerFactory.getLogger(ScrubBucketsStep.class);
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    String projectId = getInputProjectId(flightContext);
+    Storage storage = StorageOptions.newBuilder().setProjectId(projectId).build().getService();
+    try {
+      for (Bucket bucket : storage.list().iterateAll()) {
+        deleteObjects(storage, bucket.getName());
+        if (!bucket.getName().equals(storageLogBucketName(projectId))) {
+          storage.delete(bucket.getName());
+        }
+      }
+    } catch (StorageException e) {
+      logger.info("Error when scrubbing buckets", e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    // Deleted buckets aren't restored, the resource is cleaned up instead of recycled.
+    return StepResult.getStepResultSuccess();
+  }
+
+  /** Deletes all objects in the bucket, including noncurrent versions that block its deletion. */
+  private static void deleteObjects(Storage storage, String bucketName) {
+    Iterable<Blob> blobs =
+        storage.list(bucketName, Storage.BlobListOption.versions(true)).iterateAll();
+    for (List<Blob> batch : Iterables.partition(blobs, DELETE_BATCH_SIZE)) {
+      // Objects deleted meanwhile are reported as not found, which is fine.
+      List<BlobId> blobIds = batch.stream().map(Blob::getBlobId).collect(Collectors.toList());
+      storage.delete(blobIds);
+    }
+  }
+}
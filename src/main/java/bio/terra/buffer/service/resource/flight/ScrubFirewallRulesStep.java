@@ -0,0 +1,83 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.SCRUBBED_FIREWALL_RULES;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.*;
+import static bio.terra.buffer.service.resource.flight.StepUtils.getInputProjectId;
+
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.RetryException;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Firewall;
+import com.google.api.services.compute.model.FirewallList;
+import com.google.api.services.compute.model.Operation;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the firewall rules of a returned project other than the ones {@link
+ * CreateFirewallRuleStep} created for its config.
+ */
+public class ScrubFirewallRulesStep implements Step {
+  private final Logger logger = LoggerFactory.getLogger(ScrubFirewallRulesStep.class);
+  private final Compute compute;
+  private final GcpProjectConfig gcpProjectConfig;
+
+  public ScrubFirewallRulesStep(Compute compute, GcpProjectConfig gcpProjectConfig) {
+    this.compute = compute;
+    this.gcpProjectConfig = gcpProjectConfig;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) throws RetryException {
+    String projectId = getInputProjectId(flightContext);
+    // The names of the rules deleted, so that a retry skips them.
+    StepCheckpoint checkpoint = new StepCheckpoint(flightContext, SCRUBBED_FIREWALL_RULES);
+    Set<String> baseline = ImmutableSet.copyOf(CreateFirewallRuleStep.ruleNames(gcpProjectConfig));
+    try {
+      Map<String, Compute.Firewalls.Delete> deletes = new LinkedHashMap<>();
+      String pageToken = null;
+      do {
+        FirewallList firewalls =
+            compute.firewalls().list(projectId).setPageToken(pageToken).execute();
+        if (firewalls.getItems() != null) {
+          for (Firewall firewall : firewalls.getItems()) {
+            if (!baseline.contains(firewall.getName())
+                && !checkpoint.isCompleted(firewall.getName())) {
+              deletes.put(
+                  firewall.getName(), compute.firewalls().delete(projectId, firewall.getName()));
+            }
+          }
+        }
+        pageToken = firewalls.getNextPageToken();
+      } while (pageToken != null);
+      // Rules that are already deleted fail with 404 and are skipped.
+      BatchResult<String, Operation> batch = executeBatch(compute, deletes, 404);
+      checkpoint.completeAll(batch.tolerated());
+      for (Map.Entry<String, Operation> delete : batch.results().entrySet()) {
+        waitForComputeOperation(compute, projectId, delete.getValue(), Duration.ofMinutes(5));
+        checkpoint.complete(delete.getKey());
+      }
+      batch.throwIfFailed();
+    } catch (IOException | InterruptedException e) {
+      logger.info("Error when scrubbing firewall rules", e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    // Deleted rules aren't restored, the resource is cleaned up instead of recycled.
+    return StepResult.getStepResultSuccess();
+  }
+}
@@ -0,0 +1,144 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.StepUtils.getInputProjectId;
+
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.IamBinding;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.api.services.cloudresourcemanager.v3.model.Binding;
+import com.google.api.services.cloudresourcemanager.v3.model.GetIamPolicyRequest;
+import com.google.api.services.cloudresourcemanager.v3.model.GetPolicyOptions;
+import com.google.api.services.cloudresourcemanager.v3.model.Policy;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.api.services.cloudresourcemanager.v3.model.SetIamPolicyRequest;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the IAM members a client added to a returned project. Members are removed from every role
+ * the config's iamBindings don't grant them, except the service accounts Google and Resource Buffer
+ * Service grant roles to when the project is created: the project's own service accounts and
+ * service agents, and Resource Buffer Service's service account.
+ */
+public class ScrubIamPolicyStep implements Step {
+  private static final String SERVICE_ACCOUNT_PREFIX = "serviceAccount:";
+
+  /** Reads conditional bindings too, so that setting the policy back keeps them intact. */
+  private static final int POLICY_VERSION = 3;
+
+  private final Logger logger = LoggerFactory.getLogger(ScrubIamPolicyStep.class);
+  private final CloudResourceManagerCow rmCow;
+  private final GcpProjectConfig gcpProjectConfig;
+  private final Optional<String> bufferServiceAccount;
+
+  public ScrubIamPolicyStep(
+      CloudResourceManagerCow rmCow,
+      GcpProjectConfig gcpProjectConfig,
+      Optional<String> bufferServiceAccount) {
+    this.rmCow = rmCow;
+    this.gcpProjectConfig = gcpProjectConfig;
+    this.bufferServiceAccount = bufferServiceAccount;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    String projectId = getInputProjectId(flightContext);
+    try {
+      Project project = rmCow.projects().get(projectId).execute();
+      // The project's name has the form "projects/[project number]".
+      String projectNumber = project.getName().substring("projects/".length());
+      Policy policy =
+          rmCow
+              .projects()
+              .getIamPolicy(
+                  projectId,
+                  new GetIamPolicyRequest()
+                      .setOptions(
+                          new GetPolicyOptions().setRequestedPolicyVersion(POLICY_VERSION)))
+              .execute();
+      if (scrub(policy, gcpProjectConfig, keptServiceAccount(projectId, projectNumber))) {
+        // The policy's etag makes this fail if the policy changed since it was read.
+        rmCow
+            .projects()
+            .setIamPolicy(
+                projectId,
+                new SetIamPolicyRequest().setPolicy(policy.setVersion(POLICY_VERSION)))
+            .execute();
+      }
+    } catch (IOException e) {
+      logger.info("Error when scrubbing IAM policy", e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    // Nothing to restore, the resource is cleaned up instead of recycled if the flight fails.
+    return StepResult.getStepResultSuccess();
+  }
+
+  /**
+   * Returns whether a service account email is one of the project's or Resource Buffer Service's,
+   * see <a href="https://cloud.google.com/iam/docs/service-account-types">Service account
+   * types</a>.
+   */
+  @VisibleForTesting
+  Predicate<String> keptServiceAccount(String projectId, String projectNumber) {
+    return email ->
+        email.endsWith("@" + projectId + ".iam.gserviceaccount.com")
+            || email.startsWith("service-" + projectNumber + "@")
+            || email.equals(projectNumber + "@cloudservices.gserviceaccount.com")
+            || email.equals(projectNumber + "-compute@developer.gserviceaccount.com")
+            || bufferServiceAccount.map(email::equals).orElse(false);
+  }
+
+  /**
+   * Removes the members from {@code policy} that the config doesn't grant, other than service
+   * accounts matching {@code keptServiceAccount}. Returns whether any member was removed.
+   */
+  @VisibleForTesting
+  static boolean scrub(
+      Policy policy, GcpProjectConfig gcpProjectConfig, Predicate<String> keptServiceAccount) {
+    if (policy.getBindings() == null) {
+      return false;
+    }
+    SetMultimap<String, String> baseline = HashMultimap.create();
+    if (gcpProjectConfig.getIamBindings() != null) {
+      for (IamBinding iamBinding : gcpProjectConfig.getIamBindings()) {
+        baseline.putAll(iamBinding.getRole(), iamBinding.getMembers());
+      }
+    }
+    boolean changed = false;
+    for (Iterator<Binding> bindings = policy.getBindings().iterator(); bindings.hasNext(); ) {
+      Binding binding = bindings.next();
+      changed |=
+          binding
+              .getMembers()
+              .removeIf(
+                  member ->
+                      !isKept(member, keptServiceAccount)
+                          && !baseline.containsEntry(binding.getRole(), member));
+      if (binding.getMembers().isEmpty()) {
+        bindings.remove();
+      }
+    }
+    return changed;
+  }
+
+  private static boolean isKept(String member, Predicate<String> keptServiceAccount) {
+    return member.startsWith(SERVICE_ACCOUNT_PREFIX)
+        && keptServiceAccount.test(member.substring(SERVICE_ACCOUNT_PREFIX.length()));
+  }
+}
@@ -0,0 +1,54 @@
+package bio.terra.buffer.service.resource.flight;
+
+import bio.terra.stairway.FlightContext;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records which items of a multi-item step are done, e.g. the regions of subnets created, so that a
+ * retry of the step only processes the remaining items.
+ *
+ * <p>The done items are kept in the working map under the step's key, with {@link
+ * ParallelStep#putWorkingMap}, so that they carry over retries of the step and are persisted with
+ * the flight, surviving a restart. Steps must still tolerate redoing items done after the working
+ * map was last persisted, e.g. by ignoring 409 on create.
+ */
+public class StepCheckpoint {
+  private final FlightContext flightContext;
+  private final String key;
+  private final Set<String> completed = new LinkedHashSet<>();
+
+  /** Loads the items recorded under {@code key} by earlier runs of the step. */
+  public StepCheckpoint(FlightContext flightContext, String key) {
+    this.flightContext = flightContext;
+    this.key = key;
+    String[] saved = ParallelStep.getWorkingMap(flightContext, key, String[].class);
+    if (saved != null) {
+      completed.addAll(Arrays.asList(saved));
+    }
+  }
+
+  /** Records {@code item} as done. */
+  public void complete(String item) {
+    if (completed.add(item)) {
+      save();
+    }
+  }
+
+  /** Records all of {@code items} as done. */
+  public void completeAll(Collection<String> items) {
+    if (completed.addAll(items)) {
+      save();
+    }
+  }
+
+  public boolean isCompleted(String item) {
+    return completed.contains(item);
+  }
+
+  private void save() {
+    ParallelStep.putWorkingMap(flightContext, key, completed.toArray(new String[0]));
+  }
+}
@@ -1,24 +1,45 @@
 package bio.terra.buffer.service.resource.flight;
 
 import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_READY;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.isRateLimited;
 
 import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.db.BufferDao;
 import bio.terra.buffer.generated.model.CloudResourceUid;
 import bio.terra.buffer.service.resource.FlightMapKeys;
+import bio.terra.buffer.service.resource.flight.CloudErrorClassifier.ErrorClass;
 import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.RetryRule;
 import bio.terra.stairway.RetryRuleFixedInterval;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 
 /** Utilities used in Stairway steps. */
 public class StepUtils {
 
   /**
-   * The stairway retry rule for GCP API calls. Use longer wait time because cloud API quota,
-   * outrage, and other unknown issues.
+   * The stairway retry rule for GCP API calls. Backs off quickly from transient errors, waits
+   * longer for cloud API quota, and doesn't retry errors that won't go away. See {@link
+   * CloudApiRetryRule}.
    */
-  public static RetryRuleFixedInterval newCloudApiDefaultRetryRule() {
-    return new RetryRuleFixedInterval(/* intervalSeconds =*/ 60, /* maxCount =*/ 10);
+  public static RetryRule newCloudApiDefaultRetryRule() {
+    return CloudApiRetryRule.builder().build();
+  }
+
+  /**
+   * The retry rule for GCP API calls on a project that was just created or had services just
+   * enabled. Permissions on them take a while to propagate, so a 403 that isn't a rate limit is
+   * usually transient and retried like other transient errors.
+   */
+  public static CloudApiRetryRule newPermissionPropagationRetryRule() {
+    return CloudApiRetryRule.builder()
+        .override(
+            e ->
+                e instanceof GoogleJsonResponseException
+                    && ((GoogleJsonResponseException) e).getStatusCode() == 403
+                    && !isRateLimited(e),
+            ErrorClass.RETRY_SOON)
+        .build();
   }
 
   /**
@@ -29,6 +50,15 @@ public class StepUtils {
     return new RetryRuleFixedInterval(/* intervalSeconds =*/ 5, /* maxCount =*/ 10);
   }
 
+  /** Returns the id of the existing project a deletion or recycling flight works on. */
+  public static String getInputProjectId(FlightContext flightContext) {
+    return flightContext
+        .getInputParameters()
+        .get(FlightMapKeys.CLOUD_RESOURCE_UID, CloudResourceUid.class)
+        .getGoogleProjectUid()
+        .getProjectId();
+  }
+
   /** Update resource state to READY and update working map's RESOURCE_READY boolean value. */
   public static void markResourceReady(BufferDao bufferDao, FlightContext flightContext) {
     FlightMap workingMap = flightContext.getWorkingMap();
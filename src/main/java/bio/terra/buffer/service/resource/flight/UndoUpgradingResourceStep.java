@@ -0,0 +1,81 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.isProjectDeleting;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.retrieveProject;
+import static bio.terra.buffer.service.resource.flight.StepUtils.getInputProjectId;
+
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.common.ResourceState;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A step with undo method to delete a project that could not be upgraded. A partly upgraded project
+ * matches neither config, so it is deleted, and the new pool creates a project from scratch in its
+ * place.
+ *
+ * <p>The resource is marked DELETING and only the deletion is requested, as {@link
+ * DeleteProjectStep} does. {@link ProjectDeletionReconciler} marks the resource DELETED once it
+ * confirms the deletion.
+ */
+public class UndoUpgradingResourceStep implements Step {
+  private final Logger logger = LoggerFactory.getLogger(UndoUpgradingResourceStep.class);
+  private final BufferDao bufferDao;
+  private final CloudResourceManagerCow rmCow;
+  private final ProjectDeletionReconciler projectDeletionReconciler;
+
+  public UndoUpgradingResourceStep(
+      BufferDao bufferDao,
+      CloudResourceManagerCow rmCow,
+      ProjectDeletionReconciler projectDeletionReconciler) {
+    this.bufferDao = bufferDao;
+    this.rmCow = rmCow;
+    this.projectDeletionReconciler = projectDeletionReconciler;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    // Do nothing. We just use this step's undo method.
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    ResourceId resourceId = ResourceId.retrieve(flightContext.getInputParameters());
+    Optional<Resource> resource = bufferDao.retrieveResource(resourceId);
+    // DELETING if an earlier run of this undo failed to request the deletion.
+    if (!resource.isPresent()
+        || !(resource.get().state().equals(ResourceState.UPGRADING)
+            || resource.get().state().equals(ResourceState.DELETING))) {
+      return StepResult.getStepResultSuccess();
+    }
+    String projectId = getInputProjectId(flightContext);
+    try {
+      Optional<Project> project = retrieveProject(rmCow, projectId);
+      if (!project.isPresent() || isProjectDeleting(project.get())) {
+        // Nothing for the reconciler to confirm.
+        bufferDao.updateResourceAsDeleted(resourceId, Instant.now());
+        return StepResult.getStepResultSuccess();
+      }
+      // Marked first, so that the reconciler finds the resource DELETING once it confirms.
+      bufferDao.updateUpgradingResourceToDeleting(resourceId);
+      projectDeletionReconciler.deleteProject(project.get());
+    } catch (IOException e) {
+      logger.info("Error when deleting GCP project {} after failed upgrade", projectId, e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+}
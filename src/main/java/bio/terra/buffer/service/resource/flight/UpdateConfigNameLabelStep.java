@@ -0,0 +1,68 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_CONFIG;
+import static bio.terra.buffer.service.resource.flight.CreateProjectStep.CONFIG_NAME_LABEL_LEY;
+import static bio.terra.buffer.service.resource.flight.CreateProjectStep.createValidLabelValue;
+
+import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sets the project's buffer-config-name label to the name of the config it is upgraded to, keeping
+ * its other labels.
+ */
+public class UpdateConfigNameLabelStep implements Step {
+  private final Logger logger = LoggerFactory.getLogger(UpdateConfigNameLabelStep.class);
+  private final CloudResourceManagerCow rmCow;
+
+  public UpdateConfigNameLabelStep(CloudResourceManagerCow rmCow) {
+    this.rmCow = rmCow;
+  }
+
+  @Override
+  public StepResult doStep(FlightContext flightContext) {
+    String projectId = flightContext.getWorkingMap().get(GOOGLE_PROJECT_ID, String.class);
+    String configName =
+        createValidLabelValue(
+            flightContext
+                .getInputParameters()
+                .get(RESOURCE_CONFIG, ResourceConfig.class)
+                .getConfigName());
+    try {
+      Project project = rmCow.projects().get(projectId).execute();
+      Map<String, String> labels =
+          project.getLabels() == null ? new HashMap<>() : new HashMap<>(project.getLabels());
+      // Skip if an earlier run of this step already updated the label.
+      if (configName.equals(labels.get(CONFIG_NAME_LABEL_LEY))) {
+        return StepResult.getStepResultSuccess();
+      }
+      labels.put(CONFIG_NAME_LABEL_LEY, configName);
+      rmCow
+          .projects()
+          .patch(project.getName(), new Project().setLabels(labels))
+          .setUpdateMask("labels")
+          .execute();
+    } catch (IOException e) {
+      logger.info("Error when updating labels of GCP project {}", projectId, e);
+      return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e);
+    }
+    return StepResult.getStepResultSuccess();
+  }
+
+  @Override
+  public StepResult undoStep(FlightContext flightContext) {
+    // The project is deleted if the upgrade fails, see UndoUpgradingResourceStep.
+    return StepResult.getStepResultSuccess();
+  }
+}
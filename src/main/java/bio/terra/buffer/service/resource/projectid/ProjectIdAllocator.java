@@ -0,0 +1,80 @@
+package bio.terra.buffer.service.resource.projectid;
+
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.ProjectIdSchema;
+import bio.terra.common.exception.InternalServerErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Allocates GCP project ids that were never issued before, so that creation flights don't collide
+ * with projects created by earlier flights.
+ *
+ * <p>Issued ids are persisted in the project_id table, which decides between instances. A Bloom
+ * filter of the issued ids lets this instance skip ids it knows are taken without a database round
+ * trip. The filter may have false positives, which only cost generating another id.
+ */
+@Component
+public class ProjectIdAllocator {
+  private final Logger logger = LoggerFactory.getLogger(ProjectIdAllocator.class);
+
+  /** How many ids to try before giving up, far more than needed unless a naming space is full. */
+  @VisibleForTesting static final int MAX_ATTEMPTS = 20;
+
+  /** How many ids the filter is sized for. Past that, its false positive rate grows. */
+  private static final int EXPECTED_IDS = 1_000_000;
+
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+
+  private final GcpProjectIdGenerator idGenerator;
+  private final BufferDao bufferDao;
+  private final BloomFilter<CharSequence> issuedIds =
+      BloomFilter.create(
+          Funnels.stringFunnel(StandardCharsets.UTF_8), EXPECTED_IDS, FALSE_POSITIVE_RATE);
+
+  @Autowired
+  public ProjectIdAllocator(GcpProjectIdGenerator idGenerator, BufferDao bufferDao) {
+    this.idGenerator = idGenerator;
+    this.bufferDao = bufferDao;
+  }
+
+  /** Loads the ids issued so far into the filter. */
+  public void initialize() {
+    bufferDao.forEachProjectId(issuedIds::put);
+    logger.info("Loaded about {} issued project ids", issuedIds.approximateElementCount());
+  }
+
+  /** Generates a project id from {@code projectIdSchema} and records it as issued. */
+  public String allocate(ProjectIdSchema projectIdSchema) {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      String projectId = idGenerator.generateId(projectIdSchema);
+      if (issuedIds.mightContain(projectId)) {
+        continue;
+      }
+      issuedIds.put(projectId);
+      if (bufferDao.insertProjectId(projectId)) {
+        return projectId;
+      }
+      // Issued by another instance.
+    }
+    throw new InternalServerErrorException(
+        String.format(
+            "Failed to allocate a new project id with prefix %s after %d attempts",
+            projectIdSchema.getPrefix(), MAX_ATTEMPTS));
+  }
+
+  /**
+   * Records {@code projectId} as taken, e.g. by a project this service didn't create, so that it
+   * isn't issued again.
+   */
+  public void markTaken(String projectId) {
+    issuedIds.put(projectId);
+    bufferDao.insertProjectId(projectId);
+  }
+}
@@ -3,8 +3,10 @@ package bio.terra.buffer.app.controller;
 import static bio.terra.buffer.common.MetricsHelper.HANDOUT_RESOURCE_REQUEST_COUNT_VIEW;
 import static bio.terra.buffer.common.testing.MetricsTestUtil.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import bio.terra.buffer.app.Main;
@@ -28,6 +30,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @Tag("unit")
 @ActiveProfiles({"test", "unit"})
@@ -69,7 +72,7 @@ public class BufferApiControllerTest {
             .build());
     bufferDao.updateResourceAsReady(resourceId, cloudResourceUid);
 
-    String response =
+    MvcResult handout =
         this.mvc
             .perform(
                 put("/api/pool/v1/" + poolId.id() + "/resource")
@@ -77,6 +80,11 @@ public class BufferApiControllerTest {
                     .content(
                         objectMapper.writeValueAsString(
                             new HandoutRequestBody().handoutRequestId(requestHandoutId.id()))))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    String response =
+        this.mvc
+            .perform(asyncDispatch(handout))
             .andExpect(status().isOk())
             .andReturn()
             .getResponse()
@@ -132,6 +140,65 @@ public class BufferApiControllerTest {
         .andExpect(status().isBadRequest());
   }
 
+  @Test
+  public void handoutResources_ok() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    CloudResourceUid cloudResourceUid =
+        new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("projectId"));
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(poolId)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(1)
+                .resourceConfig(new ResourceConfig().configName("resourceName"))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+    ResourceId resourceId = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(resourceId)
+            .poolId(poolId)
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+    bufferDao.updateResourceAsReady(resourceId, cloudResourceUid);
+
+    MvcResult handout =
+        this.mvc
+            .perform(
+                put("/api/pool/v1/" + poolId.id() + "/resources")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(
+                        objectMapper.writeValueAsString(
+                            new BatchHandoutRequestBody()
+                                .handoutRequestIds(ImmutableList.of("id1", "id2")))))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    String response =
+        this.mvc
+            .perform(asyncDispatch(handout))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+    assertEquals(
+        new BatchHandoutResponse()
+            .results(
+                ImmutableList.of(
+                    new HandoutResult()
+                        .handoutRequestId("id1")
+                        .resourceInfo(
+                            new ResourceInfo()
+                                .poolId(poolId.id())
+                                .cloudResourceUid(cloudResourceUid)
+                                .requestHandoutId("id1")),
+                    new HandoutResult().handoutRequestId("id2"))),
+        objectMapper.readValue(response, BatchHandoutResponse.class));
+  }
+
   @Test
   public void getPoolInfo_ok() throws Exception {
     PoolId poolId = PoolId.create("poolId");
@@ -166,9 +233,14 @@ public class BufferApiControllerTest {
         resourceId1,
         new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("projectId")));
 
-    String response =
+    MvcResult getPoolInfo =
         this.mvc
             .perform(get("/api/pool/v1/" + poolId.id()))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    String response =
+        this.mvc
+            .perform(asyncDispatch(getPoolInfo))
             .andExpect(status().isOk())
             .andReturn()
             .getResponse()
@@ -178,9 +250,12 @@ public class BufferApiControllerTest {
     assertEquals(
         new PoolInfo()
             .putResourceStateCountItem(ResourceState.READY.name(), 1)
+            .putResourceStateCountItem(ResourceState.RESERVED.name(), 0)
             .putResourceStateCountItem(ResourceState.CREATING.name(), 1)
             .putResourceStateCountItem(ResourceState.DELETED.name(), 0)
             .putResourceStateCountItem(ResourceState.HANDED_OUT.name(), 0)
+            .putResourceStateCountItem(ResourceState.RECYCLING.name(), 0)
+            .putResourceStateCountItem(ResourceState.UPGRADING.name(), 0)
             .status(bio.terra.buffer.generated.model.PoolStatus.ACTIVE)
             .poolConfig(
                 new PoolConfig()
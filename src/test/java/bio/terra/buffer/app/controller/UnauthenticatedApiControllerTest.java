@@ -2,7 +2,9 @@ package bio.terra.buffer.app.controller;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import bio.terra.buffer.app.Main;
@@ -21,6 +23,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @Tag("unit")
 @ActiveProfiles({"test", "unit"})
@@ -34,8 +37,14 @@ public class UnauthenticatedApiControllerTest {
 
   @Test
   public void statusOK() throws Exception {
+    MvcResult getStatus =
+        this.mvc.perform(get("/status")).andExpect(request().asyncStarted()).andReturn();
     MockHttpServletResponse response =
-        this.mvc.perform(get("/status")).andExpect(status().isOk()).andReturn().getResponse();
+        this.mvc
+            .perform(asyncDispatch(getStatus))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse();
 
     SystemStatus status =
         new ObjectMapper().readValue(response.getContentAsString(), SystemStatus.class);
@@ -3,6 +3,8 @@ package bio.terra.buffer.db;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import bio.terra.buffer.app.configuration.BufferDatabaseConfiguration;
@@ -11,6 +13,7 @@ import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.PoolAndResourceStates;
 import bio.terra.buffer.common.PoolId;
 import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.ProjectDeletion;
 import bio.terra.buffer.common.RequestHandoutId;
 import bio.terra.buffer.common.Resource;
 import bio.terra.buffer.common.ResourceId;
@@ -23,14 +26,29 @@ import bio.terra.buffer.generated.model.ProjectIdSchema;
 import bio.terra.buffer.generated.model.ResourceConfig;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 
@@ -119,6 +137,19 @@ public class BufferDaoTest extends BaseUnitTest {
     assertThat(bufferDao.retrievePools(), Matchers.containsInAnyOrder(resizedPool));
   }
 
+  @Test
+  public void updatePoolUpgradeFrom() {
+    PoolId poolId = PoolId.create("poolId");
+    PoolId oldPoolId = PoolId.create("oldPoolId");
+    Pool pool = newPool(poolId).toBuilder().upgradeFrom(oldPoolId).build();
+
+    bufferDao.createPools(ImmutableList.of(pool));
+    assertEquals(pool, bufferDao.retrievePool(poolId).get());
+
+    bufferDao.updatePoolsUpgradeFrom(ImmutableMap.of(poolId, Optional.empty()));
+    assertEquals(pool.toBuilder().upgradeFrom(null).build(), bufferDao.retrievePool(poolId).get());
+  }
+
   @Test
   public void retrievePoolWithResourceState() {
     Pool pool1 = newPool(PoolId.create("poolId1"));
@@ -154,6 +185,97 @@ public class BufferDaoTest extends BaseUnitTest {
     assertEquals(pool1State, bufferDao.retrievePoolAndResourceStatesById(pool1.id()).get());
   }
 
+  @Test
+  public void retrieveResourceStateCounts() {
+    Pool pool1 = newPool(PoolId.create("poolId1"));
+    Pool pool2 = newPool(PoolId.create("poolId2"));
+    bufferDao.createPools(ImmutableList.of(pool1, pool2));
+    bufferDao.createResource(newResource(pool1.id(), ResourceState.CREATING));
+    bufferDao.createResource(newResource(pool1.id(), ResourceState.READY));
+    bufferDao.createResource(newResource(pool1.id(), ResourceState.READY));
+
+    ImmutableMultiset<ResourceState> pool1Counts =
+        ImmutableMultiset.<ResourceState>builder()
+            .setCount(ResourceState.CREATING, 1)
+            .setCount(ResourceState.READY, 2)
+            .build();
+    assertEquals(ImmutableMap.of(pool1.id(), pool1Counts), bufferDao.retrieveResourceStateCounts());
+    assertEquals(pool1Counts, bufferDao.retrieveResourceStateCounts(pool1.id()));
+    assertTrue(bufferDao.retrieveResourceStateCounts(pool2.id()).isEmpty());
+  }
+
+  @Test
+  public void resourceStateCounts_compactAndReconcile() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    Resource resource1 = newResource(pool.id(), ResourceState.CREATING);
+    Resource resource2 = newResource(pool.id(), ResourceState.CREATING);
+    bufferDao.createResource(resource1);
+    bufferDao.createResource(resource2);
+    assertTrue(
+        bufferDao.updateResourceAsReady(
+            resource1.id(),
+            new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("p1"))));
+    ImmutableMultiset<ResourceState> expected =
+        ImmutableMultiset.of(ResourceState.CREATING, ResourceState.READY);
+    assertEquals(expected, bufferDao.retrieveResourceStateCounts(pool.id()));
+
+    assertEquals(4, bufferDao.compactResourceStateCounts());
+    assertEquals(0, bufferDao.compactResourceStateCounts());
+    assertEquals(expected, bufferDao.retrieveResourceStateCounts(pool.id()));
+
+    assertTrue(bufferDao.deleteResource(resource2.id()));
+    ImmutableMultiset<ResourceState> onlyReady = ImmutableMultiset.of(ResourceState.READY);
+    assertEquals(onlyReady, bufferDao.retrieveResourceStateCounts(pool.id()));
+    assertEquals(0, bufferDao.reconcileResourceStateCounts());
+
+    // Corrupt the compacted READY count, reconciliation repairs it without losing the pending
+    // delete.
+    jdbcTemplate.update(
+        "UPDATE pool_resource_count SET count = 5 WHERE state = 'READY'",
+        new MapSqlParameterSource());
+    assertEquals(1, bufferDao.reconcileResourceStateCounts());
+    assertEquals(onlyReady, bufferDao.retrieveResourceStateCounts(pool.id()));
+    bufferDao.compactResourceStateCounts();
+    assertEquals(onlyReady, bufferDao.retrieveResourceStateCounts(pool.id()));
+  }
+
+  @Test
+  public void leaderLease() {
+    String name = "testLease";
+    assertEquals(1L, bufferDao.tryAcquireLeaderLease(name, "a", Duration.ofHours(1)).get());
+    assertEquals(1L, bufferDao.tryAcquireLeaderLease(name, "a", Duration.ofHours(1)).get());
+    assertFalse(bufferDao.tryAcquireLeaderLease(name, "b", Duration.ofHours(1)).isPresent());
+    assertTrue(bufferDao.isLeaderLeaseHeld(name, "a", 1L));
+
+    // Another holder takes over a released lease with a higher fencing token.
+    assertTrue(bufferDao.releaseLeaderLease(name, "a"));
+    assertEquals(2L, bufferDao.tryAcquireLeaderLease(name, "b", Duration.ZERO).get());
+    assertFalse(bufferDao.isLeaderLeaseHeld(name, "a", 1L));
+
+    // And the same for an expired lease.
+    assertEquals(3L, bufferDao.tryAcquireLeaderLease(name, "a", Duration.ofHours(1)).get());
+    assertFalse(bufferDao.isLeaderLeaseHeld(name, "b", 2L));
+    assertTrue(bufferDao.isLeaderLeaseHeld(name, "a", 3L));
+  }
+
+  @Test
+  public void retrieveCachedPool_invalidatedOnPoolChange() {
+    PoolId poolId = PoolId.create("poolId");
+    Pool pool = newPool(poolId);
+    assertFalse(bufferDao.retrieveCachedPool(poolId).isPresent());
+
+    bufferDao.createPools(ImmutableList.of(pool));
+    assertEquals(pool, bufferDao.retrieveCachedPool(poolId).get());
+    assertThat(bufferDao.retrieveCachedPools(), Matchers.containsInAnyOrder(pool));
+
+    bufferDao.updatePoolsSize(ImmutableMap.of(poolId, 10));
+    assertEquals(10, bufferDao.retrieveCachedPool(poolId).get().size());
+
+    bufferDao.deactivatePools(ImmutableList.of(poolId));
+    assertEquals(PoolStatus.DEACTIVATED, bufferDao.retrieveCachedPool(poolId).get().status());
+  }
+
   @Test
   public void createRetrieveDeleteResource() {
     PoolId poolId = PoolId.create("poolId");
@@ -236,6 +358,102 @@ public class BufferDaoTest extends BaseUnitTest {
         bufferDao.updateOneReadyResourceToHandedOut(pool.id(), requestHandoutId).isPresent());
   }
 
+  @Test
+  public void claimOneReadyResource() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+
+    Resource ready = newResource(pool.id(), ResourceState.READY);
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(ready);
+    Resource resource = bufferDao.claimOneReadyResource(pool.id(), requestHandoutId).get();
+
+    assertEquals(ready.id(), resource.id());
+    assertEquals(requestHandoutId, resource.requestHandoutId());
+    assertEquals(ResourceState.HANDED_OUT, resource.state());
+    assertEquals(resource, bufferDao.retrieveResource(resource.id()).get());
+
+    // Now use the same requestHandoutId again, expect getting the same resource back.
+    assertEquals(resource, bufferDao.claimOneReadyResource(pool.id(), requestHandoutId).get());
+    // No more READY resource for a new requestHandoutId.
+    assertFalse(
+        bufferDao
+            .claimOneReadyResource(pool.id(), RequestHandoutId.create("anotherHandoutId"))
+            .isPresent());
+  }
+
+  @Test
+  public void requestHandoutIdIsUniqueInPool() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    Resource ready1 = newResource(pool.id(), ResourceState.READY);
+    Resource ready2 = newResource(pool.id(), ResourceState.READY);
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(ready1);
+    bufferDao.createResource(ready2);
+
+    Resource resource = bufferDao.claimOneReadyResource(pool.id(), requestHandoutId).get();
+    Resource otherResource = resource.id().equals(ready1.id()) ? ready2 : ready1;
+    assertThrows(
+        DuplicateKeyException.class,
+        () ->
+            jdbcTemplate.update(
+                "UPDATE resource SET request_handout_id = :request_handout_id WHERE id = :id",
+                new MapSqlParameterSource()
+                    .addValue("request_handout_id", requestHandoutId.id())
+                    .addValue("id", otherResource.id().id())));
+  }
+
+  @Test
+  public void claimOneReadyResource_concurrentClaimsGetDistinctResources() throws Exception {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    int resourceCount = 5;
+    for (int i = 0; i < resourceCount; i++) {
+      bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(resourceCount);
+    List<Future<Optional<Resource>>> futures = new ArrayList<>();
+    for (int i = 0; i < resourceCount; i++) {
+      RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId" + i);
+      futures.add(
+          executor.submit(() -> bufferDao.claimOneReadyResource(pool.id(), requestHandoutId)));
+    }
+    Set<ResourceId> claimedIds = new HashSet<>();
+    for (Future<Optional<Resource>> future : futures) {
+      claimedIds.add(future.get().get().id());
+    }
+    executor.shutdown();
+
+    assertEquals(resourceCount, claimedIds.size());
+  }
+
+  @Test
+  public void claimReadyResources() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.CREATING));
+    RequestHandoutId id1 = RequestHandoutId.create("handoutId1");
+    RequestHandoutId id2 = RequestHandoutId.create("handoutId2");
+    RequestHandoutId id3 = RequestHandoutId.create("handoutId3");
+
+    Resource handedOut = bufferDao.claimOneReadyResource(pool.id(), id1).get();
+    // id1 is replayed, id2 gets the other READY resource, no resource left for id3.
+    List<Resource> resources =
+        bufferDao.claimReadyResources(pool.id(), ImmutableList.of(id1, id2, id3));
+
+    assertEquals(2, resources.size());
+    Map<RequestHandoutId, Resource> resourcesById =
+        Maps.uniqueIndex(resources, Resource::requestHandoutId);
+    assertEquals(handedOut, resourcesById.get(id1));
+    assertEquals(ResourceState.HANDED_OUT, resourcesById.get(id2).state());
+    assertEquals(resourcesById.get(id2), bufferDao.retrieveResource(pool.id(), id2).get());
+    assertFalse(resourcesById.containsKey(id3));
+  }
+
   @Test
   public void updateReadyResourceAsDeleting_success() {
     Pool pool = newPool(PoolId.create("poolId"));
@@ -258,6 +476,51 @@ public class BufferDaoTest extends BaseUnitTest {
     assertEquals(ResourceState.HANDED_OUT, bufferDao.retrieveResource(resource.id()).get().state());
   }
 
+  @Test
+  public void upgradeReadyResource() {
+    Pool oldPool = newPool(PoolId.create("oldPoolId"));
+    Pool pool = newPool(PoolId.create("poolId"));
+    Resource resource = newResource(oldPool.id(), ResourceState.READY);
+    bufferDao.createPools(ImmutableList.of(oldPool, pool));
+    bufferDao.createResource(resource);
+
+    assertTrue(bufferDao.updateReadyResourceToUpgrading(resource.id()));
+    assertFalse(bufferDao.updateReadyResourceToUpgrading(resource.id()));
+    assertEquals(ResourceState.UPGRADING, bufferDao.retrieveResource(resource.id()).get().state());
+
+    assertTrue(bufferDao.updateUpgradingResourceToReady(resource.id(), pool.id()));
+    assertFalse(bufferDao.updateUpgradingResourceToReady(resource.id(), pool.id()));
+    Resource upgraded = bufferDao.retrieveResource(resource.id()).get();
+    assertEquals(ResourceState.READY, upgraded.state());
+    assertEquals(pool.id(), upgraded.poolId());
+    assertEquals(1, bufferDao.retrieveResourceStateCounts(pool.id()).count(ResourceState.READY));
+    assertEquals(0, bufferDao.retrieveResourceStateCounts(oldPool.id()).count(ResourceState.READY));
+  }
+
+  @Test
+  public void deleteUpgradingResourceOnceConfirmed() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    Resource resource = newResource(pool.id(), ResourceState.READY);
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(resource);
+    assertTrue(
+        bufferDao.updateResourceAsReady(
+            resource.id(),
+            new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("p1"))));
+    assertTrue(bufferDao.updateReadyResourceToUpgrading(resource.id()));
+
+    assertTrue(bufferDao.updateUpgradingResourceToDeleting(resource.id()));
+    assertFalse(bufferDao.updateUpgradingResourceToDeleting(resource.id()));
+    assertEquals(ResourceState.DELETING, bufferDao.retrieveResource(resource.id()).get().state());
+
+    Instant now = Instant.now();
+    assertEquals(0, bufferDao.updateDeletingResourcesAsDeleted(ImmutableList.of("p2"), now));
+    assertEquals(1, bufferDao.updateDeletingResourcesAsDeleted(ImmutableList.of("p1"), now));
+    resource = bufferDao.retrieveResource(resource.id()).get();
+    assertEquals(ResourceState.DELETED, resource.state());
+    assertEquals(now, resource.deletion());
+  }
+
   @Test
   public void updateResourceAsDeleted() {
     Pool pool = newPool(PoolId.create("poolId"));
@@ -298,4 +561,94 @@ public class BufferDaoTest extends BaseUnitTest {
         bufferDao.retrieveResourceToCleanup(1),
         Matchers.contains(bufferDao.retrieveResource(handedOutR2.id()).get()));
   }
+
+  @Test
+  public void recycleHandedOutResource() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("1111");
+    Resource resource =
+        bufferDao.updateOneReadyResourceToHandedOut(pool.id(), requestHandoutId).get();
+
+    assertTrue(bufferDao.updateHandedOutResourceToRecycling(resource.id()));
+    assertFalse(bufferDao.updateHandedOutResourceToRecycling(resource.id()));
+    assertEquals(ResourceState.RECYCLING, bufferDao.retrieveResource(resource.id()).get().state());
+
+    // A failed recycle hands the resource back to its request, a successful one frees it.
+    assertTrue(bufferDao.updateRecyclingResourceToHandedOut(resource.id()));
+    assertEquals(
+        ResourceState.HANDED_OUT,
+        bufferDao.retrieveResource(pool.id(), requestHandoutId).get().state());
+    assertTrue(bufferDao.updateHandedOutResourceToRecycling(resource.id()));
+    assertTrue(bufferDao.updateRecyclingResourceToReady(resource.id()));
+    assertFalse(bufferDao.updateRecyclingResourceToHandedOut(resource.id()));
+    Resource recycled = bufferDao.retrieveResource(resource.id()).get();
+    assertEquals(ResourceState.READY, recycled.state());
+    assertNull(recycled.requestHandoutId());
+    assertFalse(bufferDao.retrieveResource(pool.id(), requestHandoutId).isPresent());
+  }
+
+  @Test
+  public void recycleHandedOutResource_alreadyPublishedForCleanup() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    Resource resource =
+        bufferDao
+            .updateOneReadyResourceToHandedOut(pool.id(), RequestHandoutId.create("1111"))
+            .get();
+    bufferDao.insertCleanupRecord(resource.id());
+
+    assertFalse(bufferDao.updateHandedOutResourceToRecycling(resource.id()));
+    assertEquals(ResourceState.HANDED_OUT, bufferDao.retrieveResource(resource.id()).get().state());
+  }
+
+  @Test
+  public void insertCleanupRecord_returnedForRecycling() {
+    Pool pool = newPool(PoolId.create("poolId"));
+    bufferDao.createPools(ImmutableList.of(pool));
+    bufferDao.createResource(newResource(pool.id(), ResourceState.READY));
+    Resource resource =
+        bufferDao
+            .updateOneReadyResourceToHandedOut(pool.id(), RequestHandoutId.create("1111"))
+            .get();
+    assertTrue(bufferDao.updateHandedOutResourceToRecycling(resource.id()));
+
+    assertFalse(bufferDao.insertCleanupRecord(resource.id()));
+    assertTrue(bufferDao.updateRecyclingResourceToHandedOut(resource.id()));
+    assertTrue(bufferDao.insertCleanupRecord(resource.id()));
+  }
+
+  @Test
+  public void projectDeletionTombstones() {
+    String p1 = "p1-" + UUID.randomUUID();
+    String p2 = "p2-" + UUID.randomUUID();
+    bufferDao.upsertProjectDeletion(p1, "folders/1", "operations/a");
+    bufferDao.upsertProjectDeletion(p2, "folders/2", "operations/b");
+    // A repeated request replaces the tombstone, and moves it to the back of the queue.
+    bufferDao.upsertProjectDeletion(p1, "folders/1", "operations/c");
+
+    List<ProjectDeletion> deletions = retrieveProjectDeletions(p1, p2);
+    assertEquals(2, deletions.size());
+    assertEquals(p2, deletions.get(0).projectId());
+    assertEquals("folders/2", deletions.get(0).parent());
+    assertEquals("operations/c", deletions.get(1).operationName());
+
+    assertEquals(1, bufferDao.deleteProjectDeletions(ImmutableList.of(p1, "unknown")));
+    assertEquals(0, bufferDao.deleteProjectDeletions(ImmutableList.of()));
+    assertThat(
+        retrieveProjectDeletions(p1, p2).stream()
+            .map(ProjectDeletion::projectId)
+            .collect(Collectors.toList()),
+        Matchers.contains(p2));
+  }
+
+  /** Retrieves the tombstones of {@code projectIds}, ignoring the ones of other tests. */
+  private List<ProjectDeletion> retrieveProjectDeletions(String... projectIds) {
+    Set<String> ids = ImmutableSet.copyOf(projectIds);
+    return bufferDao.retrieveProjectDeletions(Integer.MAX_VALUE).stream()
+        .filter(deletion -> ids.contains(deletion.projectId()))
+        .collect(Collectors.toList());
+  }
 }
@@ -13,6 +13,7 @@ import static bio.terra.buffer.service.resource.FlightMapKeys.RESOURCE_CONFIG;
 import static bio.terra.buffer.service.resource.flight.CreateDnsZoneStep.MANAGED_ZONE_TEMPLATE;
 import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT;
 import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK;
+import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.AUTO_MODE_NETWORK_IP_RANGE;
 import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.LEONARDO_SSL_RULE_NAME_FOR_DEFAULT;
 import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.LEONARDO_SSL_RULE_NAME_FOR_NETWORK;
 import static bio.terra.buffer.service.resource.flight.CreateFirewallRuleStep.buildAllowInternalFirewallRule;
@@ -52,8 +53,13 @@ import bio.terra.buffer.generated.model.ComputeEngine;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.IamBinding;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import bio.terra.buffer.service.quota.QuotaBudget;
 import bio.terra.buffer.service.resource.FlightManager;
 import bio.terra.buffer.service.resource.FlightSubmissionFactoryImpl;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.ProjectDeletionReconciler;
 import bio.terra.buffer.service.resource.flight.AssertResourceCreatingStep;
 import bio.terra.buffer.service.resource.flight.CreateProjectStep;
 import bio.terra.buffer.service.resource.flight.ErrorStep;
@@ -62,7 +68,7 @@ import bio.terra.buffer.service.resource.flight.GenerateProjectIdStep;
 import bio.terra.buffer.service.resource.flight.GoogleProjectCreationFlight;
 import bio.terra.buffer.service.resource.flight.LatchStep;
 import bio.terra.buffer.service.resource.flight.UndoCreatingDbEntityStep;
-import bio.terra.buffer.service.resource.projectid.GcpProjectIdGenerator;
+import bio.terra.buffer.service.resource.projectid.ProjectIdAllocator;
 import bio.terra.cloudres.common.ClientConfig;
 import bio.terra.cloudres.google.billing.CloudBillingClientCow;
 import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
@@ -122,6 +128,7 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   @Autowired FlightSubmissionFactoryImpl flightSubmissionFactoryImpl;
   @Autowired ClientConfig clientConfig;
   @Autowired TransactionTemplate transactionTemplate;
+  @Autowired LeaderElection leaderElection;
 
   enum NetworkMonitoring {
     ENABLED,
@@ -132,7 +139,11 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   public void testCreateGoogleProject_basicCreation() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newBasicGcpConfig());
 
     String flightId = manager.submitCreationFlight(pool).get();
@@ -156,7 +167,11 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
     // Basic GCP project with IAM Bindings
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newBasicGcpConfig().iamBindings(IAM_BINDINGS));
 
     String flightId = manager.submitCreationFlight(pool).get();
@@ -170,7 +185,11 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   public void testCreateGoogleProject_enableNetworkMonitoring() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool =
         preparePool(
             bufferDao,
@@ -193,7 +212,11 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   public void testCreateGoogleProject_keepDefaultComputeEngineServiceAcct() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool =
         preparePool(
             bufferDao,
@@ -210,7 +233,11 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   public void testCreateGoogleProject_keepDefaultNetwork() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool =
         preparePool(
             bufferDao,
@@ -235,7 +262,8 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(MultiInstanceStepFlight.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newFullGcpConfig());
 
     String flightId = manager.submitCreationFlight(pool).get();
@@ -259,7 +287,8 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(ErrorCreateProjectFlight.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newBasicGcpConfig());
 
     String flightId = manager.submitCreationFlight(pool).get();
@@ -283,7 +312,8 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(ErrorAfterCreateResourceFlight.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
 
     Pool pool = preparePool(bufferDao, newBasicGcpConfig());
     String flightId = manager.submitCreationFlight(pool).get();
@@ -333,7 +363,8 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(LatchBeforeAssertResourceStep.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newBasicGcpConfig());
 
     String flightId = manager.submitCreationFlight(pool).get();
@@ -362,13 +393,28 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
           ((ApplicationContext) applicationContext).getBean(CloudResourceManagerCow.class);
       GcpProjectConfig gcpProjectConfig =
           inputParameters.get(RESOURCE_CONFIG, ResourceConfig.class).getGcpProjectConfig();
-      GcpProjectIdGenerator idGenerator =
-          ((ApplicationContext) applicationContext).getBean(GcpProjectIdGenerator.class);
+      ProjectIdAllocator projectIdAllocator =
+          ((ApplicationContext) applicationContext).getBean(ProjectIdAllocator.class);
+      HandoutWaitQueue handoutWaitQueue =
+          ((ApplicationContext) applicationContext).getBean(HandoutWaitQueue.class);
+      QuotaBudget quotaBudget =
+          ((ApplicationContext) applicationContext).getBean(QuotaBudget.class);
       addStep(new LatchStep());
       addStep(new UndoCreatingDbEntityStep(bufferDao));
-      addStep(new GenerateProjectIdStep(gcpProjectConfig, idGenerator));
-      addStep(new ErrorCreateProjectStep(rmCow, gcpProjectConfig));
-      addStep(new FinishResourceCreationStep(bufferDao));
+      addStep(new GenerateProjectIdStep(gcpProjectConfig, projectIdAllocator));
+      OperationPoller operationPoller =
+          ((ApplicationContext) applicationContext).getBean(OperationPoller.class);
+      ProjectDeletionReconciler projectDeletionReconciler =
+          ((ApplicationContext) applicationContext).getBean(ProjectDeletionReconciler.class);
+      addStep(
+          new ErrorCreateProjectStep(
+              rmCow,
+              gcpProjectConfig,
+              quotaBudget,
+              operationPoller,
+              projectIdAllocator,
+              projectDeletionReconciler));
+      addStep(new FinishResourceCreationStep(bufferDao, handoutWaitQueue));
     }
   }
 
@@ -529,9 +575,12 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
         computeCow.firewalls().get(projectId, LEONARDO_SSL_RULE_NAME_FOR_NETWORK).execute();
 
     Firewall allowInternalExpected =
-        buildAllowInternalFirewallRule(network, ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK);
+        buildAllowInternalFirewallRule(
+            network.getSelfLink(),
+            ALLOW_INTERNAL_RULE_NAME_FOR_NETWORK,
+            ImmutableList.copyOf(REGION_TO_IP_RANGE.values()));
     Firewall leonardoSslExpected =
-        buildLeonardoSslFirewallRule(network, LEONARDO_SSL_RULE_NAME_FOR_NETWORK);
+        buildLeonardoSslFirewallRule(network.getSelfLink(), LEONARDO_SSL_RULE_NAME_FOR_NETWORK);
 
     assertFirewallRuleMatch(allowInternalExpected, allowInternal);
     assertFirewallRuleMatch(leonardoSslExpected, leonardoSsl);
@@ -547,9 +596,12 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
         computeCow.firewalls().get(projectId, LEONARDO_SSL_RULE_NAME_FOR_DEFAULT).execute();
 
     Firewall allowInternalExpected =
-        buildAllowInternalFirewallRule(network, ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT);
+        buildAllowInternalFirewallRule(
+            network.getSelfLink(),
+            ALLOW_INTERNAL_RULE_NAME_FOR_DEFAULT,
+            ImmutableList.of(AUTO_MODE_NETWORK_IP_RANGE));
     Firewall leonardoSslExpected =
-        buildLeonardoSslFirewallRule(network, LEONARDO_SSL_RULE_NAME_FOR_DEFAULT);
+        buildLeonardoSslFirewallRule(network.getSelfLink(), LEONARDO_SSL_RULE_NAME_FOR_DEFAULT);
 
     assertFirewallRuleMatch(allowInternalExpected, allowInternal);
     assertFirewallRuleMatch(leonardoSslExpected, leonardoSsl);
@@ -689,8 +741,19 @@ public class CreateProjectFlightIntegrationTest extends BaseIntegrationTest {
   /** Dummy {@link CreateProjectStep} which fails in doStep but still runs undoStep. */
   public static class ErrorCreateProjectStep extends CreateProjectStep {
     public ErrorCreateProjectStep(
-        CloudResourceManagerCow rmCow, GcpProjectConfig gcpProjectConfig) {
-      super(rmCow, gcpProjectConfig);
+        CloudResourceManagerCow rmCow,
+        GcpProjectConfig gcpProjectConfig,
+        QuotaBudget quotaBudget,
+        OperationPoller operationPoller,
+        ProjectIdAllocator projectIdAllocator,
+        ProjectDeletionReconciler projectDeletionReconciler) {
+      super(
+          rmCow,
+          gcpProjectConfig,
+          quotaBudget,
+          operationPoller,
+          projectIdAllocator,
+          projectDeletionReconciler);
     }
 
     @Override
@@ -17,6 +17,7 @@ import bio.terra.buffer.common.ResourceId;
 import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.ResourceType;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.leader.LeaderElection;
 import bio.terra.buffer.service.resource.FlightManager;
 import bio.terra.buffer.service.resource.FlightSubmissionFactoryImpl;
 import bio.terra.buffer.service.resource.flight.AssertResourceDeletingStep;
@@ -47,12 +48,17 @@ public class DeleteProjectFlightIntegrationTest extends BaseIntegrationTest {
   @Autowired CloudResourceManagerCow rmCow;
   @Autowired FlightSubmissionFactoryImpl flightSubmissionFactoryImpl;
   @Autowired TransactionTemplate transactionTemplate;
+  @Autowired LeaderElection leaderElection;
 
   @Test
   public void testDeleteGoogleProject_success() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newFullGcpConfig());
 
     String createFlightId = manager.submitCreationFlight(pool).get();
@@ -74,7 +80,11 @@ public class DeleteProjectFlightIntegrationTest extends BaseIntegrationTest {
   public void testDeleteGoogleProject_fatalIfHasError() throws Exception {
     FlightManager manager =
         new FlightManager(
-            bufferDao, flightSubmissionFactoryImpl, stairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactoryImpl,
+            stairwayComponent,
+            transactionTemplate,
+            leaderElection);
     Pool pool = preparePool(bufferDao, newBasicGcpConfig());
 
     String createFlightId = manager.submitCreationFlight(pool).get();
@@ -90,7 +100,8 @@ public class DeleteProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(ErrorAfterDeleteResourceFlight.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
     String deleteFlightId =
         errorManager.submitDeletionFlight(resource, ResourceType.GOOGLE_PROJECT).get();
     blockUntilFlightComplete(stairwayComponent, deleteFlightId);
@@ -118,7 +129,8 @@ public class DeleteProjectFlightIntegrationTest extends BaseIntegrationTest {
             bufferDao,
             new StubSubmissionFlightFactory(LatchBeforeAssertResourceStep.class),
             stairwayComponent,
-            transactionTemplate);
+            transactionTemplate,
+            leaderElection);
     String deleteFlightId =
         manager.submitDeletionFlight(resource, ResourceType.GOOGLE_PROJECT).get();
 
@@ -159,5 +159,27 @@ public class IntegrationUtils {
       flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
       return FlightSubmission.create(flightClass, flightMap);
     }
+
+    @Override
+    public FlightSubmission getRecyclingFlightSubmission(Pool pool, Resource resource) {
+      FlightMap flightMap = new FlightMap();
+      pool.id().store(flightMap);
+      resource.id().store(flightMap);
+      flightMap.put(FlightMapKeys.RESOURCE_CONFIG, pool.resourceConfig());
+      flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
+      return FlightSubmission.create(flightClass, flightMap);
+    }
+
+    @Override
+    public FlightSubmission getUpgradeFlightSubmission(
+        Pool pool, Resource resource, GcpProjectConfig delta) {
+      FlightMap flightMap = new FlightMap();
+      pool.id().store(flightMap);
+      resource.id().store(flightMap);
+      flightMap.put(FlightMapKeys.RESOURCE_CONFIG, pool.resourceConfig());
+      flightMap.put(FlightMapKeys.CLOUD_RESOURCE_UID, resource.cloudResourceUid());
+      flightMap.put(FlightMapKeys.CONFIG_DELTA, delta);
+      return FlightSubmission.create(flightClass, flightMap);
+    }
   }
 }
@@ -12,6 +12,7 @@ import bio.terra.buffer.db.BufferDao;
 import bio.terra.buffer.generated.model.CloudResourceUid;
 import bio.terra.buffer.generated.model.GoogleProjectUid;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
 import bio.terra.janitor.model.CreateResourceRequestBody;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -26,6 +27,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
@@ -36,6 +38,7 @@ import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @AutoConfigureMockMvc
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
@@ -49,6 +52,8 @@ public class CleanupSchedulerTest extends BaseUnitTest {
       ArgumentCaptor.forClass(PubsubMessage.class);
 
   @Autowired BufferDao bufferDao;
+  @Autowired LeaderElection leaderElection;
+  @Autowired TransactionTemplate transactionTemplate;
 
   private CrlConfiguration crlConfiguration = new CrlConfiguration();
   private CleanupScheduler cleanupScheduler;
@@ -66,7 +71,12 @@ public class CleanupSchedulerTest extends BaseUnitTest {
     crlConfiguration.setJanitorTrackResourceProjectId("projectId");
     crlConfiguration.setJanitorTrackResourceTopicId("topicId");
     cleanupScheduler =
-        new CleanupScheduler(bufferDao, crlConfiguration, Clock.fixed(CREATION, ZoneId.of("UTC")));
+        new CleanupScheduler(
+            bufferDao,
+            crlConfiguration,
+            Clock.fixed(CREATION, ZoneId.of("UTC")),
+            leaderElection,
+            transactionTemplate);
     cleanupScheduler.providePublisher(mockPublisher);
     when(mockPublisher.publish(any())).thenReturn(mockMessageIdFuture);
     when(mockMessageIdFuture.get()).thenReturn("message");
@@ -78,8 +88,8 @@ public class CleanupSchedulerTest extends BaseUnitTest {
     cleanupScheduler.shutdown();
   }
 
-  @Test
-  public void testScheduleCleanup() throws Exception {
+  /** Creates a pool with a resource of project "p1" handed out. */
+  private void newHandedOutResource() {
     Pool pool =
         Pool.builder()
             .creation(CREATION)
@@ -103,6 +113,11 @@ public class CleanupSchedulerTest extends BaseUnitTest {
     bufferDao.createResource(resource);
     bufferDao.updateResourceAsReady(resource.id(), cloudResourceUid);
     bufferDao.updateOneReadyResourceToHandedOut(pool.id(), RequestHandoutId.create("1111"));
+  }
+
+  @Test
+  public void testScheduleCleanup() throws Exception {
+    newHandedOutResource();
     assertEquals(1, bufferDao.retrieveResourceToCleanup(10).size());
 
     cleanupScheduler.initialize();
@@ -125,5 +140,25 @@ public class CleanupSchedulerTest extends BaseUnitTest {
                             .googleProjectUid(
                                 new bio.terra.janitor.model.GoogleProjectUid().projectId("p1"))))));
     assertTrue(bufferDao.retrieveResourceToCleanup(10).isEmpty());
+    assertTrue(bufferDao.retrieveUnpublishedCleanupResources(10).isEmpty());
+  }
+
+  @Test
+  public void testScheduleCleanup_retriesFailedPublish() throws Exception {
+    newHandedOutResource();
+    when(mockMessageIdFuture.get())
+        .thenThrow(new ExecutionException(new RuntimeException("publish failed")))
+        .thenReturn("message");
+
+    cleanupScheduler.initialize();
+    Thread.sleep(1000);
+
+    // The record committed before the failed publish, so it is left to retry.
+    assertTrue(bufferDao.retrieveResourceToCleanup(10).isEmpty());
+    assertEquals(1, bufferDao.retrieveUnpublishedCleanupResources(10).size());
+
+    cleanupScheduler.scheduleCleanup();
+    verify(mockPublisher, times(2)).publish(any());
+    assertTrue(bufferDao.retrieveUnpublishedCleanupResources(10).isEmpty());
   }
 }
@@ -0,0 +1,52 @@
+package bio.terra.buffer.service.leader;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.db.BufferDao;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class LeaderElectionTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+  // Initialized on startup, so it's already the leader.
+  @Autowired LeaderElection leaderElection;
+  @Autowired TransactionTemplate transactionTemplate;
+
+  @Test
+  public void failoverOnShutdown() throws Exception {
+    PrimaryConfiguration primaryConfiguration = new PrimaryConfiguration();
+    primaryConfiguration.setLeaderLeaseDuration(Duration.ofSeconds(3));
+    LeaderElection otherLeaderElection = new LeaderElection(primaryConfiguration, bufferDao);
+    otherLeaderElection.initialize();
+    assertTrue(leaderElection.isLeader());
+    assertFalse(otherLeaderElection.isLeader());
+
+    leaderElection.shutdown();
+    assertFalse(leaderElection.isLeader());
+    // Takes over on its next heartbeat.
+    TimeUnit.SECONDS.sleep(2);
+    assertTrue(otherLeaderElection.isLeader());
+    otherLeaderElection.shutdown();
+  }
+
+  @Test
+  public void lockLeadership() {
+    LeaderElection otherLeaderElection =
+        new LeaderElection(new PrimaryConfiguration(), bufferDao);
+    otherLeaderElection.initialize();
+
+    assertTrue(transactionTemplate.execute(status -> leaderElection.lockLeadership()));
+    assertFalse(transactionTemplate.execute(status -> otherLeaderElection.lockLeadership()));
+    otherLeaderElection.shutdown();
+  }
+}
@@ -0,0 +1,145 @@
+package bio.terra.buffer.service.pool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import bio.terra.buffer.app.configuration.ReservoirConfiguration;
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.RequestHandoutId;
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.common.ResourceState;
+import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.generated.model.GoogleProjectUid;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import com.google.common.collect.ImmutableList;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class HandoutReservoirTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+
+  private static final PoolId POOL_ID = PoolId.create("poolId");
+
+  private HandoutReservoir newReservoir(Clock clock) {
+    ReservoirConfiguration reservoirConfiguration = new ReservoirConfiguration();
+    reservoirConfiguration.setPoolIds(ImmutableList.of(POOL_ID.id()));
+    reservoirConfiguration.setSize(2);
+    return new HandoutReservoir(reservoirConfiguration, bufferDao, clock);
+  }
+
+  @Test
+  public void refillAndHandout() {
+    newReadyPool(3);
+    HandoutReservoir reservoir = newReservoir(Clock.systemUTC());
+
+    reservoir.refill();
+    assertEquals(2, reservoir.reservedCount(POOL_ID));
+    assertEquals(2, countResources(ResourceState.RESERVED));
+
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    Resource resource = reservoir.handout(POOL_ID, requestHandoutId).get();
+    assertEquals(ResourceState.HANDED_OUT, resource.state());
+    assertEquals(requestHandoutId, resource.requestHandoutId());
+    assertEquals(resource, bufferDao.retrieveResource(resource.id()).get());
+    assertEquals(1, reservoir.reservedCount(POOL_ID));
+
+    // The same requestHandoutId is replayed from the database, keeping the remaining lease.
+    assertFalse(reservoir.handout(POOL_ID, requestHandoutId).isPresent());
+    assertEquals(1, reservoir.reservedCount(POOL_ID));
+
+    // Refill tops up from the last READY resource.
+    reservoir.refill();
+    assertEquals(2, reservoir.reservedCount(POOL_ID));
+    assertEquals(0, countResources(ResourceState.READY));
+  }
+
+  @Test
+  public void shutdownReleasesLeases() {
+    newReadyPool(2);
+    HandoutReservoir reservoir = newReservoir(Clock.systemUTC());
+
+    reservoir.refill();
+    assertEquals(2, countResources(ResourceState.RESERVED));
+    reservoir.shutdown();
+    assertEquals(0, countResources(ResourceState.RESERVED));
+    assertEquals(2, countResources(ResourceState.READY));
+  }
+
+  @Test
+  public void deactivationReleasesLeases() {
+    newReadyPool(2);
+    HandoutReservoir reservoir = newReservoir(Clock.systemUTC());
+
+    reservoir.refill();
+    assertEquals(2, countResources(ResourceState.RESERVED));
+    bufferDao.deactivatePools(ImmutableList.of(POOL_ID));
+    assertEquals(0, countResources(ResourceState.RESERVED));
+    assertEquals(2, countResources(ResourceState.READY));
+
+    // The reservoir drops the released resources instead of handing them out.
+    reservoir.refill();
+    assertEquals(0, reservoir.reservedCount(POOL_ID));
+    assertFalse(reservoir.handout(POOL_ID, RequestHandoutId.create("handoutId")).isPresent());
+  }
+
+  @Test
+  public void expiredLeasesReleased() {
+    newReadyPool(2);
+    // Leases taken with a clock in the past are already expired.
+    HandoutReservoir staleReservoir =
+        newReservoir(Clock.offset(Clock.systemUTC(), Duration.ofHours(-1)));
+    staleReservoir.refill();
+
+    HandoutReservoir otherReservoir =
+        new HandoutReservoir(new ReservoirConfiguration(), bufferDao, Clock.systemUTC());
+    otherReservoir.refill();
+    assertEquals(2, countResources(ResourceState.READY));
+    // The stale instance lost its leases and can't hand them out.
+    assertFalse(staleReservoir.handout(POOL_ID, RequestHandoutId.create("handoutId")).isPresent());
+  }
+
+  private int countResources(ResourceState state) {
+    return bufferDao.retrievePoolAndResourceStatesById(POOL_ID).get().resourceStates().count(state);
+  }
+
+  private void newReadyPool(int poolSize) {
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(POOL_ID)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(poolSize)
+                .resourceConfig(new ResourceConfig().configName("resourceName"))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+    for (int i = 0; i < poolSize; i++) {
+      ResourceId id = ResourceId.create(UUID.randomUUID());
+      bufferDao.createResource(
+          Resource.builder()
+              .id(id)
+              .poolId(POOL_ID)
+              .creation(Instant.now())
+              .state(ResourceState.CREATING)
+              .build());
+      bufferDao.updateResourceAsReady(
+          id,
+          new CloudResourceUid()
+              .googleProjectUid(new GoogleProjectUid().projectId(UUID.randomUUID().toString())));
+    }
+  }
+}
@@ -5,6 +5,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.PoolConfig;
 import bio.terra.buffer.generated.model.PoolConfigs;
 import bio.terra.buffer.generated.model.ResourceConfig;
@@ -51,4 +52,21 @@ public class PoolConfigLoaderTest extends BaseUnitTest {
         BadPoolConfigException.class,
         () -> combineParsedConfig(pools, ImmutableMap.of(resourceConfigName, resourceConfig)));
   }
+
+  @Test
+  public void combineParsedResult_badAutoscalingBounds() {
+    String resourceConfigName = "configName";
+    PoolConfig poolConfig =
+        new PoolConfig()
+            .poolId("id")
+            .size(10)
+            .resourceConfigName(resourceConfigName)
+            .autoscaling(new PoolAutoscalingConfig().minSize(20).maxSize(30));
+    PoolConfigs pools = new PoolConfigs().poolConfigs(ImmutableList.of(poolConfig));
+    ResourceConfig resourceConfig = new ResourceConfig().configName(resourceConfigName);
+
+    assertThrows(
+        BadPoolConfigException.class,
+        () -> combineParsedConfig(pools, ImmutableMap.of(resourceConfigName, resourceConfig)));
+  }
 }
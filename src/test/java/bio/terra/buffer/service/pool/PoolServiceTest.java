@@ -2,9 +2,12 @@ package bio.terra.buffer.service.pool;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import bio.terra.buffer.app.configuration.PoolConfiguration;
 import bio.terra.buffer.common.BaseUnitTest;
 import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.PoolId;
@@ -16,9 +19,12 @@ import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.ResourceType;
 import bio.terra.buffer.common.exception.NotFoundException;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.BatchHandoutResponse;
 import bio.terra.buffer.generated.model.CloudResourceUid;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
 import bio.terra.buffer.generated.model.GoogleProjectUid;
+import bio.terra.buffer.generated.model.HandoutResult;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
 import bio.terra.buffer.generated.model.PoolConfig;
 import bio.terra.buffer.generated.model.PoolInfo;
 import bio.terra.buffer.generated.model.ProjectIdSchema;
@@ -26,10 +32,15 @@ import bio.terra.buffer.generated.model.ResourceConfig;
 import bio.terra.buffer.generated.model.ResourceInfo;
 import bio.terra.common.exception.BadRequestException;
 import com.google.common.collect.ImmutableList;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +52,8 @@ import org.springframework.transaction.TransactionStatus;
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class PoolServiceTest extends BaseUnitTest {
   @Autowired PoolService poolService;
+  @Autowired PoolConfiguration poolConfiguration;
+  @Autowired HandoutWaitQueue handoutWaitQueue;
   @Autowired BufferDao bufferDao;
   TransactionStatus transactionStatus;
 
@@ -221,6 +234,77 @@ public class PoolServiceTest extends BaseUnitTest {
     assertEquals(bufferDao.retrievePools().get(0), createdPool.toBuilder().size(size + 10).build());
   }
 
+  @Test
+  public void updateFromConfig_updateAutoscaling() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    PoolConfig poolConfig =
+        new PoolConfig()
+            .poolId(poolId.toString())
+            .size(10)
+            .resourceConfigName(RESOURCE_CONFIG_NAME);
+    poolService.updateFromConfig(
+        ImmutableList.of(PoolWithResourceConfig.create(poolConfig, newResourceConfig())));
+    Pool createdPool = bufferDao.retrievePools().get(0);
+    assertNull(createdPool.autoscaling());
+
+    PoolAutoscalingConfig autoscaling = new PoolAutoscalingConfig().minSize(5).maxSize(50);
+    poolService.updateFromConfig(
+        ImmutableList.of(
+            PoolWithResourceConfig.create(
+                poolConfig.autoscaling(autoscaling), newResourceConfig())));
+    assertEquals(
+        bufferDao.retrievePools().get(0), createdPool.toBuilder().autoscaling(autoscaling).build());
+    assertEquals(autoscaling, poolService.getPoolInfo(poolId).getPoolConfig().getAutoscaling());
+
+    poolService.updateFromConfig(
+        ImmutableList.of(
+            PoolWithResourceConfig.create(poolConfig.autoscaling(null), newResourceConfig())));
+    assertEquals(bufferDao.retrievePools().get(0), createdPool);
+  }
+
+  @Test
+  public void updateFromConfig_updateUpgradeFrom() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    PoolId oldPoolId = PoolId.create("oldPoolId");
+    PoolConfig poolConfig =
+        new PoolConfig()
+            .poolId(poolId.toString())
+            .size(10)
+            .resourceConfigName(RESOURCE_CONFIG_NAME)
+            .upgradeFromPoolId(oldPoolId.id());
+    poolService.updateFromConfig(
+        ImmutableList.of(PoolWithResourceConfig.create(poolConfig, newResourceConfig())));
+    Pool createdPool = bufferDao.retrievePool(poolId).get();
+    assertEquals(oldPoolId, createdPool.upgradeFrom());
+    assertEquals(
+        oldPoolId.id(), poolService.getPoolInfo(poolId).getPoolConfig().getUpgradeFromPoolId());
+
+    poolService.updateFromConfig(
+        ImmutableList.of(
+            PoolWithResourceConfig.create(
+                poolConfig.upgradeFromPoolId(null), newResourceConfig())));
+    assertEquals(
+        createdPool.toBuilder().upgradeFrom(null).build(), bufferDao.retrievePool(poolId).get());
+  }
+
+  @Test
+  public void updateFromConfig_upgradeFromItself_throwsException() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    PoolConfig poolConfig =
+        new PoolConfig()
+            .poolId(poolId.toString())
+            .size(10)
+            .resourceConfigName(RESOURCE_CONFIG_NAME)
+            .upgradeFromPoolId(poolId.id());
+
+    assertThrows(
+        RuntimeException.class,
+        () ->
+            poolService.updateFromConfig(
+                ImmutableList.of(PoolWithResourceConfig.create(poolConfig, newResourceConfig()))));
+    assertTrue(bufferDao.retrievePools().isEmpty());
+  }
+
   @Test
   public void handoutResource_success() throws Exception {
     PoolId poolId = PoolId.create("poolId");
@@ -244,6 +328,19 @@ public class PoolServiceTest extends BaseUnitTest {
     assertEquals(resourceInfo, secondResourceInfo);
   }
 
+  @Test
+  public void handoutResource_lockFreeHandoutDisabled() throws Exception {
+    poolConfiguration.setLockFreeHandoutEnabled(false);
+    PoolId poolId = PoolId.create("poolId");
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    newReadyPool(poolId, 1);
+
+    ResourceInfo resourceInfo = poolService.handoutResource(poolId, requestHandoutId);
+    assertEquals(poolId.id(), resourceInfo.getPoolId());
+    assertEquals(requestHandoutId.id(), resourceInfo.getRequestHandoutId());
+    assertEquals(resourceInfo, poolService.handoutResource(poolId, requestHandoutId));
+  }
+
   @Test
   public void handoutResource_deactivatedPool() throws Exception {
     PoolId poolId = PoolId.create("poolId");
@@ -265,6 +362,143 @@ public class PoolServiceTest extends BaseUnitTest {
         NotFoundException.class, () -> poolService.handoutResource(poolId, requestHandoutId));
   }
 
+  @Test
+  public void handoutResource_waitForResource() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    newReadyPool(poolId, 0);
+
+    CompletableFuture<ResourceInfo> resourceInfo =
+        poolService.handoutResource(poolId, requestHandoutId, Duration.ofSeconds(30));
+    // The request is parked without blocking the calling thread.
+    assertFalse(resourceInfo.isDone());
+    assertEquals(1, handoutWaitQueue.waiterCount(poolId));
+    CloudResourceUid resourceUid = newProjectUid();
+    ResourceId id = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(id)
+            .poolId(poolId)
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+    bufferDao.updateResourceAsReady(id, resourceUid);
+    handoutWaitQueue.notifyResourceReady(poolId);
+
+    assertEquals(resourceUid, resourceInfo.get(10, TimeUnit.SECONDS).getCloudResourceUid());
+    assertEquals(0, handoutWaitQueue.waiterCount(poolId));
+  }
+
+  @Test
+  public void handoutResource_waitTimeout() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    newReadyPool(poolId, 0);
+
+    CompletionException e =
+        assertThrows(
+            CompletionException.class,
+            () ->
+                poolService
+                    .handoutResource(poolId, requestHandoutId, Duration.ofSeconds(1))
+                    .join());
+    assertTrue(e.getCause() instanceof NotFoundException);
+    assertEquals(0, handoutWaitQueue.waiterCount(poolId));
+  }
+
+  @Test
+  public void handoutResources_success() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    newReadyPool(poolId, 2);
+    RequestHandoutId id1 = RequestHandoutId.create("handoutId1");
+    RequestHandoutId id2 = RequestHandoutId.create("handoutId2");
+    RequestHandoutId id3 = RequestHandoutId.create("handoutId3");
+    ResourceInfo resourceInfo1 = poolService.handoutResource(poolId, id1);
+
+    BatchHandoutResponse response =
+        poolService.handoutResources(poolId, ImmutableList.of(id1, id2, id2, id3));
+
+    // Duplicate ids are collapsed and results follow the request order.
+    assertEquals(3, response.getResults().size());
+    assertEquals(
+        new HandoutResult().handoutRequestId(id1.id()).resourceInfo(resourceInfo1),
+        response.getResults().get(0));
+    assertEquals(id2.id(), response.getResults().get(1).getHandoutRequestId());
+    assertEquals(id2.id(), response.getResults().get(1).getResourceInfo().getRequestHandoutId());
+    assertEquals(new HandoutResult().handoutRequestId(id3.id()), response.getResults().get(2));
+  }
+
+  @Test
+  public void handoutResources_lockFreeHandoutDisabled() throws Exception {
+    poolConfiguration.setLockFreeHandoutEnabled(false);
+    PoolId poolId = PoolId.create("poolId");
+    newReadyPool(poolId, 1);
+    RequestHandoutId id1 = RequestHandoutId.create("handoutId1");
+    RequestHandoutId id2 = RequestHandoutId.create("handoutId2");
+
+    BatchHandoutResponse response =
+        poolService.handoutResources(poolId, ImmutableList.of(id1, id2));
+
+    assertEquals(2, response.getResults().size());
+    ResourceInfo resourceInfo1 = response.getResults().get(0).getResourceInfo();
+    assertEquals(id1.id(), resourceInfo1.getRequestHandoutId());
+    assertEquals(new HandoutResult().handoutRequestId(id2.id()), response.getResults().get(1));
+    // Replaying the batch hands out the same resource again.
+    assertEquals(
+        resourceInfo1,
+        poolService
+            .handoutResources(poolId, ImmutableList.of(id1, id2))
+            .getResults()
+            .get(0)
+            .getResourceInfo());
+  }
+
+  @Test
+  public void handoutResources_tooManyIds() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    newReadyPool(poolId, 0);
+    List<RequestHandoutId> ids =
+        IntStream.rangeClosed(0, PoolService.MAX_BATCH_HANDOUT_SIZE)
+            .mapToObj(i -> RequestHandoutId.create("handoutId" + i))
+            .collect(Collectors.toList());
+
+    assertThrows(BadRequestException.class, () -> poolService.handoutResources(poolId, ids));
+  }
+
+  @Test
+  public void returnResource_notRecyclable() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    newReadyPool(poolId, 1);
+    poolService.handoutResource(poolId, requestHandoutId);
+
+    assertThrows(
+        BadRequestException.class, () -> poolService.returnResource(poolId, requestHandoutId));
+  }
+
+  @Test
+  public void returnResource_notHandedOut() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    newRecyclablePool(poolId);
+
+    assertThrows(
+        NotFoundException.class,
+        () -> poolService.returnResource(poolId, RequestHandoutId.create("handoutId")));
+  }
+
+  @Test
+  public void returnResource_alreadyPublishedForCleanup() throws Exception {
+    PoolId poolId = PoolId.create("poolId");
+    RequestHandoutId requestHandoutId = RequestHandoutId.create("handoutId");
+    newRecyclablePool(poolId);
+    Resource resource = bufferDao.claimOneReadyResource(poolId, requestHandoutId).get();
+    bufferDao.insertCleanupRecord(resource.id());
+
+    assertThrows(
+        BadRequestException.class, () -> poolService.returnResource(poolId, requestHandoutId));
+    assertEquals(ResourceState.HANDED_OUT, bufferDao.retrieveResource(resource.id()).get().state());
+  }
+
   @Test
   public void getPoolInfo_success() throws Exception {
     PoolId poolId = PoolId.create("poolId");
@@ -279,9 +513,12 @@ public class PoolServiceTest extends BaseUnitTest {
                     .resourceConfigName("resourceName"))
             .status(bio.terra.buffer.generated.model.PoolStatus.ACTIVE)
             .putResourceStateCountItem(ResourceState.READY.name(), 2)
+            .putResourceStateCountItem(ResourceState.RESERVED.name(), 0)
             .putResourceStateCountItem(ResourceState.CREATING.name(), 0)
             .putResourceStateCountItem(ResourceState.DELETED.name(), 0)
-            .putResourceStateCountItem(ResourceState.HANDED_OUT.name(), 0),
+            .putResourceStateCountItem(ResourceState.HANDED_OUT.name(), 0)
+            .putResourceStateCountItem(ResourceState.RECYCLING.name(), 0)
+            .putResourceStateCountItem(ResourceState.UPGRADING.name(), 0),
         poolService.getPoolInfo(poolId));
   }
 
@@ -291,6 +528,29 @@ public class PoolServiceTest extends BaseUnitTest {
     assertThrows(NotFoundException.class, () -> poolService.getPoolInfo(poolId));
   }
 
+  /** Creates a pool of one READY recyclable project. */
+  private void newRecyclablePool(PoolId poolId) {
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(poolId)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(1)
+                .resourceConfig(newResourceConfig(new GcpProjectConfig().recyclable(true)))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+    ResourceId id = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(id)
+            .poolId(poolId)
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+    bufferDao.updateResourceAsReady(id, newProjectUid());
+  }
+
   /** Creates a pool with resources with given size. */
   private void newReadyPool(PoolId poolId, int poolSize) {
     Pool pool =
@@ -5,7 +5,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import bio.terra.buffer.common.BaseUnitTest;
 import bio.terra.buffer.common.exception.InvalidPoolConfigException;
 import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.Network;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.generated.model.Subnet;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
 
 public class ResourceConfigValidatorTest extends BaseUnitTest {
@@ -32,4 +35,61 @@ public class ResourceConfigValidatorTest extends BaseUnitTest {
             () -> new GcpResourceConfigValidator().validate(resourceConfig));
     assertTrue(exception.getMessage().contains("Missing billing account"));
   }
+
+  @Test
+  public void testValidateGcpConfig_subnetsSuccess() {
+    new GcpResourceConfigValidator()
+        .validate(
+            configWithSubnets(
+                new Subnet().region("us-central1").ipCidrRange("10.128.0.0/20"),
+                new Subnet().region("us-east1").ipCidrRange("10.142.0.0/20")));
+  }
+
+  @Test
+  public void testValidateGcpConfig_emptySubnets() {
+    assertInvalid("Empty subnets", configWithSubnets());
+  }
+
+  @Test
+  public void testValidateGcpConfig_duplicateSubnetRegion() {
+    assertInvalid(
+        "Duplicate subnet region",
+        configWithSubnets(
+            new Subnet().region("us-central1").ipCidrRange("10.128.0.0/20"),
+            new Subnet().region("us-central1").ipCidrRange("10.142.0.0/20")));
+  }
+
+  @Test
+  public void testValidateGcpConfig_invalidSubnetRange() {
+    for (String range :
+        Arrays.asList(null, "10.128.0.0", "10.128.0.0/40", "10.128.0.1/20", "fd00::/20", "a/20")) {
+      assertInvalid(
+          "Invalid subnet IP range",
+          configWithSubnets(new Subnet().region("us-central1").ipCidrRange(range)));
+    }
+  }
+
+  @Test
+  public void testValidateGcpConfig_overlappingSubnetRanges() {
+    assertInvalid(
+        "Overlapping subnet IP range",
+        configWithSubnets(
+            new Subnet().region("us-central1").ipCidrRange("10.128.0.0/16"),
+            new Subnet().region("us-east1").ipCidrRange("10.128.16.0/20")));
+  }
+
+  private static ResourceConfig configWithSubnets(Subnet... subnets) {
+    return new ResourceConfig()
+        .configName("testConfig")
+        .gcpProjectConfig(
+            newValidGcpProjectConfig().network(new Network().subnets(Arrays.asList(subnets))));
+  }
+
+  private static void assertInvalid(String expectedMessage, ResourceConfig resourceConfig) {
+    InvalidPoolConfigException exception =
+        assertThrows(
+            InvalidPoolConfigException.class,
+            () -> new GcpResourceConfigValidator().validate(resourceConfig));
+    assertTrue(exception.getMessage().contains(expectedMessage));
+  }
 }
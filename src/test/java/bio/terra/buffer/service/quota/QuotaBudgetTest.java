@@ -0,0 +1,76 @@
+package bio.terra.buffer.service.quota;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.app.configuration.QuotaConfiguration;
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
+import bio.terra.buffer.db.BufferDao;
+import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class QuotaBudgetTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+
+  private QuotaBudget newQuotaBudget(int capacity, Duration refillPeriod) {
+    QuotaConfiguration quotaConfiguration = new QuotaConfiguration();
+    quotaConfiguration.setMaxWait(Duration.ofSeconds(2));
+    quotaConfiguration.setBatchEnable(new QuotaConfiguration.Bucket(capacity, refillPeriod));
+    quotaConfiguration.setProjectCreate(new QuotaConfiguration.Bucket(capacity, refillPeriod));
+    return new QuotaBudget(quotaConfiguration, bufferDao);
+  }
+
+  @Test
+  public void acquire_drainsBucket() throws Exception {
+    QuotaBudget quotaBudget = newQuotaBudget(3, Duration.ofDays(1));
+    assertEquals(3, quotaBudget.flightAllowance(ImmutableMap.of(QuotaBucket.BATCH_ENABLE, 1)));
+
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 2);
+    assertEquals(1, quotaBudget.flightAllowance(ImmutableMap.of(QuotaBucket.BATCH_ENABLE, 1)));
+    // Other buckets are not affected.
+    assertEquals(3, quotaBudget.flightAllowance(ImmutableMap.of(QuotaBucket.PROJECT_CREATE, 1)));
+    assertEquals(
+        1,
+        quotaBudget.flightAllowance(
+            ImmutableMap.of(QuotaBucket.BATCH_ENABLE, 1, QuotaBucket.PROJECT_CREATE, 1)));
+
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1);
+    // The bucket takes a day to refill, longer than the max wait.
+    assertThrows(
+        QuotaExhaustedException.class, () -> quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1));
+    assertEquals(0, quotaBudget.flightAllowance(ImmutableMap.of(QuotaBucket.BATCH_ENABLE, 1)));
+  }
+
+  @Test
+  public void acquire_waitsForRefill() throws Exception {
+    // Refills one token per 500ms.
+    QuotaBudget quotaBudget = newQuotaBudget(2, Duration.ofSeconds(1));
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 2);
+
+    long start = System.nanoTime();
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1);
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+  }
+
+  @Test
+  public void disabled() throws Exception {
+    QuotaConfiguration quotaConfiguration = new QuotaConfiguration();
+    quotaConfiguration.setEnabled(false);
+    quotaConfiguration.setBatchEnable(new QuotaConfiguration.Bucket(1, Duration.ofDays(1)));
+    QuotaBudget quotaBudget = new QuotaBudget(quotaConfiguration, bufferDao);
+
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1);
+    quotaBudget.acquire(QuotaBucket.BATCH_ENABLE, 1);
+    assertEquals(
+        Integer.MAX_VALUE,
+        quotaBudget.flightAllowance(ImmutableMap.of(QuotaBucket.BATCH_ENABLE, 1)));
+  }
+}
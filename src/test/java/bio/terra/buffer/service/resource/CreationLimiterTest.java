@@ -0,0 +1,113 @@
+package bio.terra.buffer.service.resource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import bio.terra.buffer.app.configuration.CreationLimitConfiguration;
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class CreationLimiterTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+
+  private static final PoolId POOL_ID = PoolId.create("poolId");
+
+  private CreationLimiter newLimiter() {
+    return newLimiter(Duration.ZERO);
+  }
+
+  private CreationLimiter newLimiter(Duration decreaseWindow) {
+    CreationLimitConfiguration creationLimitConfiguration = new CreationLimitConfiguration();
+    creationLimitConfiguration.setInitialLimit(10);
+    creationLimitConfiguration.setMinLimit(2);
+    creationLimitConfiguration.setMaxLimit(6);
+    creationLimitConfiguration.setDecreaseWindow(decreaseWindow);
+    return new CreationLimiter(creationLimitConfiguration, bufferDao);
+  }
+
+  @Test
+  public void noOutcomeUsesInitialLimit() {
+    newPool();
+    CreationLimiter limiter = newLimiter();
+
+    assertEquals(10, limiter.limit(POOL_ID, limiter.retrieveLimits()));
+  }
+
+  @Test
+  public void failureCutsLimit() {
+    newPool();
+    CreationLimiter limiter = newLimiter();
+
+    limiter.recordFailure(POOL_ID);
+    assertEquals(ImmutableMap.of(POOL_ID, 5.0), limiter.retrieveLimits());
+    limiter.recordFailure(POOL_ID);
+    assertEquals(2, limiter.limit(POOL_ID, limiter.retrieveLimits()));
+    // Never goes below the minimum.
+    limiter.recordFailure(POOL_ID);
+    assertEquals(ImmutableMap.of(POOL_ID, 2.0), limiter.retrieveLimits());
+  }
+
+  @Test
+  public void failureCutsLimitOncePerWindow() {
+    newPool();
+    CreationLimiter limiter = newLimiter(Duration.ofHours(1));
+
+    // Flights failing together only cut the limit once.
+    limiter.recordFailure(POOL_ID);
+    limiter.recordFailure(POOL_ID);
+    limiter.recordFailure(POOL_ID);
+    assertEquals(ImmutableMap.of(POOL_ID, 5.0), limiter.retrieveLimits());
+    // Successes still grow it within the window.
+    for (int i = 0; i < 6; i++) {
+      limiter.recordSuccess(POOL_ID);
+    }
+    assertEquals(6, limiter.limit(POOL_ID, limiter.retrieveLimits()));
+  }
+
+  @Test
+  public void successGrowsLimit() {
+    newPool();
+    CreationLimiter limiter = newLimiter();
+    limiter.recordFailure(POOL_ID);
+
+    // 5 successes at a limit of about 5 grow it by about 1.
+    for (int i = 0; i < 5; i++) {
+      limiter.recordSuccess(POOL_ID);
+    }
+    assertEquals(5, limiter.limit(POOL_ID, limiter.retrieveLimits()));
+    limiter.recordSuccess(POOL_ID);
+    assertEquals(6, limiter.limit(POOL_ID, limiter.retrieveLimits()));
+    // Never goes above the maximum.
+    for (int i = 0; i < 20; i++) {
+      limiter.recordSuccess(POOL_ID);
+    }
+    assertEquals(ImmutableMap.of(POOL_ID, 6.0), limiter.retrieveLimits());
+  }
+
+  private void newPool() {
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(POOL_ID)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(1)
+                .resourceConfig(new ResourceConfig().configName("resourceName"))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+  }
+}
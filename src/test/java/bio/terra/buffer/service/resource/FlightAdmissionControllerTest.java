@@ -0,0 +1,105 @@
+package bio.terra.buffer.service.resource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class FlightAdmissionControllerTest {
+  private static final Pool POOL_A = newPool("a");
+  private static final Pool POOL_B = newPool("b");
+
+  @Test
+  public void admit_splitsByDeficit() {
+    FlightAdmissionController controller =
+        new FlightAdmissionController(new PrimaryConfiguration());
+    FlightDemand demandA = FlightDemand.create(POOL_A, FlightDemand.Type.CREATION, 30);
+    FlightDemand demandB = FlightDemand.create(POOL_B, FlightDemand.Type.CREATION, 10);
+
+    assertEquals(
+        ImmutableMap.of(demandA, 6, demandB, 2),
+        controller.admit(ImmutableList.of(demandA, demandB), 8, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void admit_globalLimit() {
+    FlightAdmissionController controller =
+        new FlightAdmissionController(new PrimaryConfiguration());
+    FlightDemand demandA = FlightDemand.create(POOL_A, FlightDemand.Type.CREATION, 3);
+    FlightDemand demandB = FlightDemand.create(POOL_B, FlightDemand.Type.DELETION, 2);
+
+    // Demand below the limit is admitted in full.
+    assertEquals(
+        ImmutableMap.of(demandA, 3, demandB, 2),
+        controller.admit(ImmutableList.of(demandA, demandB), 100, Integer.MAX_VALUE));
+    // No capacity left, nothing admitted.
+    assertTrue(
+        controller.admit(ImmutableList.of(demandA, demandB), 0, Integer.MAX_VALUE).isEmpty());
+  }
+
+  @Test
+  public void admit_creationLimitLeavesCapacityToDeletions() {
+    FlightAdmissionController controller =
+        new FlightAdmissionController(new PrimaryConfiguration());
+    FlightDemand creation = FlightDemand.create(POOL_A, FlightDemand.Type.CREATION, 10);
+    FlightDemand deletion = FlightDemand.create(POOL_B, FlightDemand.Type.DELETION, 10);
+
+    assertEquals(
+        ImmutableMap.of(creation, 2, deletion, 8),
+        controller.admit(ImmutableList.of(creation, deletion), 10, 2));
+  }
+
+  @Test
+  public void admit_poolWeights() {
+    PrimaryConfiguration primaryConfiguration = new PrimaryConfiguration();
+    primaryConfiguration.setPoolWeights(ImmutableMap.of(POOL_A.id().id(), 3.0));
+    FlightAdmissionController controller = new FlightAdmissionController(primaryConfiguration);
+    FlightDemand demandA = FlightDemand.create(POOL_A, FlightDemand.Type.CREATION, 10);
+    FlightDemand demandB = FlightDemand.create(POOL_B, FlightDemand.Type.CREATION, 10);
+
+    assertEquals(
+        ImmutableMap.of(demandA, 6, demandB, 2),
+        controller.admit(ImmutableList.of(demandA, demandB), 8, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void admit_smallPoolNotStarved() {
+    FlightAdmissionController controller =
+        new FlightAdmissionController(new PrimaryConfiguration());
+    FlightDemand large = FlightDemand.create(POOL_A, FlightDemand.Type.CREATION, 100);
+    FlightDemand small = FlightDemand.create(POOL_B, FlightDemand.Type.CREATION, 1);
+
+    // The small pool earns less than a flight per call, but its credit carries over.
+    boolean smallAdmitted = false;
+    for (int i = 0; i < 20 && !smallAdmitted; i++) {
+      Map<FlightDemand, Integer> admitted =
+          controller.admit(ImmutableList.of(large, small), 10, Integer.MAX_VALUE);
+      assertEquals(10, admitted.values().stream().mapToInt(Integer::intValue).sum());
+      smallAdmitted = admitted.containsKey(small);
+    }
+    assertTrue(smallAdmitted);
+  }
+
+  private static Pool newPool(String id) {
+    return Pool.builder()
+        .creation(Instant.now())
+        .id(PoolId.create(id))
+        .resourceType(ResourceType.GOOGLE_PROJECT)
+        .size(10)
+        .resourceConfig(new ResourceConfig().configName("resourceName"))
+        .status(PoolStatus.ACTIVE)
+        .build();
+  }
+}
@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 import bio.terra.buffer.common.*;
 import bio.terra.buffer.db.BufferDao;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
 import bio.terra.common.stairway.StairwayComponent;
 import bio.terra.stairway.Stairway;
 import bio.terra.stairway.exception.StairwayExecutionException;
@@ -29,6 +30,7 @@ public class FlightManagerTest extends BaseUnitTest {
   @Autowired private BufferDao bufferDao;
   @Autowired private FlightSubmissionFactory flightSubmissionFactory;
   @Autowired private TransactionTemplate transactionTemplate;
+  @Autowired private LeaderElection leaderElection;
 
   private FlightManager flightManager;
 
@@ -42,7 +44,11 @@ public class FlightManagerTest extends BaseUnitTest {
 
     flightManager =
         new FlightManager(
-            bufferDao, flightSubmissionFactory, mockStairwayComponent, transactionTemplate);
+            bufferDao,
+            flightSubmissionFactory,
+            mockStairwayComponent,
+            transactionTemplate,
+            leaderElection);
   }
 
   @Test
@@ -7,13 +7,16 @@ import static bio.terra.buffer.common.testing.MetricsTestUtil.getPoolIdTag;
 import static bio.terra.buffer.common.testing.MetricsTestUtil.getResourceCountTags;
 import static bio.terra.buffer.common.testing.MetricsTestUtil.sleepForSpansExport;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.app.configuration.QuotaConfiguration;
 import bio.terra.buffer.common.BaseUnitTest;
 import bio.terra.buffer.common.Pool;
 import bio.terra.buffer.common.PoolId;
@@ -24,7 +27,13 @@ import bio.terra.buffer.common.ResourceState;
 import bio.terra.buffer.common.ResourceType;
 import bio.terra.buffer.common.testing.MetricsTestUtil;
 import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.GoogleProjectUid;
+import bio.terra.buffer.generated.model.ProjectIdSchema;
 import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.buffer.service.quota.QuotaBudget;
 import bio.terra.common.stairway.StairwayComponent;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
@@ -32,8 +41,10 @@ import com.google.common.collect.Multiset;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
@@ -55,6 +66,10 @@ public class FlightSchedulerTest extends BaseUnitTest {
 
   @Autowired BufferDao bufferDao;
   @Autowired StairwayComponent stairwayComponent;
+  @Autowired LeaderElection leaderElection;
+  @Autowired PoolAutoscaler poolAutoscaler;
+  @Autowired QuotaBudget quotaBudget;
+  @Autowired CreationLimiter creationLimiter;
   @MockBean FlightManager flightManager;
 
   private void initializeScheduler() {
@@ -63,7 +78,16 @@ public class FlightSchedulerTest extends BaseUnitTest {
 
   private void initializeScheduler(PrimaryConfiguration primaryConfiguration) {
     flightScheduler =
-        new FlightScheduler(flightManager, primaryConfiguration, stairwayComponent, bufferDao);
+        new FlightScheduler(
+            flightManager,
+            primaryConfiguration,
+            stairwayComponent,
+            bufferDao,
+            leaderElection,
+            poolAutoscaler,
+            quotaBudget,
+            new FlightAdmissionController(primaryConfiguration),
+            creationLimiter);
     flightScheduler.initialize();
   }
 
@@ -78,8 +102,6 @@ public class FlightSchedulerTest extends BaseUnitTest {
   private PrimaryConfiguration newPrimaryConfiguration() {
     PrimaryConfiguration primaryConfiguration = new PrimaryConfiguration();
     primaryConfiguration.setSchedulerEnabled(true);
-    primaryConfiguration.setResourceCreationPerPoolLimit(10);
-    primaryConfiguration.setResourceDeletionPerPoolLimit(10);
     primaryConfiguration.setDeleteExcessResources(false);
     // Sets submissionPeriod to a big number to make sure it is only runs once.
     primaryConfiguration.setFlightSubmissionPeriod(Duration.ofHours(2));
@@ -88,6 +110,15 @@ public class FlightSchedulerTest extends BaseUnitTest {
 
   /** Creates a pool with resources with given {@code resourceStates}. */
   private Pool newPoolWithResourceCount(int poolSize, Multiset<ResourceState> resourceStates) {
+    return newPoolWithResourceCount(poolSize, resourceStates, null, null);
+  }
+
+  /** Same as above, for a pool with {@code gcpProjectConfig} upgrading from {@code upgradeFrom}. */
+  private Pool newPoolWithResourceCount(
+      int poolSize,
+      Multiset<ResourceState> resourceStates,
+      @Nullable GcpProjectConfig gcpProjectConfig,
+      @Nullable PoolId upgradeFrom) {
     PoolId poolId = PoolId.create(UUID.randomUUID().toString());
     Pool pool =
         Pool.builder()
@@ -95,8 +126,10 @@ public class FlightSchedulerTest extends BaseUnitTest {
             .id(poolId)
             .resourceType(ResourceType.GOOGLE_PROJECT)
             .size(poolSize)
-            .resourceConfig(new ResourceConfig().configName("resourceName"))
+            .resourceConfig(
+                new ResourceConfig().configName("resourceName").gcpProjectConfig(gcpProjectConfig))
             .status(PoolStatus.ACTIVE)
+            .upgradeFrom(upgradeFrom)
             .build();
     bufferDao.createPools(ImmutableList.of(pool));
 
@@ -135,6 +168,23 @@ public class FlightSchedulerTest extends BaseUnitTest {
         .submitDeletionFlight(any(Resource.class), any(ResourceType.class));
   }
 
+  @Test
+  public void scheduleCreationFlights_onResourceConsumed() throws Exception {
+    PrimaryConfiguration primaryConfiguration = newPrimaryConfiguration();
+    primaryConfiguration.setPoolEventDebounce(Duration.ofMillis(100));
+    initializeScheduler(primaryConfiguration);
+    // Let the initial full scan run before there is any pool.
+    TimeUnit.SECONDS.sleep(1);
+
+    Pool pool = newPoolWithResourceCount(3, ImmutableMultiset.of(ResourceState.READY));
+    flightScheduler.onResourceConsumed(pool.id());
+    flightScheduler.onResourceConsumed(pool.id());
+    TimeUnit.SECONDS.sleep(2);
+
+    // Both notifications are evaluated together.
+    verify(flightManager, times(2)).submitCreationFlight(pool);
+  }
+
   @Test
   public void scheduleDeactivationFlights_poolDeactivated() throws Exception {
     // pool is delete, should delete the 2 READY resources.
@@ -199,14 +249,14 @@ public class FlightSchedulerTest extends BaseUnitTest {
   @Test
   public void scheduleCreationFlights_smallerLimitPerExecute() throws Exception {
     // Pool size 10, need to create 7 more resources.
-    // Expect number of resourceCreationPerPoolLimit(5) flights are submitted at most.
+    // With maxConcurrentFlights(6) and 1 flight in progress, expect 5 flights are submitted.
     Pool pool =
         newPoolWithResourceCount(
             10,
             ImmutableMultiset.of(ResourceState.READY, ResourceState.READY, ResourceState.CREATING));
 
     PrimaryConfiguration primaryConfiguration = newPrimaryConfiguration();
-    primaryConfiguration.setResourceCreationPerPoolLimit(5);
+    primaryConfiguration.setMaxConcurrentFlights(6);
     initializeScheduler(primaryConfiguration);
     TimeUnit.SECONDS.sleep(4);
 
@@ -215,10 +265,74 @@ public class FlightSchedulerTest extends BaseUnitTest {
         .submitDeletionFlight(any(Resource.class), any(ResourceType.class));
   }
 
+  @Test
+  public void scheduleCreationFlights_deletionAwaitingConfirmationNotInProgress() throws Exception {
+    // Pool size 10, need to create 7 more resources.
+    // The DELETING resource only waits for its deletion to be confirmed, so with
+    // maxConcurrentFlights(6) and 1 flight in progress, expect 5 flights are submitted.
+    Pool pool =
+        newPoolWithResourceCount(
+            10,
+            ImmutableMultiset.of(ResourceState.READY, ResourceState.READY, ResourceState.CREATING));
+    ResourceId deleting = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(deleting)
+            .poolId(pool.id())
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+    bufferDao.updateResourceAsReady(
+        deleting, new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("p1")));
+    bufferDao.updateReadyResourceToDeleting(deleting);
+    bufferDao.upsertProjectDeletion("p1", "folders/1", "operationName");
+
+    PrimaryConfiguration primaryConfiguration = newPrimaryConfiguration();
+    primaryConfiguration.setMaxConcurrentFlights(6);
+    initializeScheduler(primaryConfiguration);
+    TimeUnit.SECONDS.sleep(4);
+
+    verify(flightManager, times(5)).submitCreationFlight(pool);
+  }
+
+  @Test
+  public void scheduleCreationFlights_limitedByCreationLimit() throws Exception {
+    // Pool size 10, need to create 7 more resources.
+    // A failed flight halves the creation limit to 5, with 1 flight in progress expect 4 flights.
+    Pool pool =
+        newPoolWithResourceCount(
+            10,
+            ImmutableMultiset.of(ResourceState.READY, ResourceState.READY, ResourceState.CREATING));
+    creationLimiter.recordFailure(pool.id());
+
+    initializeScheduler();
+    TimeUnit.SECONDS.sleep(4);
+
+    verify(flightManager, times(4)).submitCreationFlight(pool);
+  }
+
+  @Test
+  public void scheduleCreationFlights_limitedByQuotaBudget() throws Exception {
+    // Two pools need 3 more resources each, but the quota only allows 4 flights in total.
+    Pool pool1 = newPoolWithResourceCount(3, ImmutableMultiset.of());
+    Pool pool2 = newPoolWithResourceCount(3, ImmutableMultiset.of());
+    when(flightManager.submitCreationFlight(any(Pool.class))).thenReturn(Optional.of("flightId"));
+    QuotaConfiguration quotaConfiguration = new QuotaConfiguration();
+    quotaConfiguration.setProjectCreate(new QuotaConfiguration.Bucket(4, Duration.ofDays(1)));
+    quotaBudget = new QuotaBudget(quotaConfiguration, bufferDao);
+
+    initializeScheduler();
+    TimeUnit.SECONDS.sleep(4);
+
+    ArgumentCaptor<Pool> poolCaptor = ArgumentCaptor.forClass(Pool.class);
+    verify(flightManager, times(4)).submitCreationFlight(poolCaptor.capture());
+    assertThat(poolCaptor.getAllValues(), Matchers.hasItems(pool1, pool2));
+  }
+
   @Test
   public void scheduleDeactivationFlights_smallerLimitPerExecute() throws Exception {
     // Pool1 size 5, need to deactivate the 4 READY resources.
-    // Expect number of resourceDeactivationPerPoolLimit(3) flights are submitted at most.
+    // With maxConcurrentFlights(4) and 1 flight in progress, expect 3 flights are submitted.
     Pool pool =
         newPoolWithResourceCount(
             5,
@@ -234,7 +348,7 @@ public class FlightSchedulerTest extends BaseUnitTest {
         bufferDao.retrieveResourcesRandomly(pool.id(), ResourceState.READY, 4);
 
     PrimaryConfiguration primaryConfiguration = newPrimaryConfiguration();
-    primaryConfiguration.setResourceDeletionPerPoolLimit(3);
+    primaryConfiguration.setMaxConcurrentFlights(4);
     initializeScheduler(primaryConfiguration);
 
     TimeUnit.SECONDS.sleep(4);
@@ -247,6 +361,43 @@ public class FlightSchedulerTest extends BaseUnitTest {
     verify(flightManager, never()).submitCreationFlight(any(Pool.class));
   }
 
+  @Test
+  public void scheduleUpgradeFlights_upgradeFromDeactivatedPool() throws Exception {
+    // The old pool has 3 READY resources, the new pool upgrading from it only needs 2 of them.
+    GcpProjectConfig oldConfig =
+        new GcpProjectConfig()
+            .projectIdSchema(
+                new ProjectIdSchema().prefix("test").scheme(ProjectIdSchema.SchemeEnum.RANDOM_CHAR))
+            .enabledApis(ImmutableList.of("compute.googleapis.com"));
+    Pool oldPool =
+        newPoolWithResourceCount(
+            5,
+            ImmutableMultiset.of(ResourceState.READY, ResourceState.READY, ResourceState.READY),
+            oldConfig,
+            null);
+    bufferDao.deactivatePools(ImmutableList.of(oldPool.id()));
+    Pool newPool =
+        newPoolWithResourceCount(
+            2,
+            ImmutableMultiset.of(),
+            new GcpProjectConfig()
+                .projectIdSchema(oldConfig.getProjectIdSchema())
+                .enabledApis(ImmutableList.of("compute.googleapis.com", "bigquery.googleapis.com")),
+            oldPool.id());
+
+    initializeScheduler();
+    TimeUnit.SECONDS.sleep(4);
+
+    ArgumentCaptor<GcpProjectConfig> deltaCaptor = ArgumentCaptor.forClass(GcpProjectConfig.class);
+    verify(flightManager, times(2))
+        .submitUpgradeFlight(eq(newPool), any(Resource.class), deltaCaptor.capture());
+    assertEquals(
+        ImmutableList.of("bigquery.googleapis.com"), deltaCaptor.getValue().getEnabledApis());
+    verify(flightManager)
+        .submitDeletionFlight(any(Resource.class), eq(ResourceType.GOOGLE_PROJECT));
+    verify(flightManager, never()).submitCreationFlight(any(Pool.class));
+  }
+
   @Test
   public void testRecordResourceState() throws Exception {
     // activatePool has 2 READY, 1 creating.
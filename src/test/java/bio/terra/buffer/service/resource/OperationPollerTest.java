@@ -0,0 +1,136 @@
+package bio.terra.buffer.service.resource;
+
+import static bio.terra.buffer.service.resource.OperationPoller.pendingOperationName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.cloudres.google.api.services.common.OperationCow;
+import bio.terra.common.stairway.StairwayComponent;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.RetryException;
+import com.google.common.collect.ImmutableList;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class OperationPollerTest {
+  private static final String KEY = "operation";
+  private static final Instant NOW = Instant.parse("2026-10-16T00:00:00Z");
+
+  private final StairwayComponent stairwayComponent = mock(StairwayComponent.class);
+  private final LeaderElection leaderElection = mock(LeaderElection.class);
+  private final Stairway stairway = mock(Stairway.class);
+  private final Clock clock = mock(Clock.class);
+  private final FlightContext flightContext = mock(FlightContext.class);
+  private final OperationCow<?> operation = mock(OperationCow.class, RETURNS_DEEP_STUBS);
+
+  private OperationPoller poller;
+
+  @BeforeEach
+  public void setUp() {
+    when(stairwayComponent.get()).thenReturn(stairway);
+    when(flightContext.getWorkingMap()).thenReturn(new FlightMap());
+    when(flightContext.getFlightId()).thenReturn("flightId");
+    when(operation.getOperationAdapter().getName()).thenReturn("operationName");
+    setNow(NOW);
+    poller = new OperationPoller(stairwayComponent, leaderElection, clock);
+    poller.startOperation(flightContext, KEY, operation);
+  }
+
+  @Test
+  public void awaitOperation_done() throws Exception {
+    when(operation.getOperationAdapter().getDone()).thenReturn(true);
+    when(operation.getOperationAdapter().getError()).thenReturn(null);
+
+    assertFalse(
+        poller.awaitOperation(flightContext, KEY, operation, Duration.ofMinutes(5)).isPresent());
+    // Forgotten, so that a rerun of the step starts over.
+    assertFalse(pendingOperationName(flightContext, KEY).isPresent());
+  }
+
+  @Test
+  public void awaitOperation_runningWaitsThenResumes() throws Exception {
+    when(operation.getOperationAdapter().getDone()).thenReturn(false);
+
+    assertEquals(
+        StepStatus.STEP_RESULT_WAIT,
+        poller
+            .awaitOperation(flightContext, KEY, operation, Duration.ofMinutes(5))
+            .get()
+            .getStepStatus());
+    assertEquals("operationName", pendingOperationName(flightContext, KEY).get());
+    assertEquals(1, poller.pendingCount());
+
+    when(operation.getOperationAdapter().getDone()).thenReturn(true);
+    when(stairway.resume("flightId")).thenReturn(true);
+    setNow(NOW.plusSeconds(1));
+    poller.pollRound();
+    verify(stairway).resume("flightId");
+    assertEquals(0, poller.pendingCount());
+  }
+
+  @Test
+  public void awaitOperation_failed() {
+    when(operation.getOperationAdapter().getDone()).thenReturn(true);
+
+    assertThrows(
+        RetryException.class,
+        () -> poller.awaitOperation(flightContext, KEY, operation, Duration.ofMinutes(5)));
+    assertFalse(pendingOperationName(flightContext, KEY).isPresent());
+  }
+
+  @Test
+  public void awaitOperation_timedOut() {
+    when(operation.getOperationAdapter().getDone()).thenReturn(false);
+    setNow(NOW.plus(Duration.ofMinutes(6)));
+
+    assertThrows(
+        RetryException.class,
+        () -> poller.awaitOperation(flightContext, KEY, operation, Duration.ofMinutes(5)));
+    assertTrue(pendingOperationName(flightContext, KEY).isEmpty());
+  }
+
+  @Test
+  public void resumeWaitingFlights_onlyLeader() throws Exception {
+    when(leaderElection.isLeader()).thenReturn(false);
+    poller.resumeWaitingFlights();
+    verify(stairway, never()).getFlights(anyInt(), anyInt(), any());
+
+    when(leaderElection.isLeader()).thenReturn(true);
+    when(stairway.getFlights(anyInt(), anyInt(), any()))
+        .thenReturn(ImmutableList.of(waitingFlight("otherFlightId")));
+    poller.resumeWaitingFlights();
+    verify(stairway).resume("otherFlightId");
+  }
+
+  private static FlightState waitingFlight(String flightId) {
+    FlightState flightState = new FlightState();
+    flightState.setFlightId(flightId);
+    flightState.setFlightStatus(FlightStatus.WAITING);
+    return flightState;
+  }
+
+  private void setNow(Instant now) {
+    when(clock.instant()).thenReturn(now);
+    when(clock.millis()).thenReturn(now.toEpochMilli());
+  }
+}
@@ -0,0 +1,185 @@
+package bio.terra.buffer.service.resource;
+
+import static bio.terra.buffer.service.resource.PoolAutoscaler.computeTargetSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.app.configuration.AutoscalingConfiguration;
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.RequestHandoutId;
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.common.ResourceState;
+import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.generated.model.GoogleProjectUid;
+import bio.terra.buffer.generated.model.PoolAutoscalingConfig;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import com.google.common.collect.ImmutableList;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class PoolAutoscalerTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+  @Autowired PoolAutoscaler poolAutoscaler;
+  @Autowired AutoscalingConfiguration autoscalingConfiguration;
+
+  private static final PoolAutoscalingConfig AUTOSCALING =
+      new PoolAutoscalingConfig().minSize(2).maxSize(100).safetyMargin(1.5);
+
+  @Test
+  public void computeTargetSize_coversHandoutsDuringCreation() {
+    // 10 handouts per 5 minutes, 15 minutes to create: 30 handouts, times 1.5.
+    assertEquals(
+        45,
+        computeTargetSize(
+            ImmutableList.of(10, 10, 10),
+            0.3,
+            Duration.ofMinutes(5),
+            Duration.ofMinutes(15),
+            AUTOSCALING));
+  }
+
+  @Test
+  public void computeTargetSize_followsSpike() {
+    int steady =
+        computeTargetSize(
+            ImmutableList.of(2, 2, 2, 2),
+            0.5,
+            Duration.ofMinutes(5),
+            Duration.ofMinutes(5),
+            AUTOSCALING);
+    int spike =
+        computeTargetSize(
+            ImmutableList.of(2, 2, 2, 20),
+            0.5,
+            Duration.ofMinutes(5),
+            Duration.ofMinutes(5),
+            AUTOSCALING);
+    assertEquals(3, steady);
+    // EWMA of 11 handouts per bucket, times 1.5.
+    assertEquals(17, spike);
+  }
+
+  @Test
+  public void computeTargetSize_clampedToBounds() {
+    assertEquals(
+        2,
+        computeTargetSize(
+            ImmutableList.of(0, 0, 0),
+            0.3,
+            Duration.ofMinutes(5),
+            Duration.ofMinutes(15),
+            AUTOSCALING));
+    assertEquals(
+        100,
+        computeTargetSize(
+            ImmutableList.of(1000),
+            0.3,
+            Duration.ofMinutes(5),
+            Duration.ofMinutes(15),
+            AUTOSCALING));
+  }
+
+  @Test
+  public void targetSize_fixedSizePool() {
+    assertEquals(7, poolAutoscaler.targetSize(newPool(7, null)));
+  }
+
+  @Test
+  public void targetSize_noCreationHistoryUsesPoolSize() {
+    assertEquals(
+        5,
+        poolAutoscaler.targetSize(
+            newPool(5, new PoolAutoscalingConfig().minSize(1).maxSize(10))));
+  }
+
+  @Test
+  public void targetSize_fromHandoutsAndCreations() {
+    Pool pool = newPool(5, new PoolAutoscalingConfig().minSize(1).maxSize(10).safetyMargin(1.0));
+    for (int i = 0; i < 3; i++) {
+      ResourceId id = ResourceId.create(UUID.randomUUID());
+      bufferDao.createResource(
+          Resource.builder()
+              .id(id)
+              .poolId(pool.id())
+              // Each resource took about a day to create.
+              .creation(Instant.now().minus(Duration.ofHours(23)))
+              .state(ResourceState.CREATING)
+              .build());
+      assertTrue(
+          bufferDao.updateResourceAsReady(
+              id,
+              new CloudResourceUid()
+                  .googleProjectUid(
+                      new GoogleProjectUid().projectId(UUID.randomUUID().toString()))));
+      bufferDao.claimOneReadyResource(pool.id(), RequestHandoutId.create("handout" + i));
+    }
+    // Handouts just happened, the pool should be scaled up to its max.
+    assertEquals(10, poolAutoscaler.targetSize(pool));
+  }
+
+  @Test
+  public void scaleDownSize_fixedSizePool() {
+    assertEquals(7, poolAutoscaler.scaleDownSize(newPool(7, null)));
+  }
+
+  @Test
+  public void scaleDownSize_waitsForScaleDownDelay() {
+    Clock clock = mock(Clock.class);
+    Instant start = Instant.now();
+    PoolAutoscaler autoscaler = new PoolAutoscaler(autoscalingConfiguration, bufferDao, clock);
+    Duration delay = autoscalingConfiguration.getScaleDownDelay();
+    // Without creation history, the target size is the pool size.
+    Pool pool = newPool(8, new PoolAutoscalingConfig().minSize(1).maxSize(10));
+    Pool smallerPool = pool.toBuilder().size(3).build();
+
+    when(clock.instant()).thenReturn(start);
+    assertEquals(8, autoscaler.targetSize(pool));
+    // Not tracked for the whole delay yet, so don't shrink at all.
+    assertEquals(Integer.MAX_VALUE, autoscaler.scaleDownSize(pool));
+
+    when(clock.instant()).thenReturn(start.plus(delay.dividedBy(2)));
+    assertEquals(3, autoscaler.targetSize(smallerPool));
+    assertEquals(Integer.MAX_VALUE, autoscaler.scaleDownSize(smallerPool));
+
+    // The larger target size held until halfway through the delay.
+    when(clock.instant()).thenReturn(start.plus(delay).plusSeconds(1));
+    assertEquals(3, autoscaler.targetSize(smallerPool));
+    assertEquals(8, autoscaler.scaleDownSize(smallerPool));
+
+    // The smaller target size held for the whole delay.
+    when(clock.instant()).thenReturn(start.plus(delay.multipliedBy(2)));
+    assertEquals(3, autoscaler.scaleDownSize(smallerPool));
+  }
+
+  private Pool newPool(int size, PoolAutoscalingConfig autoscaling) {
+    Pool pool =
+        Pool.builder()
+            .creation(Instant.now())
+            .id(PoolId.create(UUID.randomUUID().toString()))
+            .resourceType(ResourceType.GOOGLE_PROJECT)
+            .size(size)
+            .autoscaling(autoscaling)
+            .resourceConfig(new ResourceConfig().configName("resourceName"))
+            .status(PoolStatus.ACTIVE)
+            .build();
+    bufferDao.createPools(ImmutableList.of(pool));
+    assertEquals(autoscaling, bufferDao.retrievePool(pool.id()).get().autoscaling());
+    return pool;
+  }
+}
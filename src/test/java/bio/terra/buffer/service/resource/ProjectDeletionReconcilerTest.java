@@ -0,0 +1,118 @@
+package bio.terra.buffer.service.resource;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.app.configuration.PrimaryConfiguration;
+import bio.terra.buffer.common.ProjectDeletion;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.service.leader.LeaderElection;
+import bio.terra.cloudres.google.cloudresourcemanager.CloudResourceManagerCow;
+import com.google.api.services.cloudresourcemanager.v3.model.ListProjectsResponse;
+import com.google.api.services.cloudresourcemanager.v3.model.Operation;
+import com.google.api.services.cloudresourcemanager.v3.model.Project;
+import com.google.common.collect.ImmutableList;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class ProjectDeletionReconcilerTest {
+  private static final String PARENT = "folders/123";
+  private static final Instant NOW = Instant.parse("2026-10-16T00:00:00Z");
+
+  private final BufferDao bufferDao = mock(BufferDao.class);
+  private final CloudResourceManagerCow rmCow =
+      mock(CloudResourceManagerCow.class, RETURNS_DEEP_STUBS);
+  private final LeaderElection leaderElection = mock(LeaderElection.class);
+
+  private ProjectDeletionReconciler reconciler;
+
+  @BeforeEach
+  public void setUp() {
+    when(leaderElection.isLeader()).thenReturn(true);
+    reconciler =
+        new ProjectDeletionReconciler(
+            new PrimaryConfiguration(),
+            bufferDao,
+            rmCow,
+            leaderElection,
+            Clock.fixed(NOW, ZoneOffset.UTC));
+  }
+
+  @Test
+  public void deleteProject_recordsTombstone() throws Exception {
+    when(rmCow.projects().delete("p1").execute()).thenReturn(new Operation().setName("op1"));
+
+    reconciler.deleteProject(new Project().setProjectId("p1").setParent(PARENT));
+
+    verify(bufferDao).upsertProjectDeletion("p1", PARENT, "op1");
+  }
+
+  @Test
+  public void reconcile_confirmsDeletingAndGoneProjects() throws Exception {
+    when(bufferDao.retrieveProjectDeletions(anyInt()))
+        .thenReturn(ImmutableList.of(tombstone("deleting", NOW), tombstone("gone", NOW)));
+    listProjectsReturns(new Project().setProjectId("deleting").setState("DELETE_REQUESTED"));
+
+    reconciler.reconcile();
+
+    verify(bufferDao).updateDeletingResourcesAsDeleted(ImmutableList.of("deleting", "gone"), NOW);
+    verify(bufferDao).deleteProjectDeletions(ImmutableList.of("deleting", "gone"));
+  }
+
+  @Test
+  public void reconcile_deletesAgainOnlyAfterGracePeriod() throws Exception {
+    Instant stale = NOW.minus(ProjectDeletionReconciler.DELETE_GRACE_PERIOD).minusSeconds(1);
+    when(bufferDao.retrieveProjectDeletions(anyInt()))
+        .thenReturn(ImmutableList.of(tombstone("recent", NOW), tombstone("stale", stale)));
+    listProjectsReturns(
+        new Project().setProjectId("recent").setState("ACTIVE"),
+        new Project().setProjectId("stale").setState("ACTIVE"));
+    when(rmCow.projects().delete("stale").execute()).thenReturn(new Operation().setName("op2"));
+
+    reconciler.reconcile();
+
+    verify(bufferDao).upsertProjectDeletion("stale", PARENT, "op2");
+    verify(bufferDao, never()).upsertProjectDeletion(eq("recent"), any(), any());
+    verify(bufferDao).deleteProjectDeletions(ImmutableList.of());
+  }
+
+  @Test
+  public void reconcile_skippedIfNotLeader() {
+    when(leaderElection.isLeader()).thenReturn(false);
+
+    reconciler.reconcile();
+
+    verify(bufferDao, never()).retrieveProjectDeletions(anyInt());
+  }
+
+  private void listProjectsReturns(Project... projects) throws Exception {
+    when(rmCow
+            .projects()
+            .list()
+            .setParent(PARENT)
+            .setShowDeleted(true)
+            .setPageToken(null)
+            .execute())
+        .thenReturn(new ListProjectsResponse().setProjects(ImmutableList.copyOf(projects)));
+  }
+
+  private static ProjectDeletion tombstone(String projectId, Instant requested) {
+    return ProjectDeletion.builder()
+        .projectId(projectId)
+        .parent(PARENT)
+        .operationName("op")
+        .requested(requested)
+        .build();
+  }
+}
@@ -0,0 +1,98 @@
+package bio.terra.buffer.service.resource;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.common.Pool;
+import bio.terra.buffer.common.PoolId;
+import bio.terra.buffer.common.PoolStatus;
+import bio.terra.buffer.common.RequestHandoutId;
+import bio.terra.buffer.common.Resource;
+import bio.terra.buffer.common.ResourceId;
+import bio.terra.buffer.common.ResourceState;
+import bio.terra.buffer.common.ResourceType;
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.CloudResourceUid;
+import bio.terra.buffer.generated.model.GoogleProjectUid;
+import bio.terra.buffer.generated.model.ResourceConfig;
+import bio.terra.buffer.service.pool.HandoutWaitQueue;
+import com.google.common.collect.ImmutableList;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ResourceStateListenerTest extends BaseUnitTest {
+  @Autowired BufferDao bufferDao;
+  @MockBean HandoutWaitQueue handoutWaitQueue;
+  @MockBean FlightScheduler flightScheduler;
+
+  @Test
+  public void notifiesReadyAndConsumed() throws Exception {
+    // Give the listener time to start listening.
+    TimeUnit.SECONDS.sleep(1);
+    PoolId poolId = PoolId.create("poolId");
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(poolId)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(1)
+                .resourceConfig(new ResourceConfig().configName("resourceName"))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+    ResourceId id = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(id)
+            .poolId(poolId)
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+    bufferDao.updateResourceAsReady(
+        id, new CloudResourceUid().googleProjectUid(new GoogleProjectUid().projectId("p1")));
+    verify(handoutWaitQueue, timeout(5000)).notifyResourceReady(poolId);
+
+    bufferDao.claimOneReadyResource(poolId, RequestHandoutId.create("handoutId"));
+    verify(flightScheduler, timeout(5000)).onResourceConsumed(poolId);
+  }
+
+  @Test
+  public void failedCreationNotConsumed() throws Exception {
+    // Give the listener time to start listening.
+    TimeUnit.SECONDS.sleep(1);
+    PoolId poolId = PoolId.create("poolId");
+    bufferDao.createPools(
+        ImmutableList.of(
+            Pool.builder()
+                .creation(Instant.now())
+                .id(poolId)
+                .resourceType(ResourceType.GOOGLE_PROJECT)
+                .size(1)
+                .resourceConfig(new ResourceConfig().configName("resourceName"))
+                .status(PoolStatus.ACTIVE)
+                .build()));
+    ResourceId id = ResourceId.create(UUID.randomUUID());
+    bufferDao.createResource(
+        Resource.builder()
+            .id(id)
+            .poolId(poolId)
+            .creation(Instant.now())
+            .state(ResourceState.CREATING)
+            .build());
+
+    // As the undo of a failed creation flight does.
+    bufferDao.deleteResource(id);
+    TimeUnit.SECONDS.sleep(2);
+    verify(flightScheduler, never()).onResourceConsumed(poolId);
+  }
+}
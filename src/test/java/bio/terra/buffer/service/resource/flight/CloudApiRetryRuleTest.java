@@ -0,0 +1,196 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.common.exception.QuotaExhaustedException;
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.service.quota.QuotaBudget;
+import bio.terra.buffer.service.resource.OperationPoller;
+import bio.terra.buffer.service.resource.flight.CloudErrorClassifier.ErrorClass;
+import bio.terra.cloudres.google.compute.CloudComputeCow;
+import bio.terra.cloudres.google.serviceusage.ServiceUsageCow;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.compute.Compute;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class CloudApiRetryRuleTest {
+  private final FlightContext flightContext = mock(FlightContext.class);
+
+  @Test
+  public void classify() {
+    assertEquals(ErrorClass.RETRY_SOON, CloudErrorClassifier.classify(googleError(503, null)));
+    assertEquals(ErrorClass.RETRY_SOON, CloudErrorClassifier.classify(new IOException()));
+    assertEquals(
+        ErrorClass.RETRY_SOON,
+        CloudErrorClassifier.classify(googleError(403, "accessNotConfigured")));
+    assertEquals(
+        ErrorClass.RETRY_AFTER_QUOTA_WINDOW, CloudErrorClassifier.classify(googleError(429, null)));
+    assertEquals(
+        ErrorClass.RETRY_AFTER_QUOTA_WINDOW,
+        CloudErrorClassifier.classify(googleError(403, "rateLimitExceeded")));
+    assertEquals(
+        ErrorClass.RETRY_AFTER_QUOTA_WINDOW,
+        CloudErrorClassifier.classify(new QuotaExhaustedException("empty")));
+    assertEquals(ErrorClass.FAIL_FAST, CloudErrorClassifier.classify(googleError(400, null)));
+    assertEquals(
+        ErrorClass.RETRY_FEW, CloudErrorClassifier.classify(googleError(403, "forbidden")));
+  }
+
+  @Test
+  public void retriesTransientErrorsUpToMaxCount() throws Exception {
+    CloudApiRetryRule rule = fastRule().maxCount(2).build();
+    failWith(googleError(503, null));
+
+    rule.initialize();
+    assertTrue(rule.retrySleep(flightContext));
+    assertTrue(rule.retrySleep(flightContext));
+    assertFalse(rule.retrySleep(flightContext));
+
+    // A new attempt at the step starts over.
+    rule.initialize();
+    assertTrue(rule.retrySleep(flightContext));
+  }
+
+  @Test
+  public void failsFastOnPermanentErrors() throws Exception {
+    CloudApiRetryRule rule = fastRule().build();
+    failWith(googleError(400, null));
+
+    rule.initialize();
+    assertFalse(rule.retrySleep(flightContext));
+  }
+
+  @Test
+  public void retriesFewErrorsUpToMaxFewCount() throws Exception {
+    CloudApiRetryRule rule = fastRule().maxFewCount(1).build();
+    failWith(googleError(403, "forbidden"));
+
+    rule.initialize();
+    assertTrue(rule.retrySleep(flightContext));
+    assertFalse(rule.retrySleep(flightContext));
+  }
+
+  @Test
+  public void createNetworkStep_permissionDeniedRetriedFewTimes() throws Exception {
+    CloudComputeCow computeCow = mock(CloudComputeCow.class, RETURNS_DEEP_STUBS);
+    when(computeCow.networks().insert(any(), any()).execute())
+        .thenThrow(googleError(403, "forbidden"));
+    Step step = new CreateNetworkStep(computeCow, mock(Compute.class), new GcpProjectConfig());
+
+    // Retried in case the permission is still propagating, then the flight fails.
+    assertEquals(4, attempts(step, fastRule().build()));
+  }
+
+  @Test
+  public void enableServicesStep_permissionDeniedRetriedFewTimes() throws Exception {
+    ServiceUsageCow serviceUsageCow = mock(ServiceUsageCow.class, RETURNS_DEEP_STUBS);
+    when(serviceUsageCow.services().batchEnable(any(), any()).execute())
+        .thenThrow(googleError(403, "forbidden"));
+    Step step =
+        new EnableServicesStep(
+            serviceUsageCow,
+            new GcpProjectConfig().enabledApis(ImmutableList.of("compute.googleapis.com")),
+            mock(QuotaBudget.class),
+            mock(OperationPoller.class));
+
+    assertEquals(4, attempts(step, fastRule().build()));
+  }
+
+  @Test
+  public void enableServicesStep_serviceNotEnabledRetriedUpToMaxCount() throws Exception {
+    ServiceUsageCow serviceUsageCow = mock(ServiceUsageCow.class, RETURNS_DEEP_STUBS);
+    when(serviceUsageCow.services().batchEnable(any(), any()).execute())
+        .thenThrow(googleError(403, "accessNotConfigured"));
+    Step step =
+        new EnableServicesStep(
+            serviceUsageCow,
+            new GcpProjectConfig().enabledApis(ImmutableList.of("compute.googleapis.com")),
+            mock(QuotaBudget.class),
+            mock(OperationPoller.class));
+
+    assertEquals(3, attempts(step, fastRule().maxCount(2).build()));
+  }
+
+  @Test
+  public void retriesWithoutError() throws Exception {
+    CloudApiRetryRule rule = fastRule().build();
+    when(flightContext.getResult())
+        .thenReturn(new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY));
+
+    rule.initialize();
+    assertTrue(rule.retrySleep(flightContext));
+  }
+
+  @Test
+  public void overrideTakesPrecedence() throws Exception {
+    CloudApiRetryRule rule =
+        fastRule()
+            .override(
+                e -> ((GoogleJsonResponseException) e).getStatusCode() == 400,
+                ErrorClass.RETRY_SOON)
+            .build();
+    failWith(googleError(400, null));
+
+    rule.initialize();
+    assertTrue(rule.retrySleep(flightContext));
+  }
+
+  private static CloudApiRetryRule.Builder fastRule() {
+    return CloudApiRetryRule.builder()
+        .initialInterval(Duration.ofMillis(1))
+        .maxInterval(Duration.ofMillis(2))
+        .quotaWindow(Duration.ofMillis(1));
+  }
+
+  /** Runs {@code step} the way Stairway does with {@code rule}, returns how many times it ran. */
+  private int attempts(Step step, CloudApiRetryRule rule) throws Exception {
+    FlightMap workingMap = new FlightMap();
+    workingMap.put(GOOGLE_PROJECT_ID, "project-id");
+    when(flightContext.getWorkingMap()).thenReturn(workingMap);
+    rule.initialize();
+    int attempts = 0;
+    StepResult result;
+    do {
+      ++attempts;
+      result = step.doStep(flightContext);
+    } while (result.getStepStatus() == StepStatus.STEP_RESULT_FAILURE_RETRY
+        && rule.retrySleep(result));
+    assertEquals(StepStatus.STEP_RESULT_FAILURE_RETRY, result.getStepStatus());
+    return attempts;
+  }
+
+  private void failWith(Exception e) {
+    when(flightContext.getResult())
+        .thenReturn(new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY, e));
+  }
+
+  private static GoogleJsonResponseException googleError(int statusCode, String reason) {
+    GoogleJsonError.ErrorInfo errorInfo = new GoogleJsonError.ErrorInfo();
+    errorInfo.setReason(reason);
+    GoogleJsonError details = new GoogleJsonError();
+    details.setCode(statusCode);
+    details.setErrors(ImmutableList.of(errorInfo));
+    return new GoogleJsonResponseException(
+        new HttpResponseException.Builder(statusCode, null, new HttpHeaders()), details);
+  }
+}
@@ -0,0 +1,50 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.FlightMapKeys.GOOGLE_PROJECT_ID;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.NETWORK_SELF_LINK;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.networkSelfLink;
+import static bio.terra.buffer.service.resource.flight.FlightResourceCache.publish;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.NETWORK_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cloudres.google.compute.CloudComputeCow;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class FlightResourceCacheTest {
+  private final FlightContext flightContext = mock(FlightContext.class);
+  private final CloudComputeCow computeCow = mock(CloudComputeCow.class, RETURNS_DEEP_STUBS);
+
+  @BeforeEach
+  public void setUp() {
+    FlightMap workingMap = new FlightMap();
+    workingMap.put(GOOGLE_PROJECT_ID, "project");
+    when(flightContext.getWorkingMap()).thenReturn(workingMap);
+  }
+
+  @Test
+  public void publishedValueSkipsFetch() throws Exception {
+    publish(flightContext, NETWORK_SELF_LINK, "selfLink");
+
+    assertEquals("selfLink", networkSelfLink(flightContext, computeCow));
+    verifyNoInteractions(computeCow);
+  }
+
+  @Test
+  public void missFetchesWithoutPublishing() throws Exception {
+    when(computeCow.networks().get("project", NETWORK_NAME).execute().getSelfLink())
+        .thenReturn("fetchedSelfLink");
+
+    assertEquals("fetchedSelfLink", networkSelfLink(flightContext, computeCow));
+    assertFalse(FlightResourceCache.get(flightContext, NETWORK_SELF_LINK).isPresent());
+  }
+}
@@ -0,0 +1,112 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.IamBinding;
+import bio.terra.buffer.generated.model.Network;
+import bio.terra.buffer.generated.model.ProjectIdSchema;
+import com.google.common.collect.ImmutableList;
+import java.util.Optional;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class GcpProjectConfigDiffTest {
+  private static GcpProjectConfig newConfig() {
+    return new GcpProjectConfig()
+        .projectIdSchema(
+            new ProjectIdSchema().prefix("test").scheme(ProjectIdSchema.SchemeEnum.RANDOM_CHAR))
+        .billingAccount("billing")
+        .enabledApis(ImmutableList.of("compute.googleapis.com"))
+        .iamBindings(
+            ImmutableList.of(
+                new IamBinding()
+                    .role("roles/editor")
+                    .members(ImmutableList.of("group:admins@example.com"))));
+  }
+
+  @Test
+  public void delta_sameConfig() {
+    GcpProjectConfig delta = GcpProjectConfigDiff.delta(newConfig(), newConfig()).get();
+
+    assertTrue(delta.getEnabledApis().isEmpty());
+    assertTrue(delta.getIamBindings().isEmpty());
+    assertNull(delta.getBillingAccount());
+    assertNull(delta.getNetwork());
+  }
+
+  @Test
+  public void delta_additiveChanges() {
+    GcpProjectConfig to =
+        newConfig()
+            .billingAccount("newBilling")
+            .enabledApis(ImmutableList.of("compute.googleapis.com", "bigquery.googleapis.com"))
+            .iamBindings(
+                ImmutableList.of(
+                    new IamBinding()
+                        .role("roles/editor")
+                        .members(
+                            ImmutableList.of("group:admins@example.com", "user:new@example.com")),
+                    new IamBinding()
+                        .role("roles/viewer")
+                        .members(ImmutableList.of("group:admins@example.com"))))
+            .network(new Network().enableNetworkMonitoring(true));
+
+    GcpProjectConfig delta = GcpProjectConfigDiff.delta(newConfig(), to).get();
+
+    assertEquals(to.getProjectIdSchema(), delta.getProjectIdSchema());
+    assertEquals(ImmutableList.of("bigquery.googleapis.com"), delta.getEnabledApis());
+    assertEquals(
+        ImmutableList.of(
+            new IamBinding().role("roles/editor").members(ImmutableList.of("user:new@example.com")),
+            new IamBinding()
+                .role("roles/viewer")
+                .members(ImmutableList.of("group:admins@example.com"))),
+        delta.getIamBindings());
+    assertEquals("newBilling", delta.getBillingAccount());
+    assertTrue(delta.getNetwork().isEnableNetworkMonitoring());
+  }
+
+  @Test
+  public void delta_removedApiRequiresRecreation() {
+    assertFalse(
+        GcpProjectConfigDiff.delta(newConfig(), newConfig().enabledApis(ImmutableList.of()))
+            .isPresent());
+  }
+
+  @Test
+  public void delta_removedMemberRequiresRecreation() {
+    GcpProjectConfig to =
+        newConfig()
+            .iamBindings(
+                ImmutableList.of(
+                    new IamBinding()
+                        .role("roles/viewer")
+                        .members(ImmutableList.of("group:admins@example.com"))));
+
+    assertEquals(Optional.empty(), GcpProjectConfigDiff.delta(newConfig(), to));
+  }
+
+  @Test
+  public void delta_otherChangeRequiresRecreation() {
+    GcpProjectConfig to =
+        newConfig()
+            .projectIdSchema(
+                new ProjectIdSchema()
+                    .prefix("other")
+                    .scheme(ProjectIdSchema.SchemeEnum.RANDOM_CHAR));
+
+    assertEquals(Optional.empty(), GcpProjectConfigDiff.delta(newConfig(), to));
+  }
+
+  @Test
+  public void delta_disabledNetworkMonitoringRequiresRecreation() {
+    GcpProjectConfig from = newConfig().network(new Network().enableNetworkMonitoring(true));
+
+    assertEquals(Optional.empty(), GcpProjectConfigDiff.delta(from, newConfig()));
+  }
+}
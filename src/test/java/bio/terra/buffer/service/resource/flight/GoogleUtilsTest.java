@@ -0,0 +1,111 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.FIRST_POLLING_INTERVAL;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.executeBatch;
+import static bio.terra.buffer.service.resource.flight.GoogleUtils.nextPollingInterval;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.service.resource.flight.GoogleUtils.BatchResult;
+import bio.terra.cloudres.google.api.services.common.Defaults;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.compute.Compute;
+import com.google.api.services.compute.model.Operation;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.time.Duration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class GoogleUtilsTest {
+  @Test
+  public void nextPollingInterval_backsOffUpToMax() {
+    Duration max = Duration.ofSeconds(5);
+    Duration interval = FIRST_POLLING_INTERVAL;
+
+    interval = nextPollingInterval(interval, max);
+    assertEquals(Duration.ofSeconds(1), interval);
+    interval = nextPollingInterval(interval, max);
+    assertEquals(Duration.ofSeconds(2), interval);
+    interval = nextPollingInterval(interval, max);
+    assertEquals(Duration.ofSeconds(4), interval);
+    interval = nextPollingInterval(interval, max);
+    assertEquals(max, interval);
+    assertEquals(max, nextPollingInterval(interval, max));
+  }
+
+  @Test
+  public void executeBatch_toleratesAcceptableFailures() throws Exception {
+    Compute compute = computeRespondingWith(itemResponse(200, "{\"name\": \"op\"}"), conflict());
+
+    BatchResult<String, Operation> result =
+        executeBatch(
+            compute,
+            ImmutableMap.of(
+                "a",
+                compute.firewalls().delete("project", "a"),
+                "b",
+                compute.firewalls().delete("project", "b")),
+            409);
+    result.throwIfFailed();
+
+    assertEquals(ImmutableSet.of("a"), result.results().keySet());
+    assertEquals("op", result.results().get("a").getName());
+    assertEquals(ImmutableSet.of("b"), result.tolerated());
+  }
+
+  @Test
+  public void executeBatch_reportsOtherFailuresAfterSuccesses() throws Exception {
+    Compute compute = computeRespondingWith(itemResponse(200, "{\"name\": \"op\"}"), conflict());
+
+    BatchResult<String, Operation> result =
+        executeBatch(
+            compute,
+            ImmutableMap.of(
+                "a",
+                compute.firewalls().delete("project", "a"),
+                "b",
+                compute.firewalls().delete("project", "b")),
+            404);
+
+    // The item that succeeded can still be finished before failing the step.
+    assertEquals(ImmutableSet.of("a"), result.results().keySet());
+    assertTrue(result.tolerated().isEmpty());
+    GoogleJsonResponseException e =
+        assertThrows(GoogleJsonResponseException.class, result::throwIfFailed);
+    assertEquals(409, e.getStatusCode());
+  }
+
+  private static String conflict() {
+    return itemResponse(409, "{\"error\": {\"code\": 409, \"message\": \"exists\"}}");
+  }
+
+  private static String itemResponse(int status, String json) {
+    return "--batch\r\n"
+        + "Content-Type: application/http\r\n\r\n"
+        + "HTTP/1.1 "
+        + status
+        + " Status\r\n"
+        + "Content-Type: application/json; charset=UTF-8\r\n\r\n"
+        + json
+        + "\r\n";
+  }
+
+  /** Builds a client whose batch requests get the given per-item responses, in order. */
+  private static Compute computeRespondingWith(String... itemResponses) {
+    MockLowLevelHttpResponse response =
+        new MockLowLevelHttpResponse()
+            .setContentType("multipart/mixed; boundary=batch")
+            .setContent(String.join("", itemResponses) + "--batch--\r\n");
+    return new Compute.Builder(
+            new MockHttpTransport.Builder().setLowLevelHttpResponse(response).build(),
+            Defaults.jsonFactory(),
+            /* httpRequestInitializer= */ null)
+        .setApplicationName("test")
+        .build();
+  }
+}
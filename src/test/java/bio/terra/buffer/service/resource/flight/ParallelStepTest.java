@@ -0,0 +1,297 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static bio.terra.buffer.integration.IntegrationUtils.blockUntilFlightComplete;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.common.BaseUnitTest;
+import bio.terra.buffer.service.resource.ParallelStepExecutor;
+import bio.terra.common.stairway.StairwayComponent;
+import bio.terra.stairway.Flight;
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Step;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import com.google.common.collect.ImmutableSet;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ParallelStepTest extends BaseUnitTest {
+  @Autowired StairwayComponent stairwayComponent;
+  @Autowired ParallelStepExecutor parallelStepExecutor;
+
+  /** Counted down by each {@link BarrierStep}, released once all branches reach it. */
+  private static CountDownLatch barrier;
+
+  private static final List<String> done = new CopyOnWriteArrayList<>();
+  private static final List<String> undone = new CopyOnWriteArrayList<>();
+
+  /** How many times {@link FlakyStep} failed. */
+  private static final AtomicInteger flakyFailures = new AtomicInteger();
+
+  @Test
+  public void branchesRunConcurrently() throws Exception {
+    barrier = new CountDownLatch(2);
+    done.clear();
+
+    assertEquals(FlightStatus.SUCCESS, runFlight(BarrierFlight.class));
+    assertEquals(ImmutableSet.of("a", "b"), ImmutableSet.copyOf(done.subList(0, 2)));
+    assertEquals(3, done.size());
+    assertEquals("after", done.get(2));
+  }
+
+  @Test
+  public void failedBranchUndoesStartedSteps() throws Exception {
+    done.clear();
+    undone.clear();
+
+    assertEquals(FlightStatus.ERROR, runFlight(FailingBranchFlight.class));
+    assertEquals(ImmutableSet.of("before", "a1", "a2", "b1"), ImmutableSet.copyOf(done));
+    // Each branch undoes its steps in reverse order, the step after the failure never started.
+    assertEquals(ImmutableSet.of("before", "a1", "a2", "b1"), ImmutableSet.copyOf(undone));
+    assertTrue(undone.indexOf("a2") < undone.indexOf("a1"));
+    assertEquals("before", undone.get(undone.size() - 1));
+  }
+
+  @Test
+  public void undoAfterRestartOnlyUndoesStartedSteps() throws Exception {
+    done.clear();
+    undone.clear();
+    FlightContext flightContext = mock(FlightContext.class);
+    when(flightContext.getWorkingMap()).thenReturn(new FlightMap());
+
+    assertEquals(
+        StepStatus.STEP_RESULT_FAILURE_FATAL,
+        newFailingBranchStep(parallelStepExecutor).doStep(flightContext).getStepStatus());
+    // A new instance, as Stairway builds for a flight recovered after a restart, reads how many
+    // steps each branch started from the working map.
+    assertTrue(newFailingBranchStep(parallelStepExecutor).undoStep(flightContext).isSuccess());
+    assertEquals(ImmutableSet.of("a1", "a2", "b1"), ImmutableSet.copyOf(undone));
+  }
+
+  @Test
+  public void nestedParallelStepFails() throws Exception {
+    done.clear();
+
+    assertEquals(FlightStatus.ERROR, runFlight(NestedFlight.class));
+    assertTrue(done.isEmpty());
+  }
+
+  @Test
+  public void failedBranchRetriesAlone() throws Exception {
+    done.clear();
+    flakyFailures.set(0);
+
+    assertEquals(FlightStatus.SUCCESS, runFlight(FlakyBranchFlight.class));
+    assertEquals(2, flakyFailures.get());
+    // The other branch ran once.
+    assertEquals(ImmutableSet.of("a", "b1", "b2"), ImmutableSet.copyOf(done));
+    assertEquals(3, done.size());
+  }
+
+  @Test
+  public void branchWorkingMapsMerged() throws Exception {
+    String flightId = stairwayComponent.get().createFlightId();
+    stairwayComponent.get().submit(flightId, WorkingMapFlight.class, new FlightMap());
+    FlightMap workingMap =
+        blockUntilFlightComplete(stairwayComponent, flightId).getResultMap().get();
+
+    assertEquals("a", workingMap.get("a", String.class));
+    assertEquals("b", workingMap.get("b", String.class));
+    // The step after the parallel step read both.
+    assertEquals("ab", workingMap.get("after", String.class));
+  }
+
+  private FlightStatus runFlight(Class<? extends Flight> flightClass) throws Exception {
+    String flightId = stairwayComponent.get().createFlightId();
+    stairwayComponent.get().submit(flightId, flightClass, new FlightMap());
+    return blockUntilFlightComplete(stairwayComponent, flightId).getFlightStatus();
+  }
+
+  public static class BarrierFlight extends Flight {
+    public BarrierFlight(FlightMap inputParameters, Object applicationContext) {
+      super(inputParameters, applicationContext);
+      addStep(
+          ParallelStep.builder()
+              .key("branches")
+              .executor(executor(applicationContext))
+              .addBranch(new BarrierStep("a"))
+              .addBranch(new BarrierStep("b"))
+              .build());
+      addStep(new RecordingStep("after"));
+    }
+  }
+
+  public static class FailingBranchFlight extends Flight {
+    public FailingBranchFlight(FlightMap inputParameters, Object applicationContext) {
+      super(inputParameters, applicationContext);
+      addStep(new RecordingStep("before"));
+      addStep(newFailingBranchStep(executor(applicationContext)));
+    }
+  }
+
+  /** Branch a succeeds, branch b fails at its second step. */
+  private static ParallelStep newFailingBranchStep(ParallelStepExecutor executor) {
+    return ParallelStep.builder()
+        .key("branches")
+        .executor(executor)
+        .addBranch(new RecordingStep("a1"), new RecordingStep("a2"))
+        .addBranch(new RecordingStep("b1"), new ErrorStep(), new RecordingStep("b2"))
+        .build();
+  }
+
+  public static class NestedFlight extends Flight {
+    public NestedFlight(FlightMap inputParameters, Object applicationContext) {
+      super(inputParameters, applicationContext);
+      addStep(
+          ParallelStep.builder()
+              .key("outer")
+              .executor(executor(applicationContext))
+              .addBranch(
+                  ParallelStep.builder()
+                      .key("inner")
+                      .executor(executor(applicationContext))
+                      .addBranch(new RecordingStep("inner"))
+                      .build())
+              .build());
+    }
+  }
+
+  public static class FlakyBranchFlight extends Flight {
+    public FlakyBranchFlight(FlightMap inputParameters, Object applicationContext) {
+      super(inputParameters, applicationContext);
+      addStep(
+          ParallelStep.builder()
+              .key("branches")
+              .executor(executor(applicationContext))
+              .addBranch(new RecordingStep("a"))
+              .addBranch(
+                  CloudApiRetryRule.builder().initialInterval(Duration.ofMillis(10)).build(),
+                  new RecordingStep("b1"),
+                  new FlakyStep("b2"))
+              .build());
+    }
+  }
+
+  public static class WorkingMapFlight extends Flight {
+    public WorkingMapFlight(FlightMap inputParameters, Object applicationContext) {
+      super(inputParameters, applicationContext);
+      addStep(
+          ParallelStep.builder()
+              .key("branches")
+              .executor(executor(applicationContext))
+              .addBranch(new PutStep("a"))
+              .addBranch(new PutStep("b"))
+              .build());
+      addStep(
+          new Step() {
+            @Override
+            public StepResult doStep(FlightContext flightContext) {
+              FlightMap workingMap = flightContext.getWorkingMap();
+              workingMap.put(
+                  "after", workingMap.get("a", String.class) + workingMap.get("b", String.class));
+              return StepResult.getStepResultSuccess();
+            }
+
+            @Override
+            public StepResult undoStep(FlightContext flightContext) {
+              return StepResult.getStepResultSuccess();
+            }
+          });
+    }
+  }
+
+  private static ParallelStepExecutor executor(Object applicationContext) {
+    return ((ApplicationContext) applicationContext).getBean(ParallelStepExecutor.class);
+  }
+
+  /** Records its name when done and undone. */
+  private static class RecordingStep implements Step {
+    private final String name;
+
+    private RecordingStep(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public StepResult doStep(FlightContext flightContext) throws InterruptedException {
+      done.add(name);
+      return StepResult.getStepResultSuccess();
+    }
+
+    @Override
+    public StepResult undoStep(FlightContext flightContext) {
+      undone.add(name);
+      return StepResult.getStepResultSuccess();
+    }
+  }
+
+  /** Only succeeds if the other branch reaches the barrier while this one waits. */
+  private static class BarrierStep extends RecordingStep {
+    private BarrierStep(String name) {
+      super(name);
+    }
+
+    @Override
+    public StepResult doStep(FlightContext flightContext) throws InterruptedException {
+      barrier.countDown();
+      if (!barrier.await(10, TimeUnit.SECONDS)) {
+        return new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL);
+      }
+      return super.doStep(flightContext);
+    }
+  }
+
+  /** Asks for a retry twice before succeeding. */
+  private static class FlakyStep extends RecordingStep {
+    private FlakyStep(String name) {
+      super(name);
+    }
+
+    @Override
+    public StepResult doStep(FlightContext flightContext) throws InterruptedException {
+      if (flakyFailures.get() < 2) {
+        flakyFailures.incrementAndGet();
+        return new StepResult(StepStatus.STEP_RESULT_FAILURE_RETRY);
+      }
+      return super.doStep(flightContext);
+    }
+  }
+
+  /** Puts its name under its name in its branch's working map, and checks it reads it back. */
+  private static class PutStep implements Step {
+    private final String name;
+
+    private PutStep(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public StepResult doStep(FlightContext flightContext) {
+      ParallelStep.putWorkingMap(flightContext, name, name);
+      return name.equals(ParallelStep.getWorkingMap(flightContext, name, String.class))
+          ? StepResult.getStepResultSuccess()
+          : new StepResult(StepStatus.STEP_RESULT_FAILURE_FATAL);
+    }
+
+    @Override
+    public StepResult undoStep(FlightContext flightContext) {
+      return StepResult.getStepResultSuccess();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.buffer.generated.model.GcpProjectConfig;
+import bio.terra.buffer.generated.model.IamBinding;
+import com.google.api.services.cloudresourcemanager.v3.model.Binding;
+import com.google.api.services.cloudresourcemanager.v3.model.Policy;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class ScrubIamPolicyStepTest {
+  private static final GcpProjectConfig CONFIG =
+      new GcpProjectConfig()
+          .iamBindings(
+              ImmutableList.of(
+                  new IamBinding()
+                      .role("roles/editor")
+                      .members(ImmutableList.of("group:admins@example.com"))));
+
+  private static final Predicate<String> KEPT_SERVICE_ACCOUNT =
+      new ScrubIamPolicyStep(null, CONFIG, Optional.of("buffer@admin.iam.gserviceaccount.com"))
+          .keptServiceAccount("project", "123");
+
+  @Test
+  public void scrub_removesMembersNotInConfig() {
+    Policy policy =
+        new Policy()
+            .setBindings(
+                new ArrayList<>(
+                    Arrays.asList(
+                        binding(
+                            "roles/editor",
+                            "group:admins@example.com",
+                            "user:client@example.com",
+                            "serviceAccount:sa@project.iam.gserviceaccount.com"),
+                        binding("roles/owner", "user:client@example.com"),
+                        // Granted by config, but for another role.
+                        binding("roles/viewer", "group:admins@example.com"))));
+
+    assertTrue(ScrubIamPolicyStep.scrub(policy, CONFIG, KEPT_SERVICE_ACCOUNT));
+    assertEquals(
+        ImmutableList.of(
+            binding(
+                "roles/editor",
+                "group:admins@example.com",
+                "serviceAccount:sa@project.iam.gserviceaccount.com")),
+        policy.getBindings());
+  }
+
+  @Test
+  public void scrub_secondRunLeavesPolicyUnchanged() {
+    Policy policy =
+        new Policy()
+            .setBindings(
+                new ArrayList<>(
+                    Arrays.asList(
+                        binding("roles/editor", "group:admins@example.com"),
+                        binding("roles/owner", "serviceAccount:sa@project.iam.gserviceaccount.com"),
+                        binding("roles/viewer", "domain:example.com"))));
+
+    assertTrue(ScrubIamPolicyStep.scrub(policy, CONFIG, KEPT_SERVICE_ACCOUNT));
+    assertEquals(2, policy.getBindings().size());
+    assertFalse(ScrubIamPolicyStep.scrub(policy, CONFIG, KEPT_SERVICE_ACCOUNT));
+    assertFalse(ScrubIamPolicyStep.scrub(new Policy(), CONFIG, KEPT_SERVICE_ACCOUNT));
+  }
+
+  @Test
+  public void scrub_removesForeignServiceAccounts() {
+    Policy policy =
+        new Policy()
+            .setBindings(
+                new ArrayList<>(
+                    Arrays.asList(
+                        binding(
+                            "roles/editor",
+                            "serviceAccount:123@cloudservices.gserviceaccount.com",
+                            "serviceAccount:service-123@compute-system.iam.gserviceaccount.com",
+                            "serviceAccount:sa@other-project.iam.gserviceaccount.com"),
+                        binding(
+                            "roles/owner",
+                            "serviceAccount:buffer@admin.iam.gserviceaccount.com",
+                            "serviceAccount:service-456@compute-system.iam.gserviceaccount.com"))));
+
+    assertTrue(ScrubIamPolicyStep.scrub(policy, CONFIG, KEPT_SERVICE_ACCOUNT));
+    assertEquals(
+        ImmutableList.of(
+            binding(
+                "roles/editor",
+                "serviceAccount:123@cloudservices.gserviceaccount.com",
+                "serviceAccount:service-123@compute-system.iam.gserviceaccount.com"),
+            binding("roles/owner", "serviceAccount:buffer@admin.iam.gserviceaccount.com")),
+        policy.getBindings());
+  }
+
+  private static Binding binding(String role, String... members) {
+    return new Binding().setRole(role).setMembers(new ArrayList<>(Arrays.asList(members)));
+  }
+}
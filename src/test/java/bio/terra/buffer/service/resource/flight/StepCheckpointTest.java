@@ -0,0 +1,32 @@
+package bio.terra.buffer.service.resource.flight;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.stairway.FlightContext;
+import bio.terra.stairway.FlightMap;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class StepCheckpointTest {
+  @Test
+  public void completedItemsCarryOverToNewInstance() {
+    FlightContext flightContext = mock(FlightContext.class);
+    when(flightContext.getWorkingMap()).thenReturn(new FlightMap());
+
+    StepCheckpoint checkpoint = new StepCheckpoint(flightContext, "key");
+    checkpoint.complete("a");
+    checkpoint.completeAll(ImmutableList.of("b", "c"));
+
+    // E.g. the step of a flight recovered after a restart.
+    StepCheckpoint loaded = new StepCheckpoint(flightContext, "key");
+    assertTrue(loaded.isCompleted("a"));
+    assertTrue(loaded.isCompleted("c"));
+    assertFalse(loaded.isCompleted("d"));
+    assertFalse(new StepCheckpoint(flightContext, "otherKey").isCompleted("a"));
+  }
+}
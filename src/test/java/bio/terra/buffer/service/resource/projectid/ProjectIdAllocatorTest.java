@@ -0,0 +1,77 @@
+package bio.terra.buffer.service.resource.projectid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.buffer.db.BufferDao;
+import bio.terra.buffer.generated.model.ProjectIdSchema;
+import bio.terra.common.exception.InternalServerErrorException;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class ProjectIdAllocatorTest {
+  private static final ProjectIdSchema SCHEMA = new ProjectIdSchema().prefix("prefix");
+
+  private final GcpProjectIdGenerator idGenerator = mock(GcpProjectIdGenerator.class);
+  private final BufferDao bufferDao = mock(BufferDao.class);
+
+  private ProjectIdAllocator allocator;
+
+  @BeforeEach
+  public void setUp() {
+    doAnswer(
+            invocation -> {
+              invocation.<Consumer<String>>getArgument(0).accept("prefix-loaded");
+              return null;
+            })
+        .when(bufferDao)
+        .forEachProjectId(any());
+    allocator = new ProjectIdAllocator(idGenerator, bufferDao);
+    allocator.initialize();
+  }
+
+  @Test
+  public void allocate_skipsLoadedIdWithoutDatabase() {
+    when(idGenerator.generateId(SCHEMA)).thenReturn("prefix-loaded", "prefix-new");
+    when(bufferDao.insertProjectId("prefix-new")).thenReturn(true);
+
+    assertEquals("prefix-new", allocator.allocate(SCHEMA));
+    verify(bufferDao, never()).insertProjectId("prefix-loaded");
+  }
+
+  @Test
+  public void allocate_regeneratesIdIssuedElsewhere() {
+    when(idGenerator.generateId(SCHEMA)).thenReturn("prefix-other", "prefix-new");
+    when(bufferDao.insertProjectId("prefix-other")).thenReturn(false);
+    when(bufferDao.insertProjectId("prefix-new")).thenReturn(true);
+
+    assertEquals("prefix-new", allocator.allocate(SCHEMA));
+  }
+
+  @Test
+  public void allocate_neverReissuesMarkedId() {
+    allocator.markTaken("prefix-taken");
+    when(idGenerator.generateId(SCHEMA)).thenReturn("prefix-taken", "prefix-new");
+    when(bufferDao.insertProjectId("prefix-new")).thenReturn(true);
+
+    assertEquals("prefix-new", allocator.allocate(SCHEMA));
+  }
+
+  @Test
+  public void allocate_givesUpWhenAllTaken() {
+    when(idGenerator.generateId(SCHEMA)).thenReturn("prefix-loaded");
+
+    assertThrows(InternalServerErrorException.class, () -> allocator.allocate(SCHEMA));
+    verify(bufferDao, never()).insertProjectId(anyString());
+  }
+}